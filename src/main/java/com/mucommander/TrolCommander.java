@@ -59,10 +59,9 @@ import javax.swing.SwingUtilities;
 import java.awt.GraphicsEnvironment;
 import java.awt.event.KeyEvent;
 import java.lang.reflect.Constructor;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -153,28 +152,46 @@ public class TrolCommander {
         }
     }
 
-    private abstract static class LauncherTask implements Callable<Void> {
+    /**
+     * A step of the startup. Each task is run by the launcher executor as soon as all the tasks it depends on are done.
+     */
+    private abstract static class LauncherTask {
         private final String name;
         protected final LauncherCmdHelper helper;
         private final LauncherTask[] depends;
-        private final FutureTask<Void> task;
+        private CompletableFuture<Void> future;
+
+        /** Time at which the task started and finished, in nanoseconds */
+        private long startTime;
+        private long endTime;
+        private String threadName;
 
         LauncherTask(String name, LauncherCmdHelper helper, LauncherTask... depends) {
             this.name = "launcher." + name;
             this.helper = helper;
             this.depends = depends;
-            this.task = new FutureTask<>(this);
         }
 
-        @Override
-        public final Void call() throws Exception {
-            if (depends != null && depends.length > 0) {
-                Profiler.start(name + ".depends");
-                for (LauncherTask t : depends) {
-                    t.task.get();
+        /**
+         * Schedules this task and the tasks it depends on, if not done yet.
+         *
+         * @param executor the executor running the tasks
+         * @return the future completed when this task is done
+         */
+        CompletableFuture<Void> schedule(Executor executor) {
+            if (future == null) {
+                CompletableFuture<?>[] dependencies = new CompletableFuture<?>[depends.length];
+                for (int i = 0; i < depends.length; i++) {
+                    dependencies[i] = depends[i].schedule(executor);
                 }
-                Profiler.stop(name + ".depends");
+                future = CompletableFuture.allOf(dependencies).thenRunAsync(this::execute, executor);
             }
+            return future;
+        }
+
+        private void execute() {
+            threadName = Thread.currentThread().getName();
+            startTime = System.nanoTime();
             Profiler.start(name);
             try {
                 run();
@@ -183,28 +200,8 @@ public class TrolCommander {
                 helper.printFileError("Launcher getTask error for " + name + ": ", e);
             }
             Profiler.stop(name);
+            endTime = System.nanoTime();
             onFinish();
-            return null;
-        }
-
-        FutureTask<Void> getTask() {
-            return task;
-        }
-
-        boolean isReadyForExecution() {
-            if (depends == null || depends.length == 0) {
-                return true;
-            }
-            for (LauncherTask dt : depends) {
-                if (!dt.isDone()) {
-                    return false;
-                }
-            }
-            return true;
-        }
-
-        public boolean isDone() {
-            return task.isDone();
         }
 
         void onFinish() {
@@ -751,42 +748,27 @@ public class TrolCommander {
     }
 
 
-    private static class LauncherExecutor extends ThreadPoolExecutor {
-        private final Set<LauncherTask> runningTasks = new HashSet<>();
-        private final int cores;
-
-        LauncherExecutor(int cores) {
-            super(cores, cores, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
-            this.cores = cores;
-        }
-
-        public boolean isFull() {
-            if (runningTasks.size() < cores) {
-                return  false;
-            }
-            for (LauncherTask t : runningTasks) {
-                if (t.isDone()) {
-                    runningTasks.remove(t);
-                    break;
-                }
-            }
-            return runningTasks.size() >= cores;
-        }
-
-        public int getRunningTasksCount() {
-            return runningTasks.size();
+    /**
+     * Logs when each startup task started and how long it took, in the order the tasks were started.
+     *
+     * @param tasks the startup tasks
+     * @param launchTime the time at which the tasks were scheduled, in nanoseconds
+     */
+    private static void logStartupReport(List<LauncherTask> tasks, long launchTime) {
+        if (!getLogger().isLoggable(Level.FINE)) {
+            return;
         }
-
-        public boolean execute(LauncherTask task, boolean force) {
-            if (force || (runningTasks.size() < cores && task.isReadyForExecution())) {
-                super.execute(task.getTask());
-// System.out.println("Execute " + task + " " + task.depends.length + "  " + task.isReadyForExecution() + "      " + runningTasks);
-                runningTasks.add(task);
-                return true;
-            }
-            return false;
+        List<LauncherTask> sortedTasks = new ArrayList<>(tasks);
+        sortedTasks.sort(Comparator.comparingLong(task -> task.startTime));
+        StringBuilder sb = new StringBuilder("Startup tasks (start, duration in ms):\n");
+        for (LauncherTask task : sortedTasks) {
+            sb.append(String.format("%-40s %6d %6d  %s%n", task.name, (task.startTime - launchTime) / 1000000,
+                    (task.endTime - task.startTime) / 1000000, task.threadName));
         }
+        sb.append("Total: ").append((System.nanoTime() - launchTime) / 1000000).append(" ms");
+        getLogger().log(Level.FINE, sb.toString());
     }
+
     /**
      * Main method used to startup muCommander.
      * @param args command line arguments.
@@ -814,7 +796,15 @@ public class TrolCommander {
         System.out.println("Processors: " + processors);
         //ExecutorService executor = Executors.newFixedThreadPool(processors < 2 ? 2 : processors);
 
-        LauncherExecutor executor = new LauncherExecutor(processors <= 0 ? 1 : processors);
+        // Tasks mostly wait for I/O and class loading, use at least two threads even on a single core
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(2, processors), new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "launcher-" + (++count));
+            }
+        });
         try {
             // Initialises fields.
             LauncherCmdHelper helper = new LauncherCmdHelper(args, true, false);
@@ -850,7 +840,7 @@ public class TrolCommander {
             LauncherTask taskRegisterOtherProtocols = new RegisterOtherProtocolsTask(helper);
             LauncherTask taskLoadEnvironment = new LoadEnvironmentTask(helper);
 
-            List<LauncherTask> tasks = new LinkedList<>();
+            List<LauncherTask> tasks = new ArrayList<>();
 //            tasks.add(taskPrepareLogger);
 
             tasks.add(taskPrepareGraphics);
@@ -882,54 +872,22 @@ public class TrolCommander {
             tasks.add(taskRegisterNetwork);
             tasks.add(taskRegisterOtherProtocols);
             tasks.add(taskLoadEnvironment);
-//System.out.println("Execute tasks");
 
-            if (processors <= 1 ) {
-                for (LauncherTask t : tasks) {
-                    t.run();
-                }
-            } else {
-                while (!tasks.isEmpty()) {
-                    // execute tasks with ready dependencies
-                    for (LauncherTask task : tasks) {
-                        if (executor.execute(task, false) ) {
-                            tasks.remove(task);
-                            break;
-                        }
-                    }
-                    // TODO
-                    if (executor.isFull()) {
-                        try {
-                            Thread.sleep(5);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    } else {
-                        boolean found = false;
-                        for (LauncherTask task : tasks) {
-                            if (executor.execute(task, false) ) {
-                                tasks.remove(task);
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (found) {
-                            continue;
-                        }
-
-                        LauncherTask t = tasks.get(0);
-                        executor.execute(t, true);
-                        tasks.remove(t);
-                        try {
-                            Thread.sleep(1);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
+            // Each task is started as soon as its dependencies are done, the launch is over once all are done
+            long launchTime = System.nanoTime();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.size()];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = tasks.get(i).schedule(executor);
             }
-            executor.shutdown();
-            System.out.println("finished");
+            try {
+                CompletableFuture.allOf(futures).join();
+            } catch (CompletionException e) {
+                // A task that could not be run is a startup failure
+                throw e.getCause() != null ? e.getCause() : e;
+            } finally {
+                executor.shutdown();
+            }
+            logStartupReport(tasks, launchTime);
         } catch(Throwable t) {
             // Startup failed, dispose the splash screen
             if (splashScreen != null) {
@@ -945,14 +903,6 @@ public class TrolCommander {
             WindowManager.quit();
         }
 
-        executor.shutdown();
-/*
-        try {
-            executor.awaitTermination(100, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-*/
         // Done launching, wake up threads waiting for the application being launched.
         // Important: this must be done before disposing the splash screen, as this would otherwise create a deadlock
         // if the AWT event thread were waiting in #waitUntilLaunched .
@@ -92,6 +92,32 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      * corresponding ArchiveEntry. */
     private WeakHashMap<ArchiveEntry, AbstractArchiveEntryFile> archiveEntryFiles;
 
+    /**
+     * Receives the entries of an archive, in the order in which they are stored, during a single pass over the
+     * archive. See {@link AbstractArchiveFile#visitEntries(EntryVisitor)}.
+     */
+    public interface EntryVisitor {
+        /**
+         * Returns <code>true</code> if the contents of the given entry are to be passed to
+         * {@link #visit(ArchiveEntry, InputStream)}. Directory entries have no contents.
+         *
+         * @param entry the entry about to be visited
+         * @return true if the entry's contents should be read
+         */
+        boolean wantsContents(ArchiveEntry entry);
+
+        /**
+         * Visits an entry. The stream is only valid for the duration of the call and needs not be read fully nor
+         * closed.
+         *
+         * @param entry the entry
+         * @param in the entry's contents, <code>null</code> if {@link #wantsContents(ArchiveEntry)} returned false
+         * @return <code>false</code> to stop the pass
+         * @throws IOException if an error occurred while reading the entry's contents
+         */
+        boolean visit(ArchiveEntry entry, InputStream in) throws IOException;
+    }
+
     /**
      * Creates an AbstractArchiveFile on top of the given file.
      *
@@ -136,6 +162,80 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         }
     }
 
+    /**
+     * Passes all the entries of this archive to the given visitor, in the order in which they are stored, along with
+     * the contents of the entries it asks for. The archive is read only once, whereas calling
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)} for each entry of a compressed stream such as
+     * a <code>tar.gz</code> decompresses it from the beginning every time.
+     * <p>
+     * If the pass completes, the entries tree is recreated from the visited entries so that
+     * {@link #getArchiveEntryFile(String)} can be called afterwards without reading the archive again. Entry files
+     * should not be resolved from within the visitor, as this would trigger a separate pass to create the tree.
+     *
+     * @param visitor the visitor to pass the entries to
+     * @throws IOException if an error occurred while reading the archive or thrown by the visitor
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    public void visitEntries(EntryVisitor visitor) throws IOException {
+        // TODO: like createEntriesTree(), this method is not thread-safe
+        ArchiveEntryTree treeRoot = new ArchiveEntryTree();
+        boolean completed = readEntries(new EntryVisitor() {
+            @Override
+            public boolean wantsContents(ArchiveEntry entry) {
+                return !entry.isDirectory() && visitor.wantsContents(entry);
+            }
+
+            @Override
+            public boolean visit(ArchiveEntry entry, InputStream in) throws IOException {
+                treeRoot.addArchiveEntry(entry);
+                return visitor.visit(entry, in);
+            }
+        });
+        if (completed) {
+            archiveEntryFiles = new WeakHashMap<>();
+            this.entryTreeRoot = treeRoot;
+            declareEntriesTreeUpToDate();
+        }
+    }
+
+    /**
+     * Reads the entries of this archive in a single pass, see {@link #visitEntries(EntryVisitor)}. This
+     * implementation walks {@link #getEntryIterator()} and passes the iterator to
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}, which is efficient for archives whose
+     * iterator is positioned on the entry's data (tar, iso) or that can seek to it (zip). Formats that can only extract entries separately
+     * should override it.
+     *
+     * @param visitor the visitor to pass the entries to, in storage order
+     * @return <code>true</code> if all the entries have been visited, <code>false</code> if the visitor stopped
+     * @throws IOException if an error occurred while reading the archive or thrown by the visitor
+     */
+    protected boolean readEntries(EntryVisitor visitor) throws IOException {
+        ArchiveEntryIterator entries = getEntryIterator();
+        try {
+            ArchiveEntry entry;
+            while ((entry = entries.nextEntry()) != null) {
+                InputStream in = visitor.wantsContents(entry) ? getEntryInputStream(entry, entries) : null;
+                try {
+                    if (!visitor.visit(entry, in)) {
+                        return false;
+                    }
+                } finally {
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            }
+            return true;
+        } finally {
+            try {
+                entries.close();
+            } catch(IOException e) {
+                // Not much we can do about it
+            }
+        }
+    }
+
     /**
      * Checks if the entries tree exists and if this file hasn't been modified since the tree was last created.
      * If any of those 2 conditions isn't met, the entries tree is (re)created.
@@ -66,6 +66,10 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
     // 65536, no more gain (not sure why).
     protected final static int IO_BUFFER_SIZE = 65536;
 
+    /** Minimum length of the streams copied by {@link #copyStream(InputStream, boolean, long)} with a read-ahead
+     * thread, the handoff between threads doesn't pay off for smaller streams */
+    protected final static long PIPELINED_COPY_MIN_LENGTH = 1024 * 1024;
+
 
     /**
      * Used for method <code>getPushBackInputStream()</code>
@@ -380,6 +384,9 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
      * reasons, this buffer is provided by {@link BufferPool}. Thus, there is no need to surround the InputStream
      * with a {@link java.io.BufferedInputStream}.
      *
+     * <p>Streams of unknown length or of at least {@link #PIPELINED_COPY_MIN_LENGTH} bytes are read on another thread
+     * while this file is written, see {@link StreamUtils#copyStreamPipelined(InputStream, OutputStream, int, long)}.
+     *
      * <p>Copy progress can optionally be monitored by supplying a {@link com.mucommander.commons.io.CounterInputStream}.
      *
      * @param in the InputStream to read from
@@ -400,7 +407,11 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
         }
 
         try {
-            StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
+            if (length < 0 || length >= PIPELINED_COPY_MIN_LENGTH) {
+                StreamUtils.copyStreamPipelined(in, out, IO_BUFFER_SIZE, Long.MAX_VALUE);
+            } else {
+                StreamUtils.copyStream(in, out, IO_BUFFER_SIZE);
+            }
         } finally {
             // Close stream even if copyStream() threw an IOException
             try {
@@ -21,6 +21,7 @@ package com.mucommander.commons.file;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Supplier;
 
 import com.mucommander.commons.file.impl.avrdude.AvrdudeProtocolProvider;
 import org.slf4j.Logger;
@@ -111,46 +112,54 @@ public class FileFactory {
     private static Set<String> archiveExtensions;
 
 
+    /**
+     * Registers the network protocols. Providers are created the first time a file of their protocol is requested,
+     * some of them (HTTP in particular) take a long time to load.
+     */
     public static void registerProtocolNetworks() {
-        ProtocolProvider protocolProvider;
-
-        registerProtocol(FileProtocols.SMB, new com.mucommander.commons.file.impl.smb.SMBProtocolProvider());
-        registerProtocol(FileProtocols.HTTP, protocolProvider = new com.mucommander.commons.file.impl.http.HTTPProtocolProvider()); // !!! очень долго грузится
-        registerProtocol(FileProtocols.HTTPS, protocolProvider);
-        registerProtocol(FileProtocols.FTP, new com.mucommander.commons.file.impl.ftp.FTPProtocolProvider());
-        registerProtocol(FileProtocols.NFS, new com.mucommander.commons.file.impl.nfs.NFSProtocolProvider());
-        registerProtocol(FileProtocols.SFTP, new com.mucommander.commons.file.impl.sftp.SFTPProtocolProvider());
-        registerProtocol(FileProtocols.HDFS, new com.mucommander.commons.file.impl.hadoop.HDFSProtocolProvider());
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.smb.SMBProtocolProvider(), FileProtocols.SMB);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.http.HTTPProtocolProvider(), FileProtocols.HTTP, FileProtocols.HTTPS);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.ftp.FTPProtocolProvider(), FileProtocols.FTP);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.nfs.NFSProtocolProvider(), FileProtocols.NFS);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.sftp.SFTPProtocolProvider(), FileProtocols.SFTP);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.hadoop.HDFSProtocolProvider(), FileProtocols.HDFS);
         //registerProtocol(FileProtocols.S3, new com.mucommander.commons.file.impl.hadoop.S3ProtocolProvider());
-        registerProtocol(FileProtocols.S3, new com.mucommander.commons.file.impl.s3.S3ProtocolProvider());
-        registerProtocol(FileProtocols.WEBDAV, new com.mucommander.commons.file.impl.webdav.WebDAVProvider());
-        registerProtocol(FileProtocols.VSPHERE, new com.mucommander.commons.file.impl.vsphere.VSphereProtocolProvider());
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.s3.S3ProtocolProvider(), FileProtocols.S3);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.webdav.WebDAVProvider(), FileProtocols.WEBDAV);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.vsphere.VSphereProtocolProvider(), FileProtocols.VSPHERE);
     }
 
+    /**
+     * Registers the archive formats. The extensions given here must match the ones of the providers, which are
+     * only loaded when an archive of their format is opened.
+     */
     public static void registerProtocolArchives() {
         // Register built-in archive file formats, order for TarArchiveFile and GzipArchiveFile/Bzip2ArchiveFile is important:
         // TarArchiveFile must match 'tar.gz'/'tar.bz2' files before GzipArchiveFile/Bzip2ArchiveFile does.
-        registerArchiveFormat(new com.mucommander.commons.file.impl.zip.ZipFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.tar.TarFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.gzip.GzipFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.bzip2.Bzip2FormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.iso.IsoFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.ar.ArFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.lst.LstFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.rar.RarFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.sevenzip.SevenZipFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.rpm.RpmFormatProvider());
-
-        registerArchiveFormat(new com.mucommander.commons.file.impl.arj.ArjFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.cab.CabFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.cpio.CpioFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.deb.DebFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.lzh.LzhFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.lzma.LzmaFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.udf.UdfFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.wim.WimFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.xar.XarFormatProvider());
-        registerArchiveFormat(new com.mucommander.commons.file.impl.z.ZFormatProvider());
+        registerLazyArchiveFormat(new String[] {".zip", ".jar", ".war", ".wal", ".wmz", ".xpi", ".ear", ".sar", ".odt",
+                        ".ods", ".odp", ".odg", ".odf", ".egg", ".epub", ".cbz"},
+                () -> new com.mucommander.commons.file.impl.zip.ZipFormatProvider());
+        registerLazyArchiveFormat(new String[] {".tar", ".tar.gz", ".tgz", ".tar.bz2", ".tbz2", ".cbt"},
+                () -> new com.mucommander.commons.file.impl.tar.TarFormatProvider());
+        registerLazyArchiveFormat(new String[] {".gz"}, () -> new com.mucommander.commons.file.impl.gzip.GzipFormatProvider());
+        registerLazyArchiveFormat(new String[] {".bz2"}, () -> new com.mucommander.commons.file.impl.bzip2.Bzip2FormatProvider());
+        registerLazyArchiveFormat(new String[] {".iso", ".nrg"}, () -> new com.mucommander.commons.file.impl.iso.IsoFormatProvider());
+        registerLazyArchiveFormat(new String[] {".ar", ".a", ".deb", ".udeb"}, () -> new com.mucommander.commons.file.impl.ar.ArFormatProvider());
+        registerLazyArchiveFormat(new String[] {".lst"}, () -> new com.mucommander.commons.file.impl.lst.LstFormatProvider());
+        registerLazyArchiveFormat(new String[] {".rar", ".cbr"}, () -> new com.mucommander.commons.file.impl.rar.RarFormatProvider());
+        registerLazyArchiveFormat(new String[] {".7z", ".cb7"}, () -> new com.mucommander.commons.file.impl.sevenzip.SevenZipFormatProvider());
+        registerLazyArchiveFormat(new String[] {".rpm"}, () -> new com.mucommander.commons.file.impl.rpm.RpmFormatProvider());
+
+        registerLazyArchiveFormat(new String[] {".arj"}, () -> new com.mucommander.commons.file.impl.arj.ArjFormatProvider());
+        registerLazyArchiveFormat(new String[] {".cab"}, () -> new com.mucommander.commons.file.impl.cab.CabFormatProvider());
+        registerLazyArchiveFormat(new String[] {".cpio"}, () -> new com.mucommander.commons.file.impl.cpio.CpioFormatProvider());
+        registerLazyArchiveFormat(new String[] {".deb"}, () -> new com.mucommander.commons.file.impl.deb.DebFormatProvider());
+        registerLazyArchiveFormat(new String[] {".lzh", ".lha"}, () -> new com.mucommander.commons.file.impl.lzh.LzhFormatProvider());
+        registerLazyArchiveFormat(new String[] {".lzma"}, () -> new com.mucommander.commons.file.impl.lzma.LzmaFormatProvider());
+        registerLazyArchiveFormat(new String[] {".udf"}, () -> new com.mucommander.commons.file.impl.udf.UdfFormatProvider());
+        registerLazyArchiveFormat(new String[] {".wim"}, () -> new com.mucommander.commons.file.impl.wim.WimFormatProvider());
+        registerLazyArchiveFormat(new String[] {".xar"}, () -> new com.mucommander.commons.file.impl.xar.XarFormatProvider());
+        registerLazyArchiveFormat(new String[] {".z"}, () -> new com.mucommander.commons.file.impl.z.ZFormatProvider());
 
         /*SevenZipJBindings RPM support lacks RPM Metadata - only payload would be available - there are better java
          *  libs available for handling RPM */
@@ -161,15 +170,15 @@ public class FileFactory {
     public static void registerProtocolOthers() {
         if (JavaVersion.JAVA_1_6.isCurrentOrHigher()) {
             // Hadoop requires Java 1.6
-            registerProtocol(FileProtocols.HDFS, new com.mucommander.commons.file.impl.hadoop.HDFSProtocolProvider());
+            registerLazyProtocol(() -> new com.mucommander.commons.file.impl.hadoop.HDFSProtocolProvider(), FileProtocols.HDFS);
 //            registerProtocol(FileProtocols.S3, new com.mucommander.commons.file.impl.hadoop.S3ProtocolProvider());
         }
-        registerProtocol(FileProtocols.S3, new com.mucommander.commons.file.impl.s3.S3ProtocolProvider());
-        registerProtocol(FileProtocols.VSPHERE, new com.mucommander.commons.file.impl.vsphere.VSphereProtocolProvider());
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.s3.S3ProtocolProvider(), FileProtocols.S3);
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.vsphere.VSphereProtocolProvider(), FileProtocols.VSPHERE);
 
         // TODO !!! check that adb installed
-        registerProtocol(FileProtocols.ADB, new com.mucommander.commons.file.impl.adb.AdbProtocolProvider());
-        registerProtocol(FileProtocols.AVR, new AvrdudeProtocolProvider());
+        registerLazyProtocol(() -> new com.mucommander.commons.file.impl.adb.AdbProtocolProvider(), FileProtocols.ADB);
+        registerLazyProtocol(() -> new AvrdudeProtocolProvider(), FileProtocols.AVR);
     }
 
     static {
@@ -229,6 +238,20 @@ public class FileFactory {
         return protocolProviders.put(protocol, provider);
     }
 
+    /**
+     * Registers file protocols whose provider is only created the first time a file of one of these protocols is
+     * requested. The supplier should be a lambda creating the provider, so that the provider class isn't loaded before.
+     *
+     * @param supplier creates the provider, called at most once
+     * @param protocols identifiers of the protocols to register, all bound to the same provider
+     */
+    public static void registerLazyProtocol(Supplier<ProtocolProvider> supplier, String... protocols) {
+        ProtocolProvider provider = new LazyProtocolProvider(supplier);
+        for (String protocol : protocols) {
+            registerProtocol(protocol, provider);
+        }
+    }
+
     /**
      * Unregisters the provider associated with the specified protocol.
      *
@@ -259,7 +282,11 @@ public class FileFactory {
      * @return the protocol provider registered to the specified protocol identifier, or <code>null</code> if none.
      */
     public static ProtocolProvider getProtocolProvider(String protocol) {
-        return protocolProviders.get(protocol.toLowerCase());
+        ProtocolProvider provider = protocolProviders.get(protocol.toLowerCase());
+        if (provider instanceof LazyProtocolProvider) {
+            return ((LazyProtocolProvider)provider).getProvider();
+        }
+        return provider;
     }
 
     /**
@@ -269,7 +296,7 @@ public class FileFactory {
      * @return <code>true</code> if the given protocol has a registered {@link ProtocolProvider}.
      */
     public static boolean isRegisteredProtocol(String protocol) {
-        return getProtocolProvider(protocol)!=null;
+        return protocolProviders.containsKey(protocol.toLowerCase());
     }
 
     /**
@@ -295,6 +322,16 @@ public class FileFactory {
         updateArchiveFormatProviderArray();
     }
 
+    /**
+     * Registers an archive format whose provider is only created the first time an archive of this format is opened.
+     *
+     * @param extensions the extensions of the archive format, the same as the ones of the provider
+     * @param supplier creates the provider, called at most once
+     */
+    private static void registerLazyArchiveFormat(String[] extensions, Supplier<ArchiveFormatProvider> supplier) {
+        registerArchiveFormat(new LazyArchiveFormatProvider(extensions, supplier));
+    }
+
     /**
      * Removes a previously-registered <code>ArchiveFormatProvider</code>.
      * <p>
@@ -321,6 +358,8 @@ public class FileFactory {
     private static void updateArchiveFormatProviderArray() {
         archiveFormatProviders = new ArchiveFormatProvider[archiveFormatProvidersV.size()];
         archiveFormatProvidersV.toArray(archiveFormatProviders);
+        // The archive formats are registered in the background at startup, files may have been tested before
+        archiveExtensions = null;
     }
 
     /**
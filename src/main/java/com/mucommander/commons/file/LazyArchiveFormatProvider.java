@@ -0,0 +1,80 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import com.mucommander.commons.file.filter.FilenameFilter;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * An {@link ArchiveFormatProvider} that matches filenames by itself and creates the actual provider the first time
+ * an archive of its format is opened.
+ * <p>
+ * The extensions must be the same as the ones of the actual provider. The supplier is expected to be a lambda
+ * rather than a constructor reference, so that the provider class is only loaded when the supplier is invoked.
+ *
+ * @author Oleg Trifonov
+ */
+final class LazyArchiveFormatProvider implements ArchiveFormatProvider {
+
+    private final String[] extensions;
+    private final FilenameFilter filenameFilter;
+    private final Supplier<ArchiveFormatProvider> supplier;
+
+    private volatile ArchiveFormatProvider provider;
+
+
+    LazyArchiveFormatProvider(String[] extensions, Supplier<ArchiveFormatProvider> supplier) {
+        this.extensions = extensions;
+        this.filenameFilter = new ExtensionFilenameFilter(extensions);
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns the actual provider, creating it if needed.
+     *
+     * @return the actual provider
+     */
+    ArchiveFormatProvider getProvider() {
+        if (provider == null) {
+            synchronized (this) {
+                if (provider == null) {
+                    provider = supplier.get();
+                }
+            }
+        }
+        return provider;
+    }
+
+    @Override
+    public AbstractArchiveFile getFile(AbstractFile file) throws IOException {
+        return getProvider().getFile(file);
+    }
+
+    @Override
+    public FilenameFilter getFilenameFilter() {
+        return filenameFilter;
+    }
+
+    @Override
+    public String[] getFileExtensions() {
+        return extensions;
+    }
+}
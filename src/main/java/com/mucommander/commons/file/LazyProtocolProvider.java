@@ -0,0 +1,62 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * A {@link ProtocolProvider} that creates the actual provider the first time a file of its protocol is requested.
+ * <p>
+ * The supplier is expected to be a lambda rather than a constructor reference: the provider class (and the libraries
+ * it depends on) is then only loaded when the supplier is invoked.
+ *
+ * @author Oleg Trifonov
+ */
+final class LazyProtocolProvider implements ProtocolProvider {
+
+    private final Supplier<ProtocolProvider> supplier;
+
+    private volatile ProtocolProvider provider;
+
+
+    LazyProtocolProvider(Supplier<ProtocolProvider> supplier) {
+        this.supplier = supplier;
+    }
+
+    /**
+     * Returns the actual provider, creating it if needed.
+     *
+     * @return the actual provider
+     */
+    ProtocolProvider getProvider() {
+        if (provider == null) {
+            synchronized (this) {
+                if (provider == null) {
+                    provider = supplier.get();
+                }
+            }
+        }
+        return provider;
+    }
+
+    @Override
+    public AbstractFile getFile(FileURL url, Object... instantiationParams) throws IOException {
+        return getProvider().getFile(url, instantiationParams);
+    }
+}
@@ -27,8 +27,8 @@ public enum ArchiveFormat {
     BZ2("Bzip2", "bz2", false),
     TAR("Tar", "tar", true),
     TAR_GZ("Tar/Gzip", "tar.gz", true),
-    TAR_BZ2("Tar/Bzip2", "tar.bz2", true);
-//    ISO("ISO", "iso", true);
+    TAR_BZ2("Tar/Bzip2", "tar.bz2", true),
+    ISO("ISO", "iso", true);
 
     /**
      * The name of the given archive format, can be used for display in a GUI.
@@ -28,6 +28,7 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -58,6 +59,17 @@ public abstract class Archiver {
     protected ArchiveFormat format;
     /** Support output stream for archiving files */
     boolean supportStream;
+    /** Opens the contents of the entries of archivers that don't support streams */
+    EntrySource entrySource = AbstractFile::getInputStream;
+
+
+    /**
+     * Opens the contents of an entry, for archivers that read the files themselves when the archive is written
+     * by {@link Archiver#postProcess()} rather than being given their contents by {@link Archiver#createEntry}.
+     */
+    public interface EntrySource {
+        InputStream getInputStream(AbstractFile file) throws IOException;
+    }
 	
     /**
      * Creates a new Archiver.
@@ -110,6 +122,16 @@ public abstract class Archiver {
         return supportStream;
     }
 
+    /**
+     * Sets the way the contents of the entries are opened by an archiver that doesn't support streams, by default
+     * {@link AbstractFile#getInputStream()}. This allows the caller to track and throttle the files being read.
+     *
+     * @param entrySource opens the contents of the entries
+     */
+    public void setEntrySource(EntrySource entrySource) {
+        this.entrySource = entrySource;
+    }
+
     /**
      * Sets an optional comment in the archive, the {@link #supportsComment()} or
      * {@link #formatSupportsComment(ArchiveFormat)} must first be called to make sure
@@ -168,10 +190,6 @@ public abstract class Archiver {
      * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
      */
     public static Archiver getArchiver(AbstractFile file, ArchiveFormat format) throws IOException, UnsupportedFileOperationException {
-//        switch(format) {
-//            case ISO:
-//                return new ISOArchiver(file);
-//        }
         OutputStream out = null;
 
         if (file.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
@@ -228,8 +246,9 @@ public abstract class Archiver {
             case TAR_BZ2:
                 archiver = new TarArchiver(createBzip2OutputStream(out));
                 break;
-//            case ISO:
-//                throw new IllegalStateException("ISO archiving not supported by stream");
+            case ISO:
+                archiver = new ISOArchiver(out);
+                break;
 
             default:
                 return null;
@@ -313,6 +332,10 @@ public abstract class Archiver {
      * it has been used (Archiver takes care of this), only the {@link #close() close} method has to be called when
      * all entries have been created.
      *
+     * <p>Archivers that don't {@link #supportsStream() support streams} return <code>null</code> for regular files:
+     * <code>attributes</code> must then be the {@link AbstractFile} to archive, its contents are read when the archive
+     * is written by {@link #postProcess()}.
+     *
      * <p>If this Archiver uses a single entry format, the specified path and file won't be used at all.
      * Also in this case, this method must be invoked only once (single entry), it will throw an IOException
      * if invoked more than once.
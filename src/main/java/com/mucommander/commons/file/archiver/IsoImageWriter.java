@@ -0,0 +1,1053 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.archiver;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FilePermissions;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Writes an ISO9660 image with Joliet and Rock Ridge extensions, from files that can be read from any
+ * {@link AbstractFile} implementation.
+ *
+ * <p>The entries are first collected in a tree. When the image is written, a planning pass computes the names, the
+ * size of the directories and the location of every extent; the image is then written from the first sector to the
+ * last one, without ever seeking: volume descriptors, path tables, primary and Joliet directories, Rock Ridge
+ * continuation areas and finally the contents of the files, each one read ahead while the previous data is written.
+ *
+ * <p>Primary names follow the interchange level 1 (8.3, upper case), Joliet names are limited to 64 characters and
+ * Rock Ridge carries the original names, POSIX permissions and dates. Files larger than 4 GB are stored as several
+ * extents. Directories deeper than 8 levels are not relocated, as the readers of Rock Ridge and Joliet images don't
+ * need it.
+ *
+ * @author Oleg Trifonov
+ */
+class IsoImageWriter {
+
+    static final int SECTOR_SIZE = 2048;
+
+    /** Largest size of an extent, a multiple of the sector size that fits in 32 bits */
+    static final long MAX_EXTENT_SIZE = 0xFFFFF800L;
+
+    /** First sector after the system area */
+    private static final int FIRST_DESCRIPTOR_SECTOR = 16;
+
+    /** Primary volume descriptor, Joliet supplementary volume descriptor and terminator */
+    private static final int NB_DESCRIPTORS = 3;
+
+    /** Largest size of a directory record */
+    private static final int MAX_RECORD_SIZE = 255;
+
+    /** Size of a directory record without identifier and system use */
+    private static final int RECORD_HEADER_SIZE = 33;
+
+    private static final int MAX_JOLIET_NAME_LENGTH = 64;
+
+    private static final byte FLAG_DIRECTORY = 2;
+    private static final byte FLAG_MULTI_EXTENT = (byte)0x80;
+
+    private static final int DEFAULT_FILE_MODE = 0644;
+    private static final int DEFAULT_DIRECTORY_MODE = 0755;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+
+    private static final String RRIP_ID = "RRIP_1991A";
+    private static final String RRIP_DESCRIPTOR = "THE ROCK RIDGE INTERCHANGE PROTOCOL PROVIDES SUPPORT FOR POSIX FILE SYSTEM SEMANTICS";
+    private static final String RRIP_SOURCE = "PLEASE CONTACT DISC PUBLISHER FOR SPECIFICATION SOURCE.  SEE PUBLISHER IDENTIFIER IN PRIMARY VOLUME DESCRIPTOR FOR CONTACT INFORMATION.";
+
+    /** Buffer size used to copy the contents of the files */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+
+    /**
+     * A file or directory of the image.
+     */
+    static final class Node {
+        final String name;
+        final Node parent;
+        final boolean directory;
+        final AbstractFile source;
+        final long size;
+        final long date;
+        final int mode;
+        /** Children of a directory by name */
+        final Map<String, Node> children;
+
+        // Layout
+        private String isoName;
+        private String jolietName;
+        /** Children of a directory in the order of the primary and Joliet directories */
+        private List<Node> isoOrder;
+        private List<Node> jolietOrder;
+        /** Directory numbers in the path tables */
+        private int isoNumber;
+        private int jolietNumber;
+        /** First sector of the file contents, or of the primary and Joliet directories */
+        private int extent;
+        private int jolietExtent;
+        /** Size of the primary and Joliet directories */
+        private int isoDirSize;
+        private int jolietDirSize;
+        /** Rock Ridge entries of this node's record, and the ones moved to a continuation area if they don't fit */
+        private byte[] susp;
+        private byte[] continuation;
+        private int continuationSector;
+        private int continuationOffset;
+
+        Node(String name, Node parent, boolean directory, AbstractFile source, long size, long date, int mode) {
+            this.name = name;
+            this.parent = parent;
+            this.directory = directory;
+            this.source = source;
+            this.size = size;
+            this.date = date;
+            this.mode = mode;
+            this.children = directory ? new LinkedHashMap<>() : null;
+        }
+
+        /** Number of extents of a file */
+        int getNbExtents() {
+            return size == 0 ? 1 : (int)((size + MAX_EXTENT_SIZE - 1) / MAX_EXTENT_SIZE);
+        }
+
+        String getPath() {
+            return parent == null ? "" : parent.getPath() + name + (directory ? "/" : "");
+        }
+    }
+
+
+    private final String volumeId;
+    private final Node root;
+
+    private final List<Node> isoDirectories = new ArrayList<>();
+    private final List<Node> jolietDirectories = new ArrayList<>();
+    private final List<Node> files = new ArrayList<>();
+
+    /** Sizes of the path tables, in bytes */
+    private int isoPathTableSize;
+    private int jolietPathTableSize;
+    /** First sectors of the path tables: primary L, primary M, Joliet L, Joliet M */
+    private final int[] pathTableSectors = new int[4];
+    private int continuationStart;
+    private int nbContinuationSectors;
+    private int volumeSize;
+
+    /** Number of sectors written so far */
+    private long sectorsWritten;
+    private OutputStream out;
+
+    // Progress
+    private volatile String processingFile;
+    private volatile long totalWrittenBytes;
+    private volatile long currentFileLength;
+    private volatile CountingOutputStream currentFileOut;
+
+
+    /**
+     * Creates a new writer.
+     *
+     * @param volumeId the name of the volume
+     */
+    IsoImageWriter(String volumeId) {
+        this.volumeId = volumeId;
+        long now = System.currentTimeMillis();
+        this.root = new Node("", null, true, null, 0, now, S_IFDIR | DEFAULT_DIRECTORY_MODE);
+    }
+
+    /**
+     * Adds a directory or a file to the image. The parent directories that haven't been added are created.
+     *
+     * @param path the path of the entry in the image, with '/' separators
+     * @param source the file or directory to add, its contents are read when the image is written
+     * @return the entry
+     * @throws IOException if a file with the same path has already been added
+     */
+    Node add(String path, AbstractFile source) throws IOException {
+        String[] names = path.split("/");
+        Node parent = root;
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            if (name.isEmpty()) {
+                continue;
+            }
+            boolean last = i == names.length - 1;
+            Node node = parent.children.get(name);
+            if (node == null) {
+                if (last) {
+                    boolean directory = source.isDirectory();
+                    node = new Node(name, parent, directory, directory ? null : source,
+                            directory ? 0 : Math.max(0, source.getSize()), source.getLastModifiedDate(),
+                            getMode(source.getPermissions(), directory));
+                } else {
+                    node = new Node(name, parent, true, null, 0, parent.date, S_IFDIR | DEFAULT_DIRECTORY_MODE);
+                }
+                parent.children.put(name, node);
+            } else if (!node.directory) {
+                throw new IOException("Duplicate entry " + path);
+            }
+            parent = node;
+        }
+        return parent;
+    }
+
+    private static int getMode(FilePermissions permissions, boolean directory) {
+        int mode = permissions == null ? 0 : permissions.getIntValue() & 0777;
+        if (mode == 0) {
+            mode = directory ? DEFAULT_DIRECTORY_MODE : DEFAULT_FILE_MODE;
+        }
+        return (directory ? S_IFDIR : S_IFREG) | mode;
+    }
+
+
+    String getProcessingFile() {
+        return processingFile;
+    }
+
+    long getTotalWrittenBytes() {
+        return totalWrittenBytes;
+    }
+
+    long getWrittenBytesCurrentFile() {
+        CountingOutputStream currentOut = currentFileOut;
+        return currentOut == null ? 0 : currentOut.count;
+    }
+
+    long getCurrentFileLength() {
+        return currentFileLength;
+    }
+
+
+    /**
+     * Lays out the image and writes it to the given stream, which is not closed.
+     *
+     * @param out the stream to write the image to
+     * @param entrySource opens the contents of the files
+     * @throws IOException if a file could not be read or the image could not be written
+     */
+    void write(OutputStream out, Archiver.EntrySource entrySource) throws IOException {
+        plan();
+        this.out = out;
+        this.sectorsWritten = 0;
+
+        // System area
+        writePadded(new byte[FIRST_DESCRIPTOR_SECTOR * SECTOR_SIZE]);
+        writeSector(createVolumeDescriptor(false));
+        writeSector(createVolumeDescriptor(true));
+        writeSector(createTerminator());
+
+        checkPosition(pathTableSectors[0]);
+        writePadded(createPathTable(isoDirectories, false, false));
+        writePadded(createPathTable(isoDirectories, false, true));
+        writePadded(createPathTable(jolietDirectories, true, false));
+        writePadded(createPathTable(jolietDirectories, true, true));
+
+        for (Node dir : isoDirectories) {
+            checkPosition(dir.extent);
+            writePadded(createDirectory(dir, false));
+        }
+        for (Node dir : jolietDirectories) {
+            checkPosition(dir.jolietExtent);
+            writePadded(createDirectory(dir, true));
+        }
+        checkPosition(continuationStart);
+        writePadded(createContinuationAreas());
+
+        for (Node file : files) {
+            if (file.size > 0) {
+                checkPosition(file.extent);
+                writeFile(file, entrySource);
+            }
+        }
+        checkPosition(volumeSize);
+        out.flush();
+    }
+
+
+    ////////////
+    // Layout //
+    ////////////
+
+    /**
+     * Computes the names, sizes and locations of everything in the image.
+     */
+    private void plan() {
+        isoDirectories.clear();
+        jolietDirectories.clear();
+        files.clear();
+
+        // Directories are numbered breadth first, in the order of their identifiers, as required by the path tables
+        Deque<Node> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node dir = queue.poll();
+            isoDirectories.add(dir);
+            dir.isoNumber = isoDirectories.size();
+            assignNames(dir);
+            for (Node child : dir.isoOrder) {
+                if (child.directory) {
+                    queue.add(child);
+                } else {
+                    files.add(child);
+                }
+            }
+        }
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            Node dir = queue.poll();
+            jolietDirectories.add(dir);
+            dir.jolietNumber = jolietDirectories.size();
+            for (Node child : dir.jolietOrder) {
+                if (child.directory) {
+                    queue.add(child);
+                }
+            }
+        }
+
+        // Rock Ridge entries, and continuation areas packed in sectors
+        int continuationSize = 0;
+        for (Node dir : isoDirectories) {
+            prepareSusp(dir, dir == root);
+            for (Node child : dir.isoOrder) {
+                if (!child.directory) {
+                    prepareSusp(child, false);
+                }
+            }
+        }
+        nbContinuationSectors = 0;
+        for (Node node : getSuspNodes()) {
+            if (node.continuation != null) {
+                if (nbContinuationSectors == 0 || continuationSize + node.continuation.length > SECTOR_SIZE) {
+                    nbContinuationSectors++;
+                    continuationSize = 0;
+                }
+                node.continuationSector = nbContinuationSectors - 1;
+                node.continuationOffset = continuationSize;
+                continuationSize += node.continuation.length;
+            }
+        }
+
+        isoPathTableSize = getPathTableSize(isoDirectories, false);
+        jolietPathTableSize = getPathTableSize(jolietDirectories, true);
+        for (Node dir : isoDirectories) {
+            dir.isoDirSize = getDirectorySize(dir, false);
+            dir.jolietDirSize = getDirectorySize(dir, true);
+        }
+
+        // Locations
+        int sector = FIRST_DESCRIPTOR_SECTOR + NB_DESCRIPTORS;
+        pathTableSectors[0] = sector;
+        sector += getNbSectors(isoPathTableSize);
+        pathTableSectors[1] = sector;
+        sector += getNbSectors(isoPathTableSize);
+        pathTableSectors[2] = sector;
+        sector += getNbSectors(jolietPathTableSize);
+        pathTableSectors[3] = sector;
+        sector += getNbSectors(jolietPathTableSize);
+        for (Node dir : isoDirectories) {
+            dir.extent = sector;
+            sector += getNbSectors(dir.isoDirSize);
+        }
+        for (Node dir : jolietDirectories) {
+            dir.jolietExtent = sector;
+            sector += getNbSectors(dir.jolietDirSize);
+        }
+        continuationStart = sector;
+        sector += nbContinuationSectors;
+        long fileSector = sector;
+        for (Node file : files) {
+            if (file.size > 0) {
+                file.extent = (int)fileSector;
+                fileSector += getNbSectors(file.size);
+            }
+        }
+        if (fileSector > 0xFFFFFFFFL) {
+            throw new IllegalStateException("Image too large");
+        }
+        volumeSize = (int)fileSector;
+    }
+
+    private List<Node> getSuspNodes() {
+        List<Node> nodes = new ArrayList<>();
+        for (Node dir : isoDirectories) {
+            nodes.add(dir);
+            for (Node child : dir.isoOrder) {
+                if (!child.directory) {
+                    nodes.add(child);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static int getNbSectors(long size) {
+        return (int)((size + SECTOR_SIZE - 1) / SECTOR_SIZE);
+    }
+
+    /**
+     * Gives unique primary and Joliet names to the children of a directory, and sorts them accordingly.
+     */
+    private static void assignNames(Node dir) {
+        Set<String> isoNames = new HashSet<>();
+        Set<String> jolietNames = new HashSet<>();
+        for (Node child : dir.children.values()) {
+            child.isoName = getUniqueName(child.directory ? toIsoDirName(child.name) : toIsoFileName(child.name), isoNames, child.directory);
+            child.jolietName = getUniqueJolietName(child.name, jolietNames);
+        }
+        dir.isoOrder = new ArrayList<>(dir.children.values());
+        dir.isoOrder.sort(Comparator.comparing((Node node) -> node.isoName));
+        dir.jolietOrder = new ArrayList<>(dir.children.values());
+        dir.jolietOrder.sort(Comparator.comparing((Node node) -> node.jolietName));
+    }
+
+    /**
+     * Returns the given name restricted to d-characters (A-Z, 0-9 and _), at most <code>maxLength</code> long.
+     */
+    private static String toDCharacters(String name, int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < name.length() && sb.length() < maxLength; i++) {
+            char c = Character.toUpperCase(name.charAt(i));
+            sb.append((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    static String toIsoDirName(String name) {
+        String isoName = toDCharacters(name, 8);
+        return isoName.isEmpty() ? "_" : isoName;
+    }
+
+    static String toIsoFileName(String name) {
+        int dot = name.lastIndexOf('.');
+        String base = toDCharacters(dot > 0 ? name.substring(0, dot) : name, 8);
+        String ext = dot > 0 ? toDCharacters(name.substring(dot + 1), 3) : "";
+        return (base.isEmpty() ? "_" : base) + '.' + ext;
+    }
+
+    /**
+     * Makes an 8.3 name unique by replacing the end of its base name with a number.
+     */
+    private static String getUniqueName(String name, Set<String> names, boolean directory) {
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = directory ? name.length() : name.indexOf('.');
+        String base = name.substring(0, dot);
+        String ext = name.substring(dot);
+        for (int i = 1; ; i++) {
+            String suffix = Integer.toString(i);
+            String candidate = base.substring(0, Math.min(base.length(), 8 - suffix.length())) + suffix + ext;
+            if (names.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Returns a unique Joliet name: at most 64 characters, without the characters Joliet forbids.
+     */
+    static String getUniqueJolietName(String name, Set<String> names) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(c < 0x20 || c == '*' || c == '/' || c == ':' || c == ';' || c == '?' || c == '\\' ? '_' : c);
+        }
+        String cleaned = sb.toString();
+        String jolietName = truncateJolietName(cleaned, "");
+        for (int i = 1; !names.add(jolietName); i++) {
+            jolietName = truncateJolietName(cleaned, "(" + i + ")");
+        }
+        return jolietName;
+    }
+
+    /**
+     * Truncates a name to the Joliet length, keeping its extension, and inserts a suffix before the extension.
+     */
+    private static String truncateJolietName(String name, String suffix) {
+        int dot = name.lastIndexOf('.');
+        String ext = dot > 0 && name.length() - dot <= 16 ? name.substring(dot) : "";
+        String base = name.substring(0, name.length() - ext.length());
+        int maxBase = MAX_JOLIET_NAME_LENGTH - ext.length() - suffix.length();
+        if (base.length() > maxBase) {
+            base = base.substring(0, maxBase);
+            // Don't leave half of a surrogate pair
+            if (Character.isHighSurrogate(base.charAt(base.length() - 1))) {
+                base = base.substring(0, base.length() - 1);
+            }
+        }
+        return base + suffix + ext;
+    }
+
+    private static byte[] getIsoIdentifier(Node node) {
+        String id = node.directory ? node.isoName : node.isoName + ";1";
+        return id.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] getJolietIdentifier(Node node) {
+        return node.jolietName.getBytes(StandardCharsets.UTF_16BE);
+    }
+
+    private static int getRecordSize(int idLength, int suspLength) {
+        int size = RECORD_HEADER_SIZE + idLength + (idLength % 2 == 0 ? 1 : 0) + suspLength;
+        return size + (size % 2);
+    }
+
+    /**
+     * Computes the size of a directory: records don't cross sector boundaries.
+     */
+    private static int getDirectorySize(Node dir, boolean joliet) {
+        int size = 0;
+        size = addRecord(size, getRecordSize(1, joliet ? 0 : dir.susp.length + getCeLength(dir)));
+        size = addRecord(size, getRecordSize(1, joliet ? 0 : getParentSuspLength(dir)));
+        for (Node child : joliet ? dir.jolietOrder : dir.isoOrder) {
+            int idLength = joliet ? getJolietIdentifier(child).length : getIsoIdentifier(child).length;
+            int recordSize = getRecordSize(idLength, joliet ? 0 : child.susp.length + getCeLength(child));
+            int nbRecords = child.directory ? 1 : child.getNbExtents();
+            for (int i = 0; i < nbRecords; i++) {
+                size = addRecord(size, recordSize);
+            }
+        }
+        return getNbSectors(size) * SECTOR_SIZE;
+    }
+
+    private static int addRecord(int size, int recordSize) {
+        int remaining = SECTOR_SIZE - size % SECTOR_SIZE;
+        if (recordSize > remaining) {
+            size += remaining;
+        }
+        return size + recordSize;
+    }
+
+    private static int getPathTableSize(List<Node> dirs, boolean joliet) {
+        int size = 0;
+        for (Node dir : dirs) {
+            int idLength = dir == root(dir) ? 1 : (joliet ? getJolietIdentifier(dir).length : getIsoIdentifier(dir).length);
+            size += 8 + idLength + idLength % 2;
+        }
+        return size;
+    }
+
+    private static Node root(Node node) {
+        while (node.parent != null) {
+            node = node.parent;
+        }
+        return node;
+    }
+
+
+    ////////////////
+    // Rock Ridge //
+    ////////////////
+
+    /**
+     * Builds the Rock Ridge entries of the record of a node, moving the name (and the extension reference of the root)
+     * to a continuation area if the record would exceed its maximum size.
+     */
+    private static void prepareSusp(Node node, boolean isRoot) {
+        ByteBuilder fixed = new ByteBuilder();
+        if (isRoot) {
+            fixed.write(createSp());
+        }
+        fixed.write(createPx(node.mode, node.directory ? 2 : 1));
+        fixed.write(createTf(node.date));
+
+        ByteBuilder movable = new ByteBuilder();
+        if (isRoot) {
+            movable.write(createEr());
+        } else {
+            movable.write(createNm(node.name));
+        }
+
+        int idLength = isRoot ? 1 : getIsoIdentifier(node).length;
+        if (getRecordSize(idLength, fixed.size() + movable.size()) <= MAX_RECORD_SIZE) {
+            fixed.write(movable.toByteArray());
+            node.continuation = null;
+        } else {
+            node.continuation = movable.toByteArray();
+        }
+        node.susp = fixed.toByteArray();
+    }
+
+    private static int getCeLength(Node node) {
+        return node.continuation == null ? 0 : 28;
+    }
+
+    /** Rock Ridge entries of the '..' record of a directory */
+    private static int getParentSuspLength(Node dir) {
+        return createPx(dir.mode, 2).length + createTf(dir.date).length;
+    }
+
+    private static byte[] createSp() {
+        return new byte[] {'S', 'P', 7, 1, (byte)0xBE, (byte)0xEF, 0};
+    }
+
+    private static byte[] createPx(int mode, int nbLinks) {
+        ByteBuilder b = new ByteBuilder();
+        b.write(new byte[] {'P', 'X', 36, 1});
+        b.writeInt32Both(mode);
+        b.writeInt32Both(nbLinks);
+        b.writeInt32Both(0);
+        b.writeInt32Both(0);
+        return b.toByteArray();
+    }
+
+    private static byte[] createTf(long date) {
+        ByteBuilder b = new ByteBuilder();
+        // Modification time only
+        b.write(new byte[] {'T', 'F', 12, 1, 0x02});
+        b.write(createRecordDate(date));
+        return b.toByteArray();
+    }
+
+    /**
+     * Creates the NM entries of a name, split in several entries if the name is longer than what an entry can hold.
+     */
+    private static byte[] createNm(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuilder b = new ByteBuilder();
+        int maxPart = 250;
+        for (int offset = 0; offset < bytes.length || offset == 0; offset += maxPart) {
+            int length = Math.min(maxPart, bytes.length - offset);
+            boolean more = offset + length < bytes.length;
+            b.write(new byte[] {'N', 'M', (byte)(5 + length), 1, (byte)(more ? 1 : 0)});
+            b.write(bytes, offset, length);
+            if (!more) {
+                break;
+            }
+        }
+        return b.toByteArray();
+    }
+
+    private static byte[] createCe(int sector, int offset, int length) {
+        ByteBuilder b = new ByteBuilder();
+        b.write(new byte[] {'C', 'E', 28, 1});
+        b.writeInt32Both(sector);
+        b.writeInt32Both(offset);
+        b.writeInt32Both(length);
+        return b.toByteArray();
+    }
+
+    private static byte[] createEr() {
+        byte[] id = RRIP_ID.getBytes(StandardCharsets.US_ASCII);
+        byte[] descriptor = RRIP_DESCRIPTOR.getBytes(StandardCharsets.US_ASCII);
+        byte[] source = RRIP_SOURCE.getBytes(StandardCharsets.US_ASCII);
+        ByteBuilder b = new ByteBuilder();
+        b.write(new byte[] {'E', 'R', (byte)(8 + id.length + descriptor.length + source.length), 1,
+                (byte)id.length, (byte)descriptor.length, (byte)source.length, 1});
+        b.write(id);
+        b.write(descriptor);
+        b.write(source);
+        return b.toByteArray();
+    }
+
+    private byte[] getSusp(Node node) {
+        if (node.continuation == null) {
+            return node.susp;
+        }
+        ByteBuilder b = new ByteBuilder();
+        b.write(node.susp);
+        b.write(createCe(continuationStart + node.continuationSector, node.continuationOffset, node.continuation.length));
+        return b.toByteArray();
+    }
+
+    private byte[] createContinuationAreas() {
+        byte[] areas = new byte[nbContinuationSectors * SECTOR_SIZE];
+        for (Node node : getSuspNodes()) {
+            if (node.continuation != null) {
+                System.arraycopy(node.continuation, 0, areas,
+                        node.continuationSector * SECTOR_SIZE + node.continuationOffset, node.continuation.length);
+            }
+        }
+        return areas;
+    }
+
+
+    ///////////////////
+    // Serialization //
+    ///////////////////
+
+    private byte[] createVolumeDescriptor(boolean joliet) {
+        byte[] d = new byte[SECTOR_SIZE];
+        d[0] = (byte)(joliet ? 2 : 1);
+        putAscii(d, 1, "CD001", 5);
+        d[6] = 1;
+        putText(d, 8, "", 32, joliet);
+        putText(d, 40, volumeId, 32, joliet);
+        putInt32Both(d, 80, volumeSize);
+        if (joliet) {
+            // UCS-2 level 3
+            d[88] = '%';
+            d[89] = '/';
+            d[90] = 'E';
+        }
+        putInt16Both(d, 120, 1);
+        putInt16Both(d, 124, 1);
+        putInt16Both(d, 128, SECTOR_SIZE);
+        putInt32Both(d, 132, joliet ? jolietPathTableSize : isoPathTableSize);
+        putInt32LE(d, 140, pathTableSectors[joliet ? 2 : 0]);
+        putInt32BE(d, 148, pathTableSectors[joliet ? 3 : 1]);
+        byte[] rootRecord = createRecord(new byte[] {0}, joliet ? root.jolietExtent : root.extent,
+                joliet ? root.jolietDirSize : root.isoDirSize, root.date, FLAG_DIRECTORY, new byte[0]);
+        System.arraycopy(rootRecord, 0, d, 156, rootRecord.length);
+        putText(d, 190, "", 128, joliet);
+        putText(d, 318, "", 128, joliet);
+        putText(d, 446, "", 128, joliet);
+        putText(d, 574, "TROLCOMMANDER", 128, joliet);
+        putText(d, 702, "", 37, joliet);
+        putText(d, 739, "", 37, joliet);
+        putText(d, 776, "", 37, joliet);
+        long now = System.currentTimeMillis();
+        putVolumeDate(d, 813, now);
+        putVolumeDate(d, 830, now);
+        putVolumeDate(d, 847, 0);
+        putVolumeDate(d, 864, 0);
+        d[881] = 1;
+        return d;
+    }
+
+    private static byte[] createTerminator() {
+        byte[] d = new byte[SECTOR_SIZE];
+        d[0] = (byte)255;
+        putAscii(d, 1, "CD001", 5);
+        d[6] = 1;
+        return d;
+    }
+
+    private byte[] createPathTable(List<Node> dirs, boolean joliet, boolean bigEndian) {
+        ByteBuilder b = new ByteBuilder();
+        for (Node dir : dirs) {
+            byte[] id = dir == root ? new byte[] {0} : (joliet ? getJolietIdentifier(dir) : getIsoIdentifier(dir));
+            Node parent = dir == root ? root : dir.parent;
+            int extent = joliet ? dir.jolietExtent : dir.extent;
+            int parentNumber = joliet ? parent.jolietNumber : parent.isoNumber;
+            b.write(new byte[] {(byte)id.length, 0});
+            if (bigEndian) {
+                b.writeInt32BE(extent);
+                b.write(new byte[] {(byte)(parentNumber >> 8), (byte)parentNumber});
+            } else {
+                b.writeInt32LE(extent);
+                b.write(new byte[] {(byte)parentNumber, (byte)(parentNumber >> 8)});
+            }
+            b.write(id);
+            if (id.length % 2 != 0) {
+                b.write(new byte[] {0});
+            }
+        }
+        return b.toByteArray();
+    }
+
+    private byte[] createDirectory(Node dir, boolean joliet) {
+        ByteBuilder b = new ByteBuilder();
+        Node parent = dir == root ? root : dir.parent;
+        int extent = joliet ? dir.jolietExtent : dir.extent;
+        int size = joliet ? dir.jolietDirSize : dir.isoDirSize;
+        addRecord(b, createRecord(new byte[] {0}, extent, size, dir.date, FLAG_DIRECTORY,
+                joliet ? new byte[0] : getSusp(dir)));
+        byte[] parentSusp = new byte[0];
+        if (!joliet) {
+            ByteBuilder susp = new ByteBuilder();
+            susp.write(createPx(parent.mode, 2));
+            susp.write(createTf(parent.date));
+            parentSusp = susp.toByteArray();
+        }
+        addRecord(b, createRecord(new byte[] {1}, joliet ? parent.jolietExtent : parent.extent,
+                joliet ? parent.jolietDirSize : parent.isoDirSize, parent.date, FLAG_DIRECTORY, parentSusp));
+
+        for (Node child : joliet ? dir.jolietOrder : dir.isoOrder) {
+            byte[] id = joliet ? getJolietIdentifier(child) : getIsoIdentifier(child);
+            byte[] susp = joliet ? new byte[0] : getSusp(child);
+            if (child.directory) {
+                addRecord(b, createRecord(id, joliet ? child.jolietExtent : child.extent,
+                        joliet ? child.jolietDirSize : child.isoDirSize, child.date, FLAG_DIRECTORY, susp));
+            } else {
+                // Files larger than an extent are stored in consecutive extents, flagged on all records but the last
+                int nbExtents = child.getNbExtents();
+                for (int i = 0; i < nbExtents; i++) {
+                    long extentSize = i < nbExtents - 1 ? MAX_EXTENT_SIZE : child.size - i * MAX_EXTENT_SIZE;
+                    int extentSector = child.size == 0 ? 0 : child.extent + (int)(i * (MAX_EXTENT_SIZE / SECTOR_SIZE));
+                    addRecord(b, createRecord(id, extentSector, extentSize, child.date,
+                            i < nbExtents - 1 ? FLAG_MULTI_EXTENT : 0, susp));
+                }
+            }
+        }
+        byte[] data = b.toByteArray();
+        if (data.length > size) {
+            throw new IllegalStateException("Directory " + dir.getPath() + " exceeds its planned size");
+        }
+        return data;
+    }
+
+    /**
+     * Appends a record, skipping to the next sector if it doesn't fit in the current one.
+     */
+    private static void addRecord(ByteBuilder b, byte[] record) {
+        int remaining = SECTOR_SIZE - b.size() % SECTOR_SIZE;
+        if (record.length > remaining) {
+            b.write(new byte[remaining]);
+        }
+        b.write(record);
+    }
+
+    private static byte[] createRecord(byte[] id, int extent, long size, long date, byte flags, byte[] susp) {
+        byte[] r = new byte[getRecordSize(id.length, susp.length)];
+        r[0] = (byte)r.length;
+        putInt32Both(r, 2, extent);
+        putInt32Both(r, 10, (int)size);
+        System.arraycopy(createRecordDate(date), 0, r, 18, 7);
+        r[25] = flags;
+        putInt16Both(r, 28, 1);
+        r[32] = (byte)id.length;
+        System.arraycopy(id, 0, r, 33, id.length);
+        System.arraycopy(susp, 0, r, 33 + id.length + (id.length % 2 == 0 ? 1 : 0), susp.length);
+        return r;
+    }
+
+    /**
+     * Returns a date in the 7 bytes format of directory records.
+     */
+    private static byte[] createRecordDate(long date) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(date);
+        int offset = TimeZone.getDefault().getOffset(date) / (15 * 60 * 1000);
+        return new byte[] {
+                (byte)(c.get(Calendar.YEAR) - 1900), (byte)(c.get(Calendar.MONTH) + 1), (byte)c.get(Calendar.DAY_OF_MONTH),
+                (byte)c.get(Calendar.HOUR_OF_DAY), (byte)c.get(Calendar.MINUTE), (byte)c.get(Calendar.SECOND), (byte)offset
+        };
+    }
+
+    /**
+     * Puts a date in the 17 bytes format of volume descriptors, a zero date meaning 'not specified'.
+     */
+    private static void putVolumeDate(byte[] d, int pos, long date) {
+        if (date == 0) {
+            putAscii(d, pos, "0000000000000000", 16);
+            d[pos + 16] = 0;
+            return;
+        }
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(date);
+        String s = String.format("%04d%02d%02d%02d%02d%02d%02d", c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1,
+                c.get(Calendar.DAY_OF_MONTH), c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE),
+                c.get(Calendar.SECOND), c.get(Calendar.MILLISECOND) / 10);
+        putAscii(d, pos, s, 16);
+        d[pos + 16] = (byte)(TimeZone.getDefault().getOffset(date) / (15 * 60 * 1000));
+    }
+
+    private static void putAscii(byte[] d, int pos, String s, int length) {
+        for (int i = 0; i < length; i++) {
+            d[pos + i] = i < s.length() ? (byte)s.charAt(i) : (byte)' ';
+        }
+    }
+
+    /**
+     * Puts a text field padded with spaces, upper case d-characters or UCS-2 for Joliet.
+     */
+    private static void putText(byte[] d, int pos, String s, int length, boolean joliet) {
+        if (joliet) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_16BE);
+            for (int i = 0; i + 1 < length; i += 2) {
+                if (i + 1 < bytes.length) {
+                    d[pos + i] = bytes[i];
+                    d[pos + i + 1] = bytes[i + 1];
+                } else {
+                    d[pos + i] = 0;
+                    d[pos + i + 1] = ' ';
+                }
+            }
+            if (length % 2 != 0) {
+                d[pos + length - 1] = 0;
+            }
+        } else {
+            putAscii(d, pos, toDCharacters(s, length), length);
+        }
+    }
+
+    private static void putInt16Both(byte[] d, int pos, int value) {
+        d[pos] = (byte)value;
+        d[pos + 1] = (byte)(value >> 8);
+        d[pos + 2] = (byte)(value >> 8);
+        d[pos + 3] = (byte)value;
+    }
+
+    private static void putInt32LE(byte[] d, int pos, int value) {
+        d[pos] = (byte)value;
+        d[pos + 1] = (byte)(value >> 8);
+        d[pos + 2] = (byte)(value >> 16);
+        d[pos + 3] = (byte)(value >> 24);
+    }
+
+    private static void putInt32BE(byte[] d, int pos, int value) {
+        d[pos] = (byte)(value >> 24);
+        d[pos + 1] = (byte)(value >> 16);
+        d[pos + 2] = (byte)(value >> 8);
+        d[pos + 3] = (byte)value;
+    }
+
+    private static void putInt32Both(byte[] d, int pos, int value) {
+        putInt32LE(d, pos, value);
+        putInt32BE(d, pos + 4, value);
+    }
+
+
+    /////////////
+    // Writing //
+    /////////////
+
+    private void checkPosition(long sector) throws IOException {
+        if (sectorsWritten != sector) {
+            throw new IOException("Image layout error: at sector " + sectorsWritten + " instead of " + sector);
+        }
+    }
+
+    private void writeSector(byte[] sector) throws IOException {
+        out.write(sector);
+        sectorsWritten++;
+    }
+
+    private void writePadded(byte[] data) throws IOException {
+        out.write(data);
+        int padding = getNbSectors(data.length) * SECTOR_SIZE - data.length;
+        writeZeros(padding);
+        sectorsWritten += getNbSectors(data.length);
+    }
+
+    private void writeZeros(long length) throws IOException {
+        byte[] zeros = new byte[SECTOR_SIZE];
+        while (length > 0) {
+            int n = (int)Math.min(length, zeros.length);
+            out.write(zeros, 0, n);
+            length -= n;
+        }
+    }
+
+    /**
+     * Copies the contents of a file, reading ahead while writing. A file that has grown since it was added is truncated,
+     * so that the layout stays valid. A file that has shrunk, or couldn't be read entirely, fails the image rather than
+     * being silently padded.
+     */
+    private void writeFile(Node file, Archiver.EntrySource entrySource) throws IOException {
+        processingFile = file.name;
+        currentFileLength = file.size;
+        CountingOutputStream fileOut = new CountingOutputStream(out);
+        currentFileOut = fileOut;
+        long copied;
+        try (InputStream in = entrySource.getInputStream(file.source)) {
+            copied = StreamUtils.copyStreamPipelined(in, fileOut, COPY_BUFFER_SIZE, file.size);
+        } catch (FileTransferException e) {
+            throw new IOException("Could not copy " + file.getPath(), e);
+        }
+        if (copied < file.size) {
+            throw new IOException("Could not copy " + file.getPath() + ": " + copied + " bytes read out of " + file.size);
+        }
+        long nbSectors = getNbSectors(file.size);
+        writeZeros(nbSectors * SECTOR_SIZE - file.size);
+        sectorsWritten += nbSectors;
+        totalWrittenBytes += file.size;
+    }
+
+
+    /**
+     * Counts the bytes written to the underlying stream.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private volatile long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * A growable byte array, with the both-endian helpers of ISO9660.
+     */
+    private static final class ByteBuilder {
+        private byte[] data = new byte[256];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void write(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            if (size + length > data.length) {
+                byte[] newData = new byte[Math.max(data.length * 2, size + length)];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        void writeInt32LE(int value) {
+            byte[] b = new byte[4];
+            putInt32LE(b, 0, value);
+            write(b);
+        }
+
+        void writeInt32BE(int value) {
+            byte[] b = new byte[4];
+            putInt32BE(b, 0, value);
+            write(b);
+        }
+
+        void writeInt32Both(int value) {
+            byte[] b = new byte[8];
+            putInt32Both(b, 0, value);
+            write(b);
+        }
+
+        byte[] toByteArray() {
+            byte[] result = new byte[size];
+            System.arraycopy(data, 0, result, 0, size);
+            return result;
+        }
+    }
+}
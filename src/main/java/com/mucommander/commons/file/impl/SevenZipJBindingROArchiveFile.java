@@ -9,12 +9,22 @@ import net.sf.sevenzipjbinding.*;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
-   
+
+    /** Number of chunks the extraction thread of {@link #readEntries(EntryVisitor)} can be ahead of the reader */
+    private static final int EXTRACTION_QUEUE_SIZE = 16;
+
+    /** Queue markers of {@link SequentialExtraction} */
+    private static final Object ENTRY_END = new Object();
+    private static final Object END = new Object();
+
     protected IInArchive inArchive;
     private ArchiveFormat sevenZipJBindingFormat;
     private final SevenZipArchiveFormatDetector formatDetector;
@@ -58,6 +68,10 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException {
+        return new WrapperArchiveEntryIterator(readArchiveEntries().iterator());
+    }
+
+    private List<ArchiveEntry> readArchiveEntries() throws IOException {
         try {
             final IInArchive sevenZipFile = openInArchive();
             int nbEntries = sevenZipFile.getNumberOfItems();
@@ -65,7 +79,7 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
             for (int i = 0; i < nbEntries; i++) {
                 entries.add(createArchiveEntry(i));
             }
-            return new WrapperArchiveEntryIterator(entries.iterator());
+            return entries;
         } catch (SevenZipException e) {
             throw new IOException(e);
         } finally {
@@ -113,6 +127,43 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         return cbb.getInputStream();
     }
 
+    /**
+     * Extracts all the wanted entries with a single call to the library instead of one per entry, so that solid
+     * blocks are decompressed once.
+     */
+    @Override
+    protected boolean readEntries(EntryVisitor visitor) throws IOException {
+        List<ArchiveEntry> entries = readArchiveEntries();
+        boolean[] wanted = new boolean[entries.size()];
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < wanted.length; i++) {
+            if (visitor.wantsContents(entries.get(i))) {
+                wanted[i] = true;
+                indices.add(i);
+            }
+        }
+        SequentialExtraction extraction = indices.isEmpty() ? null : new SequentialExtraction(indices);
+        try {
+            for (int i = 0; i < wanted.length; i++) {
+                InputStream in = wanted[i] ? extraction.nextEntry(i) : null;
+                try {
+                    if (!visitor.visit(entries.get(i), in)) {
+                        return false;
+                    }
+                } finally {
+                    if (in != null) {
+                        in.close();
+                    }
+                }
+            }
+            return true;
+        } finally {
+            if (extraction != null) {
+                extraction.stop();
+            }
+        }
+    }
+
     /**
      * Creates and return an {@link ArchiveEntry()} whose attributes are fetched from the given {@link com.mucommander.commons.file.impl.sevenzip.provider.SevenZip.Archive.SevenZipEntry}
      *
@@ -136,4 +187,208 @@ public class SevenZipJBindingROArchiveFile extends AbstractROArchiveFile {
         return result;
     }
 
+
+    /**
+     * Extracts a list of entries on a separate thread and hands their contents over in index order, as a sequence of
+     * items in a bounded queue: the index of an entry, its data chunks, then {@link #ENTRY_END}. The queue ends with
+     * {@link #END}, preceded by the exception that stopped the extraction, if any.
+     */
+    private class SequentialExtraction implements IArchiveExtractCallback {
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(EXTRACTION_QUEUE_SIZE);
+        private volatile boolean aborted;
+        /** Accessed by the reader only: true once {@link #END} has been taken from the queue */
+        private boolean ended;
+        /** Accessed by the extraction thread only */
+        private boolean extracting;
+
+        SequentialExtraction(List<Integer> indices) {
+            final int[] in = new int[indices.size()];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = indices.get(i);
+            }
+            Thread thread = new Thread(() -> extract(in), "7-Zip extraction");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void extract(int[] indices) {
+            synchronized (SevenZipJBindingROArchiveFile.this) {
+                try {
+                    openInArchive().extract(indices, false, this);
+                } catch (IOException e) {
+                    if (!aborted) {
+                        putQuietly(e);
+                    }
+                } finally {
+                    if (inArchive != null) {
+                        try {
+                            inArchive.close();
+                        } catch (SevenZipException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                    inArchive = null;
+                    putQuietly(END);
+                }
+            }
+        }
+
+        private void putQuietly(Object item) {
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void putOrAbort(Object item) throws SevenZipException {
+            if (aborted) {
+                throw new SevenZipException("Extraction aborted");
+            }
+            try {
+                queue.put(item);
+            } catch (InterruptedException e) {
+                throw new SevenZipException(e);
+            }
+        }
+
+        /**
+         * Returns the contents of the entry with the given index, which must be the next one of the extracted
+         * entries. The stream must be closed before the next entry is requested.
+         */
+        InputStream nextEntry(int index) throws IOException {
+            Object item = take();
+            if (item instanceof Integer && (Integer)item == index) {
+                return new EntryInputStream();
+            }
+            throw item instanceof IOException ? (IOException)item : new IOException("Entry " + index + " was not extracted");
+        }
+
+        /**
+         * Aborts the extraction if it hasn't completed, and waits for the extraction thread to release the archive.
+         */
+        void stop() {
+            aborted = true;
+            boolean interrupted = false;
+            while (!ended) {
+                try {
+                    ended = queue.take() == END;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private Object take() throws IOException {
+            if (ended) {
+                throw new IOException("Extraction ended");
+            }
+            try {
+                Object item = queue.take();
+                ended = item == END;
+                return item;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        @Override
+        public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+            extracting = extractAskMode == ExtractAskMode.EXTRACT;
+            if (!extracting) {
+                return null;
+            }
+            putOrAbort(index);
+            return data -> {
+                // The library may reuse the array
+                putOrAbort(data.clone());
+                return data.length;
+            };
+        }
+
+        @Override
+        public void prepareOperation(ExtractAskMode extractAskMode) {
+        }
+
+        @Override
+        public void setOperationResult(ExtractOperationResult extractOperationResult) throws SevenZipException {
+            if (!extracting) {
+                return;
+            }
+            extracting = false;
+            if (extractOperationResult != ExtractOperationResult.OK) {
+                putOrAbort(new IOException("Extraction error: " + extractOperationResult));
+            }
+            putOrAbort(ENTRY_END);
+        }
+
+        @Override
+        public void setTotal(long total) {
+        }
+
+        @Override
+        public void setCompleted(long completeValue) {
+        }
+
+
+        /**
+         * Reads the chunks of the current entry from the queue.
+         */
+        private class EntryInputStream extends InputStream {
+            private byte[] chunk;
+            private int pos;
+            private boolean eof;
+
+            private boolean fill() throws IOException {
+                while (!eof && (chunk == null || pos == chunk.length)) {
+                    Object item = take();
+                    if (item == ENTRY_END || item == END) {
+                        eof = true;
+                        if (item == END) {
+                            throw new IOException("Unexpected end of extraction");
+                        }
+                    } else if (item instanceof IOException) {
+                        throw (IOException)item;
+                    } else {
+                        chunk = (byte[])item;
+                        pos = 0;
+                    }
+                }
+                return !eof;
+            }
+
+            @Override
+            public int read() throws IOException {
+                return fill() ? chunk[pos++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                int n = Math.min(len, chunk.length - pos);
+                System.arraycopy(chunk, pos, b, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                // Skip the rest of the entry, the extraction can't seek
+                while (!eof) {
+                    Object item = take();
+                    eof = item == ENTRY_END || item == END;
+                }
+            }
+        }
+    }
+
 }
@@ -77,10 +77,6 @@ public class AdbFile extends ProtocolFile {
 				}
 			}
 			closeConnection();
-		} else {
-			if (remoteFile.isDirectory()) {
-				rebuildChildrenList(url);
-			}
 		}
 		if (rootFolder == null) {
 			rootFolder = "/";
@@ -122,6 +118,16 @@ public class AdbFile extends ProtocolFile {
 		closeConnection();
 	}
 
+	/**
+	 * Returns the children of this folder, listing them from the device with a single LIST request the first time.
+	 */
+	private List<RemoteFile> getChildren() throws IOException {
+		if (childs == null && isDirectory()) {
+			rebuildChildrenList(getURL());
+		}
+		return childs;
+	}
+
 	JadbDevice getDevice(FileURL url) throws IOException {
 		closeConnection();
 		jadbConnection = new JadbConnection();
@@ -198,11 +204,17 @@ public class AdbFile extends ProtocolFile {
 	@Override
 	public boolean exists() {
 		AdbFile adbParent = (AdbFile) getParent();
-		if (adbParent == null || adbParent.childs == null) {
+		List<RemoteFile> siblings;
+		try {
+			siblings = adbParent == null ? null : adbParent.getChildren();
+		} catch (IOException e) {
+			return false;
+		}
+		if (siblings == null) {
 			String path = getURL().getPath();
 			return "/".equals(path);
 		}
-		for (RemoteFile rf : adbParent.childs) {
+		for (RemoteFile rf : siblings) {
 			if (getName().equals(rf.getPath())) {
 				return true;
 			}
@@ -212,7 +224,7 @@ public class AdbFile extends ProtocolFile {
 
 	@Override
 	public FilePermissions getPermissions() {
-		return childs == null ? FilePermissions.DEFAULT_FILE_PERMISSIONS : FilePermissions.DEFAULT_DIRECTORY_PERMISSIONS;
+		return isDirectory() ? FilePermissions.DEFAULT_DIRECTORY_PERMISSIONS : FilePermissions.DEFAULT_FILE_PERMISSIONS;
 		// TODO !!!
 	}
 
@@ -277,12 +289,12 @@ public class AdbFile extends ProtocolFile {
 			rebuildChildrenList(lastModifiedPath);
 			lastModifiedPath = null;
 		}
-		if (childs == null) {
+		List<RemoteFile> children = getChildren();
+		if (children == null) {
 			return null;
 		}
-		AbstractFile[] result = new AbstractFile[childs.size() - 1];  // skip ".."
-		int index = 0;
-		for (RemoteFile rf : childs) {
+		List<AbstractFile> result = new ArrayList<>(children.size());
+		for (RemoteFile rf : children) {
 			if ("..".equals(rf.getPath())) {
 				continue;
 			}
@@ -290,9 +302,9 @@ public class AdbFile extends ProtocolFile {
 			FileURL url = FileURL.getFileURL(getURL() + rootFolder + rf.getPath());
 			AdbFile adbFile = new AdbFile(url, rf);
 			adbFile.parent = this;
-			result[index++] = adbFile;
+			result.add(adbFile);
 		}
-		return result;
+		return result.toArray(new AbstractFile[0]);
 	}
 
 	@Override
@@ -430,24 +442,29 @@ public class AdbFile extends ProtocolFile {
 			closeConnection();
 			throw new IOException("file not found: " + getURL());
 		}
-		try {
-			device.pull(new RemoteFile(getURL().getPath()), destFile.getOutputStream());
+		try (OutputStream out = destFile.getOutputStream()) {
+			device.pull(new RemoteFile(getURL().getPath()), out);
 		} catch (JadbException e) {
 			throw new IOException(e);
 		}
 		closeConnection();
 	}
 
-	public void pullFrom(AbstractFile sourceFile) throws IOException {
+	/**
+	 * Writes the given stream to this file, the data is sent to the device as it is read.
+	 *
+	 * @param in the content of the file
+	 * @param lastModified the date of the file
+	 */
+	public void pullFrom(InputStream in, long lastModified) throws IOException {
 		JadbDevice device = getDevice(getURL());
 		if (device == null) {
 			closeConnection();
 			throw new IOException("file not found: " + getURL());
 		}
-		long lastModified = sourceFile.getLastModifiedDate();
 		int mode = 0664;
 		try {
-			device.push(sourceFile.getInputStream(), lastModified, mode, new RemoteFile(getURL().getPath()));
+			device.push(in, lastModified, mode, new RemoteFile(getURL().getPath()));
 		} catch (JadbException e) {
 			closeConnection();
 			e.printStackTrace();
@@ -21,73 +21,32 @@ import se.vidstige.jadb.JadbDevice;
 import se.vidstige.jadb.JadbException;
 import se.vidstige.jadb.RemoteFile;
 
-import java.io.*;
-import java.util.Random;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
+ * Reads a file from the device as it is received: the data chunks of the sync RECV command are passed to the reader
+ * as they arrive, nothing is buffered on disk or in memory. Closing the stream before the end closes the connection.
+ *
  * @author Oleg Trifonov
  * Created on 29/12/15.
  */
-public class AdbInputStream extends InputStream {
-
-    private static final long MAX_CACHED_SIZE = 10*1024*1024;
-
-    private final ByteArrayOutputStream bos;
-    private InputStream is;
-    private final File tempFile;
+public class AdbInputStream extends FilterInputStream {
 
     AdbInputStream(AdbFile file) throws IOException {
-        this.bos = file.getSize() <= MAX_CACHED_SIZE ? new ByteArrayOutputStream() : null;
-        this.tempFile = bos == null ? File.createTempFile(file.getName(), ""+System.currentTimeMillis() + "-" + new Random().nextInt(0xffff)) : null;
+        super(open(file));
+    }
 
+    private static InputStream open(AdbFile file) throws IOException {
         JadbDevice device = file.getDevice(file.getURL());
         if (device == null) {
             throw new IOException("file not found: " + file.getURL());
         }
-        if (bos != null) {
-            try {
-                device.pull(new RemoteFile(file.getURL().getPath()), bos);
-            } catch (JadbException e) {
-                close();
-                throw new IOException(e);
-            }
-        } else {
-            try {
-                device.pull(new RemoteFile(file.getURL().getPath()), new FileOutputStream(tempFile));
-            } catch (JadbException e) {
-                close();
-                throw new IOException(e);
-            }
-        }
-    }
-
-    @Override
-    public int read() throws IOException {
-        if (is == null) {
-            is = bos != null ? new ByteArrayInputStream(bos.toByteArray()) : new FileInputStream(tempFile);
-        }
-        return is.read();
-    }
-
-    @Override
-    public synchronized void reset() throws IOException {
-        super.reset();
-        if (is != null) {
-            is.reset();
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        super.close();
-        if (is != null) {
-            is.close();
-        }
-        if (bos != null) {
-            bos.close();
-        }
-        if (tempFile != null) {
-            tempFile.delete();
+        try {
+            return device.pull(new RemoteFile(file.getURL().getPath()));
+        } catch (JadbException e) {
+            throw new IOException(e);
         }
     }
 
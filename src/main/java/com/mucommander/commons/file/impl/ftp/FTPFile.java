@@ -17,10 +17,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.lang.ref.WeakReference;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.*;
 
 
 /**
@@ -52,6 +53,11 @@ import java.util.Date;
  * These properties are only used when the FTP connection is created. Setting them after the connection is created
  * will not have any immediate effect, their values will only be used if the connection needs to be re-established.
  *
+ * <p>Directory listings are retrieved with the <code>MLSD</code> command when the server advertises it (exact sizes,
+ * UTC dates and file types), and with <code>LIST</code> otherwise. Listings are kept for a few seconds in a cache
+ * attached to the connection so that navigating back and forth does not re-list the same directories; the cache
+ * is invalidated by any change made through this class.
+ *
  * <p>Access to FTP files is provided by the <code>Commons-net</code> library distributed under the Apache Software License.
  * The {@link #getUnderlyingFileObject()} method allows to retrieve a <code>org.apache.commons.net.ftp.FTPFile</code>
  * instance corresponding to this FTPFile.
@@ -64,6 +70,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     private org.apache.commons.net.ftp.FTPFile file;
 
+    /** Symlink target attributes retrieved along with the parent directory's listing, null if not known */
+    private org.apache.commons.net.ftp.FTPFile linkTarget;
+
     private String absPath;
 
     private AbstractFile parent;
@@ -102,6 +111,15 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     /** Date format used by the SITE UTIME command */
     private final static SimpleDateFormat SITE_UTIME_DATE_FORMAT = new SimpleDateFormat("yyyyMMddHHmm");
 
+    /** Amount of time (in milliseconds) a directory listing is served from the cache before being fetched again */
+    private final static long LISTING_CACHE_TTL = 10000;
+
+    /** Maximum number of directory listings cached by a connection */
+    private final static int LISTING_CACHE_SIZE = 32;
+
+    /** Live FTP connection handlers, used to invalidate their listing caches when a file is modified */
+    private final static List<WeakReference<FTPConnectionHandler>> connectionHandlers = new ArrayList<>();
+
 
     FTPFile(FileURL fileURL) throws IOException {
         this(fileURL, null);
@@ -131,47 +149,94 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
 
     private org.apache.commons.net.ftp.FTPFile getFTPFile(FileURL fileURL) throws IOException {
-        // Todo: this method is very ineffective as it lists the parent directory to retrieve the information about the
-        // requested file to workaround the fact that FTPClient#listFiles follows directories.
-        // => Use the MLST command if supported by the server (use FEAT command to find out if it is supported).
-        // See http://tools.ietf.org/html/draft-ietf-ftpext-mlst-16
         FileURL parentURL = fileURL.getParent();
         LOGGER.trace("fileURL={} parent={}", fileURL, parentURL);
 
         // Parent is null, create '/' file
         if (parentURL == null) {
             return createFTPFile("/", true);
-        } else {
-            FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
-            org.apache.commons.net.ftp.FTPFile files[];
-            try {
-                // Makes sure the connection is started, if not starts it
-                connHandler.checkConnection();
+        }
 
+        FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
+        org.apache.commons.net.ftp.FTPFile files[];
+        try {
+            // Makes sure the connection is started, if not starts it
+            connHandler.checkConnection();
+
+            // Use the parent folder's listing if it has just been retrieved, otherwise ask for this file only if
+            // the server supports MLST. Listing the parent is the fallback as FTPClient#listFiles follows directories.
+            CachedListing cached = connHandler.getCachedListing(parentURL.getPath());
+            if (cached != null) {
+                files = cached.files;
+            } else if (connHandler.mlstSupported) {
+                return statFile(connHandler, fileURL.getPath());
+            } else {
                 // List files contained by this file's parent in order to retrieve the FTPFile instance corresponding
                 // to this file
-                files = listFiles(connHandler, parentURL.getPath());
-            } finally {
-                // Release the lock on the ConnectionHandler
-                connHandler.releaseLock();
+                files = listFiles(connHandler, parentURL.getPath()).files;
             }
+        } finally {
+            // Release the lock on the ConnectionHandler
+            connHandler.releaseLock();
+        }
 
-            // File doesn't exist
-            if (files == null || files.length == 0) {
-                return null;
+        // File doesn't exist
+        if (files == null || files.length == 0) {
+            return null;
+        }
+
+        // Find the file in the parent folder's contents
+        String wantedName = fileURL.getFilename();
+        for (org.apache.commons.net.ftp.FTPFile f : files) {
+            if (f != null && f.getName().equalsIgnoreCase(wantedName)) {
+                return f;
             }
+        }
 
-            // Find the file in the parent folder's contents
-            String wantedName = fileURL.getFilename();
-            for (org.apache.commons.net.ftp.FTPFile f : files) {
-                if (f.getName().equalsIgnoreCase(wantedName)) {
-                    return f;
-                }
+        // File doesn't exists
+        return null;
+    }
+
+
+    /**
+     * Retrieves the attributes of a single file using the MLST command. If the server turns out not to support the
+     * command, it is marked as such in the connection handler and the parent directory is listed instead.
+     *
+     * @param connHandler the connection handler to use for communicating with the server
+     * @param absPath absolute path to the file
+     * @return the file's attributes, <code>null</code> if the file doesn't exist
+     * @throws IOException if an error occurred while communicating with the server
+     */
+    private static org.apache.commons.net.ftp.FTPFile statFile(FTPConnectionHandler connHandler, String absPath) throws IOException {
+        try {
+            org.apache.commons.net.ftp.FTPFile f = connHandler.ftpClient.mlistFile(absPath);
+            if (f != null) {
+                return f;
             }
 
-            // File doesn't exists
-            return null;
+            int replyCode = connHandler.ftpClient.getReplyCode();
+            if (!isUnsupportedCommandReply(replyCode)) {
+                // File doesn't exist
+                return null;
+            }
+
+            LOGGER.info("marking MLST command as unsupported");
+            connHandler.mlstSupported = false;
+        } catch(IOException e) {
+            // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+            connHandler.checkSocketException(e);
+            throw e;
         }
+
+        int slashPos = absPath.lastIndexOf('/');
+        String parentPath = slashPos <= 0 ? "/" : absPath.substring(0, slashPos);
+        String wantedName = absPath.substring(slashPos + 1);
+        for (org.apache.commons.net.ftp.FTPFile f : listFiles(connHandler, parentPath).files) {
+            if (f != null && f.getName().equalsIgnoreCase(wantedName)) {
+                return f;
+            }
+        }
+        return null;
     }
 
 
@@ -186,18 +251,27 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
 
     /**
-     * Lists and returns the contents of the given path on the server using the given connection handler.
-     * The directory contents is listed by issuing a CWD followed by a LIST so after this method is called, the current
-     * working directory is left to the specified path.
+     * Lists and returns the contents of the given path on the server using the given connection handler, serving it
+     * from the connection's listing cache if it has been retrieved less than {@link #LISTING_CACHE_TTL} ms ago.
+     * The directory contents is listed by issuing a CWD followed by a MLSD (if supported by the server) or LIST, so
+     * after this method is called, the current working directory may be left to the specified path.
+     *
+     * <p>If the listing contains symbolic links and is not an MLSD one, a single dereferencing <code>LIST -L</code>
+     * is issued to retrieve the symlinks' target attributes for the whole directory.
      *
      * @param connHandler the connection handler to use for communicating with the server
      * @param absPath absolute path to the directory to list
-     * @return the directory's contents. The returned array may be empty but never null. The array may contain null
-     * individual entries as FTPClient#listFiles's Javadoc mentions.
+     * @return the directory's contents. The returned listing's file array may be empty but never null. The array may
+     * contain null individual entries as FTPClient#listFiles's Javadoc mentions.
      * @throws IOException if an error occurred while communicating with the server
      * @throws AuthException if the user is not allowed to access this directory
      */
-    private static org.apache.commons.net.ftp.FTPFile[] listFiles(FTPConnectionHandler connHandler, String absPath) throws IOException {
+    private static CachedListing listFiles(FTPConnectionHandler connHandler, String absPath) throws IOException {
+        CachedListing cached = connHandler.getCachedListing(absPath);
+        if (cached != null) {
+            return cached;
+        }
+
         org.apache.commons.net.ftp.FTPFile files[];
         try {
             // Important: the folder is listed by changing the current working directory using the CWD command and then
@@ -219,15 +293,32 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // http://issues.apache.org/jira/browse/NET-10
 
             connHandler.ftpClient.changeWorkingDirectory(absPath);
-            files = connHandler.ftpClient.listFiles();
+            files = null;
+            if (connHandler.mlsdSupported) {
+                files = connHandler.ftpClient.mlistDir();
+                if (isUnsupportedCommandReply(connHandler.ftpClient.getReplyCode())) {
+                    LOGGER.info("marking MLSD command as unsupported");
+                    connHandler.mlsdSupported = false;
+                    files = null;
+                }
+            }
+            boolean machineListing = files != null;
+            if (!machineListing) {
+                files = connHandler.ftpClient.listFiles();
+            }
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
-            if (files==null)     // In some rare conditions (bug) this method can return null
-                return new org.apache.commons.net.ftp.FTPFile[0];
+            if (files == null) {    // In some rare conditions (bug) this method can return null
+                files = new org.apache.commons.net.ftp.FTPFile[0];
+            }
+
+            Map<String, org.apache.commons.net.ftp.FTPFile> linkTargets = machineListing ? null : listLinkTargets(connHandler, files);
 
-            return files;
+            cached = new CachedListing(files, linkTargets);
+            connHandler.putCachedListing(absPath, cached);
+            return cached;
         }
         // This exception is not an IOException and needs to be caught and thrown back as an IOException
         catch(org.apache.commons.net.ftp.parser.ParserInitializationException e) {
@@ -243,6 +334,87 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Retrieves the target attributes of all the symbolic links in the given listing of the current working directory,
+     * using one <code>LIST -L</code> command. Returns <code>null</code> if the listing contains no symbolic link or if
+     * the server doesn't dereference symlinks.
+     */
+    private static Map<String, org.apache.commons.net.ftp.FTPFile> listLinkTargets(FTPConnectionHandler connHandler, org.apache.commons.net.ftp.FTPFile files[]) throws IOException {
+        if (!connHandler.listDereferenceSupported) {
+            return null;
+        }
+
+        boolean hasSymlinks = false;
+        for (org.apache.commons.net.ftp.FTPFile f : files) {
+            if (f != null && f.isSymbolicLink()) {
+                hasSymlinks = true;
+                break;
+            }
+        }
+        if (!hasSymlinks) {
+            return null;
+        }
+
+        org.apache.commons.net.ftp.FTPFile targets[] = connHandler.ftpClient.listFiles("-L");
+        if (targets == null || !FTPReply.isPositiveCompletion(connHandler.ftpClient.getReplyCode())) {
+            LOGGER.info("marking LIST -L as unsupported");
+            connHandler.listDereferenceSupported = false;
+            return null;
+        }
+
+        Map<String, org.apache.commons.net.ftp.FTPFile> linkTargets = new HashMap<>();
+        for (org.apache.commons.net.ftp.FTPFile target : targets) {
+            // Entries that are still symlinks are either dangling or weren't dereferenced at all
+            if (target != null && !target.isSymbolicLink()) {
+                linkTargets.put(target.getName(), target);
+            }
+        }
+        // Servers that ignore the switch return the symlinks unchanged, no need to try it again
+        if (linkTargets.isEmpty()) {
+            connHandler.listDereferenceSupported = false;
+            return null;
+        }
+        return linkTargets;
+    }
+
+
+    /**
+     * Returns <code>true</code> if the given reply code indicates that the server doesn't know or doesn't implement
+     * the command that was just sent.
+     */
+    private static boolean isUnsupportedCommandReply(int replyCode) {
+        return replyCode == FTPReply.UNRECOGNIZED_COMMAND
+                || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED
+                || replyCode == FTPReply.COMMAND_NOT_IMPLEMENTED_FOR_PARAMETER;
+    }
+
+
+    /**
+     * Discards the cached listings of the given path's parent, of the path itself and of its sub-folders, for all
+     * the connections to the realm of the given URL.
+     *
+     * @param url URL of the file that was modified
+     */
+    private static void invalidateListings(FileURL url) {
+        FileURL realm = url.getRealm();
+        Credentials credentials = url.getCredentials();
+        String path = url.getPath();
+        FileURL parentURL = url.getParent();
+        String parentPath = parentURL == null ? null : parentURL.getPath();
+
+        synchronized (connectionHandlers) {
+            for (Iterator<WeakReference<FTPConnectionHandler>> it = connectionHandlers.iterator(); it.hasNext(); ) {
+                FTPConnectionHandler connHandler = it.next().get();
+                if (connHandler == null) {
+                    it.remove();
+                } else if (connHandler.equals(realm, credentials)) {
+                    connHandler.invalidateListings(parentPath, path);
+                }
+            }
+        }
+    }
+
+
     /////////////////////////////////////////////
     // ConnectionHandlerFactory implementation //
     /////////////////////////////////////////////
@@ -269,12 +441,23 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     @Override
     public long getLastModifiedDate() {
         if (isSymlink()) {
-            return ((org.apache.commons.net.ftp.FTPFile) getCanonicalFile().getUnderlyingFileObject()).getTimestamp().getTimeInMillis();
+            return getLinkTarget().getTimestamp().getTimeInMillis();
         }
 
         return file.getTimestamp().getTimeInMillis();
     }
 
+    /**
+     * Returns the attributes of this symlink's target, using the ones retrieved along with the parent directory's
+     * listing if there are any, instead of resolving the canonical file.
+     */
+    private org.apache.commons.net.ftp.FTPFile getLinkTarget() {
+        if (linkTarget != null) {
+            return linkTarget;
+        }
+        return (org.apache.commons.net.ftp.FTPFile) getCanonicalFile().getUnderlyingFileObject();
+    }
+
     /**
      * Attempts to change this file's date using the <i>'SITE UTIME'</i> FTP command.
      * This command seems to be implemented by modern FTP servers such as ProFTPd or PureFTP Server but since it is not
@@ -305,6 +488,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE UTIME {} {}", sdate, absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("UTIME "+sdate+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            invalidateListings(fileURL);
 
             if (!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -338,7 +522,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     @Override
     public long getSize() {
         if (isSymlink()) {
-            return ((org.apache.commons.net.ftp.FTPFile) getCanonicalFile().getUnderlyingFileObject()).getSize();
+            return getLinkTarget().getSize();
         }
         return file.getSize();
     }
@@ -378,6 +562,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     @Override
     public FilePermissions getPermissions() {
         if (isSymlink()) {
+            if (linkTarget != null) {
+                return new FTPFilePermissions(linkTarget);
+            }
             FTPFile ancestor = getCanonicalFile().getAncestor(FTPFile.class);
             return ancestor != null ? ancestor.permissions : null;
         }
@@ -434,18 +621,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     public boolean isDirectory() {
         // org.apache.commons.net.ftp.FTPFile#isDirectory() returns false if the file is a symlink pointing to a
         // directory, this is a limitation of the Commons-net library.
-        // Todo: fix this by either:
-        // a) find a combination of 'LIST' switches which allows the output to contain both the 'is symlink' and the
-        // 'is the symlink target a directory' information. At a first glance, there doesn't seem to be one: either
-        // symlinks are followed or there aren't.
-        // b) Patch #ls() to issue an extra 'LIST -ldH *' to retrieve all symlinks' information when the directory has
-        // at least one symlink.
-        // c) if this file is a symlink, retrieve the symlink's target using #getFTPFile(FileURL) with '-ldH' switches
-        // and return the value of isDirectory(). This clearly is the least effective solution at it requires issuing
-        // one 'ls' command per symlink.
+        // #ls() issues an extra 'LIST -L' per directory containing symlinks to retrieve their targets' attributes;
+        // the canonical file is only resolved (one listing per symlink) if the server doesn't support it.
 
         if (isSymlink()) {
-            return ((org.apache.commons.net.ftp.FTPFile) getCanonicalFile().getUnderlyingFileObject()).isDirectory();
+            return getLinkTarget().isDirectory();
         }
 
         return file.isDirectory();
@@ -506,6 +686,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 connHandler.ftpClient.deleteFile(absPath);
             }
             fileExists = false; // need be false because the file can be get from cache pool
+            invalidateListings(fileURL);
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
@@ -527,11 +708,14 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         // Retrieve a ConnectionHandler and lock it
         FTPConnectionHandler connHandler = (FTPConnectionHandler)ConnectionPool.getConnectionHandler(this, fileURL, true);
         org.apache.commons.net.ftp.FTPFile files[];
+        Map<String, org.apache.commons.net.ftp.FTPFile> linkTargets;
         try {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            files = listFiles(connHandler, absPath);
+            CachedListing listing = listFiles(connHandler, absPath);
+            files = listing.files;
+            linkTargets = listing.linkTargets;
         } finally {
             // Release the lock on the ConnectionHandler
             connHandler.releaseLock();
@@ -569,6 +753,12 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
 
             AbstractFile child = FileFactory.getFile(childURL, this, file1);
+            if (linkTargets != null && file1.isSymbolicLink()) {
+                FTPFile ftpChild = child.getAncestor(FTPFile.class);
+                if (ftpChild != null) {
+                    ftpChild.linkTarget = linkTargets.get(childName);
+                }
+            }
             children[fileCount++] = child;
         }
 
@@ -592,6 +782,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             connHandler.checkConnection();
 
             connHandler.ftpClient.makeDirectory(absPath);
+            invalidateListings(fileURL);
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
@@ -686,6 +877,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE CHMOD {} {}", Integer.toOctalString(permissions), absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("CHMOD "+Integer.toOctalString(permissions)+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            invalidateListings(fileURL);
 
             if (!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -744,7 +936,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            if(!connHandler.ftpClient.rename(absPath, destFile.getURL().getPath()))
+            boolean success = connHandler.ftpClient.rename(absPath, destFile.getURL().getPath());
+            invalidateListings(fileURL);
+            invalidateListings(destFile.getURL());
+            if (!success)
                 throw new IOException();
         } catch(IOException e) {
             // Checks if the IOException corresponds to a socket error and in that case, closes the connection
@@ -1084,6 +1279,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
             // we need to refresh the file after update
             // otherwise the file size for archives will be show incorrect etc.
+            invalidateListings(fileURL);
             try {
                 FTPFile.this.file = getFTPFile(getURL());
             } catch (IOException e) {
@@ -1144,6 +1340,23 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         /** False if SITE CHMOD command is not supported by the remote server (once tried and failed) */
         private boolean chmodCommandSupported = true;
 
+        /** True if the server advertises the MLSD command in its FEAT reply */
+        private boolean mlsdSupported;
+
+        /** True if the server advertises the MLST command in its FEAT reply */
+        private boolean mlstSupported;
+
+        /** False if 'LIST -L' doesn't dereference symlinks on the remote server (once tried and failed) */
+        private boolean listDereferenceSupported = true;
+
+        /** Recently retrieved directory listings, keyed by absolute path, least recently used first */
+        private final Map<String, CachedListing> listingCache = new LinkedHashMap<String, CachedListing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedListing> eldest) {
+                return size() > LISTING_CACHE_SIZE;
+            }
+        };
+
         /** Controls how ofter should keepAlive() be called by ConnectionPool */
         private final static long KEEP_ALIVE_PERIOD = 60;
 
@@ -1199,6 +1412,49 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
 
             setKeepAlivePeriod(KEEP_ALIVE_PERIOD);
+
+            synchronized (connectionHandlers) {
+                connectionHandlers.add(new WeakReference<>(this));
+            }
+        }
+
+
+        /**
+         * Returns the listing of the given directory if it has been retrieved less than {@link #LISTING_CACHE_TTL}
+         * milliseconds ago, <code>null</code> otherwise.
+         */
+        private CachedListing getCachedListing(String absPath) {
+            synchronized (listingCache) {
+                CachedListing listing = listingCache.get(absPath);
+                if (listing == null) {
+                    return null;
+                }
+                if (System.currentTimeMillis() - listing.timestamp > LISTING_CACHE_TTL) {
+                    listingCache.remove(absPath);
+                    return null;
+                }
+                return listing;
+            }
+        }
+
+        private void putCachedListing(String absPath, CachedListing listing) {
+            synchronized (listingCache) {
+                listingCache.put(absPath, listing);
+            }
+        }
+
+        /**
+         * Discards the cached listings of the given parent folder, of the given path and of all its sub-folders.
+         */
+        private void invalidateListings(String parentPath, String path) {
+            String prefix = path.endsWith(SEPARATOR) ? path : path + SEPARATOR;
+            synchronized (listingCache) {
+                if (parentPath != null) {
+                    listingCache.remove(parentPath);
+                    listingCache.remove(parentPath.endsWith(SEPARATOR) ? parentPath.substring(0, parentPath.length() - 1) : parentPath + SEPARATOR);
+                }
+                listingCache.keySet().removeIf(cachedPath -> cachedPath.equals(path) || cachedPath.startsWith(prefix));
+            }
         }
 
 
@@ -1330,6 +1586,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 	                    ftpClient.sendCommand("OPTS UTF8 ON");
 	                }
 
+	                // Machine-readable listings (RFC 3659) carry exact sizes and UTC dates and spare LIST parsing
+	                mlsdSupported = ftpClient.hasFeature("MLSD");
+	                mlstSupported = ftpClient.hasFeature("MLST");
+	                LOGGER.info("mlsdSupported={} mlstSupported={}", mlsdSupported, mlstSupported);
+
 	                break;
 	            } catch(IOException e) {
                     // Attempt to retry if the connection failed, or if the server reply corresponds to a temporary error.
@@ -1409,6 +1670,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
                 ftpClient = null;
             }
+
+            synchronized (listingCache) {
+                listingCache.clear();
+            }
         }
 
 
@@ -1427,6 +1692,25 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         }
     }
 
+    /**
+     * A directory listing retrieved from the server, along with the target attributes of the symlinks it contains.
+     */
+    private static class CachedListing {
+
+        private final org.apache.commons.net.ftp.FTPFile files[];
+
+        /** Symlink targets keyed by symlink name, <code>null</code> if unknown */
+        private final Map<String, org.apache.commons.net.ftp.FTPFile> linkTargets;
+
+        /** Time at which the listing was retrieved */
+        private final long timestamp = System.currentTimeMillis();
+
+        private CachedListing(org.apache.commons.net.ftp.FTPFile files[], Map<String, org.apache.commons.net.ftp.FTPFile> linkTargets) {
+            this.files = files;
+            this.linkTargets = linkTargets;
+        }
+    }
+
     /**
      * A Permissions implementation for FTPFile.
      */
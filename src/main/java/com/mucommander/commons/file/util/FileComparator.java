@@ -80,6 +80,27 @@ public class FileComparator implements Comparator<AbstractFile> {
     }
 
 
+    int getCriterion() {
+        return criterion;
+    }
+
+    boolean isAscending() {
+        return ascending;
+    }
+
+    boolean isDirectoriesFirst() {
+        return directoriesFirst;
+    }
+
+    boolean isFoldersAlwaysAlphabetical() {
+        return foldersAlwaysAlphabetical;
+    }
+
+    QuickSearch getQuickSearch() {
+        return quickSearch;
+    }
+
+
     /**
      * Returns a <code>value</code> for the given character. Using this function in a comparator will separator
      * symbols for digits and letters and put in the following order:
@@ -94,7 +115,7 @@ public class FileComparator implements Comparator<AbstractFile> {
      * @param c character for which to return a value
      * @return a <code>value</code> for the given character
      */
-    private static int getCharacterValue(int c) {
+    static int getCharacterValue(int c) {
         // Note: max char value is 65535
         if (Character.isLetter(c))
             c += 131070;    // yields a value higher than any other symbol or digit
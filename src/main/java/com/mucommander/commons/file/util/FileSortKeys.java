@@ -0,0 +1,401 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.quicksearch.QuickSearch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts the files of a folder in the order of a {@link FileComparator}, using sort keys computed once per file
+ * instead of querying and re-scanning the files' attributes on every comparison.
+ *
+ * <p>The keys of a criterion are computed the first time the files are sorted by that criterion, and reused when
+ * sorting again by any criterion, so an instance should be kept as long as the files don't change. The sort is a
+ * stable merge sort over an array of file indexes, run in parallel for large folders.
+ *
+ * @author Oleg Trifonov
+ */
+public class FileSortKeys {
+
+    /** Ranges shorter than this are sorted by insertion */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /** Folders with at least this many files are sorted in parallel */
+    private static final int PARALLEL_THRESHOLD = 50000;
+
+    /** Ranges shorter than this are not split further between threads */
+    private static final int PARALLEL_GRANULARITY = 8192;
+
+    private final AbstractFile[] files;
+    private final boolean[] directories;
+
+    private CollationKey[] names;
+    private CollationKey[] extensions;
+    private CollationKey[] owners;
+    private CollationKey[] groups;
+    private long[] sizes;
+    private long[] dates;
+    private int[] permissions;
+
+
+    /**
+     * Case-folded and natural-order information about a string, precomputed for
+     * {@link FileComparator#compareStrings(String, String, boolean)}.
+     */
+    static final class CollationKey {
+        private final char[] chars;
+        private final char[] folded;
+        /** Position of the first digit, <code>-1</code> if there is none */
+        private final int digitPos;
+        /** Length of the first run of digits */
+        private final int digitLen;
+
+        CollationKey(String s) {
+            chars = s.toCharArray();
+            folded = new char[chars.length];
+            int pos = -1;
+            int len = 0;
+            for (int i = 0; i < chars.length; i++) {
+                char c = chars[i];
+                // Same folding as FileComparator: characters are equal if their upper cases or the lower cases of
+                // those are. Upper and lower cases of BMP characters are BMP characters.
+                folded[i] = (char)Character.toLowerCase(Character.toUpperCase((int)c));
+                if (c >= '0' && c <= '9') {
+                    if (pos < 0) {
+                        pos = i;
+                    }
+                    if (pos + len == i) {
+                        len++;
+                    }
+                }
+            }
+            digitPos = pos;
+            digitLen = len;
+        }
+
+        static CollationKey of(String s) {
+            return s == null ? null : new CollationKey(s);
+        }
+
+        /**
+         * Compares two keys, with the same result as {@link FileComparator#compareStrings(String, String, boolean)}
+         * on their strings.
+         */
+        static int compare(CollationKey k1, CollationKey k2, boolean ignoreCase) {
+            char[] s1 = k1.chars;
+            char[] s2 = k2.chars;
+            int pos = k1.digitPos;
+            if (pos >= 0 && pos == k2.digitPos && regionMatches(s1, s2, pos)) {
+                if (k1.digitLen != k2.digitLen) {
+                    return k1.digitLen - k2.digitLen;
+                }
+                for (int i = pos; i < pos + k1.digitLen; i++) {
+                    if (s1[i] != s2[i]) {
+                        return s1[i] - s2[i];
+                    }
+                }
+            }
+            if (ignoreCase) {
+                s1 = k1.folded;
+                s2 = k2.folded;
+            }
+            int n = Math.min(s1.length, s2.length);
+            for (int i = 0; i < n; i++) {
+                if (s1[i] != s2[i]) {
+                    return FileComparator.getCharacterValue(s1[i]) - FileComparator.getCharacterValue(s2[i]);
+                }
+            }
+            return s1.length - s2.length;
+        }
+
+        /**
+         * Null-safe version of {@link #compare(CollationKey, CollationKey, boolean)}, <code>null</code> comes first.
+         */
+        static int compareNullable(CollationKey k1, CollationKey k2, boolean ignoreCase) {
+            if (k1 == null || k2 == null) {
+                return k1 == k2 ? 0 : k1 == null ? -1 : 1;
+            }
+            return compare(k1, k2, ignoreCase);
+        }
+
+        private static boolean regionMatches(char[] s1, char[] s2, int len) {
+            for (int i = 0; i < len; i++) {
+                if (s1[i] != s2[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * Creates the sort keys of the given files. The array must not be modified afterwards.
+     *
+     * @param files the files to sort
+     */
+    public FileSortKeys(AbstractFile[] files) {
+        this.files = files;
+        this.directories = new boolean[files.length];
+        for (int i = 0; i < files.length; i++) {
+            directories[i] = files[i].isDirectory();
+        }
+    }
+
+    /**
+     * Sorts an array of indexes into the files in the order of the given comparator. Files that compare equal keep
+     * their relative order.
+     *
+     * @param indexes the indexes to sort
+     * @param comparator the comparator that defines the order
+     */
+    public void sort(int[] indexes, FileComparator comparator) {
+        Sorter sorter = new Sorter(comparator);
+        int[] buffer = indexes.clone();
+        if (indexes.length >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            ForkJoinPool.commonPool().invoke(sorter.new MergeSortTask(buffer, indexes, 0, indexes.length));
+        } else {
+            sorter.mergeSort(buffer, indexes, 0, indexes.length, false);
+        }
+    }
+
+    private CollationKey[] getNames() {
+        if (names == null) {
+            CollationKey[] keys = new CollationKey[files.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = new CollationKey(files[i].getName());
+            }
+            names = keys;
+        }
+        return names;
+    }
+
+    /**
+     * Computes the keys of the given criterion if they haven't been yet.
+     */
+    private void prepare(int criterion) {
+        getNames();
+        switch (criterion) {
+            case FileComparator.SIZE_CRITERION:
+                if (sizes == null) {
+                    long[] keys = new long[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        // Directories have a size of 0, an unavailable size (-1) is considered as enormous
+                        long size = directories[i] ? 0 : files[i].getSize();
+                        keys[i] = size == -1 ? Long.MAX_VALUE : size;
+                    }
+                    sizes = keys;
+                }
+                break;
+            case FileComparator.DATE_CRITERION:
+                if (dates == null) {
+                    long[] keys = new long[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = files[i].getLastModifiedDate();
+                    }
+                    dates = keys;
+                }
+                break;
+            case FileComparator.PERMISSIONS_CRITERION:
+                if (permissions == null) {
+                    int[] keys = new int[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = files[i].getPermissions().getIntValue();
+                    }
+                    permissions = keys;
+                }
+                break;
+            case FileComparator.EXTENSION_CRITERION:
+                if (extensions == null) {
+                    CollationKey[] keys = new CollationKey[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = CollationKey.of(files[i].getExtension());
+                    }
+                    extensions = keys;
+                }
+                break;
+            case FileComparator.OWNER_CRITERION:
+                if (owners == null) {
+                    CollationKey[] keys = new CollationKey[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = CollationKey.of(files[i].getOwner());
+                    }
+                    owners = keys;
+                }
+                break;
+            case FileComparator.GROUP_CRITERION:
+                if (groups == null) {
+                    CollationKey[] keys = new CollationKey[files.length];
+                    for (int i = 0; i < keys.length; i++) {
+                        keys[i] = CollationKey.of(files[i].getGroup());
+                    }
+                    groups = keys;
+                }
+                break;
+        }
+    }
+
+
+    /**
+     * Compares files by their keys with the same result as {@link FileComparator#compare(AbstractFile, AbstractFile)},
+     * and merge sorts their indexes. Only reads the keys, so that the halves of a range can be sorted concurrently.
+     */
+    private class Sorter {
+        private final int criterion;
+        private final boolean ascending;
+        private final boolean directoriesFirst;
+        private final boolean foldersAlwaysAlphabetical;
+        /** Whether each file matches the quick search, <code>null</code> if matches don't come first */
+        private final boolean[] matches;
+
+        private final CollationKey[] names;
+        private final CollationKey[] strings;
+        private final long[] longs;
+        private final int[] ints;
+
+        Sorter(FileComparator comparator) {
+            criterion = comparator.getCriterion();
+            ascending = comparator.isAscending();
+            directoriesFirst = comparator.isDirectoriesFirst();
+            foldersAlwaysAlphabetical = comparator.isFoldersAlwaysAlphabetical();
+            QuickSearch quickSearch = comparator.getQuickSearch();
+            if (quickSearch != null) {
+                matches = new boolean[files.length];
+                for (int i = 0; i < files.length; i++) {
+                    matches[i] = quickSearch.matches(files[i]);
+                }
+            } else {
+                matches = null;
+            }
+            prepare(criterion);
+            names = FileSortKeys.this.names;
+            strings = criterion == FileComparator.EXTENSION_CRITERION ? extensions
+                    : criterion == FileComparator.OWNER_CRITERION ? owners
+                    : criterion == FileComparator.GROUP_CRITERION ? groups : null;
+            longs = criterion == FileComparator.SIZE_CRITERION ? sizes
+                    : criterion == FileComparator.DATE_CRITERION ? dates : null;
+            ints = criterion == FileComparator.PERMISSIONS_CRITERION ? permissions : null;
+        }
+
+        int compare(int i1, int i2) {
+            if (i1 == i2) {
+                return 0;
+            }
+            if (matches != null && matches[i1] != matches[i2]) {
+                return matches[i1] ? -1 : 1;
+            }
+            boolean is1Directory = directories[i1];
+            boolean is2Directory = directories[i2];
+            if (directoriesFirst) {
+                if (is1Directory != is2Directory) {
+                    // ascending has no effect on the result (a directory is always first)
+                    return is1Directory ? -1 : 1;
+                }
+                if (foldersAlwaysAlphabetical && is1Directory) {
+                    int diff = CollationKey.compare(names[i1], names[i2], true);
+                    return diff != 0 ? diff : CollationKey.compare(names[i1], names[i2], false);
+                }
+            }
+
+            long diff;
+            if (longs != null) {
+                diff = longs[i1] - longs[i2];
+            } else if (ints != null) {
+                diff = ints[i1] - ints[i2];
+            } else if (strings != null) {
+                diff = CollationKey.compareNullable(strings[i1], strings[i2], true);
+            } else {
+                diff = CollationKey.compare(names[i1], names[i2], true);
+                if (diff == 0) {
+                    diff = CollationKey.compare(names[i1], names[i2], false);
+                }
+            }
+            if (criterion != FileComparator.NAME_CRITERION && diff == 0) {
+                diff = CollationKey.compare(names[i1], names[i2], true);
+            }
+
+            // Same clamping as FileComparator, so that the value can be negated
+            int intValue = diff > Integer.MAX_VALUE ? Integer.MAX_VALUE
+                    : diff < Integer.MIN_VALUE + 1 ? Integer.MIN_VALUE + 1 : (int)diff;
+            return ascending ? intValue : -intValue;
+        }
+
+        /**
+         * Sorts the range of <code>dest</code>, using <code>src</code>, which holds the same values, as a buffer.
+         */
+        void mergeSort(int[] src, int[] dest, int lo, int hi, boolean parallel) {
+            int length = hi - lo;
+            if (length < INSERTION_SORT_THRESHOLD) {
+                for (int i = lo + 1; i < hi; i++) {
+                    int value = dest[i];
+                    int j = i;
+                    while (j > lo && compare(dest[j - 1], value) > 0) {
+                        dest[j] = dest[j - 1];
+                        j--;
+                    }
+                    dest[j] = value;
+                }
+                return;
+            }
+
+            // Sort the halves into src, then merge them into dest
+            int mid = (lo + hi) >>> 1;
+            if (parallel && length > PARALLEL_GRANULARITY) {
+                ForkJoinTask.invokeAll(new MergeSortTask(dest, src, lo, mid), new MergeSortTask(dest, src, mid, hi));
+            } else {
+                mergeSort(dest, src, lo, mid, false);
+                mergeSort(dest, src, mid, hi, false);
+            }
+            if (compare(src[mid - 1], src[mid]) <= 0) {
+                System.arraycopy(src, lo, dest, lo, length);
+                return;
+            }
+            for (int i = lo, p = lo, q = mid; i < hi; i++) {
+                if (q >= hi || (p < mid && compare(src[p], src[q]) <= 0)) {
+                    dest[i] = src[p++];
+                } else {
+                    dest[i] = src[q++];
+                }
+            }
+        }
+
+
+        private class MergeSortTask extends RecursiveAction {
+            private final int[] src;
+            private final int[] dest;
+            private final int lo;
+            private final int hi;
+
+            MergeSortTask(int[] src, int[] dest, int lo, int hi) {
+                this.src = src;
+                this.dest = dest;
+                this.lo = lo;
+                this.hi = hi;
+            }
+
+            @Override
+            protected void compute() {
+                mergeSort(src, dest, lo, hi, true);
+            }
+        }
+    }
+}
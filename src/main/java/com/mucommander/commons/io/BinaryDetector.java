@@ -65,7 +65,7 @@ public class BinaryDetector {
      * @param len specifies where to stop reading the array
      * @return true if BinaryDetector thinks that the specified data is binary
      */
-    private static boolean guessBinary(byte b[], int off, int len) {
+    public static boolean guessBinary(byte b[], int off, int len) {
         // binary .torrent files etc. doesn't contains any 0x0A, 0x0D or 0x00 bytes
         int x0Acnt = 0;
         int x0Dcnt = 0;
@@ -0,0 +1,135 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Calculates the checksums of a stream for several algorithms at once, reading the stream a single time.
+ *
+ * <p>The stream is read in blocks on the calling thread. Each block is passed to the digests on a shared pool of
+ * threads, every digest processing the blocks in order on its own, so that the digests run in parallel with each
+ * other and with the reading of the next blocks. A few blocks can be read ahead of the slowest digest.
+ *
+ * @author Oleg Trifonov
+ */
+public class ChecksumEngine {
+
+    /** Size of the blocks read from the stream */
+    static final int BLOCK_SIZE = 512 * 1024;
+
+    /** Number of blocks that can be read ahead of the slowest digest, plus the one being read */
+    private static final int NB_BUFFERS = 4;
+
+    private static final ExecutorService DIGEST_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "ChecksumEngine");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+
+    private ChecksumEngine() {
+    }
+
+    /**
+     * Reads the given stream until EOF and returns its digest for each of the given <code>MessageDigest</code>,
+     * in the same order. The stream is not closed and the digests are reset.
+     *
+     * @param in the stream to read
+     * @param digests the digests to calculate
+     * @return the digest of each algorithm
+     * @throws IOException if an I/O error occurred while reading the stream
+     */
+    public static byte[][] digest(InputStream in, MessageDigest... digests) throws IOException {
+        byte[][] buffers = new byte[NB_BUFFERS][];
+        // Completes when all digests are done with the corresponding buffer
+        CompletableFuture<?>[] buffersReleased = new CompletableFuture<?>[NB_BUFFERS];
+        // Last update submitted for each digest
+        CompletableFuture<?>[] lastUpdates = new CompletableFuture<?>[digests.length];
+        Arrays.fill(lastUpdates, CompletableFuture.completedFuture(null));
+        try {
+            int index = 0;
+            while (true) {
+                if (buffersReleased[index] != null) {
+                    buffersReleased[index].join();
+                }
+                if (buffers[index] == null) {
+                    buffers[index] = BufferPool.getByteArray(BLOCK_SIZE);
+                }
+                final byte[] buffer = buffers[index];
+                final int length = StreamUtils.readUpTo(in, buffer, 0, BLOCK_SIZE);
+                if (length > 0) {
+                    for (int i = 0; i < digests.length; i++) {
+                        final MessageDigest digest = digests[i];
+                        lastUpdates[i] = lastUpdates[i].thenRunAsync(() -> digest.update(buffer, 0, length), DIGEST_EXECUTOR);
+                    }
+                    buffersReleased[index] = CompletableFuture.allOf(lastUpdates);
+                }
+                // readUpTo() only returns less than requested at EOF
+                if (length < BLOCK_SIZE) {
+                    break;
+                }
+                index = (index + 1) % NB_BUFFERS;
+            }
+            CompletableFuture.allOf(lastUpdates).join();
+        } finally {
+            // The digests may still use the buffers if reading failed
+            try {
+                CompletableFuture.allOf(lastUpdates).join();
+            } catch (CompletionException ignore) {
+            }
+            for (byte[] buffer : buffers) {
+                if (buffer != null) {
+                    BufferPool.releaseByteArray(buffer);
+                }
+            }
+        }
+
+        byte[][] result = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) {
+            result[i] = digests[i].digest();
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #digest(InputStream, MessageDigest...)} but returns the digests as hexadecimal strings, like
+     * {@link ChecksumInputStream#getChecksumString()}.
+     *
+     * @param in the stream to read
+     * @param digests the digests to calculate
+     * @return the hexadecimal digest of each algorithm
+     * @throws IOException if an I/O error occurred while reading the stream
+     */
+    public static String[] calculateChecksums(InputStream in, MessageDigest... digests) throws IOException {
+        byte[][] bytes = digest(in, digests);
+        String[] result = new String[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i] = ByteUtils.toHexString(bytes[i]);
+        }
+        return result;
+    }
+}
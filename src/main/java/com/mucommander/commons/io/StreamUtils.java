@@ -19,6 +19,12 @@
 package com.mucommander.commons.io;
 
 import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class provides convenience static methods that operate on streams. All read/write buffers are allocated using
@@ -136,6 +142,210 @@ public class StreamUtils {
         return totalRead;
     }
 
+    /**
+     * Maximum number of bytes that {@link #copyStreamPipelined(InputStream, OutputStream, int, long)} reads ahead of
+     * the bytes it has written. Streams that record progress as data is read can consider anything read more than
+     * this number of bytes ago as written.
+     */
+    public static final int MAX_PIPELINED_READ_AHEAD = 1024 * 1024;
+
+    /** Reads the source streams of the pipelined copies */
+    private static final ExecutorService PIPELINE_READER_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "StreamUtils pipeline reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Same as {@link #copyStream(InputStream, OutputStream, int, long)} but reads from the <code>InputStream</code> on
+     * another thread while the calling thread writes to the <code>OutputStream</code>, so that the latencies of a slow
+     * source and a slow destination overlap instead of adding up.
+     *
+     * <p>The reading thread fills a ring of buffers that the calling thread drains, and waits for a buffer to be written
+     * when they are all full. At most {@link #MAX_PIPELINED_READ_AHEAD} bytes are read ahead of the bytes written;
+     * if the buffer size doesn't allow at least two buffers within this limit, the copy is not pipelined.
+     *
+     * <p>The <code>InputStream</code> is only read by the reading thread, one read at a time, so wrappers that count,
+     * throttle or checksum the data read still work. Closing the <code>InputStream</code> from another thread interrupts
+     * the copy with a {@link FileTransferException#READING_SOURCE} error. If writing fails, the reading thread stops
+     * after its current read. This method does *NOT* close any of the given streams.
+     *
+     * @param in the InputStream to read from
+     * @param out the OutputStream to write to
+     * @param bufferSize size of the buffers to use, in bytes
+     * @param length number of bytes to copy from InputStream
+     * @return the number of bytes that were copied
+     * @throws FileTransferException if something went wrong while reading from or writing to one of the provided streams
+     */
+    public static long copyStreamPipelined(InputStream in, OutputStream out, int bufferSize, long length) throws FileTransferException {
+        int nbBuffers = MAX_PIPELINED_READ_AHEAD / bufferSize;
+        if (nbBuffers < 2) {
+            return copyStream(in, out, bufferSize, length);
+        }
+        return new PipelinedCopy(in, nbBuffers, bufferSize, length).copyTo(out);
+    }
+
+
+    /**
+     * A copy whose source is read by a thread of {@link #PIPELINE_READER_EXECUTOR} while the calling thread writes.
+     */
+    private static final class PipelinedCopy implements Runnable {
+        /** Given back to the reading thread to wake it up when the copy is over */
+        private static final byte[] POISON = new byte[0];
+
+        /** A chunk of data read, or the end of the data read with an optional error */
+        private static final class Chunk {
+            final byte[] buffer;
+            final int length;
+            final FileTransferException error;
+
+            Chunk(byte[] buffer, int length, FileTransferException error) {
+                this.buffer = buffer;
+                this.length = length;
+                this.error = error;
+            }
+        }
+
+        private final InputStream in;
+        private final long length;
+        private final int bufferSize;
+        private final byte[][] buffers;
+
+        /** Buffers that can be filled by the reading thread */
+        private final BlockingQueue<byte[]> freeBuffers;
+        /** Chunks filled by the reading thread, followed by a chunk without buffer when reading is over. There is room
+         * for all buffers and the last chunk, so that the reading thread never waits for room in this queue. */
+        private final BlockingQueue<Chunk> filledChunks;
+
+        /** Set when the writing thread has returned */
+        private volatile boolean cancelled;
+
+        /** Number of threads still using the buffers, the last one returns them to the pool */
+        private final AtomicInteger nbUsers = new AtomicInteger(2);
+
+        PipelinedCopy(InputStream in, int nbBuffers, int bufferSize, long length) {
+            this.in = in;
+            this.length = length;
+            this.bufferSize = bufferSize;
+            this.buffers = new byte[nbBuffers][];
+            this.freeBuffers = new ArrayBlockingQueue<>(nbBuffers);
+            this.filledChunks = new ArrayBlockingQueue<>(nbBuffers + 1);
+            for (int i = 0; i < nbBuffers; i++) {
+                buffers[i] = BufferPool.getByteArray(bufferSize);
+                freeBuffers.add(buffers[i]);
+            }
+        }
+
+        long copyTo(OutputStream out) throws FileTransferException {
+            try {
+                PIPELINE_READER_EXECUTOR.execute(this);
+            } catch (RejectedExecutionException e) {
+                releaseBuffers();
+                releaseBuffers();
+                throw new FileTransferException(FileTransferException.UNKNOWN_REASON, e);
+            }
+            long totalWritten = 0;
+            try {
+                while (true) {
+                    Chunk chunk = filledChunks.take();
+                    if (chunk.buffer == null) {
+                        if (chunk.error != null) {
+                            throw chunk.error;
+                        }
+                        return totalWritten;
+                    }
+                    try {
+                        out.write(chunk.buffer, 0, chunk.length);
+                    } catch (IOException e) {
+                        throw new FileTransferException(FileTransferException.WRITING_DESTINATION, totalWritten, e);
+                    }
+                    totalWritten += chunk.length;
+                    freeBuffers.add(chunk.buffer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FileTransferException(FileTransferException.UNKNOWN_REASON, totalWritten, e);
+            } finally {
+                cancelled = true;
+                // Wakes up the reading thread if it is waiting for a buffer, there is room unless all buffers are free
+                freeBuffers.offer(POISON);
+                releaseBuffers();
+            }
+        }
+
+        @Override
+        public void run() {
+            FileTransferException error = null;
+            try {
+                long remaining = length;
+                while (remaining > 0) {
+                    byte[] buffer = freeBuffers.take();
+                    if (cancelled || buffer == POISON) {
+                        break;
+                    }
+                    int requested = (int)Math.min(bufferSize, remaining);
+                    int nbRead = fill(buffer, requested);
+                    if (nbRead > 0) {
+                        filledChunks.add(new Chunk(buffer, nbRead, null));
+                        remaining -= nbRead;
+                    }
+                    if (nbRead < requested) {
+                        // EOF
+                        break;
+                    }
+                }
+            } catch (FileTransferException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                error = new FileTransferException(FileTransferException.UNKNOWN_REASON, e);
+            } catch (Throwable e) {
+                // Any other failure of the source must not end the data as if EOF had been reached
+                error = new FileTransferException(FileTransferException.READING_SOURCE, e);
+            } finally {
+                filledChunks.add(new Chunk(null, 0, error));
+                releaseBuffers();
+            }
+        }
+
+        /**
+         * Reads until the buffer holds the requested number of bytes or EOF is reached, so that the amount of data
+         * read ahead is bounded by the number of buffers.
+         */
+        private int fill(byte[] buffer, int requested) throws FileTransferException {
+            int total = 0;
+            int failureCounter = 0;
+            while (total < requested) {
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, total, requested - total);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE, e);
+                }
+                if (nbRead < 0) {
+                    break;
+                } else if (nbRead == 0) {
+                    failureCounter++;
+                    if (failureCounter > 10) {
+                        throw new FileTransferException(FileTransferException.UNKNOWN_REASON);
+                    }
+                    sleepIfNoRead();
+                } else {
+                    failureCounter = 0;
+                    total += nbRead;
+                }
+            }
+            return total;
+        }
+
+        private void releaseBuffers() {
+            if (nbUsers.decrementAndGet() == 0) {
+                for (byte[] buffer : buffers) {
+                    BufferPool.releaseByteArray(buffer);
+                }
+            }
+        }
+    }
+
     /**
      * This method is a shorthand for {@link #transcode(java.io.InputStream, String, java.io.OutputStream, String, int)}
      * called with a {@link BufferPool#getDefaultBufferSize() default buffer size}.
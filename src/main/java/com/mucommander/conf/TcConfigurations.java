@@ -45,6 +45,13 @@ public class TcConfigurations {
 	public static TcPreferencesAPI getPreferences() {
 		return preferences;
 	}
+
+	/**
+	 * @return the parsed values of the typed preference handles, see {@link TcPreferenceHandle}.
+	 */
+	static Object[] getPreferencesSnapshot() {
+		return preferences.getSnapshot();
+	}
 	
 	public static void loadPreferences() throws IOException, ConfigurationException {
 		preferences.read();
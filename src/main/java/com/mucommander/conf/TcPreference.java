@@ -62,6 +62,7 @@ public enum TcPreference {
 	FOLDERS_ALWAYS_ALPHABETICAL(TcPreferences.FOLDERS_ALWAYS_ALPHABETICAL),
 	SHOW_QUICK_SEARCH_MATCHES_FIRST(TcPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST),
 	QUICK_SEARCH_TIMEOUT(TcPreferences.QUICK_SEARCH_TIMEOUT),
+	QUICK_SEARCH_FUZZY(TcPreferences.QUICK_SEARCH_FUZZY),
 	CD_FOLLOWS_SYMLINKS(TcPreferences.CD_FOLLOWS_SYMLINKS),
 	USE_BRUSHED_METAL(TcPreferences.USE_BRUSHED_METAL),
 	USE_SCREEN_MENU_BAR(TcPreferences.USE_SCREEN_MENU_BAR),
@@ -0,0 +1,144 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.conf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A typed, precompiled accessor to a preference that is read on hot paths (sorting, painting, key handling).
+ *
+ * <p>The values of all the handles are kept parsed in an immutable snapshot owned by {@link TcPreferences}, which is
+ * replaced whenever one of these preferences changes. Reading a handle is a volatile load and an array access: no
+ * lock, no section lookup and no parsing. Handles are only created by {@link TcPreferences}.
+ *
+ * <p>Unlike {@link TcPreferencesAPI#getVariable(TcPreference, boolean)}, reading a handle doesn't store the default
+ * value in the configuration when the preference isn't set.
+ *
+ * @author Oleg Trifonov
+ */
+public abstract class TcPreferenceHandle {
+
+    /** All the handles, in the order of their index in the snapshot */
+    private static final List<TcPreferenceHandle> HANDLES = new ArrayList<>();
+
+    /** Handles by preference name */
+    private static final Map<String, TcPreferenceHandle> HANDLES_BY_NAME = new HashMap<>();
+
+    private final TcPreference preference;
+
+    /** Index of the value in the snapshot */
+    final int index;
+
+
+    private TcPreferenceHandle(TcPreference preference) {
+        this.preference = preference;
+        synchronized (HANDLES) {
+            this.index = HANDLES.size();
+            HANDLES.add(this);
+            HANDLES_BY_NAME.put(preference.toString(), this);
+        }
+    }
+
+    /**
+     * @return the preference this handle gives access to
+     */
+    public TcPreference getPreference() {
+        return preference;
+    }
+
+    /**
+     * Parses the value of the preference, returning the default value if the preference isn't set or is invalid.
+     *
+     * @param value the value of the preference, <code>null</code> if it isn't set
+     * @return the parsed value
+     */
+    abstract Object parse(String value);
+
+    static List<TcPreferenceHandle> getHandles() {
+        synchronized (HANDLES) {
+            return Collections.unmodifiableList(new ArrayList<>(HANDLES));
+        }
+    }
+
+    static TcPreferenceHandle getHandle(String name) {
+        synchronized (HANDLES) {
+            return HANDLES_BY_NAME.get(name);
+        }
+    }
+
+
+    /**
+     * A boolean preference.
+     */
+    public static final class BooleanHandle extends TcPreferenceHandle {
+        private final Boolean defaultValue;
+
+        BooleanHandle(TcPreference preference, boolean defaultValue) {
+            super(preference);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the current value of the preference
+         */
+        public boolean get() {
+            return (Boolean)TcConfigurations.getPreferencesSnapshot()[index];
+        }
+
+        @Override
+        Object parse(String value) {
+            return value == null ? defaultValue : Boolean.valueOf("true".equals(value));
+        }
+    }
+
+
+    /**
+     * An integer preference.
+     */
+    public static final class IntHandle extends TcPreferenceHandle {
+        private final Integer defaultValue;
+
+        IntHandle(TcPreference preference, int defaultValue) {
+            super(preference);
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * @return the current value of the preference
+         */
+        public int get() {
+            return (Integer)TcConfigurations.getPreferencesSnapshot()[index];
+        }
+
+        @Override
+        Object parse(String value) {
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+    }
+}
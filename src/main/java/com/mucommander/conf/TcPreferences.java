@@ -21,6 +21,8 @@ package com.mucommander.conf;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.mucommander.RuntimeConstants;
 import com.mucommander.commons.conf.Configuration;
@@ -331,6 +333,11 @@ public class TcPreferences implements TcPreferencesAPI {
 	/** Quick search timeout in ms. No timeout if &lt;= 0 */
 	public static final int DEFAULT_QUICK_SEARCH_TIMEOUT    = 5000;
 
+	/** Controls whether quick search also matches names that contain the typed characters in order, not only as a substring. */
+	static final String QUICK_SEARCH_FUZZY                  = QUICK_SEARCH_SECTION + '.' + "fuzzy";
+	/** Default value for 'Fuzzy quick search' option. */
+	public static final boolean DEFAULT_QUICK_SEARCH_FUZZY  = false;
+
 
 
 
@@ -434,12 +441,42 @@ public class TcPreferences implements TcPreferencesAPI {
 	
 	private static final String ROOT_ELEMENT = "preferences";
 
+	// - Typed handles -------------------------------------------------------
+	// -----------------------------------------------------------------------
+	/** Handle of {@link #SHOW_QUICK_SEARCH_MATCHES_FIRST}, read when sorting and on every key press. */
+	public static final TcPreferenceHandle.BooleanHandle SHOW_QUICK_SEARCH_MATCHES_FIRST_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.SHOW_QUICK_SEARCH_MATCHES_FIRST, DEFAULT_SHOW_QUICK_SEARCH_MATCHES_FIRST);
+	/** Handle of {@link #SHOW_FOLDERS_FIRST}. */
+	public static final TcPreferenceHandle.BooleanHandle SHOW_FOLDERS_FIRST_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.SHOW_FOLDERS_FIRST, DEFAULT_SHOW_FOLDERS_FIRST);
+	/** Handle of {@link #FOLDERS_ALWAYS_ALPHABETICAL}. */
+	public static final TcPreferenceHandle.BooleanHandle FOLDERS_ALWAYS_ALPHABETICAL_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.FOLDERS_ALWAYS_ALPHABETICAL, DEFAULT_FOLDERS_ALWAYS_ALPHABETICAL);
+	/** Handle of {@link #DISPLAY_COMPACT_FILE_SIZE}. */
+	public static final TcPreferenceHandle.BooleanHandle DISPLAY_COMPACT_FILE_SIZE_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.DISPLAY_COMPACT_FILE_SIZE, DEFAULT_DISPLAY_COMPACT_FILE_SIZE);
+	/** Handle of {@link #CD_FOLLOWS_SYMLINKS}. */
+	public static final TcPreferenceHandle.BooleanHandle CD_FOLLOWS_SYMLINKS_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.CD_FOLLOWS_SYMLINKS, DEFAULT_CD_FOLLOWS_SYMLINKS);
+	/** Handle of {@link #QUICK_SEARCH_TIMEOUT}. */
+	public static final TcPreferenceHandle.IntHandle QUICK_SEARCH_TIMEOUT_VALUE =
+			new TcPreferenceHandle.IntHandle(TcPreference.QUICK_SEARCH_TIMEOUT, DEFAULT_QUICK_SEARCH_TIMEOUT);
+	/** Handle of {@link #QUICK_SEARCH_FUZZY}. */
+	public static final TcPreferenceHandle.BooleanHandle QUICK_SEARCH_FUZZY_VALUE =
+			new TcPreferenceHandle.BooleanHandle(TcPreference.QUICK_SEARCH_FUZZY, DEFAULT_QUICK_SEARCH_FUZZY);
+
 	// - Instance fields -----------------------------------------------------
 	// -----------------------------------------------------------------------
 	private Configuration configuration;
 	
 	private String configurationVersion;
 
+	/** Parsed values of the typed handles, replaced as a whole when one of them changes */
+	private final AtomicReference<Object[]> snapshot = new AtomicReference<>();
+
+	/** Keeps the snapshot up to date when the configuration is modified directly (the listeners are weakly referenced) */
+	private final ConfigurationListener snapshotUpdater = event -> updateSnapshot(event.getVariable(), event.getValue());
+
 	/**
 	 * Prevents instantiation of this class from outside this package.
 	 */
@@ -448,6 +485,8 @@ public class TcPreferences implements TcPreferencesAPI {
 
         configuration = new Configuration(muPreferencesFile, new VersionedXmlConfigurationReaderFactory(),
 				new VersionedXmlConfigurationWriterFactory(ROOT_ELEMENT));
+		configuration.addConfigurationListener(snapshotUpdater);
+		refreshSnapshot();
 	}
 
 	// - Configuration reading / writing -------------------------------------
@@ -479,6 +518,9 @@ public class TcPreferences implements TcPreferencesAPI {
 				configuration.setVariable(AUTODETECT_SHELL_ENCODING, false);
 			}
 		}
+
+		// Values loaded from the file don't trigger events
+		refreshSnapshot();
 	}
 
 	/**
@@ -501,7 +543,9 @@ public class TcPreferences implements TcPreferencesAPI {
 				conf.removeVariable(USE_SCREEN_MENU_BAR);
 			}
 
+			conf.addConfigurationListener(snapshotUpdater);
 			configuration = conf;
+			refreshSnapshot();
 		}
 
 		configuration.write();
@@ -543,18 +587,72 @@ public class TcPreferences implements TcPreferencesAPI {
 	boolean isFileExists() throws IOException {
 		return configuration.getSource().isExists();
 	}
+
+	// - Snapshot of the typed handles -----------------------------------------
+	// -------------------------------------------------------------------------
+	/**
+	 * Returns the parsed values of the typed handles, indexed by handle. The array must not be modified.
+	 * @return the current snapshot.
+	 */
+	Object[] getSnapshot() {
+		return snapshot.get();
+	}
+
+	/**
+	 * Rebuilds the snapshot from the configuration.
+	 */
+	private void refreshSnapshot() {
+		List<TcPreferenceHandle> handles = TcPreferenceHandle.getHandles();
+		Object[] values = new Object[handles.size()];
+		for (TcPreferenceHandle handle : handles) {
+			values[handle.index] = handle.parse(configuration.getVariable(handle.getPreference().toString()));
+		}
+		snapshot.set(values);
+	}
+
+	/**
+	 * Publishes a new snapshot if the given variable has a typed handle and its value has changed.
+	 * @param name  name of the variable.
+	 * @param value new value of the variable, <code>null</code> if it has been removed.
+	 */
+	private void updateSnapshot(String name, String value) {
+		TcPreferenceHandle handle = TcPreferenceHandle.getHandle(name);
+		if (handle == null) {
+			return;
+		}
+		Object parsed = handle.parse(value);
+		Object[] current;
+		Object[] updated;
+		do {
+			current = snapshot.get();
+			if (Objects.equals(current[handle.index], parsed)) {
+				return;
+			}
+			updated = current.clone();
+			updated[handle.index] = parsed;
+		} while (!snapshot.compareAndSet(current, updated));
+	}
+
+	/**
+	 * Sets a variable, updating the snapshot first so that the configuration listeners already see the new value
+	 * through the typed handles.
+	 */
+	private boolean set(TcPreference preference, String value) {
+		updateSnapshot(preference.toString(), value);
+		return configuration.setVariable(preference.toString(), value);
+	}
 	
 	/////////////////////////////////////
 	// MuPreferencesAPI implementation //
 	/////////////////////////////////////
 	@Override
 	public boolean setVariable(TcPreference preference, String value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, value);
 	}
 
 	@Override
 	public boolean setVariable(TcPreference preference, int value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, Integer.toString(value));
 	}
 
 	@Override
@@ -564,22 +662,22 @@ public class TcPreferences implements TcPreferencesAPI {
 
 	@Override
 	public boolean setVariable(TcPreference preference, float value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, Float.toString(value));
 	}
 
 	@Override
 	public boolean setVariable(TcPreference preference, boolean value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, Boolean.toString(value));
 	}
 
 	@Override
 	public boolean setVariable(TcPreference preference, long value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, Long.toString(value));
 	}
 
 	@Override
 	public boolean setVariable(TcPreference preference, double value) {
-		return configuration.setVariable(preference.toString(), value);
+		return set(preference, Double.toString(value));
 	}
 
 	@Override
@@ -24,8 +24,6 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 import com.mucommander.ui.dialog.InformationDialog;
 import com.mucommander.ui.dialog.QuestionDialog;
@@ -977,7 +975,7 @@ public class LocationChanger {
 	}
 
     private boolean followsSymlinkEnabled() {
-        return TcConfigurations.getPreferences().getVariable(TcPreference.CD_FOLLOWS_SYMLINKS, TcPreferences.DEFAULT_CD_FOLLOWS_SYMLINKS);
+        return TcPreferences.CD_FOLLOWS_SYMLINKS_VALUE.get();
     }
 
     /* TODO branch
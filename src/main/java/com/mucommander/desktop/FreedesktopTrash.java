@@ -0,0 +1,597 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.desktop;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.job.DeleteJob;
+import com.mucommander.process.ProcessRunner;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.ui.main.WindowManager;
+import com.mucommander.utils.text.Translator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A trash following the freedesktop specification (see http://freedesktop.org/wiki/Specifications/trash-spec), used
+ * by GNOME and Xfce.
+ *
+ * <p>Files located on the volume of the home trash are moved to the home trash. Files located on other volumes are
+ * moved to the trash at the top of their volume, <code>$topdir/.Trash/$uid</code> if the administrator has created
+ * a sticky <code>.Trash</code> folder, <code>$topdir/.Trash-$uid</code> otherwise, so that moving a file to the trash
+ * is always a rename on the same device.
+ *
+ * <p>The files of a batch are grouped by trash folder: the names already used in a trash folder are listed once per
+ * batch, and each name is reserved by creating its <code>.trashinfo</code> file atomically, as required by the
+ * specification. The number of items in each trash folder is counted once and then maintained as files are moved,
+ * it is only counted again when the <code>info</code> folder has been modified by another application.
+ *
+ * @author Oleg Trifonov
+ */
+public abstract class FreedesktopTrash extends QueuedTrash {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FreedesktopTrash.class);
+
+    private final static String INFO_EXTENSION = ".trashinfo";
+
+    /** Formats dates in trash info files */
+    private final static SimpleDateFormat INFO_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+    /** Identifier of the current user, <code>-1</code> if unknown in which case only the home trash is used */
+    private final static long UID = getUid();
+
+    /** Trash folders used so far, by path, shared by all the instances so that their item counts are kept */
+    private final static Map<String, TrashFolder> TRASH_FOLDERS = new ConcurrentHashMap<>();
+
+    /** Trash folder of each volume other than the one of the home trash, by volume path */
+    private final static Map<String, Optional<TrashFolder>> VOLUME_TRASH_FOLDERS = new ConcurrentHashMap<>();
+
+    /** User trash folder, <code>null</code> if there is no usable trash folder */
+    private final TrashFolder homeTrash;
+
+    /** Volume on which the home trash resides */
+    private final AbstractFile homeTrashVolume;
+
+
+    /**
+     * A trash folder with its <code>files</code> and <code>info</code> subfolders.
+     */
+    private static class TrashFolder {
+        private final AbstractFile folder;
+        private final AbstractFile filesFolder;
+        private final AbstractFile infoFolder;
+        /** Top directory of the volume for a volume trash, <code>null</code> for the home trash */
+        private final Path topDir;
+
+        /** Number of items in the trash, <code>-1</code> if it must be counted */
+        private int itemCount = -1;
+        /** Date of the info folder when the items were last counted or added */
+        private long infoFolderDate;
+
+        TrashFolder(AbstractFile folder, Path topDir) {
+            this.folder = folder;
+            this.filesFolder = folder.getChildSilently("files");
+            this.infoFolder = folder.getChildSilently("info");
+            this.topDir = topDir;
+        }
+
+        private File getInfoFolderFile() {
+            return new File(infoFolder.getAbsolutePath());
+        }
+
+        /**
+         * Creates the trash folder and its subfolders if they don't exist yet.
+         */
+        void create() throws IOException {
+            if (!folder.exists()) {
+                folder.mkdirs();
+                // Only the owner may see the trashed files
+                File file = new File(folder.getAbsolutePath());
+                file.setReadable(false, false);
+                file.setWritable(false, false);
+                file.setExecutable(false, false);
+                file.setReadable(true, true);
+                file.setWritable(true, true);
+                file.setExecutable(true, true);
+            }
+            if (!filesFolder.exists()) {
+                filesFolder.mkdir();
+            }
+            if (!infoFolder.exists()) {
+                infoFolder.mkdir();
+            }
+        }
+
+        /**
+         * Returns the names in use in this trash: names of the trashed files and of the info files.
+         */
+        Set<String> getUsedNames() {
+            Set<String> names = new HashSet<>();
+            String[] files = new File(filesFolder.getAbsolutePath()).list();
+            if (files != null) {
+                Collections.addAll(names, files);
+            }
+            String[] infos = getInfoFolderFile().list();
+            if (infos != null) {
+                for (String info : infos) {
+                    if (info.endsWith(INFO_EXTENSION)) {
+                        names.add(info.substring(0, info.length() - INFO_EXTENSION.length()));
+                    }
+                }
+            }
+            return names;
+        }
+
+        synchronized int getItemCount() {
+            File infoFolderFile = getInfoFolderFile();
+            long date = infoFolderFile.lastModified();
+            if (itemCount < 0 || date != infoFolderDate) {
+                String[] infos = infoFolderFile.list();
+                if (infos == null) {
+                    return -1;
+                }
+                int count = 0;
+                for (String info : infos) {
+                    if (info.endsWith(INFO_EXTENSION)) {
+                        count++;
+                    }
+                }
+                itemCount = count;
+                infoFolderDate = date;
+            }
+            return itemCount;
+        }
+
+        synchronized void itemsAdded(int count) {
+            if (itemCount >= 0) {
+                itemCount += count;
+                infoFolderDate = getInfoFolderFile().lastModified();
+            }
+        }
+
+        synchronized void invalidate() {
+            itemCount = -1;
+        }
+    }
+
+
+    /**
+     * Creates a trash that uses the given folder as the home trash.
+     *
+     * @param homeTrashFolder the user trash folder, <code>null</code> if there is no usable trash folder
+     */
+    protected FreedesktopTrash(AbstractFile homeTrashFolder) {
+        if (homeTrashFolder != null) {
+            homeTrash = getTrashFolder(homeTrashFolder, null);
+            homeTrashVolume = homeTrashFolder.getVolume();
+        } else {
+            homeTrash = null;
+            homeTrashVolume = null;
+        }
+    }
+
+    /**
+     * Returns the command that opens the trash in the file manager of the desktop.
+     *
+     * @return the command that opens the trash
+     */
+    protected abstract String getRevealCommand();
+
+
+    /**
+     * Looks for an existing user trash folder in the given locations of the user home and returns the first one found.
+     * If none was found, creates the trash folder in the first location and returns it.
+     *
+     * @param locations locations relative to the user home, in order of preference
+     * @return the user trash folder, <code>null</code> if no user trash folder could be found or created
+     */
+    protected static AbstractFile findHomeTrashFolder(String... locations) {
+        AbstractFile userHome = LocalFile.getUserHome();
+        for (String location : locations) {
+            AbstractFile trashDir = userHome.getChildSilently(location);
+            if (isTrashFolder(trashDir)) {
+                return trashDir;
+            }
+        }
+
+        // No existing user trash was found: create the folder, only if it doesn't already exist.
+        AbstractFile trashDir = userHome.getChildSilently(locations[0]);
+        if (trashDir != null && !trashDir.exists()) {
+            try {
+                trashDir.mkdirs();
+                trashDir.getChild("info").mkdir();
+                trashDir.getChild("files").mkdir();
+                return trashDir;
+            } catch (IOException e) {
+                // Will return null
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return <code>true</code> if the specified file is a trash folder, i.e. is a directory and has two subdirectories
+     * named "info" and "files".
+     *
+     * @param file the file to test
+     * @return <code>true</code> if the specified file is a trash folder
+     */
+    private static boolean isTrashFolder(AbstractFile file) {
+        try {
+            return file != null && file.isDirectory() && file.getChild("info").isDirectory() && file.getChild("files").isDirectory();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long getUid() {
+        try {
+            return new com.sun.security.auth.module.UnixSystem().getUid();
+        } catch (Throwable e) {
+            LOGGER.debug("Could not get the user id, volume trash folders are disabled", e);
+            return -1;
+        }
+    }
+
+    private static TrashFolder getTrashFolder(AbstractFile folder, Path topDir) {
+        return TRASH_FOLDERS.computeIfAbsent(folder.getAbsolutePath(false), path -> new TrashFolder(folder, topDir));
+    }
+
+
+    /**
+     * Returns the trash folder in which the given file would be moved, <code>null</code> if the file cannot be moved
+     * to the trash.
+     */
+    private TrashFolder getTrashFolder(AbstractFile file) {
+        if (homeTrash == null || !(file.getTopAncestor() instanceof LocalFile)) {
+            return null;
+        }
+        AbstractFile volume = file.getVolume();
+        if (volume.equals(homeTrashVolume)) {
+            return homeTrash;
+        }
+        return VOLUME_TRASH_FOLDERS.computeIfAbsent(volume.getAbsolutePath(false),
+                path -> Optional.ofNullable(findVolumeTrashFolder(volume))).orElse(null);
+    }
+
+    /**
+     * Returns the trash folder of a volume as defined by the specification, <code>null</code> if the volume has no
+     * usable trash folder and none can be created. The folder may not exist yet, it is created by the first move.
+     */
+    private static TrashFolder findVolumeTrashFolder(AbstractFile volume) {
+        if (UID < 0) {
+            return null;
+        }
+        Path topDir = new File(volume.getAbsolutePath()).toPath();
+        try {
+            // $topdir/.Trash/$uid, if the administrator has created a sticky .Trash folder
+            Path adminTrash = topDir.resolve(".Trash");
+            if (Files.isDirectory(adminTrash, LinkOption.NOFOLLOW_LINKS)) {
+                Object mode = Files.getAttribute(adminTrash, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+                if (mode instanceof Integer && ((Integer)mode & 01000) != 0) {
+                    Path userTrash = adminTrash.resolve(Long.toString(UID));
+                    if (!Files.isSymbolicLink(userTrash)) {
+                        return getTrashFolder(FileFactory.getFile(userTrash.toString()), topDir);
+                    }
+                }
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            LOGGER.debug("Could not check the trash folder of " + topDir, e);
+        }
+
+        // $topdir/.Trash-$uid
+        Path userTrash = topDir.resolve(".Trash-" + UID);
+        if (Files.isDirectory(userTrash, LinkOption.NOFOLLOW_LINKS) || (!Files.exists(userTrash, LinkOption.NOFOLLOW_LINKS) && Files.isWritable(topDir))) {
+            AbstractFile folder = FileFactory.getFile(userTrash.toString());
+            if (folder != null) {
+                return getTrashFolder(folder, topDir);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the trash folders used so far that exist.
+     */
+    private List<TrashFolder> getExistingTrashFolders() {
+        List<TrashFolder> result = new ArrayList<>();
+        for (TrashFolder trashFolder : TRASH_FOLDERS.values()) {
+            if (trashFolder.folder.exists()) {
+                result.add(trashFolder);
+            }
+        }
+        return result;
+    }
+
+
+    //////////////////////////////////
+    // AbstractTrash implementation //
+    //////////////////////////////////
+
+    /**
+     * Implementation notes: returns <code>true</code> only for local files that are not archive entries and that
+     * reside on the volume of the home trash or on a volume that has or may have a trash folder.
+     */
+    @Override
+    public boolean canMoveToTrash(AbstractFile file) {
+        return getTrashFolder(file) != null;
+    }
+
+    @Override
+    public boolean canEmpty() {
+        return homeTrash != null;
+    }
+
+    /**
+     * Empties the home trash and the volume trash folders used so far.
+     *
+     * @return True if everything went well
+     */
+    @Override
+    public boolean empty() {
+        // Abort if there is no usable trash folder
+        if (homeTrash == null) {
+            return false;
+        }
+
+        for (TrashFolder trashFolder : getExistingTrashFolders()) {
+            FileSet filesToDelete = new FileSet(trashFolder.folder);
+            try {
+                // delete real files
+                filesToDelete.addAll(trashFolder.filesFolder.ls());
+                // delete spec files
+                filesToDelete.addAll(trashFolder.infoFolder.ls());
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to list files", ex);
+                return false;
+            }
+            trashFolder.invalidate();
+
+            if (filesToDelete.size() > 0) {
+                // Starts deleting files
+                MainFrame mainFrame = WindowManager.getCurrentMainFrame();
+                ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("delete_dialog.deleting"));
+                DeleteJob deleteJob = new DeleteJob(progressDialog, mainFrame, filesToDelete, false);
+                progressDialog.start(deleteJob);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isTrashFile(AbstractFile file) {
+        if (homeTrash == null || !(file.getTopAncestor() instanceof LocalFile)) {
+            return false;
+        }
+        for (TrashFolder trashFolder : TRASH_FOLDERS.values()) {
+            if (trashFolder.folder.isParentOf(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of items in the home trash and in the volume trash folders used so far, i.e. the number of
+     * files in their <code>info</code> folder.
+     *
+     * @return Count of files in trash
+     */
+    @Override
+    public int getItemCount() {
+        // Abort if there is no usable trash folder
+        if (homeTrash == null) {
+            return -1;
+        }
+        int count = homeTrash.getItemCount();
+        if (count < 0) {
+            // can't access trash folder
+            return -1;
+        }
+        for (TrashFolder trashFolder : getExistingTrashFolders()) {
+            if (trashFolder != homeTrash) {
+                count += Math.max(0, trashFolder.getItemCount());
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean canOpen() {
+        return homeTrash != null;
+    }
+
+    /**
+     * Opens the trash in the file manager of the desktop.
+     */
+    @Override
+    public void open() {
+        String command = getRevealCommand();
+        try {
+            ProcessRunner.execute(command).waitFor();
+        } catch (Exception e) {    // IOException, InterruptedException
+            LOGGER.debug("Caught an exception running command \"" + command + "\"", e);
+        }
+    }
+
+
+    ////////////////////////////////
+    // QueuedTrash implementation //
+    ////////////////////////////////
+
+    /**
+     * Moves the files to their trash folder, grouping them by trash folder.
+     *
+     * @param queuedFiles Collection of files to the trash
+     * @return <code>true</code> if movement has been successful or <code>false</code> otherwise
+     */
+    @Override
+    protected boolean moveToTrash(List<AbstractFile> queuedFiles) {
+        boolean retVal = true;     // overall return value (if everything went OK or at least one file wasn't moved properly
+
+        Map<TrashFolder, List<AbstractFile>> batches = new LinkedHashMap<>();
+        for (AbstractFile file : queuedFiles) {
+            TrashFolder trashFolder = getTrashFolder(file);
+            if (trashFolder == null) {
+                LOGGER.debug("No trash folder for " + file);
+                retVal = false;
+                continue;
+            }
+            batches.computeIfAbsent(trashFolder, k -> new ArrayList<>()).add(file);
+        }
+
+        for (Map.Entry<TrashFolder, List<AbstractFile>> batch : batches.entrySet()) {
+            if (!moveToTrash(batch.getKey(), batch.getValue())) {
+                retVal = false;
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Moves a batch of files to the given trash folder.
+     */
+    private boolean moveToTrash(TrashFolder trashFolder, List<AbstractFile> files) {
+        try {
+            trashFolder.create();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to create trash folder " + trashFolder.folder, e);
+            return false;
+        }
+
+        boolean retVal = true;
+        int moved = 0;
+        Set<String> usedNames = trashFolder.getUsedNames();
+        for (AbstractFile fileToDelete : files) {
+            String fileInfoContent = getFileInfoContent(fileToDelete, trashFolder);
+
+            // Reserve a name by creating its info file, another application may have taken a name in the meantime
+            String trashFileName;
+            Path infoPath;
+            try {
+                while (true) {
+                    trashFileName = getUniqueFilename(fileToDelete, usedNames);
+                    usedNames.add(trashFileName);
+                    infoPath = new File(trashFolder.infoFolder.getAbsolutePath(), trashFileName + INFO_EXTENSION).toPath();
+                    try (OutputStream out = Files.newOutputStream(infoPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                        out.write(fileInfoContent.getBytes(StandardCharsets.UTF_8));
+                        break;
+                    } catch (FileAlreadyExistsException e) {
+                        // Try the next name
+                    }
+                }
+            } catch (IOException ex) {
+                retVal = false;
+                LOGGER.debug("Failed to create trash info file for " + fileToDelete.getName(), ex);
+                // continue with other file (do not move file, because info file wasn't properly created)
+                continue;
+            }
+
+            try {
+                // rename original file
+                fileToDelete.renameTo(trashFolder.filesFolder.getChild(trashFileName));
+                moved++;
+            } catch (IOException ex) {
+                try {
+                    // remove info file
+                    Files.deleteIfExists(infoPath);
+                } catch (IOException ex1) {
+                    // simply ignore
+                }
+                retVal = false;
+                LOGGER.debug("Failed to move file to trash: " + trashFileName, ex);
+            }
+        }
+        trashFolder.itemsAdded(moved);
+        return retVal;
+    }
+
+    /**
+     * Make a content of .trashinfo file. The path is absolute in the home trash and relative to the top directory of
+     * the volume in a volume trash.
+     *
+     * @param file File for which the content is built
+     * @param trashFolder the trash folder the file is moved to
+     * @return Final content
+     */
+    private static String getFileInfoContent(AbstractFile file, TrashFolder trashFolder) {
+        String path = file.getAbsolutePath();
+        if (trashFolder.topDir != null) {
+            path = trashFolder.topDir.relativize(new File(path).toPath()).toString();
+        }
+        synchronized(INFO_DATE_FORMAT) {        // SimpleDateFormat is not thread safe
+            return "[Trash Info]\n" +
+                    "Path=" + path + "\n" +
+                    "DeletionDate=" + INFO_DATE_FORMAT.format(new Date());
+        }
+    }
+
+    /**
+     * It is possible to add several files with same name to the Trash. These files are distinguished
+     * by _N appended to the name, where _N is rising int number. <br/>
+     * This method finds the first <code>filename_N.ext</code> that is not in the given set of used names.
+     *
+     * @param file File to be deleted
+     * @param usedNames names in use in the trash folder
+     * @return Suitable filename in trash (without .trashinfo extension)
+     */
+    private static String getUniqueFilename(AbstractFile file, Set<String> usedNames) {
+        // try if no previous file in trash exists
+        if (!usedNames.contains(file.getName())) {
+            return file.getName();
+        }
+
+        String rawName = file.getNameWithoutExtension();
+        String extension = file.getExtension();
+
+        // find first empty filename in format filename_N.ext
+        int count = 1;
+        while (true) {
+            String filename = rawName + "_" + count++;
+            if (extension != null) {
+                filename += "." + extension;
+            }
+            if (!usedNames.contains(filename)) {
+                return filename;
+            }
+        }
+    }
+}
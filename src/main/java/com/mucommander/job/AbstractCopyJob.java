@@ -112,6 +112,7 @@ public abstract class AbstractCopyJob extends TransferFileJob {
      *  <li>null if a user skipped the file
      *  <li>destFile if a user resumed the transfer (and sets append flag)
      *  <li>destFile if a user has chosen to overwrite the file
+     *  <li>destFile if a user has chosen to update the changed blocks of the file (and sets updateChangedBlocks flag)
      *  <li>new file if a user renamed the file
      *  </ul>
      * @param file a source file
@@ -122,6 +123,8 @@ public abstract class AbstractCopyJob extends TransferFileJob {
      */
     protected AbstractFile checkForCollision(AbstractFile file, AbstractFile destFolder, AbstractFile destFile, boolean allowCaseVariation) {
         append = false;
+        updateChangedBlocks = false;
+        resumeEntry = null;
         while (true) {
             // Check for file collisions (file exists in the destination, destination subfolder of source, ...)
             // if a default action hasn't been specified
@@ -137,6 +140,19 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                     break;
             }
             
+            // The destination is what remains of an interrupted transfer of this file: resume it without asking,
+            // unless the user has already chosen another action for all the files. If the destination was modified
+            // since, it is not ours anymore and is handled as any other existing file.
+            if (collision == FileCollisionChecker.DESTINATION_FILE_ALREADY_EXISTS
+                    && (defaultFileExistsAction == FileCollisionDialog.ASK_ACTION || defaultFileExistsAction == FileCollisionDialog.RESUME_ACTION)
+                    && TransferJournal.getInstance().getResumableEntry(file, destFile) != null) {
+                resumeEntry = verifyResumableEntry(file, destFile);
+                if (resumeEntry != null) {
+                    append = true;
+                    break;
+                }
+            }
+
             // Handle collision, asking the user what to do or using a default action to resolve the collision 
             if (collision != FileCollisionChecker.NO_COLLISION) {
                 int choice;
@@ -162,9 +178,21 @@ public abstract class AbstractCopyJob extends TransferFileJob {
                 }
                 // Append to file (resume file copy)
                 else if (choice == FileCollisionDialog.RESUME_ACTION) {
+                    if (TransferJournal.getInstance().getResumableEntry(file, destFile) != null) {
+                        resumeEntry = verifyResumableEntry(file, destFile);
+                        // The destination was modified since the transfer was interrupted, ask again
+                        if (resumeEntry == null) {
+                            continue;
+                        }
+                    }
                     append = true;
                     break;
                 }
+                // Update the destination in place, rewriting only the blocks that changed
+                else if (choice == FileCollisionDialog.UPDATE_CHANGED_BLOCKS_ACTION) {
+                    updateChangedBlocks = true;
+                    break;
+                }
                 // Overwrite file
                 else if (choice== FileCollisionDialog.OVERWRITE_ACTION) {
                     // Do nothing, simply continue
@@ -94,6 +94,27 @@ public class ArchiveJob extends TransferFileJob {
             return false;
         }
 
+        boolean success = addEntry(file);
+
+        // Archivers that don't support streams write the whole archive once all the entries have been added
+        if (!archiver.supportsStream() && getCurrentFileIndex() == getNbFiles() - 1 && getState() != State.INTERRUPTED) {
+            return writeArchive() && success;
+        }
+        return success;
+    }
+
+    /**
+     * Adds the given file to the archive, recursing on the contents of directories. Archivers that don't support
+     * streams only register the files, their contents are written by {@link #writeArchive()}.
+     *
+     * @param file the file to add
+     * @return <code>true</code> if the file and all its contents have been added
+     */
+    private boolean addEntry(AbstractFile file) {
+        if (getState() == State.INTERRUPTED) {
+            return false;
+        }
+
         String filePath = file.getAbsolutePath(false);
         String entryRelativePath = filePath.substring(baseFolderPath.length()+1);
 
@@ -110,12 +131,15 @@ public class ArchiveJob extends TransferFileJob {
                     for (int i=0; i<subFiles.length && getState() != State.INTERRUPTED; i++) {
                         // Notify job that we're starting to process this file (needed for recursive calls to processFile)
                         nextFile(subFiles[i]);
-                        if (!processFile(subFiles[i], null)) {
+                        if (!addEntry(subFiles[i])) {
                             folderComplete = false;
                         }
                     }
 					
                     return folderComplete;
+                } else if (!archiver.supportsStream()) {
+                    archiver.createEntry(entryRelativePath, file);
+                    return true;
                 } else {
                     InputStream in = setCurrentInputStream(file.getInputStream());
                     // Synchronize this block to ensure that Archiver.close() is not closed while data is still being
@@ -152,6 +176,41 @@ public class ArchiveJob extends TransferFileJob {
         } while(true);
     }
 
+    /**
+     * Writes the archive of an archiver that doesn't support streams. The files are read through the job, so that
+     * the progress, pauses and throughput limit apply to them as to the files copied into other archives.
+     *
+     * @return <code>true</code> if the archive has been written
+     */
+    private boolean writeArchive() {
+        archiver.setEntrySource(file -> {
+            if (getState() == State.INTERRUPTED) {
+                throw new IOException("Job interrupted");
+            }
+            nextFile(file);
+            return setCurrentInputStream(file.getInputStream());
+        });
+        try {
+            synchronized(ioLock) {
+                archiver.postProcess();
+            }
+            return true;
+        } catch (Exception e) {
+            if (getState() == State.INTERRUPTED) {
+                return false;
+            }
+            LOGGER.debug("Caught IOException", e);
+
+            // The archive is written in a single pass, it can't be resumed
+            showErrorDialog(Translator.get("pack_dialog.error_title"),
+                            Translator.get("cannot_write_file", destFile.getName()),
+                            new String[] {CANCEL_TEXT},
+                            new int[]  {CANCEL_ACTION}
+                            );
+            return false;
+        }
+    }
+
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
         // This job modifies the folder where the archive is
@@ -19,20 +19,49 @@
 package com.mucommander.job;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This job renames a group of files to new names defined by Batch-Rename Dialog.
+ *
+ * <p>Local files are renamed concurrently in the background as soon as the job starts, as long as their new name is
+ * not taken. The files that could not be renamed this way (the new name exists, an I/O error occurred) go through
+ * the regular {@link MoveJob} process when their turn comes, which takes care of collisions and errors.
+ *
  * @author Mariusz Jakubowski
  */
 public class BatchRenameJob extends MoveJob {
+	private static final Logger LOGGER = LoggerFactory.getLogger(BatchRenameJob.class);
+
+    /** Number of threads renaming local files */
+    private static final int NB_THREADS = 4;
+
     private List<String> newNames;
 
+    /** Renames started in the background, in the order of the files, <code>null</code> if the files are renamed sequentially */
+    private List<Future<Boolean>> concurrentRenames;
+
+    private ExecutorService executor;
+
     public BatchRenameJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, List<String> newNames) {
         super(progressDialog, mainFrame, files, files.getBaseFolder(), null, FileCollisionDialog.ASK_ACTION, true);
         this.newNames = newNames;
@@ -43,10 +72,107 @@ public class BatchRenameJob extends MoveJob {
     // FileJob implementation //
     ////////////////////////////
 
+    @Override
+    protected void jobStarted() {
+        super.jobStarted();
+
+        if (files.size() > 1 && isConcurrentRenamePossible()) {
+            executor = Executors.newFixedThreadPool(NB_THREADS, r -> {
+                Thread thread = new Thread(r, "BatchRenameJob");
+                thread.setDaemon(true);
+                return thread;
+            });
+            concurrentRenames = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                AbstractFile file = files.elementAt(i);
+                String name = newNames.get(i);
+                concurrentRenames.add(executor.submit(() -> renameLocalFile(file, name)));
+            }
+            executor.shutdown();
+        }
+    }
+
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
-        this.newName = newNames.get(getCurrentFileIndex());
+        int index = getCurrentFileIndex();
+        this.newName = newNames.get(index);
+        if (concurrentRenames != null && isRenamed(concurrentRenames.get(index))) {
+            return true;
+        }
         return super.processFile(file, recurseParams);
     }
 
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Returns <code>true</code> if all the files are local files that are not inside an archive, and their new names
+     * are simple names that don't differ from the current ones by case only: case-insensitive filesystems consider
+     * such a name taken and the regular process handles them. The new names must also be distinct regardless of case,
+     * otherwise two concurrent renames could both find the name free on a case-insensitive filesystem and one of the
+     * files would replace the other.
+     */
+    private boolean isConcurrentRenamePossible() {
+        Set<String> foldedNames = new HashSet<>();
+        for (int i = 0; i < files.size(); i++) {
+            AbstractFile file = files.elementAt(i);
+            if (!(file.getAncestor() instanceof LocalFile) || file.getParentArchive() != null) {
+                return false;
+            }
+            String name = newNames.get(i);
+            if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf(LocalFile.SEPARATOR.charAt(0)) >= 0
+                    || name.equalsIgnoreCase(file.getName())) {
+                return false;
+            }
+            if (!foldedNames.add(name.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renames a local file in its folder, without replacing an existing file.
+     *
+     * @param file the file to rename
+     * @param name the new name
+     * @return <code>true</code> if the file has been renamed
+     */
+    private boolean renameLocalFile(AbstractFile file, String name) {
+        waitWhilePaused();
+        if (getState() == State.INTERRUPTED) {
+            return false;
+        }
+        Path source = Paths.get(file.getAbsolutePath());
+        try {
+            Files.move(source, source.resolveSibling(name));
+            return true;
+        } catch (IOException e) {
+            // The regular process will deal with this file
+            LOGGER.debug("Could not rename " + file + " to " + name, e);
+            return false;
+        }
+    }
+
+    /**
+     * Waits for a rename started in the background and returns <code>true</code> if it succeeded.
+     */
+    private static boolean isRenamed(Future<Boolean> rename) {
+        try {
+            return rename.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
 }
@@ -23,12 +23,22 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.ChecksumEngine;
+import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -58,97 +68,280 @@ import com.mucommander.ui.viewer.ViewerRegistrar;
  * ...
  * </pre>
  *
+ * <p>Several algorithms can be calculated at once, each file being read a single time (see {@link ChecksumEngine}),
+ * and each algorithm having its own checksum file. Small files are read concurrently by a few threads, large files
+ * are read one at a time by the job thread so that they can be paused and skipped. Lines are always written in the
+ * order the files are processed.
+ *
  * @author Maxence Bernard
  */
 public class CalculateChecksumJob extends TransferFileJob {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CalculateChecksumJob.class);
-	
-    /** The checksum file where the checksum of each file is written */
-    private AbstractFile checksumFile;
-    /** The OutputStream of the checksum file */
-    private OutputStream checksumFileOut;
+
+    /** Files up to this size are read concurrently */
+    private static final long CONCURRENT_FILE_MAX_SIZE = 8 * 1024 * 1024;
+
+    /** Number of threads reading small files */
+    private static final int NB_IO_THREADS = 4;
+
+    /** Maximum number of files whose checksum has not been written yet */
+    private static final int MAX_PENDING_FILES = 4 * NB_IO_THREADS;
+
+    /** Parameter passed to {@link #processFile(AbstractFile, Object)} for the files found in folders */
+    private static final Object RECURSE_PARAMS = Boolean.TRUE;
+
+    /** The checksum files where the checksum of each file is written, one per algorithm */
+    private final AbstractFile[] checksumFiles;
+    /** The OutputStream of each checksum file */
+    private final OutputStream[] checksumFileOuts;
 
     /** The path to the base source folder, i.e. the folder which contains all the files this job operates on */
     private String baseSourcePath;
 
-    /** True if the SFV format is used rather than the default 'SUMS' format */
-    private boolean useSfvFormat;
+    /** True for the algorithms that use the SFV format rather than the default 'SUMS' format */
+    private final boolean[] useSfvFormat;
+
+    /** The MessageDigests that serve to calculate the checksums, used as prototypes by the threads */
+    private final MessageDigest[] digests;
 
-    /** The MessageDigest that serves to calculate the checksum */
-    private MessageDigest digest;
+    /** Files whose checksums haven't been written yet, in processing order */
+    private final Deque<PendingChecksums> pendingFiles = new ArrayDeque<>();
+
+    /** Reads small files, created the first time one is encountered */
+    private ExecutorService ioExecutor;
+
+
+    /**
+     * Checksums of a file, being calculated or ready to be written.
+     */
+    private static class PendingChecksums {
+        final AbstractFile file;
+        final String relativePath;
+        final Future<String[]> checksums;
+
+        PendingChecksums(AbstractFile file, String relativePath, Future<String[]> checksums) {
+            this.file = file;
+            this.relativePath = relativePath;
+            this.checksums = checksums;
+        }
+    }
 
 
     public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile checksumFile, MessageDigest digest) {
+        this(progressDialog, mainFrame, files, new AbstractFile[] {checksumFile}, new MessageDigest[] {digest});
+    }
+
+    /**
+     * Creates a job calculating the checksums of several algorithms at once.
+     *
+     * @param progressDialog dialog which shows this job's progress
+     * @param mainFrame mainFrame this job has been triggered by
+     * @param files files which are going to be processed
+     * @param checksumFiles the checksum file of each algorithm
+     * @param digests the MessageDigest of each algorithm
+     */
+    public CalculateChecksumJob(ProgressDialog progressDialog, MainFrame mainFrame, FileSet files, AbstractFile[] checksumFiles, MessageDigest[] digests) {
         super(progressDialog, mainFrame, files);
 
-        this.checksumFile = checksumFile;
-        this.digest = digest;
-        this.useSfvFormat = digest.getAlgorithm().equalsIgnoreCase("CRC32");
+        this.checksumFiles = checksumFiles;
+        this.checksumFileOuts = new OutputStream[checksumFiles.length];
+        this.digests = digests;
+        this.useSfvFormat = new boolean[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            useSfvFormat[i] = digests[i].getAlgorithm().equalsIgnoreCase("CRC32");
+        }
 
         this.baseSourcePath = getBaseSourceFolder().getAbsolutePath(true);
     }
 
 
-    ////////////////////////////////////
-    // TransferFileJob implementation //
-    ////////////////////////////////////
+    /**
+     * Returns new instances of the digests, as MessageDigest instances cannot be shared between threads.
+     */
+    private MessageDigest[] createDigests() throws IOException {
+        MessageDigest[] result = new MessageDigest[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                result[i] = MessageDigest.getInstance(digests[i].getAlgorithm(), digests[i].getProvider());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException(e);
+            }
+        }
+        return result;
+    }
 
-    @Override
-    protected boolean processFile(AbstractFile file, Object recurseParams) {
-        // Skip directories
-        if(file.isDirectory()) {
-            do {		// Loop for retry
-                try {
-                    // for each file in folder...
-                    AbstractFile children[] = file.ls();
-                    for (int i=0; i<children.length && getState() != State.INTERRUPTED; i++) {
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(children[i]);
-                        processFile(children[i], null);
-                    }
-
-                    return true;
-                } catch(IOException e) {
-                    // file.ls() failed
-                    int ret = showErrorDialog(Translator.get("error"), Translator.get("cannot_read_folder", file.getName()));
-                    // Retry loops
-                    if (ret == RETRY_ACTION) {
-                        continue;
-                    }
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
-            } while(true);
+    /**
+     * Calculates the checksums of a file in the job thread, the file can be paused and skipped.
+     */
+    private String[] calculateChecksums(AbstractFile file) throws IOException {
+        MessageDigest[] fileDigests = createDigests();
+        try (InputStream is = setCurrentInputStream(file.getInputStream())) {
+            return ChecksumEngine.calculateChecksums(is, fileDigests);
         }
+    }
 
-        // Calculate the file's checksum
-        do {		// Loop for retry
+    /**
+     * Calculates the checksums of a small file in one of the I/O threads.
+     */
+    private String[] calculateChecksumsConcurrently(AbstractFile file) throws IOException {
+        MessageDigest[] fileDigests = createDigests();
+        try (InputStream is = new CounterInputStream(file.getInputStream(), getTotalByteCounter())) {
+            return ChecksumEngine.calculateChecksums(is, fileDigests);
+        }
+    }
+
+
+    /**
+     * Writes the checksums of the pending files in order, waiting for them to be calculated, until no more than the
+     * given number of files are pending. Files that are already calculated are written as well.
+     *
+     * @param maxPendingFiles the number of files that can be left pending
+     */
+    private void writePendingChecksums(int maxPendingFiles) {
+        while (!pendingFiles.isEmpty() && getState() != State.INTERRUPTED) {
+            PendingChecksums pending = pendingFiles.peek();
+            if (pendingFiles.size() <= maxPendingFiles && !pending.checksums.isDone()) {
+                return;
+            }
+            String[] checksums = null;
+            try {
+                checksums = pending.checksums.get();
+            } catch (InterruptedException e) {
+                interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOGGER.debug("Caught exception", e.getCause());
+                checksums = retryChecksums(pending.file);
+            }
+            pendingFiles.remove();
+            if (checksums != null && !writeChecksums(pending.relativePath, checksums)) {
+                return;
+            }
+        }
+    }
 
+    /**
+     * Asks the user what to do after the checksum of a file couldn't be calculated and calculates it again in the
+     * job thread if asked to.
+     *
+     * @return the checksums, <code>null</code> if the file is skipped
+     */
+    private String[] retryChecksums(AbstractFile file) {
+        do {
+            int ret = showErrorDialog(Translator.get("error"), Translator.get("error_while_transferring", file.getAbsolutePath()));
+            if (ret != RETRY_ACTION) {
+                return null;
+            }
+            getCurrentFileByteCounter().reset();
             try {
-                // Determine the path relative to the base source folder
-                String relativePath = file.getAbsolutePath();
-                relativePath = relativePath.substring(baseSourcePath.length());
-
-                // Resets the digest before use
-                digest.reset();
-                String checksum;
-                try (InputStream is = setCurrentInputStream(file.getInputStream())) {
-                    checksum = AbstractFile.calculateChecksum(is, digest);
+                return calculateChecksums(file);
+            } catch (IOException e) {
+                if (getState() == State.INTERRUPTED || wasCurrentFileSkipped()) {
+                    return null;
                 }
+                LOGGER.debug("Caught IOException", e);
+            }
+        } while(true);
+    }
 
-                // Write a new line in the checksum file, in the appropriate format
+    /**
+     * Writes a new line in each checksum file, in the appropriate format.
+     *
+     * @return false if a checksum file couldn't be written and the job has been interrupted
+     */
+    private boolean writeChecksums(String relativePath, String[] checksums) {
+        int i = 0;
+        try {
+            for (; i < checksums.length; i++) {
                 String line;
-                if (useSfvFormat) {
+                if (useSfvFormat[i]) {
                     // SFV format for CRC32 checksum
-                    line = relativePath + " " + checksum;     // 1 space character
+                    line = relativePath + " " + checksums[i];     // 1 space character
                 } else {
                     // 'SUMS' format for other checksum algorithms
-                    line = checksum + "  " + relativePath;    // 2 space characters, that's how the format is
+                    line = checksums[i] + "  " + relativePath;    // 2 space characters, that's how the format is
                 }
 
                 line += '\n';
 
-                checksumFileOut.write(line.getBytes(StandardCharsets.UTF_8));
+                checksumFileOuts[i].write(line.getBytes(StandardCharsets.UTF_8));
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.debug("Caught IOException", e);
+            showErrorDialog(Translator.get("error"), Translator.get("cannot_write_file", checksumFiles[i].getName()),
+                    new String[] {CANCEL_TEXT}, new int[] {CANCEL_ACTION});
+            interrupt();
+            return false;
+        }
+    }
+
+
+    ////////////////////////////////////
+    // TransferFileJob implementation //
+    ////////////////////////////////////
+
+    @Override
+    protected boolean processFile(AbstractFile file, Object recurseParams) {
+        boolean result = file.isDirectory() ? processFolder(file) : processRegularFile(file);
+
+        // The last file has been submitted, write the checksums of the files that are still pending
+        if (recurseParams == null && getCurrentFileIndex() >= getNbFiles() - 1) {
+            writePendingChecksums(0);
+        }
+        return result;
+    }
+
+    private boolean processFolder(AbstractFile file) {
+        do {		// Loop for retry
+            try {
+                // for each file in folder...
+                AbstractFile children[] = file.ls();
+                for (int i=0; i<children.length && getState() != State.INTERRUPTED; i++) {
+                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
+                    nextFile(children[i]);
+                    processFile(children[i], RECURSE_PARAMS);
+                }
+
+                return true;
+            } catch(IOException e) {
+                // file.ls() failed
+                int ret = showErrorDialog(Translator.get("error"), Translator.get("cannot_read_folder", file.getName()));
+                // Retry loops
+                if (ret == RETRY_ACTION) {
+                    continue;
+                }
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
+    }
+
+    private boolean processRegularFile(AbstractFile file) {
+        // Determine the path relative to the base source folder
+        String relativePath = file.getAbsolutePath();
+        relativePath = relativePath.substring(baseSourcePath.length());
+
+        long size = file.getSize();
+        if (size >= 0 && size <= CONCURRENT_FILE_MAX_SIZE) {
+            if (ioExecutor == null) {
+                ioExecutor = Executors.newFixedThreadPool(NB_IO_THREADS, r -> {
+                    Thread thread = new Thread(r, "CalculateChecksumJob");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            pendingFiles.add(new PendingChecksums(file, relativePath, ioExecutor.submit(() -> calculateChecksumsConcurrently(file))));
+            writePendingChecksums(MAX_PENDING_FILES);
+            return true;
+        }
+
+        // Calculate the file's checksum
+        do {		// Loop for retry
+            try {
+                String[] checksums = calculateChecksums(file);
+                pendingFiles.add(new PendingChecksums(file, relativePath, CompletableFuture.completedFuture(checksums)));
+                writePendingChecksums(MAX_PENDING_FILES);
 
                 return true;
             } catch (IOException e) {
@@ -179,8 +372,13 @@ public class CalculateChecksumJob extends TransferFileJob {
 
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
-        // This job modifies the folder where the checksum file is
-        return folder.equalsCanonical(checksumFile.getParent());     // Note: parent may be null
+        // This job modifies the folders where the checksum files are
+        for (AbstractFile checksumFile : checksumFiles) {
+            if (folder.equalsCanonical(checksumFile.getParent())) {     // Note: parent may be null
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -192,6 +390,21 @@ public class CalculateChecksumJob extends TransferFileJob {
     protected void jobStarted() {
         super.jobStarted();
 
+        for (int i = 0; i < checksumFiles.length; i++) {
+            if (!openChecksumFile(i)) {
+                interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Opens the checksum file with the given index, asking the user what to do if it already exists.
+     *
+     * @return false if the job must be interrupted
+     */
+    private boolean openChecksumFile(int index) {
+        AbstractFile checksumFile = checksumFiles[index];
         // Check for file collisions, i.e. if the file already exists in the destination
         int collision = FileCollisionChecker.checkForCollision(null, checksumFile);
         if (collision != FileCollisionChecker.NO_COLLISION) {
@@ -205,8 +418,7 @@ public class CalculateChecksumJob extends TransferFileJob {
             }
             // 'Cancel' or close dialog interrupts the job
             else {
-                interrupt();
-                return;
+                return false;
             }
         }
 
@@ -214,9 +426,9 @@ public class CalculateChecksumJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an OutputStream on the destination file
-                this.checksumFileOut = checksumFile.getOutputStream();
+                checksumFileOuts[index] = checksumFile.getOutputStream();
 
-                break;
+                return true;
 
             } catch (Exception e) {
                 int choice = showErrorDialog(Translator.get("error"),
@@ -231,8 +443,7 @@ public class CalculateChecksumJob extends TransferFileJob {
                 }
 
                 // 'Cancel' or close dialog interrupts the job
-                interrupt();
-                return;
+                return false;
             }
         } while(true);
     }
@@ -241,20 +452,28 @@ public class CalculateChecksumJob extends TransferFileJob {
     protected void jobCompleted() {
         super.jobCompleted();
 
-        // Open the checksum file in a viewer
-        ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        // Open the checksum files in a viewer
+        for (AbstractFile checksumFile : checksumFiles) {
+            ViewerRegistrar.createViewerFrame(getMainFrame(), checksumFile, IconManager.getImageIcon(checksumFile.getIcon()).getImage());
+        }
     }
 
     @Override
     protected void jobStopped() {
         super.jobStopped();
-        
-        // Close the checksum file's OutputStream
-        if (checksumFileOut != null) {
-            try {
-                checksumFileOut.close();
-            } catch (IOException ignore) {
-                // No need to inform the user
+
+        if (ioExecutor != null) {
+            ioExecutor.shutdownNow();
+        }
+
+        // Close the checksum files' OutputStream
+        for (OutputStream checksumFileOut : checksumFileOuts) {
+            if (checksumFileOut != null) {
+                try {
+                    checksumFileOut.close();
+                } catch (IOException ignore) {
+                    // No need to inform the user
+                }
             }
         }
     }
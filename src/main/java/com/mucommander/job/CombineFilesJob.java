@@ -23,12 +23,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.StreamUtils;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
@@ -44,6 +47,14 @@ public class CombineFilesJob extends AbstractCopyJob {
 	AbstractFile destFile = null;
 	private OutputStream out;
 	private AbstractFile crcFile;
+	/** Parts written in parallel at their offsets when the destination allows it, <code>null</code> otherwise */
+	private ParallelPartTransfer parallelTransfer;
+	/** Offset of the next part in the destination file, used by the parallel transfer */
+	private long partOffset;
+	/** CRC32 of the parts copied sequentially, calculated while they are copied */
+	private final CRC32 crc = new CRC32();
+	/** CRC32 of the merged file, <code>null</code> until all the parts have been copied */
+	private String checksum;
 
 
 	public CombineFilesJob(ProgressDialog progressDialog, MainFrame mainFrame,
@@ -68,11 +79,17 @@ public class CombineFilesJob extends AbstractCopyJob {
         
         if (getState() == State.INTERRUPTED)
             return false;
+
+        if (parallelTransfer != null) {
+        	return processParallelPart(file);
+        }
         
         try {
-			InputStream in = file.getInputStream();
-			setCurrentInputStream(in);
+			InputStream in = setCurrentInputStream(new CheckedInputStream(file.getInputStream(), crc));
 			StreamUtils.copyStream(in, out);
+			if (getCurrentFileIndex() == getNbFiles() - 1) {
+				checksum = String.format("%08x", crc.getValue());
+			}
 		} catch (IOException e) {
             LOGGER.debug("Caught exception", e);
             showErrorDialog(errorDialogTitle,
@@ -88,9 +105,58 @@ public class CombineFilesJob extends AbstractCopyJob {
         
 		return true;
 	}
+
+	/**
+	 * Submits a part to the parallel transfer. The last part waits for all the parts to be written.
+	 * @param file the part
+	 * @return <code>true</code> if the part was submitted or written
+	 */
+	private boolean processParallelPart(AbstractFile file) {
+		long size = file.getSize();
+		try {
+			parallelTransfer.combine(file, partOffset, size);
+		} catch (InterruptedException e) {
+			return false;
+		}
+		partOffset += size;
+
+		if (getCurrentFileIndex() < getNbFiles() - 1) {
+			return true;
+		}
+		try {
+			checksum = String.format("%08x", parallelTransfer.await());
+		} catch (FileTransferException e) {
+			LOGGER.debug("Caught exception", e);
+			if (getState() != State.INTERRUPTED) {
+				showErrorDialog(errorDialogTitle,
+						Translator.get("error_while_transferring", destFile.getName()),
+						new String[]{CANCEL_TEXT},
+						new int[]{CANCEL_ACTION}
+						);
+				interrupt();
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the total size of the parts, <code>-1</code> if the size of a part is unknown.
+	 */
+	private long getPartsSize() {
+		long size = 0;
+		for (AbstractFile part : files) {
+			if (part.getSize() < 0) {
+				return -1;
+			}
+			size += part.getSize();
+		}
+		return size;
+	}
 	
 	/**
 	 * Creates the destination (merged) file.
+	 * The parts are written in parallel at their offsets if the destination supports positional writes.
 	 * @param file first part
 	 */
 	protected void createDestFile(AbstractFile file) {
@@ -102,6 +168,16 @@ public class CombineFilesJob extends AbstractCopyJob {
         	return;
         }
         
+        long size = getPartsSize();
+        if (getNbFiles() > 1 && size >= 0 && ParallelPartTransfer.canCombine(destFile)) {
+        	try {
+        		parallelTransfer = ParallelPartTransfer.forCombine(destFile, size, getTotalByteCounter());
+        		return;
+        	} catch (IOException e) {
+        		LOGGER.debug("Could not open " + destFile + " for positional writes, combining sequentially", e);
+        	}
+        }
+
         try {
     		out = destFile.getOutputStream();
         } catch(IOException e) {
@@ -133,8 +209,28 @@ public class CombineFilesJob extends AbstractCopyJob {
 	@Override
     protected void jobStopped() {
 		super.jobStopped();
+		if (parallelTransfer != null) {
+			parallelTransfer.abort();
+			parallelTransfer.close();
+		}
 		closeOutputStream();
 	}
+
+	@Override
+	protected void jobPaused() {
+		super.jobPaused();
+		if (parallelTransfer != null) {
+			parallelTransfer.setPaused(true);
+		}
+	}
+
+	@Override
+	protected void jobResumed() {
+		super.jobResumed();
+		if (parallelTransfer != null) {
+			parallelTransfer.setPaused(false);
+		}
+	}
 	
 	@Override
     protected void jobCompleted() {
@@ -144,7 +240,7 @@ public class CombineFilesJob extends AbstractCopyJob {
 	}
 
 	/**
-	 * Checks CRC of merged file (if CRC file exists).
+	 * Checks CRC of merged file (if CRC file exists), using the CRC calculated while the parts were copied.
 	 */
 	private void checkCRC() {
 		if (crcFile==null  || !crcFile.exists()) {
@@ -161,8 +257,8 @@ public class CombineFilesJob extends AbstractCopyJob {
 			BufferedReader crcReader = new BufferedReader(new InputStreamReader(crcIn));
 			String crcLine = crcReader.readLine();
 			crcLine = crcLine.substring(crcLine.lastIndexOf(' ')+1).trim();
-			String crcDest = destFile.calculateChecksum("CRC32");
-			if (!crcLine.equals(crcDest)) {
+			String crcDest = checksum != null ? checksum : destFile.calculateChecksum("CRC32");
+			if (!crcLine.equalsIgnoreCase(crcDest)) {
 	            showErrorDialog(errorDialogTitle,
 	                    Translator.get("combine_files_job.crc_check_failed", crcDest, crcLine),
 	                    new String[]{OK_TEXT},
@@ -20,7 +20,6 @@
 package com.mucommander.job;
 
 import com.mucommander.commons.file.*;
-import com.mucommander.commons.file.impl.adb.AdbFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.job.utils.ScanDirectoryThread;
@@ -121,19 +120,12 @@ public class CopyJob extends AbstractCopyJob {
         }
         currentDestFile = destFile;
 
-        AbstractFile sourceFile = file.getAncestor();
-
         // Do nothing if file is a symlink (skip file and return)
         if (file.isSymlink() && file instanceof LocalFile) {
             tryCopySymlinkFile(file, destFolder);
             return true;
         }
 
-        // ADB files
-        if (sourceFile instanceof AdbFile && destFile instanceof LocalFile && !sourceFile.isDirectory()) {
-            return copyAdbFile(destFile, (AdbFile) sourceFile);
-        }
-
         destFile = checkForCollision(file, destFolder, destFile, false);
         if (destFile == null) {
             return false;
@@ -221,16 +213,6 @@ public class CopyJob extends AbstractCopyJob {
         }
     }
 
-    private boolean copyAdbFile(AbstractFile destFile, AdbFile sourceFile) {
-        try {
-            sourceFile.pushTo(destFile);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-        return true;
-    }
-
 
     // This job modifies baseDestFolder and its subfolders
     @Override
@@ -44,6 +44,9 @@ import com.mucommander.ui.main.MainFrame;
  * folders are deleted recursively
  * </ul>
  *
+ * <p>Folders that are permanently deleted and are not located inside an archive are deleted by a
+ * {@link ParallelDeleter}, which lists folders and deletes files using several threads.
+ *
  * @author Maxence Bernard
  */
 public class DeleteJob extends FileJob {
@@ -67,7 +70,16 @@ public class DeleteJob extends FileJob {
     protected ScanDirectoryThread scanDirectoryThread;
 
     /** Processed files counter */
-    protected long processedFilesCount;
+    protected volatile long processedFilesCount;
+
+    /** Deletes folders using several threads, created when the first folder is deleted */
+    private ParallelDeleter parallelDeleter;
+
+    /** Name of the last file started by the parallel deleter, displayed instead of the current top-level file */
+    private volatile String parallelFilename;
+
+    /** Serializes the error dialogs of the parallel deleter threads */
+    private final Object errorDialogLock = new Object();
 
 
     /**
@@ -109,6 +121,54 @@ public class DeleteJob extends FileJob {
     }
 
 
+    /**
+     * Returns <code>true</code> if the given file is a folder that can be deleted by the {@link ParallelDeleter}:
+     * permanent deletion, not a symlink, and not inside an archive whose entries must be deleted one at a time.
+     */
+    private boolean isParallelDeletePossible(AbstractFile file) {
+        return !moveToTrash && file.isDirectory() && !file.isSymlink() && file.getParentArchive() == null;
+    }
+
+    /**
+     * Deletes the given folder and its contents using the {@link ParallelDeleter}.
+     *
+     * @param folder the folder to delete
+     * @return <code>true</code> if the folder has been completely deleted
+     */
+    private boolean deleteInParallel(AbstractFile folder) {
+        if (parallelDeleter == null) {
+            parallelDeleter = new ParallelDeleter(new ParallelDeleter.Listener() {
+                @Override
+                public boolean fileStarted(String name) {
+                    parallelFilename = "'" + name + "'";
+                    countProcessedFile();
+                    waitWhilePaused();
+                    return getState() != State.INTERRUPTED;
+                }
+
+                @Override
+                public boolean errorOccurred(String messageKey, String name) {
+                    synchronized (errorDialogLock) {
+                        if (getState() == State.INTERRUPTED) {
+                            return false;
+                        }
+                        return showErrorDialog(errorDialogTitle, Translator.get(messageKey, name)) == RETRY_ACTION;
+                    }
+                }
+            });
+        }
+        try {
+            return parallelDeleter.delete(folder);
+        } finally {
+            parallelFilename = null;
+        }
+    }
+
+    private synchronized void countProcessedFile() {
+        processedFilesCount++;
+    }
+
+
     ////////////////////////////
     // FileJob implementation //
     ////////////////////////////
@@ -126,7 +186,10 @@ public class DeleteJob extends FileJob {
         if (getState() == State.INTERRUPTED) {
             return false;
         }
-        processedFilesCount++;
+        if (isParallelDeletePossible(file)) {
+            return deleteInParallel(file);
+        }
+        countProcessedFile();
 
         // Delete files recursively, only if trash is not used.
         int ret;
@@ -198,6 +261,9 @@ public class DeleteJob extends FileJob {
         if (moveToTrash) {
             trash.waitForPendingOperations();
         }
+        if (parallelDeleter != null) {
+            parallelDeleter.shutdown();
+        }
     }
 
     @Override
@@ -235,7 +301,8 @@ public class DeleteJob extends FileJob {
             return Translator.get("optimizing_archive", archiveToOptimize.getName());
         }
 
-        return Translator.get("delete.deleting_file", getCurrentFilename());
+        String filename = parallelFilename;
+        return Translator.get("delete.deleting_file", filename != null ? filename : getCurrentFilename());
     }
 
     @Override
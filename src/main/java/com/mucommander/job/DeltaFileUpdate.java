@@ -0,0 +1,129 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Updates an existing destination file in place so that it becomes identical to the source, writing only the blocks
+ * that differ. The source and the destination are read side by side, block by block; a block is rewritten only if its
+ * content doesn't match the destination's block at the same offset. The destination is finally truncated to the
+ * source's length.
+ *
+ * <p>This saves most of the writes when a large file (disk image, database, archive) has been modified in place,
+ * which matters when the destination is slow to write to (network share, flash media).
+ *
+ * @author Oleg Trifonov
+ */
+class DeltaFileUpdate {
+
+    /** Size of the blocks that are compared and rewritten */
+    final static int BLOCK_SIZE = 65536;
+
+
+    /**
+     * Returns <code>true</code> if the given destination already exists and can be updated in place.
+     *
+     * @param destFile the destination file
+     * @return <code>true</code> if only the changed blocks of the destination can be rewritten
+     */
+    static boolean isApplicable(AbstractFile destFile) {
+        return destFile.exists() && !destFile.isDirectory()
+                && destFile.isFileOperationSupported(FileOperation.READ_FILE)
+                && destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE);
+    }
+
+
+    /**
+     * Makes the destination identical to the source, rewriting only the blocks that differ.
+     *
+     * @param source the source content, read until its end
+     * @param dest the current content of the destination, read until its end or the source's end
+     * @param out the destination, opened for random access
+     * @return the number of bytes that were written to the destination
+     * @throws FileTransferException if an error occurred while reading the source or reading/writing the destination
+     */
+    static long update(InputStream source, InputStream dest, RandomAccessOutputStream out) throws FileTransferException {
+        byte sourceBuffer[] = BufferPool.getByteArray(BLOCK_SIZE);
+        byte destBuffer[] = BufferPool.getByteArray(BLOCK_SIZE);
+        try {
+            long offset = 0;
+            // Offset at which the destination stream currently is, -1 if unknown
+            long writeOffset = -1;
+            long nbWritten = 0;
+            boolean destEof = false;
+
+            while (true) {
+                int nbRead;
+                try {
+                    nbRead = StreamUtils.readUpTo(source, sourceBuffer, 0, BLOCK_SIZE);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+                if (nbRead <= 0) {
+                    break;
+                }
+
+                int nbDestRead = 0;
+                if (!destEof) {
+                    try {
+                        nbDestRead = StreamUtils.readUpTo(dest, destBuffer, 0, nbRead);
+                    } catch (IOException e) {
+                        throw new FileTransferException(FileTransferException.READING_DESTINATION);
+                    }
+                    destEof = nbDestRead < nbRead;
+                }
+
+                if (nbDestRead != nbRead || !Arrays.equals(sourceBuffer, 0, nbRead, destBuffer, 0, nbRead)) {
+                    try {
+                        if (writeOffset != offset) {
+                            out.seek(offset);
+                        }
+                        out.write(sourceBuffer, 0, nbRead);
+                    } catch (IOException e) {
+                        throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+                    }
+                    writeOffset = offset + nbRead;
+                    nbWritten += nbRead;
+                }
+                offset += nbRead;
+            }
+
+            try {
+                if (out.getLength() != offset) {
+                    out.setLength(offset);
+                }
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+            return nbWritten;
+        } finally {
+            BufferPool.releaseByteArray(sourceBuffer);
+            BufferPool.releaseByteArray(destBuffer);
+        }
+    }
+}
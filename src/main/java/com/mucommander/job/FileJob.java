@@ -451,8 +451,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's threads that are potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(State.RUNNING);
@@ -485,6 +485,17 @@ public abstract class FileJob implements Runnable {
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
         
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+
+    /**
+     * Blocks the calling thread while this job is paused. Called by {@link #nextFile(AbstractFile)}, and by the
+     * threads of jobs that process several files at once.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
@@ -497,8 +508,6 @@ public abstract class FileJob implements Runnable {
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
     }
 
 
@@ -556,10 +565,20 @@ public abstract class FileJob implements Runnable {
         if (AbstractNotifier.isAvailable() && AbstractNotifier.getNotifier().isEnabled()) {
             AbstractNotifier.getNotifier().displayBackgroundNotification(NotificationType.JOB_COMPLETED,
                     getProgressDialog() == null ? "" : getProgressDialog().getTitle(),
-                    Translator.get("progress_dialog.job_finished"));
+                    getCompletionMessage());
         }
     }
 
+    /**
+     * Returns the message of the notification sent when this job has completed. Subclasses can override this method
+     * to add details about the outcome of the job.
+     *
+     * @return the message of the completion notification
+     */
+    protected String getCompletionMessage() {
+        return Translator.get("progress_dialog.job_finished");
+    }
+
 
     /**
      * This method is called when this job has been paused, either by the user, or by the job when asking for user input.
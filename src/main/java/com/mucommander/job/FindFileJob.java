@@ -17,7 +17,10 @@
  */
 package com.mucommander.job;
 
+import com.mucommander.commons.file.AbstractArchiveFile;
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ArchiveEntry;
+import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.util.FileSet;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.ui.main.MainFrame;
@@ -30,6 +33,7 @@ import ru.trolsoft.utils.search.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
@@ -93,21 +97,80 @@ public class FindFileJob extends FileJob {
         }
 
         if (file.isArchive() && searchArchives) {
-            try {
-                AbstractFile[] subFiles = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != State.INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
-                        continue;
+            AbstractArchiveFile archiveFile = file.getAncestor(AbstractArchiveFile.class);
+            if (archiveFile != null) {
+                searchInArchive(archiveFile);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Searches the entries of an archive in a single pass over it: the entries are filtered by name and the content
+     * pattern is matched against each remaining entry as it is read, rather than opening each entry separately
+     * (which decompresses a tar.gz from the start for every entry). Nested archives are searched afterwards.
+     */
+    private void searchInArchive(AbstractArchiveFile archiveFile) {
+        final List<String> matches = new ArrayList<>();
+        final List<String> nestedArchives = new ArrayList<>();
+        try {
+            archiveFile.visitEntries(new AbstractArchiveFile.EntryVisitor() {
+                @Override
+                public boolean wantsContents(ArchiveEntry entry) {
+                    return fileContent != null && !fileContent.isEmpty() && isEntrySearched(entry)
+                            && fileFilter.accept(null, entry.getName());
+                }
+
+                @Override
+                public boolean visit(ArchiveEntry entry, InputStream in) {
+                    if (!isEntrySearched(entry)) {
+                        return true;
                     }
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
+                    if (in != null) {
+                        if (streamContainsString(in)) {
+                            matches.add(entry.getPath());
+                        }
+                    } else if ((fileContent == null || fileContent.isEmpty()) && fileFilter.accept(null, entry.getName())) {
+                        matches.add(entry.getPath());
+                    }
+                    if (searchArchives && !entry.isDirectory() && FileFactory.isArchiveFilename(entry.getName())) {
+                        nestedArchives.add(entry.getPath());
+                    }
+                    return getState() != State.INTERRUPTED;
+                }
+            });
+
+            // The pass has recreated the entries tree, resolving the entries doesn't read the archive again
+            synchronized (this) {
+                for (String path : matches) {
+                    list.add(archiveFile.getArchiveEntryFile(path));
                 }
-            } catch(Throwable e) {
-                // Should we tell the user?
             }
+            for (int i = 0; i < nestedArchives.size() && getState() != State.INTERRUPTED; i++) {
+                AbstractFile nestedFile = archiveFile.getArchiveEntryFile(nestedArchives.get(i));
+                AbstractArchiveFile nestedArchive = nestedFile.getAncestor(AbstractArchiveFile.class);
+                if (nestedFile.isArchive() && nestedArchive != null) {
+                    nextFile(nestedFile);
+                    searchInArchive(nestedArchive);
+                }
+            }
+        } catch(Throwable e) {
+            // Should we tell the user?
         }
+    }
 
+    private boolean isEntrySearched(ArchiveEntry entry) {
+        if (!searchSubdirectories && entry.getDepth() > 1) {
+            return false;
+        }
+        if (ignoreHidden) {
+            for (String name : entry.getPath().split(String.valueOf(ArchiveEntry.SEPARATOR_CHAR))) {
+                if (name.startsWith(".")) {
+                    return false;
+                }
+            }
+        }
         return true;
     }
 
@@ -130,7 +193,16 @@ public class FindFileJob extends FileJob {
             return false;
         }
 
-        try (SearchSourceStream source = new InputStreamSource(f.getInputStream())) {
+        try {
+            return streamContainsString(f.getInputStream());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean streamContainsString(InputStream in) {
+        try (SearchSourceStream source = new InputStreamSource(in)) {
             long pos = SearchUtils.indexOf(source, searchPattern);
             //Profiler.stop("check_new");
             return pos >= 0;
@@ -0,0 +1,345 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deletes a folder and its contents using several threads: folders are listed and files are deleted concurrently, and
+ * each folder is deleted as soon as all its children are gone. On remote or network filesystems, where each deletion
+ * costs a round trip, this keeps several requests in flight instead of one.
+ *
+ * <p>Local folders are walked with a {@link DirectoryStream} and their contents deleted through
+ * {@link java.nio.file.Path paths}, without creating an {@link AbstractFile} for each child. Symlinks are deleted,
+ * never followed.
+ *
+ * <p>The job is notified of each file through a {@link Listener}, which blocks the threads while the job is paused and
+ * asks the user what to do when a file cannot be listed or deleted. A folder whose contents could not be entirely
+ * deleted is left in place, as well as its parents.
+ *
+ * @author Oleg Trifonov
+ */
+class ParallelDeleter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDeleter.class);
+
+    /** Number of files deleted at once */
+    private final static int NB_THREADS = 8;
+
+    private final Listener listener;
+
+    private final ExecutorService executor;
+
+
+    /**
+     * Receives the progress and errors of the deletion. Its methods are called by several threads at once.
+     */
+    interface Listener {
+        /**
+         * Called before a file is deleted or a folder is listed. Blocks while the job is paused.
+         *
+         * @param name name of the file
+         * @return <code>false</code> if the job has been interrupted
+         */
+        boolean fileStarted(String name);
+
+        /**
+         * Called when a file could not be listed or deleted, asks the user whether to retry.
+         *
+         * @param messageKey dictionary key of the error message
+         * @param name name of the file
+         * @return <code>true</code> to retry, <code>false</code> to skip the file
+         */
+        boolean errorOccurred(String messageKey, String name);
+    }
+
+
+    /**
+     * A file or folder to delete.
+     */
+    private interface Entry {
+        String getName();
+
+        /** Returns <code>true</code> if this is a folder whose contents must be deleted first (not a symlink) */
+        boolean isFolder();
+
+        List<Entry> ls() throws IOException;
+
+        void delete() throws IOException;
+    }
+
+
+    /**
+     * A folder whose children are being deleted. The folder itself is deleted when its last child is done.
+     */
+    private class Folder {
+        private final Entry entry;
+        private final Folder parent;
+        /** Number of children not yet deleted, plus one until all the children have been submitted */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        /** <code>true</code> if a child could not be deleted */
+        private volatile boolean incomplete;
+        /** Completed when the root folder is done, <code>null</code> for other folders */
+        private CompletableFuture<Boolean> done;
+
+        Folder(Entry entry, Folder parent) {
+            this.entry = entry;
+            this.parent = parent;
+        }
+    }
+
+
+    ParallelDeleter(Listener listener) {
+        this.listener = listener;
+        this.executor = Executors.newFixedThreadPool(NB_THREADS, r -> {
+            Thread thread = new Thread(r, "ParallelDeleter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * Deletes the given folder and its contents, and waits for the deletion to be over.
+     *
+     * @param folder the folder to delete
+     * @return <code>true</code> if the folder has been completely deleted
+     */
+    boolean delete(AbstractFile folder) {
+        // The root is a placeholder parent of the folder to delete
+        Folder root = new Folder(null, null);
+        root.done = new CompletableFuture<>();
+        root.pending.incrementAndGet();
+        submit(createEntry(folder), root);
+        childDone(root);
+        try {
+            return root.done.get();
+        } catch (InterruptedException | ExecutionException e) {
+            LOGGER.debug("Caught exception", e);
+            return false;
+        }
+    }
+
+    /**
+     * Releases the threads. Must be called once all the folders have been deleted.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+
+    private void submit(Entry entry, Folder parent) {
+        executor.execute(() -> {
+            try {
+                process(entry, parent);
+            } catch (RuntimeException e) {
+                LOGGER.debug("Error while deleting " + entry.getName(), e);
+                parent.incomplete = true;
+                childDone(parent);
+            }
+        });
+    }
+
+    /**
+     * Deletes a file, or submits the children of a folder.
+     */
+    private void process(Entry entry, Folder parent) {
+        if (!listener.fileStarted(entry.getName())) {
+            parent.incomplete = true;
+            childDone(parent);
+            return;
+        }
+        if (!entry.isFolder()) {
+            deleteEntry(entry, parent);
+            return;
+        }
+
+        List<Entry> children;
+        while (true) {
+            try {
+                children = entry.ls();
+                break;
+            } catch (IOException e) {
+                LOGGER.debug("IOException caught", e);
+                if (!listener.errorOccurred("cannot_read_file", entry.getName())) {
+                    parent.incomplete = true;
+                    childDone(parent);
+                    return;
+                }
+            }
+        }
+
+        Folder folder = new Folder(entry, parent);
+        folder.pending.addAndGet(children.size());
+        for (Entry child : children) {
+            submit(child, folder);
+        }
+        // All the children have been submitted
+        childDone(folder);
+    }
+
+    /**
+     * Deletes a file or an empty folder, then notifies its parent.
+     */
+    private void deleteEntry(Entry entry, Folder parent) {
+        while (true) {
+            try {
+                entry.delete();
+                break;
+            } catch (IOException e) {
+                LOGGER.debug("IOException caught", e);
+                if (!listener.errorOccurred(entry.isFolder() ? "cannot_delete_folder" : "cannot_delete_file", entry.getName())) {
+                    parent.incomplete = true;
+                    break;
+                }
+            }
+        }
+        childDone(parent);
+    }
+
+    /**
+     * Called when a child of the given folder has been deleted or skipped. Deletes the folder once its last child is
+     * done, unless a child could not be deleted.
+     */
+    private void childDone(Folder folder) {
+        if (folder.pending.decrementAndGet() != 0) {
+            return;
+        }
+        if (folder.parent == null) {
+            folder.done.complete(!folder.incomplete);
+        } else if (folder.incomplete) {
+            folder.parent.incomplete = true;
+            childDone(folder.parent);
+        } else {
+            deleteEntry(folder.entry, folder.parent);
+        }
+    }
+
+
+    private static Entry createEntry(AbstractFile file) {
+        AbstractFile ancestor = file.getAncestor();
+        if (ancestor instanceof LocalFile) {
+            Path path = ((File)ancestor.getUnderlyingFileObject()).toPath();
+            return new PathEntry(path, file.isDirectory() && !file.isSymlink());
+        }
+        return new FileEntry(file);
+    }
+
+
+    /**
+     * A local file, accessed through its path.
+     */
+    private static class PathEntry implements Entry {
+        private final Path path;
+        private final boolean folder;
+
+        PathEntry(Path path, boolean folder) {
+            this.path = path;
+            this.folder = folder;
+        }
+
+        @Override
+        public String getName() {
+            Path name = path.getFileName();
+            return name == null ? path.toString() : name.toString();
+        }
+
+        @Override
+        public boolean isFolder() {
+            return folder;
+        }
+
+        @Override
+        public List<Entry> ls() throws IOException {
+            List<Entry> children = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    boolean isFolder;
+                    try {
+                        isFolder = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isDirectory();
+                    } catch (IOException e) {
+                        // Let the deletion report the error
+                        isFolder = false;
+                    }
+                    children.add(new PathEntry(child, isFolder));
+                }
+            }
+            return children;
+        }
+
+        @Override
+        public void delete() throws IOException {
+            Files.delete(path);
+        }
+    }
+
+
+    /**
+     * A file of any other filesystem.
+     */
+    private static class FileEntry implements Entry {
+        private final AbstractFile file;
+
+        FileEntry(AbstractFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public boolean isFolder() {
+            // Important: symlinks must *not* be followed -- following symlinks could have disastrous effects.
+            return file.isDirectory() && !file.isSymlink();
+        }
+
+        @Override
+        public List<Entry> ls() throws IOException {
+            AbstractFile[] files = file.ls();
+            List<Entry> children = new ArrayList<>(files.length);
+            for (AbstractFile child : files) {
+                children.add(new FileEntry(child));
+            }
+            return children;
+        }
+
+        @Override
+        public void delete() throws IOException {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,586 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+
+/**
+ * Splits a file into parts or combines parts into a file, transferring several parts at once. Each part is read or
+ * written at its own offset of the whole file: local files are accessed through a single {@link FileChannel} using
+ * positional reads and writes, other files through a {@link RandomAccessInputStream} or
+ * {@link RandomAccessOutputStream} opened by each part.
+ *
+ * <p>The CRC32 of the whole file is calculated in the same pass: each part computes the CRC of its own bytes and the
+ * part checksums are combined in order once all the parts are done (see {@link #combineCRC32(long, long, long)}).
+ *
+ * <p>Parts are submitted one at a time by the job thread with {@link #split(AbstractFile, long, long)} or
+ * {@link #combine(AbstractFile, long, long)}, which block while all the threads are busy so that the progress of
+ * the job follows the parts actually being transferred. {@link #await()} waits for all of them.
+ *
+ * @author Oleg Trifonov
+ */
+class ParallelPartTransfer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelPartTransfer.class);
+
+    /** Maximum number of parts transferred at once */
+    private final static int MAX_THREADS = 4;
+
+    /** Size of the buffer used by each part */
+    private final static int BUFFER_SIZE = 512 * 1024;
+
+    /** The whole file: the source of a split or the destination of a combination */
+    private final AbstractFile file;
+    private final ByteCounter byteCounter;
+
+    /** Channel shared by all the parts if the whole file is local, <code>null</code> otherwise */
+    private final FileChannel channel;
+
+    private final ExecutorService executor;
+    private final Semaphore slots = new Semaphore(MAX_THREADS);
+
+    /** Parts submitted so far, in the order of their offsets */
+    private final List<Part> parts = new ArrayList<>();
+
+    /** Streams opened by the parts being transferred, closed to interrupt them */
+    private final List<Closeable> streams = new ArrayList<>();
+
+    private boolean paused;
+
+    private volatile boolean aborted;
+
+
+    /**
+     * A part of the whole file, its CRC is known once the future has completed.
+     */
+    private static class Part {
+        private final long length;
+        private Future<?> future;
+        private long crc;
+
+        Part(long length) {
+            this.length = length;
+        }
+    }
+
+
+    /**
+     * Prepares the transfer of the parts of the given file.
+     *
+     * @param file the file to split, or the file to create from the parts
+     * @param forWriting <code>true</code> if the parts are combined into the file
+     * @param byteCounter counter that accounts the bytes transferred by all the parts
+     * @throws IOException if the file could not be opened
+     */
+    private ParallelPartTransfer(AbstractFile file, boolean forWriting, ByteCounter byteCounter) throws IOException {
+        this.file = file;
+        this.byteCounter = byteCounter;
+        File localFile = getLocalFile(file);
+        if (localFile == null) {
+            channel = null;
+        } else if (forWriting) {
+            channel = FileChannel.open(localFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        } else {
+            channel = FileChannel.open(localFile.toPath(), StandardOpenOption.READ);
+        }
+        executor = Executors.newFixedThreadPool(MAX_THREADS, r -> {
+            Thread thread = new Thread(r, "ParallelPartTransfer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a transfer that splits the given file.
+     *
+     * @param sourceFile the file to split
+     * @param byteCounter counter that accounts the bytes read by all the parts
+     * @return the transfer
+     * @throws IOException if the file could not be opened
+     */
+    static ParallelPartTransfer forSplit(AbstractFile sourceFile, ByteCounter byteCounter) throws IOException {
+        return new ParallelPartTransfer(sourceFile, false, byteCounter);
+    }
+
+    /**
+     * Creates a transfer that combines parts into the given file, replacing its current contents.
+     *
+     * @param destFile the file to create
+     * @param length total length of the parts
+     * @param byteCounter counter that accounts the bytes read by all the parts
+     * @return the transfer
+     * @throws IOException if the file could not be created
+     */
+    static ParallelPartTransfer forCombine(AbstractFile destFile, long length, ByteCounter byteCounter) throws IOException {
+        ParallelPartTransfer transfer = new ParallelPartTransfer(destFile, true, byteCounter);
+        if (transfer.channel == null) {
+            try (RandomAccessOutputStream raos = destFile.getRandomAccessOutputStream()) {
+                raos.setLength(length);
+            } catch (IOException e) {
+                transfer.close();
+                throw e;
+            }
+        }
+        return transfer;
+    }
+
+    /**
+     * Returns <code>true</code> if the given file can be split with positional reads.
+     *
+     * @param sourceFile the file to split
+     * @return <code>true</code> if the file is local or supports random reads
+     */
+    static boolean canSplit(AbstractFile sourceFile) {
+        return getLocalFile(sourceFile) != null || sourceFile.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
+    /**
+     * Returns <code>true</code> if parts can be combined into the given file with positional writes.
+     *
+     * @param destFile the file to create
+     * @return <code>true</code> if the file is local or supports random writes
+     */
+    static boolean canCombine(AbstractFile destFile) {
+        return getLocalFile(destFile) != null || destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE);
+    }
+
+    private static File getLocalFile(AbstractFile file) {
+        AbstractFile ancestor = file.getAncestor();
+        if (ancestor instanceof LocalFile) {
+            return (File)ancestor.getUnderlyingFileObject();
+        }
+        return null;
+    }
+
+
+    /**
+     * Copies <code>length</code> bytes of the whole file starting at <code>offset</code> into the given part.
+     * Blocks until a thread is available.
+     *
+     * @param partFile the part to create
+     * @param offset offset of the part in the whole file
+     * @param length length of the part
+     * @throws InterruptedException if the calling thread was interrupted while waiting for a thread
+     */
+    void split(AbstractFile partFile, long offset, long length) throws InterruptedException {
+        submit(length, () -> copyToPart(partFile, offset, length));
+    }
+
+    /**
+     * Copies the given part into the whole file at <code>offset</code>. Blocks until a thread is available.
+     *
+     * @param partFile the part to copy
+     * @param offset offset of the part in the whole file
+     * @param length length of the part
+     * @throws InterruptedException if the calling thread was interrupted while waiting for a thread
+     */
+    void combine(AbstractFile partFile, long offset, long length) throws InterruptedException {
+        submit(length, () -> copyFromPart(partFile, offset, length));
+    }
+
+    private interface PartCopy {
+        long copy() throws FileTransferException;
+    }
+
+    private void submit(long length, PartCopy copy) throws InterruptedException {
+        slots.acquire();
+        Part part = new Part(length);
+        synchronized (this) {
+            parts.add(part);
+        }
+        try {
+            part.future = executor.submit(() -> {
+                try {
+                    part.crc = copy.copy();
+                    return null;
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Waits for all the submitted parts to complete, and returns the CRC32 of the whole file. The first error
+     * interrupts the parts still being transferred.
+     *
+     * @return the CRC32 of the parts submitted so far
+     * @throws FileTransferException if a part could not be transferred
+     */
+    long await() throws FileTransferException {
+        List<Part> submitted;
+        synchronized (this) {
+            submitted = new ArrayList<>(parts);
+        }
+        long crc = 0;
+        try {
+            for (Part part : submitted) {
+                part.future.get();
+                crc = combineCRC32(crc, part.crc, part.length);
+            }
+        } catch (InterruptedException e) {
+            abort();
+            throw new FileTransferException(FileTransferException.UNKNOWN_REASON);
+        } catch (ExecutionException e) {
+            abort();
+            Throwable cause = e.getCause();
+            LOGGER.debug("Part transfer failed", cause);
+            if (cause instanceof FileTransferException) {
+                throw (FileTransferException)cause;
+            }
+            throw new FileTransferException(FileTransferException.UNKNOWN_REASON);
+        }
+        return crc;
+    }
+
+
+    /**
+     * Copies a range of the whole file into a part and returns the CRC32 of the range.
+     */
+    private long copyToPart(AbstractFile partFile, long offset, long length) throws FileTransferException {
+        RandomAccessInputStream in = null;
+        if (channel == null) {
+            try {
+                in = file.getRandomAccessInputStream();
+                in.seek(offset);
+            } catch (IOException e) {
+                closeQuietly(in);
+                throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+            }
+            if (!register(in)) {
+                closeQuietly(in);
+                throw new FileTransferException(FileTransferException.READING_SOURCE);
+            }
+        }
+
+        OutputStream out;
+        try {
+            out = partFile.getOutputStream();
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+        if (!register(out)) {
+            closeQuietly(in);
+            closeQuietly(out);
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+        }
+
+        CRC32 crc = new CRC32();
+        byte buffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        try {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                waitIfPaused();
+                int len = (int)Math.min(buffer.length, remaining);
+                int nbRead;
+                try {
+                    nbRead = channel != null ? channel.read(ByteBuffer.wrap(buffer, 0, len), position) : in.read(buffer, 0, len);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+                if (nbRead == -1) {
+                    // The source is shorter than announced
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+
+                try {
+                    out.write(buffer, 0, nbRead);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION, length - remaining);
+                }
+                crc.update(buffer, 0, nbRead);
+                byteCounter.add(nbRead);
+                position += nbRead;
+                remaining -= nbRead;
+            }
+
+            try {
+                out.close();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+            unregister(in);
+            unregister(out);
+            closeQuietly(out);
+            closeQuietly(in);
+        }
+        return crc.getValue();
+    }
+
+
+    /**
+     * Copies a part into the whole file at the given offset and returns the CRC32 of the part.
+     */
+    private long copyFromPart(AbstractFile partFile, long offset, long length) throws FileTransferException {
+        InputStream in;
+        try {
+            in = partFile.getInputStream();
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+        }
+        if (!register(in)) {
+            closeQuietly(in);
+            throw new FileTransferException(FileTransferException.READING_SOURCE);
+        }
+
+        RandomAccessOutputStream out = null;
+        if (channel == null) {
+            try {
+                out = file.getRandomAccessOutputStream();
+                out.seek(offset);
+            } catch (IOException e) {
+                closeQuietly(in);
+                closeQuietly(out);
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        byte buffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        try {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                waitIfPaused();
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+                if (nbRead == -1) {
+                    // The part is shorter than announced
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+
+                try {
+                    if (channel != null) {
+                        ByteBuffer bb = ByteBuffer.wrap(buffer, 0, nbRead);
+                        while (bb.hasRemaining()) {
+                            channel.write(bb, position + bb.position());
+                        }
+                    } else {
+                        out.write(buffer, 0, nbRead);
+                    }
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION, length - remaining);
+                }
+                crc.update(buffer, 0, nbRead);
+                byteCounter.add(nbRead);
+                position += nbRead;
+                remaining -= nbRead;
+            }
+
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+                }
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+            unregister(in);
+            closeQuietly(out);
+            closeQuietly(in);
+        }
+        return crc.getValue();
+    }
+
+
+    /**
+     * Adds the given stream to the streams closed by {@link #abort()}. Returns <code>false</code> if the transfer has
+     * already been aborted.
+     */
+    private synchronized boolean register(Closeable stream) {
+        if (aborted) {
+            return false;
+        }
+        streams.add(stream);
+        return true;
+    }
+
+    private synchronized void unregister(Closeable stream) {
+        if (stream != null) {
+            streams.remove(stream);
+        }
+    }
+
+    private synchronized void waitIfPaused() throws FileTransferException {
+        while (paused && !aborted) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (aborted) {
+            throw new FileTransferException(FileTransferException.UNKNOWN_REASON);
+        }
+    }
+
+    /**
+     * Pauses or resumes the parts being transferred. Paused parts block before their next buffer.
+     *
+     * @param paused <code>true</code> to pause the transfer
+     */
+    synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+        notifyAll();
+    }
+
+    /**
+     * Interrupts the parts being transferred by closing their streams.
+     */
+    synchronized void abort() {
+        aborted = true;
+        notifyAll();
+        for (Closeable stream : streams) {
+            closeQuietly(stream);
+        }
+        streams.clear();
+    }
+
+    /**
+     * Releases the threads and the file channel. Parts still being transferred are interrupted.
+     */
+    void close() {
+        executor.shutdownNow();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error while closing " + file, e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error while closing part stream", e);
+        }
+    }
+
+
+    /**
+     * Returns the CRC32 of the concatenation of two blocks, given the CRC of each block and the length of the second
+     * one (port of zlib's <code>crc32_combine</code>).
+     *
+     * @param crc1 CRC32 of the first block
+     * @param crc2 CRC32 of the second block
+     * @param len2 length of the second block
+     * @return the CRC32 of both blocks
+     */
+    static long combineCRC32(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long even[] = new long[32];     // even-power-of-two zeros operator
+        long odd[] = new long[32];      // odd-power-of-two zeros operator
+
+        // put operator for one zero bit in odd
+        odd[0] = 0xedb88320L;           // CRC-32 polynomial
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+
+        // put operator for two zero bits in even, then four zero bits in odd
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // apply len2 zeros to crc1 (first square will put the operator for one zero byte, eight zero bits, in even)
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+
+        return (crc1 ^ crc2) & 0xffffffffL;
+    }
+
+    private static long gf2MatrixTimes(long mat[], long vec) {
+        long sum = 0;
+        int i = 0;
+        while (vec != 0) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+            vec >>= 1;
+            i++;
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long square[], long mat[]) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+}
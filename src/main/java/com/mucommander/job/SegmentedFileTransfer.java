@@ -0,0 +1,298 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.ftp.FTPFile;
+import com.mucommander.commons.file.impl.sftp.SFTPFile;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.CounterInputStream;
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.ThroughputLimitInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies a single large file from an FTP or SFTP server by splitting it into ranges that are downloaded over several
+ * pooled connections at once. Each range is read from its own offset ({@link AbstractFile#getInputStream(long)}) and
+ * written at the same offset of the destination file through its own {@link RandomAccessOutputStream}.
+ *
+ * <p>The transfer is only attempted when {@link #isApplicable(AbstractFile, AbstractFile)} returns <code>true</code>,
+ * i.e. the destination supports random writes. {@link #transfer()} returns <code>false</code> without having written
+ * anything if the destination cannot be opened for random access after all, in which case the caller should fall
+ * back to a regular stream copy.
+ *
+ * @author Oleg Trifonov
+ */
+class SegmentedFileTransfer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedFileTransfer.class);
+
+    /** Files smaller than this are copied over a single connection */
+    final static long MIN_FILE_SIZE = 64 * 1024 * 1024;
+
+    /** Minimum size of a segment, so that small files don't open connections for a few megabytes each */
+    private final static long MIN_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /** Maximum number of segments, matches the maximum number of connections per realm in the connection pool */
+    private final static int MAX_SEGMENTS = 4;
+
+    /** Size of the buffer used by each segment */
+    private final static int BUFFER_SIZE = 65536;
+
+    private final AbstractFile sourceFile;
+    private final AbstractFile destFile;
+    private final ByteCounter byteCounter;
+
+    /** Source streams of the segments being transferred, used to pause, throttle or abort the transfer */
+    private final List<ThroughputLimitInputStream> streams = new ArrayList<>();
+
+    private long throughputLimit;
+
+    private volatile boolean aborted;
+
+
+    /**
+     * Creates a new transfer of the given file.
+     *
+     * @param sourceFile file to read, located on an FTP or SFTP server
+     * @param destFile file to write, must support random writes
+     * @param byteCounter counter that accounts the bytes read by all the segments
+     * @param throughputLimit overall throughput limit in bytes per second, <code>-1</code> for no limit
+     */
+    SegmentedFileTransfer(AbstractFile sourceFile, AbstractFile destFile, ByteCounter byteCounter, long throughputLimit) {
+        this.sourceFile = sourceFile;
+        this.destFile = destFile;
+        this.byteCounter = byteCounter;
+        this.throughputLimit = throughputLimit;
+    }
+
+
+    /**
+     * Returns <code>true</code> if the given file is large enough and comes from a protocol whose pooled connections
+     * can be read from at an arbitrary offset, and if the destination can be written at arbitrary offsets.
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the destination file
+     * @return <code>true</code> if the file can be copied using several connections
+     */
+    static boolean isApplicable(AbstractFile sourceFile, AbstractFile destFile) {
+        if (sourceFile.getSize() < MIN_FILE_SIZE) {
+            return false;
+        }
+        if (!sourceFile.hasAncestor(FTPFile.class) && !sourceFile.hasAncestor(SFTPFile.class)) {
+            return false;
+        }
+        return destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE);
+    }
+
+
+    /**
+     * Copies the source file to the destination.
+     *
+     * @return <code>false</code> if nothing was copied because the destination could not be opened for random access,
+     * <code>true</code> if the file was completely copied
+     * @throws FileTransferException if the transfer failed after it started
+     */
+    boolean transfer() throws FileTransferException {
+        long size = sourceFile.getSize();
+        int nbSegments = (int)Math.min(MAX_SEGMENTS, Math.max(1, size / MIN_SEGMENT_SIZE));
+        long segmentSize = size / nbSegments;
+
+        // Pre-allocate the destination, this also truncates any previous and larger version of the file
+        try (RandomAccessOutputStream raos = destFile.getRandomAccessOutputStream()) {
+            raos.setLength(size);
+        } catch (IOException e) {
+            LOGGER.debug("Destination doesn't support random writes, falling back to a stream copy", e);
+            return false;
+        }
+
+        LOGGER.debug("copying {} in {} segments of {} bytes", sourceFile, nbSegments, segmentSize);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nbSegments);
+        List<Future<?>> futures = new ArrayList<>(nbSegments);
+        try {
+            for (int i = 0; i < nbSegments; i++) {
+                final long offset = i * segmentSize;
+                final long length = i == nbSegments - 1 ? size - offset : segmentSize;
+                futures.add(executor.submit(() -> {
+                    copySegment(offset, length);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            abort();
+            throw new FileTransferException(FileTransferException.READING_SOURCE);
+        } catch (ExecutionException e) {
+            // Stop the other segments, the first error is the one reported
+            abort();
+            Throwable cause = e.getCause();
+            LOGGER.debug("Segment transfer failed", cause);
+            if (cause instanceof FileTransferException) {
+                throw (FileTransferException)cause;
+            }
+            throw new FileTransferException(FileTransferException.READING_SOURCE);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Copies <code>length</code> bytes starting at <code>offset</code>, using a dedicated source stream and
+     * destination stream.
+     */
+    private void copySegment(long offset, long length) throws FileTransferException {
+        ThroughputLimitInputStream in;
+        try {
+            in = new ThroughputLimitInputStream(new CounterInputStream(sourceFile.getInputStream(offset), byteCounter));
+        } catch (IOException e) {
+            throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+        }
+        if (!register(in)) {
+            closeQuietly(in);
+            throw new FileTransferException(FileTransferException.READING_SOURCE);
+        }
+
+        RandomAccessOutputStream out;
+        try {
+            out = destFile.getRandomAccessOutputStream();
+            out.seek(offset);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+
+        byte buffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        try {
+            long remaining = length;
+            while (remaining > 0) {
+                int nbRead;
+                try {
+                    nbRead = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+                if (nbRead == -1) {
+                    // The source is shorter than announced
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+
+                try {
+                    out.write(buffer, 0, nbRead);
+                } catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+                }
+                remaining -= nbRead;
+            }
+
+            // Closed only once: the stream is forgotten even if closing it fails
+            RandomAccessOutputStream closedOut = out;
+            out = null;
+            try {
+                closedOut.close();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Superseded by the error being thrown
+                }
+            }
+            // Note: closing an FTP stream before the end of the file drops its connection, which is re-established
+            // the next time the connection handler is used
+            closeQuietly(in);
+        }
+    }
+
+
+    /**
+     * Adds the given stream to the list of streams controlled by this transfer, applying the current throughput limit.
+     * Returns <code>false</code> if the transfer has already been aborted.
+     */
+    private synchronized boolean register(ThroughputLimitInputStream in) {
+        if (aborted) {
+            return false;
+        }
+        streams.add(in);
+        in.setThroughputLimit(getSegmentThroughputLimit());
+        return true;
+    }
+
+
+    /**
+     * Sets the overall throughput limit, shared evenly between the segments. <code>0</code> pauses the transfer,
+     * <code>-1</code> disables the limit.
+     *
+     * @param bytesPerSecond new throughput limit in bytes per second
+     */
+    synchronized void setThroughputLimit(long bytesPerSecond) {
+        this.throughputLimit = bytesPerSecond;
+        long segmentLimit = getSegmentThroughputLimit();
+        for (ThroughputLimitInputStream in : streams) {
+            in.setThroughputLimit(segmentLimit);
+        }
+    }
+
+    private long getSegmentThroughputLimit() {
+        if (throughputLimit <= 0) {
+            return throughputLimit;
+        }
+        return Math.max(1, throughputLimit / MAX_SEGMENTS);
+    }
+
+
+    /**
+     * Interrupts the transfer by closing all the source streams.
+     */
+    synchronized void abort() {
+        aborted = true;
+        for (ThroughputLimitInputStream in : streams) {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            LOGGER.debug("Error while closing segment stream", e);
+        }
+    }
+}
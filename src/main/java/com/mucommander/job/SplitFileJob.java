@@ -24,6 +24,8 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +60,12 @@ public class SplitFileJob extends AbstractCopyJob {
 	private final AbstractFile destFolder;
 	private long sizeLeft;
 	private boolean recalculateCRC = false;
+	/** Parts transferred in parallel when the whole file can be read at any offset, <code>null</code> otherwise */
+	private ParallelPartTransfer parallelTransfer;
+	/** Parts written by the parallel transfer, their date and permissions are set once they are complete */
+	private final List<AbstractFile> parallelParts = new ArrayList<>();
+	/** CRC32 of the source file calculated by the parallel transfer */
+	private String parallelChecksum;
 
 
 	/**
@@ -88,7 +96,6 @@ public class SplitFileJob extends AbstractCopyJob {
         this.sourceFile = file;
         this.destFolder = destFolder;
         this.errorDialogTitle = Translator.get("split_file_dialog.error_title");
-        createInputStream();
         sizeLeft = sourceFile.getSize();
         for (int i=1; i<=parts; i++) {
         	addDummyFile(i, Math.min(partSize, sizeLeft));
@@ -121,9 +128,58 @@ public class SplitFileJob extends AbstractCopyJob {
 	@Override
     protected void jobStarted() {
 		super.jobStarted();
+		if (isParallelSplitPossible()) {
+			try {
+				parallelTransfer = ParallelPartTransfer.forSplit(sourceFile, getTotalByteCounter());
+				return;
+			} catch (IOException e) {
+				LOGGER.debug("Could not open " + sourceFile + " for positional reads, splitting it sequentially", e);
+			}
+		}
 		createInputStream();
 	}
 
+	/**
+	 * Returns <code>true</code> if the parts can be written in parallel: the source file must be readable at any
+	 * offset and the destination must have enough room for all the parts, otherwise the parts are written one after
+	 * the other so that the user can change media when the destination is full.
+	 */
+	private boolean isParallelSplitPossible() {
+		if (getNbFiles() < 2 || !ParallelPartTransfer.canSplit(sourceFile)) {
+			return false;
+		}
+		try {
+			return destFolder.getFreeSpace() >= sourceFile.getSize();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	protected void jobPaused() {
+		super.jobPaused();
+		if (parallelTransfer != null) {
+			parallelTransfer.setPaused(true);
+		}
+	}
+
+	@Override
+	protected void jobResumed() {
+		super.jobResumed();
+		if (parallelTransfer != null) {
+			parallelTransfer.setPaused(false);
+		}
+	}
+
+	@Override
+	protected void jobStopped() {
+		super.jobStopped();
+		if (parallelTransfer != null) {
+			parallelTransfer.abort();
+			parallelTransfer.close();
+		}
+	}
+
 	/**
 	 * Creates an input stream from the file. 
 	 */
@@ -156,6 +212,16 @@ public class SplitFileJob extends AbstractCopyJob {
 
     @Override
     protected boolean processFile(AbstractFile file, Object recurseParams) {
+        boolean success = processPart(file);
+        // The last part waits for all the parts written in parallel, whether it was submitted or skipped, so that
+        // they are complete before the job is stopped
+        if (parallelTransfer != null && getCurrentFileIndex() == getNbFiles() - 1 && getState() != State.INTERRUPTED) {
+            success &= awaitParallelParts();
+        }
+        return success;
+    }
+
+    private boolean processPart(AbstractFile file) {
         if (getState() == State.INTERRUPTED)
             return false;
         
@@ -167,6 +233,10 @@ public class SplitFileJob extends AbstractCopyJob {
         destFile = checkForCollision(sourceFile, baseDestFolder, destFile, false);
         if (destFile == null)
             return false;
+
+        if (parallelTransfer != null) {
+            return processParallelPart(file, destFile);
+        }
         
         OutputStream out = null;
         try {
@@ -199,29 +269,7 @@ public class SplitFileJob extends AbstractCopyJob {
 				}
 			}
 			
-	        // Preserve source file's date
-            if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                try {
-                    destFile.setLastModifiedDate(sourceFile.getLastModifiedDate());
-                }
-                catch (IOException e) {
-                    LOGGER.debug("failed to change date of "+destFile, e);
-                    // Fail silently
-                }
-            }
-
-	        // Preserve source file's permissions: preserve only the permissions bits that are supported by the source
-            // file and use default permissions for the rest of them.
-            if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
-                try {
-                    // use #importPermissions(AbstractFile, int) to avoid isDirectory test
-                    destFile.importPermissions(sourceFile, FilePermissions.DEFAULT_FILE_PERMISSIONS);
-                }
-                catch (IOException e) {
-                    LOGGER.debug("failed to import "+sourceFile+" permissions into "+destFile, e);
-                    // Fail silently
-                }
-            }
+			preserveAttributes(destFile);
 		} catch (IOException e) {
             LOGGER.debug("Caught exception", e);
 
@@ -243,6 +291,86 @@ public class SplitFileJob extends AbstractCopyJob {
     	return true;
     }
 
+    /**
+     * Submits a part to the parallel transfer.
+     * @param file the dummy part
+     * @param destFile the part to create
+     * @return <code>true</code> if the part was submitted
+     */
+    private boolean processParallelPart(AbstractFile file, AbstractFile destFile) {
+        long size = file.getSize();
+        // All the parts but the last one have the same size, skipped parts included
+        long offset = getCurrentFileIndex() * partSize;
+        try {
+            parallelTransfer.split(destFile, offset, size);
+        } catch (InterruptedException e) {
+            return false;
+        }
+        parallelParts.add(destFile);
+        sizeLeft -= size;
+        return true;
+    }
+
+    /**
+     * Waits for all the parts submitted to the parallel transfer to be written.
+     * @return <code>true</code> if all the submitted parts were written
+     */
+    private boolean awaitParallelParts() {
+        try {
+            long crc = parallelTransfer.await();
+            if (parallelParts.size() == getNbFiles()) {
+                parallelChecksum = String.format("%08x", crc);
+            } else {
+                // Skipped parts are missing from the checksum, it is calculated from the source file instead
+                recalculateCRC = true;
+            }
+        } catch (FileTransferException e) {
+            LOGGER.debug("Caught exception", e);
+            if (getState() != State.INTERRUPTED) {
+                showErrorDialog(errorDialogTitle,
+                        Translator.get("error_while_transferring", sourceFile.getName()),
+                        new String[]{CANCEL_TEXT},
+                        new int[]{CANCEL_ACTION}
+                        );
+            }
+            return false;
+        }
+        for (AbstractFile part : parallelParts) {
+            preserveAttributes(part);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the date and permissions of the source file to a part.
+     * @param destFile the part
+     */
+    private void preserveAttributes(AbstractFile destFile) {
+        // Preserve source file's date
+        if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+            try {
+                destFile.setLastModifiedDate(sourceFile.getLastModifiedDate());
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to change date of "+destFile, e);
+                // Fail silently
+            }
+        }
+
+        // Preserve source file's permissions: preserve only the permissions bits that are supported by the source
+        // file and use default permissions for the rest of them.
+        if(destFile.isFileOperationSupported(FileOperation.CHANGE_PERMISSION)) {
+            try {
+                // use #importPermissions(AbstractFile, int) to avoid isDirectory test
+                destFile.importPermissions(sourceFile, FilePermissions.DEFAULT_FILE_PERMISSIONS);
+            }
+            catch (IOException e) {
+                LOGGER.debug("failed to import "+sourceFile+" permissions into "+destFile, e);
+                // Fail silently
+            }
+        }
+    }
+
 
     // This job modifies baseDestFolder and its subfolders
     @Override
@@ -254,11 +382,13 @@ public class SplitFileJob extends AbstractCopyJob {
     protected void jobCompleted() {
     	// create checksum file
     	if (isIntegrityCheckEnabled()) {
-            if(origFileStream!=null && (origFileStream instanceof ChecksumInputStream)) {
+            if (parallelChecksum != null || recalculateCRC || origFileStream instanceof ChecksumInputStream) {
             	String crcFileName = sourceFile.getName() + ".sfv";
                 try {
 	            	String sourceChecksum;
-	            	if (recalculateCRC ) {
+	            	if (parallelChecksum != null) {
+	            		sourceChecksum = parallelChecksum;
+	            	} else if (recalculateCRC ) {
 	            		origFileStream = sourceFile.getInputStream();
 						sourceChecksum = AbstractFile.calculateChecksum(origFileStream, MessageDigest.getInstance("CRC32"));
 						origFileStream.close();
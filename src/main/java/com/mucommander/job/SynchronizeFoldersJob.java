@@ -0,0 +1,420 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.job.utils.FolderComparison;
+import com.mucommander.job.utils.FolderComparison.Difference;
+import com.mucommander.ui.dialog.file.ProgressDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.utils.text.Translator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This job synchronizes two folders: both trees are compared using a {@link FolderComparison}, then the files are
+ * copied or deleted so that the destination (or both folders) are up to date.
+ *
+ * @author Oleg Trifonov
+ */
+public class SynchronizeFoldersJob extends TransferFileJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SynchronizeFoldersJob.class);
+
+    public enum Mode {
+        /** Copies new and newer files from the source to the destination */
+        UPDATE,
+        /** Makes the destination identical to the source, deleting the files that only exist in the destination */
+        MIRROR,
+        /** Copies new and newer files in both directions */
+        TWO_WAY
+    }
+
+    private final AbstractFile sourceFolder;
+    private final AbstractFile destFolder;
+    private final Mode mode;
+
+    private final FolderComparison comparison;
+
+    /** True while the folders are being compared */
+    private volatile boolean comparing;
+
+    /** Total size of the files to copy */
+    private long totalBytes;
+
+    /** Number of entries in the synchronization plan, and number of entries already processed */
+    private int nbActions;
+    private int nbProcessedActions;
+
+    /** Folders created by this job, by path relative to the synchronized folders */
+    private final Map<String, AbstractFile> createdFolders = new HashMap<>();
+
+    private final String errorDialogTitle = Translator.get("sync_dialog.error_title");
+
+
+    /**
+     * Creates a new SynchronizeFoldersJob without starting it.
+     *
+     * @param progressDialog dialog which shows this job's progress
+     * @param mainFrame mainFrame this job has been triggered by
+     * @param sourceFolder the folder to synchronize from (the left folder in {@link Mode#TWO_WAY} mode)
+     * @param destFolder the folder to synchronize (the right folder in {@link Mode#TWO_WAY} mode)
+     * @param mode the synchronization mode
+     * @param compareContent if true, files that have the same size and date are also compared byte by byte
+     */
+    public SynchronizeFoldersJob(ProgressDialog progressDialog, MainFrame mainFrame, AbstractFile sourceFolder,
+                                 AbstractFile destFolder, Mode mode, boolean compareContent) {
+        super(progressDialog, mainFrame, new FileSet(sourceFolder.getParent(), sourceFolder));
+
+        this.sourceFolder = sourceFolder;
+        this.destFolder = destFolder;
+        this.mode = mode;
+        this.comparison = new FolderComparison(sourceFolder, destFolder);
+        comparison.setCompareContent(compareContent);
+    }
+
+
+    @Override
+    protected boolean processFile(AbstractFile file, Object recurseParams) {
+        List<Difference> differences;
+        do {        // Loop for retry
+            comparing = true;
+            try {
+                differences = comparison.compare();
+                break;
+            } catch (IOException e) {
+                LOGGER.debug("Folder comparison failed", e);
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", sourceFolder.getName()));
+                if (ret != RETRY_ACTION) {
+                    return false;
+                }
+            } finally {
+                comparing = false;
+            }
+        } while (true);
+
+        if (differences == null || getState() == State.INTERRUPTED) {
+            return false;
+        }
+
+        // Symbolic links are not synchronized, let the user know before anything is changed
+        long nbSkippedSymlinks = comparison.getNbSkippedSymlinks();
+        if (nbSkippedSymlinks > 0) {
+            LOGGER.info("{} symbolic links skipped", nbSkippedSymlinks);
+            if (!report(Translator.get("sync_dialog.symlinks_skipped", String.valueOf(nbSkippedSymlinks)))) {
+                return false;
+            }
+        }
+
+        // Build the plan: the files and folders to copy in each direction, and the ones to delete
+        List<Difference> copies = new ArrayList<>();
+        List<Difference> deletions = new ArrayList<>();
+        List<Difference> mismatches = new ArrayList<>();
+        for (Difference difference : differences) {
+            switch (getAction(difference)) {
+                case COPY_TO_DEST:
+                case COPY_TO_SOURCE:
+                    copies.add(difference);
+                    AbstractFile copied = isCopiedToDest(difference) ? difference.getLeftFile() : difference.getRightFile();
+                    if (!copied.isDirectory()) {
+                        totalBytes += copied.getSize();
+                    }
+                    break;
+                case DELETE:
+                    deletions.add(difference);
+                    break;
+                case REPLACE_IN_DEST:
+                    copies.add(difference);
+                    if (!difference.getLeftFile().isDirectory()) {
+                        totalBytes += difference.getLeftFile().getSize();
+                    }
+                    break;
+                case REPORT:
+                    mismatches.add(difference);
+                    break;
+                default:
+                    break;
+            }
+        }
+        nbActions = copies.size() + deletions.size();
+        LOGGER.debug("{} differences, {} files to copy, {} to delete", differences.size(), copies.size(), deletions.size());
+
+        // Without a side to give precedence to, a file facing a folder can't be synchronized
+        for (Difference difference : mismatches) {
+            if (!report(Translator.get("sync_dialog.type_mismatch", difference.getPath()))) {
+                return false;
+            }
+        }
+
+        boolean success = true;
+        for (Difference difference : copies) {
+            if (getState() == State.INTERRUPTED) {
+                return false;
+            }
+            success &= difference.getStatus() == FolderComparison.Status.TYPE_MISMATCH ? replace(difference) : copy(difference);
+            nbProcessedActions++;
+        }
+
+        // Delete children before their parent folder
+        for (int i = deletions.size() - 1; i >= 0; i--) {
+            if (getState() == State.INTERRUPTED) {
+                return false;
+            }
+            success &= delete(deletions.get(i).getRightFile(), false);
+            nbProcessedActions++;
+        }
+        return success;
+    }
+
+    /**
+     * Tells the user about an entry that is not synchronized, offering to go on or to cancel the job.
+     *
+     * @return false if the job has been cancelled
+     */
+    private boolean report(String message) {
+        int ret = showErrorDialog(errorDialogTitle, message,
+                new String[] {SKIP_TEXT, SKIP_ALL_TEXT, CANCEL_TEXT},
+                new int[] {SKIP_ACTION, SKIP_ALL_ACTION, CANCEL_ACTION});
+        return ret == SKIP_ACTION;
+    }
+
+
+    private enum Action {
+        NONE, COPY_TO_DEST, COPY_TO_SOURCE, DELETE,
+        /** Deletes the destination entry, then copies the source entry */
+        REPLACE_IN_DEST,
+        /** Reports the entry as not synchronized */
+        REPORT
+    }
+
+    private Action getAction(Difference difference) {
+        switch (difference.getStatus()) {
+            case LEFT_ONLY:
+            case LEFT_NEWER:
+                return Action.COPY_TO_DEST;
+            case RIGHT_ONLY:
+                return mode == Mode.MIRROR ? Action.DELETE : mode == Mode.TWO_WAY ? Action.COPY_TO_SOURCE : Action.NONE;
+            case RIGHT_NEWER:
+                return mode == Mode.MIRROR ? Action.COPY_TO_DEST : mode == Mode.TWO_WAY ? Action.COPY_TO_SOURCE : Action.NONE;
+            case DIFFERENT:
+                // Without a date to tell which one is right, only a one-way synchronization can decide
+                return mode == Mode.TWO_WAY ? Action.NONE : Action.COPY_TO_DEST;
+            case TYPE_MISMATCH:
+                return mode == Mode.MIRROR ? Action.REPLACE_IN_DEST : Action.REPORT;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    private boolean isCopiedToDest(Difference difference) {
+        return getAction(difference) == Action.COPY_TO_DEST;
+    }
+
+
+    /**
+     * Copies a file or creates a folder on the other side.
+     */
+    private boolean copy(Difference difference) {
+        boolean toDest = isCopiedToDest(difference);
+        AbstractFile source = toDest ? difference.getLeftFile() : difference.getRightFile();
+        AbstractFile existing = toDest ? difference.getRightFile() : difference.getLeftFile();
+
+        nextFile(source);
+
+        AbstractFile target = existing;
+        if (target == null) {
+            AbstractFile targetParent = getTargetFolder(difference, toDest);
+            if (targetParent == null) {
+                // The parent folder couldn't be created, the error has already been reported
+                return false;
+            }
+            target = createTargetFile(targetParent, source.getName());
+            if (target == null) {
+                return false;
+            }
+        }
+
+        if (source.isDirectory()) {
+            return createFolder(target, difference.getPath(), toDest);
+        }
+
+        return tryCopyFile(source, target, false, errorDialogTitle);
+    }
+
+    /**
+     * Replaces a destination file by a source folder, or a destination folder by a source file, with its contents.
+     */
+    private boolean replace(Difference difference) {
+        AbstractFile source = difference.getLeftFile();
+        if (!delete(difference.getRightFile(), true)) {
+            return false;
+        }
+        nextFile(source);
+        // The deleted file may have cached its type, use a new instance
+        AbstractFile target = createTargetFile(difference.getRightFolder(), source.getName());
+        return target != null && copyTree(source, target, difference.getPath());
+    }
+
+    /**
+     * Copies a file, or creates a folder and copies its contents, symbolic links excepted.
+     */
+    private boolean copyTree(AbstractFile source, AbstractFile target, String path) {
+        if (!source.isDirectory()) {
+            return tryCopyFile(source, target, false, errorDialogTitle);
+        }
+        if (!createFolder(target, path, true)) {
+            return false;
+        }
+        AbstractFile[] children = list(source);
+        if (children == null) {
+            return false;
+        }
+        boolean success = true;
+        for (AbstractFile child : children) {
+            if (getState() == State.INTERRUPTED) {
+                return false;
+            }
+            if (child.isSymlink()) {
+                continue;
+            }
+            nextFile(child);
+            AbstractFile childTarget = createTargetFile(target, child.getName());
+            success &= childTarget != null && copyTree(child, childTarget, path + '/' + child.getName());
+        }
+        return success;
+    }
+
+    private AbstractFile[] list(AbstractFile folder) {
+        do {    // Loop for retry
+            try {
+                return folder.ls();
+            } catch (IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", folder.getName()));
+                if (ret != RETRY_ACTION) {
+                    return null;
+                }
+            }
+        } while (true);
+    }
+
+    /**
+     * Returns the folder that will contain the given entry on the target side.
+     */
+    private AbstractFile getTargetFolder(Difference difference, boolean toDest) {
+        AbstractFile folder = toDest ? difference.getRightFolder() : difference.getLeftFolder();
+        if (folder != null) {
+            return folder;
+        }
+        // The parent folder has been created by this job
+        String path = difference.getPath();
+        return createdFolders.get(getFolderKey(path.substring(0, path.lastIndexOf('/')), toDest));
+    }
+
+    private static String getFolderKey(String path, boolean toDest) {
+        return (toDest ? '>' : '<') + path;
+    }
+
+    private AbstractFile createTargetFile(AbstractFile folder, String name) {
+        do {    // Loop for retry
+            try {
+                return folder.getDirectChild(name);
+            } catch (IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_write_file", name));
+                if (ret != RETRY_ACTION) {
+                    return null;
+                }
+            }
+        } while (true);
+    }
+
+    private boolean createFolder(AbstractFile folder, String path, boolean toDest) {
+        do {    // Loop for retry
+            try {
+                folder.mkdir();
+                createdFolders.put(getFolderKey(path, toDest), folder);
+                return true;
+            } catch (IOException e) {
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_create_folder", folder.getName()));
+                if (ret != RETRY_ACTION) {
+                    return false;
+                }
+            }
+        } while (true);
+    }
+
+    private boolean delete(AbstractFile file, boolean recursively) {
+        nextFile(file);
+        do {    // Loop for retry
+            try {
+                if (recursively) {
+                    file.deleteRecursively();
+                } else {
+                    file.delete();
+                }
+                return true;
+            } catch (IOException e) {
+                LOGGER.debug("Could not delete " + file, e);
+                int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getName()));
+                if (ret != RETRY_ACTION) {
+                    return false;
+                }
+            }
+        } while (true);
+    }
+
+
+    @Override
+    public void interrupt() {
+        comparison.cancel();
+        super.interrupt();
+    }
+
+    @Override
+    public float getTotalPercentDone() {
+        if (comparing || nbActions == 0) {
+            return 0;
+        }
+        float progressByCount = (float)nbProcessedActions / nbActions;
+        if (totalBytes == 0) {
+            return progressByCount;
+        }
+        long bytes = getTotalByteCounter().getByteCount() + getTotalSkippedByteCounter().getByteCount();
+        float progressBySize = Math.min(1f, (float)bytes / totalBytes);
+        return (progressBySize * 8 + progressByCount * 2) / 10;
+    }
+
+    @Override
+    public String getStatusString() {
+        if (comparing) {
+            return Translator.get("sync_dialog.comparing", String.valueOf(comparison.getNbCompared()));
+        }
+        return super.getStatusString();
+    }
+
+    // This job modifies the destination folder, and the source folder in two-way mode
+    @Override
+    protected boolean hasFolderChanged(AbstractFile folder) {
+        return destFolder.isParentOf(folder) || (mode == Mode.TWO_WAY && sourceFolder.isParentOf(folder));
+    }
+}
@@ -26,6 +26,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
 
 import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.adb.AdbFile;
@@ -36,13 +37,18 @@ import org.slf4j.LoggerFactory;
 import com.apple.eio.FileManager;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.BoundedInputStream;
+import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.ChecksumEngine;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.RandomAccessOutputStream;
 import com.mucommander.commons.io.ThroughputLimitInputStream;
 import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.utils.text.SizeFormat;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -87,6 +93,23 @@ public abstract class TransferFileJob extends FileJob {
     /** True when the checksum of the source or destination file is being calculated. */
     private boolean isCheckingIntegrity;
 
+    /** If true, large files on FTP/SFTP servers are transferred over several connections at once */
+    private boolean segmentedTransferEnabled = true;
+
+    /** Segmented transfer of the current file, null if the current file is transferred as a single stream */
+    private SegmentedFileTransfer segmentedTransfer;
+
+    /** If true, an existing destination file is updated in place by rewriting only the blocks that differ from the
+     * source, see {@link DeltaFileUpdate} */
+    boolean updateChangedBlocks;
+
+    /** Journal entry of the interrupted transfer that the next appended file resumes, already checked against the
+     * destination, see {@link #verifyResumableEntry(AbstractFile, AbstractFile)} */
+    TransferJournal.Entry resumeEntry;
+
+    /** Number of bytes that didn't have to be written thanks to updating only the changed blocks */
+    private long changedBlocksBytesSaved;
+
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
@@ -155,7 +178,13 @@ public abstract class TransferFileJob extends FileJob {
         // may also offer server to server copy which is more efficient than stream copy.
 
         boolean copied = false;
-        if (sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)) {
+
+        // Rewrite only the blocks of the existing destination that differ from the source, if requested
+        if (updateChangedBlocks && !append && DeltaFileUpdate.isApplicable(destFile)) {
+            copied = copyChangedBlocks(sourceFile, destFile);
+        }
+
+        if (!copied && sourceFile.isFileOperationSupported(FileOperation.COPY_REMOTELY)) {
             try {
                 sourceFile.copyRemotelyTo(destFile);
                 copied = true;
@@ -164,6 +193,12 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
+        // Large files on FTP/SFTP servers are copied over several pooled connections if the destination allows it
+        if (!copied && !append && segmentedTransferEnabled && !(destFile instanceof AdbFile)
+                && SegmentedFileTransfer.isApplicable(sourceFile, destFile)) {
+            copied = copyFileSegmented(sourceFile, destFile);
+        }
+
         // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
         InputStream in = null;
         if (!copied) {
@@ -171,11 +206,32 @@ public abstract class TransferFileJob extends FileJob {
             try {
                 long inLength = sourceFile.getSize();
 
+                // Resume from the journal's last committed offset if this file's previous transfer was interrupted
+                TransferJournal journal = TransferJournal.getInstance();
+                TransferJournal.Entry journalEntry = null;
+                if (append) {
+                    if (resumeEntry != null) {
+                        // Already checked against the destination when resolving the collision
+                        journalEntry = resumeEntry;
+                        resumeEntry = null;
+                    } else {
+                        journalEntry = journal.getResumableEntry(sourceFile, destFile);
+                        if (journalEntry != null && !prepareJournalResume(journalEntry, destFile)) {
+                            // The destination doesn't hold what the journal says it does, append to it as it is
+                            journal.remove(journalEntry);
+                            journalEntry = null;
+                        }
+                    }
+                }
+
                 // Try to open InputStream
                 try  {
-                    long destFileSize = destFile.getSize();
+                    long destFileSize = journalEntry != null ? journalEntry.getCommitted() : destFile.getSize();
                     if (append && destFileSize > 0) {
                         in = sourceFile.getInputStream(destFileSize);
+                        if (journalEntry != null) {
+                            in = new TransferJournal.JournalInputStream(in, journal, journalEntry);
+                        }
                         // Do not calculate checksum, as it needs to be calculated on the whole file
 
                         inLength -= destFileSize;
@@ -185,6 +241,10 @@ public abstract class TransferFileJob extends FileJob {
                         currentFileSkippedByteCounter.add(destFileSize);
                     } else {
                         in = sourceFile.getInputStream();
+                        if (inLength >= TransferJournal.MIN_JOURNALED_FILE_SIZE && !(destFile instanceof AdbFile)) {
+                            journalEntry = journal.start(sourceFile, destFile, 0, 1);
+                            in = new TransferJournal.JournalInputStream(in, journal, journalEntry);
+                        }
                         if (integrityCheckEnabled) {
                             in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
                         }
@@ -198,17 +258,18 @@ public abstract class TransferFileJob extends FileJob {
                 if (destFile instanceof AdbFile) {
                     AdbFile adbFile = (AdbFile)destFile;
                     try {
-                        adbFile.pullFrom(sourceFile);
+                        adbFile.pullFrom(tlin, sourceFile.getLastModifiedDate());
                     } catch (IOException e) {
-                        e.printStackTrace();
+                        LOGGER.debug("IOException caught, throwing FileTransferException", e);
                         throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
                     }
-                    System.out.println(sourceFile.getClass().getName());
-                    System.out.println(sourceFile + " -> " + destFile);
                     return;
                 }
                 // Copy source stream to destination file
                 destFile.copyStream(tlin, append, inLength);
+                if (journalEntry != null) {
+                    journal.remove(journalEntry);
+                }
             } finally {
                 // This block will always be executed, even if an exception
                 // was thrown in the catch block
@@ -261,11 +322,170 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Returns the journal entry of an interrupted transfer of the given file if the destination still holds what was
+     * written by that transfer, and prepares the destination for resuming it. An entry that doesn't match the
+     * destination anymore, because the destination was modified or replaced since, is removed from the journal.
+     *
+     * @return the entry to resume from, <code>null</code> if the transfer can't be resumed from the journal
+     */
+    TransferJournal.Entry verifyResumableEntry(AbstractFile sourceFile, AbstractFile destFile) {
+        TransferJournal journal = TransferJournal.getInstance();
+        TransferJournal.Entry entry = journal.getResumableEntry(sourceFile, destFile);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            if (prepareJournalResume(entry, destFile)) {
+                return entry;
+            }
+        } catch (FileTransferException e) {
+            LOGGER.debug("Could not check {} against the transfer journal", destFile, e);
+        }
+        journal.remove(entry);
+        return null;
+    }
+
+    /**
+     * Prepares the destination file for resuming an interrupted transfer from the given journal entry: verifies that
+     * the destination's first bytes match the checksum recorded in the journal, then truncates anything that was
+     * written after the last committed offset.
+     *
+     * @return <code>false</code> if the destination doesn't match the journal or can't be truncated
+     * @throws FileTransferException if the destination could not be read
+     */
+    private boolean prepareJournalResume(TransferJournal.Entry entry, AbstractFile destFile) throws FileTransferException {
+        long committed = entry.getCommitted();
+        isCheckingIntegrity = true;
+        try {
+            InputStream in = setCurrentInputStream(new BoundedInputStream(destFile.getInputStream(), committed, false));
+            Adler32 adler32 = new Adler32();
+            byte buffer[] = BufferPool.getByteArray();
+            try {
+                int nbRead;
+                while ((nbRead = in.read(buffer)) != -1) {
+                    adler32.update(buffer, 0, nbRead);
+                }
+            } finally {
+                BufferPool.releaseByteArray(buffer);
+                closeCurrentInputStream();
+            }
+            if (adler32.getValue() != entry.getChecksum()) {
+                LOGGER.info("Checksum of {} doesn't match the transfer journal, not resuming", destFile);
+                return false;
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not verify the beginning of {}", destFile, e);
+            throw new FileTransferException(FileTransferException.READING_DESTINATION);
+        } finally {
+            isCheckingIntegrity = false;
+            currentFileByteCounter.reset();
+        }
+
+        if (destFile.getSize() > committed) {
+            try (RandomAccessOutputStream raos = destFile.getRandomAccessOutputStream()) {
+                raos.setLength(committed);
+            } catch (IOException e) {
+                LOGGER.debug("Could not truncate {} to the last committed offset", destFile, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the given file using a {@link SegmentedFileTransfer}. Returns <code>false</code> if the destination turned
+     * out not to support random writes, in which case nothing has been copied.
+     */
+    private boolean copyFileSegmented(AbstractFile sourceFile, AbstractFile destFile) throws FileTransferException {
+        synchronized(this) {
+            segmentedTransfer = new SegmentedFileTransfer(sourceFile, destFile, currentFileByteCounter,
+                    getState() == State.PAUSED ? 0 : throughputLimit);
+        }
+        try {
+            return segmentedTransfer.transfer();
+        } finally {
+            synchronized(this) {
+                segmentedTransfer = null;
+            }
+        }
+    }
+
+    /**
+     * Updates the existing destination file in place using {@link DeltaFileUpdate}. Returns <code>false</code> if the
+     * destination couldn't be opened for random access, in which case nothing has been written.
+     */
+    private boolean copyChangedBlocks(AbstractFile sourceFile, AbstractFile destFile) throws FileTransferException {
+        RandomAccessOutputStream out;
+        try {
+            out = destFile.getRandomAccessOutputStream();
+        } catch (IOException e) {
+            LOGGER.debug("Destination doesn't support random writes, falling back to a regular copy", e);
+            return false;
+        }
+
+        InputStream destIn = null;
+        try {
+            try {
+                destIn = destFile.getInputStream();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.READING_DESTINATION);
+            }
+            try {
+                setCurrentInputStream(sourceFile.getInputStream());
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+            }
+
+            // The source is read through the current input stream so that progress, pause and throughput limit apply
+            long nbWritten = DeltaFileUpdate.update(tlin, destIn, out);
+            long nbSaved = currentFileByteCounter.getByteCount() - nbWritten;
+            LOGGER.debug("updated {}: {} bytes written, {} bytes unchanged", destFile, nbWritten, nbSaved);
+            changedBlocksBytesSaved += nbSaved;
+
+            RandomAccessOutputStream closedOut = out;
+            out = null;
+            try {
+                closedOut.close();
+            } catch (IOException e) {
+                throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+            }
+        } finally {
+            closeCurrentInputStream();
+            if (destIn != null) {
+                try {
+                    destIn.close();
+                } catch (IOException e) {
+                    // Not an error, the destination was only read
+                }
+            }
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Superseded by the error that interrupted the update
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes that didn't have to be written so far because the destination files were updated
+     * in place and only their changed blocks were rewritten.
+     *
+     * @return the number of bytes saved by updating only the changed blocks
+     */
+    public long getChangedBlocksBytesSaved() {
+        return changedBlocksBytesSaved;
+    }
+
     private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
         currentFileByteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
         try {
-            return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
+            // Reads the next blocks while the previous ones are being digested
+            return ChecksumEngine.calculateChecksums(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM))[0];
         } finally {
             closeCurrentInputStream();
         }
@@ -400,6 +620,9 @@ public abstract class TransferFileJob extends FileJob {
      * Closes the currently registered source InputStream.
      */
     synchronized void closeCurrentInputStream() {
+        if (segmentedTransfer != null) {
+            segmentedTransfer.abort();
+        }
         if (tlin != null) {
             try {
                 tlin.close();
@@ -430,6 +653,16 @@ public abstract class TransferFileJob extends FileJob {
         this.integrityCheckEnabled = integrityCheckEnabled;
     }
 
+    /**
+     * Specifies whether large files located on FTP or SFTP servers may be transferred in several segments over
+     * parallel connections, when the destination supports random writes. Enabled by default.
+     *
+     * @param segmentedTransferEnabled true to allow segmented transfers
+     */
+    public void setSegmentedTransferEnabled(boolean segmentedTransferEnabled) {
+        this.segmentedTransferEnabled = segmentedTransferEnabled;
+    }
+
     /**
      * Returns <code>true</code> if the integrity of the current file is being verified.
      *
@@ -444,7 +677,7 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if (tlin != null) {
+        if (tlin != null || segmentedTransfer != null) {
             LOGGER.debug("skipping current file, closing "+ tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
@@ -549,6 +782,9 @@ public abstract class TransferFileJob extends FileJob {
             if (getState() != State.PAUSED && tlin != null) {
                 tlin.setThroughputLimit(throughputLimit);
             }
+            if (getState() != State.PAUSED && segmentedTransfer != null) {
+                segmentedTransfer.setThroughputLimit(throughputLimit);
+            }
         }
     }
 
@@ -571,7 +807,7 @@ public abstract class TransferFileJob extends FileJob {
         super.jobStopped();
 
         synchronized(this) {
-            if (tlin != null) {
+            if (tlin != null || segmentedTransfer != null) {
                 LOGGER.debug("closing current InputStream "+ tlin);
                 closeCurrentInputStream();
             }
@@ -591,6 +827,9 @@ public abstract class TransferFileJob extends FileJob {
             if (tlin != null) {
                 tlin.setThroughputLimit(0);
             }
+            if (segmentedTransfer != null) {
+                segmentedTransfer.setThroughputLimit(0);
+            }
         }
     }
 
@@ -608,6 +847,9 @@ public abstract class TransferFileJob extends FileJob {
             if (tlin != null) {
                 tlin.setThroughputLimit(throughputLimit);
             }
+            if (segmentedTransfer != null) {
+                segmentedTransfer.setThroughputLimit(throughputLimit);
+            }
         }
     }
 
@@ -648,6 +890,28 @@ public abstract class TransferFileJob extends FileJob {
         return nbFilesProcessed/(float)nbFiles;
     }
 
+    @Override
+    protected void jobCompleted() {
+        if (changedBlocksBytesSaved > 0) {
+            LOGGER.info("{} bytes unchanged and not rewritten", changedBlocksBytesSaved);
+        }
+        super.jobCompleted();
+    }
+
+    /**
+     * Adds to the completion message how many bytes were saved by updating only the changed blocks of the destination
+     * files, if any.
+     */
+    @Override
+    protected String getCompletionMessage() {
+        String message = super.getCompletionMessage();
+        if (changedBlocksBytesSaved > 0) {
+            String bytesSaved = SizeFormat.format(changedBlocksBytesSaved, SizeFormat.DIGITS_MEDIUM | SizeFormat.UNIT_LONG | SizeFormat.ROUND_TO_KB);
+            message += " " + Translator.get("progress_dialog.changed_blocks_bytes_saved", bytesSaved);
+        }
+        return message;
+    }
+
     /**
      * This method is overridden to return a custom string "Checking integrity of CURRENT_FILE" when the current file
      * is being checked for integrity.
@@ -0,0 +1,444 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Adler32;
+
+/**
+ * Persists the progress of the files being transferred so that an interrupted transfer (crash, network loss, restart)
+ * can be resumed from the last committed offset instead of starting over.
+ *
+ * <p>For each file, the journal holds the source and destination URLs, the source's size and date at the time the
+ * transfer started, the number of bytes committed to the destination, the Adler32 checksum of the committed prefix
+ * and the time of the last progress update. Entries that are too old, or whose destination has been modified after
+ * the transfer was interrupted, are discarded rather than resumed.
+ * Progress is recorded in memory by {@link JournalInputStream} and written to disk by a background thread at most
+ * every {@link #FLUSH_PERIOD} milliseconds, so that journaling doesn't slow the transfer down.
+ *
+ * @author Oleg Trifonov
+ */
+public class TransferJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransferJournal.class);
+
+    /** Name of the journal file in the preferences folder */
+    private static final String JOURNAL_FILE_NAME = "transfers.journal";
+
+    /** Files smaller than this are not journaled, copying them again is cheaper than keeping track of them */
+    static final long MIN_JOURNALED_FILE_SIZE = 8 * 1024 * 1024;
+
+    /** Maximum delay (in milliseconds) between a progress update and its write to disk */
+    private static final long FLUSH_PERIOD = 2000;
+
+    /** Entries that haven't been updated for this long (in milliseconds) are not resumed anymore */
+    static final long MAX_ENTRY_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    /** Tolerance (in milliseconds) between the last update of an entry and the date of its destination: the data is
+     * written a little after its progress is recorded, and the destination's clock may not be quite in sync */
+    static final long DESTINATION_DATE_TOLERANCE = 10 * 60 * 1000;
+
+    /** Separator of the fields of a journal line */
+    private static final char SEPARATOR = '\t';
+
+    private static TransferJournal instance;
+
+    /** Journal entries keyed by source and destination URL */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /** True if the entries have changed since the journal was last written */
+    private boolean dirty;
+
+    private ScheduledExecutorService flushExecutor;
+
+
+    /**
+     * Progress of a single file transfer.
+     */
+    public static class Entry {
+        private final String sourceUrl;
+        private final String destUrl;
+        private final long sourceSize;
+        private final long sourceDate;
+        /** Number of bytes written to the destination */
+        private long committed;
+        /** Adler32 checksum of the committed bytes */
+        private long checksum;
+        /** Time of the last progress update, in milliseconds since the epoch */
+        private long updateTime;
+
+        Entry(String sourceUrl, String destUrl, long sourceSize, long sourceDate, long committed, long checksum,
+              long updateTime) {
+            this.sourceUrl = sourceUrl;
+            this.destUrl = destUrl;
+            this.sourceSize = sourceSize;
+            this.sourceDate = sourceDate;
+            this.committed = committed;
+            this.checksum = checksum;
+            this.updateTime = updateTime;
+        }
+
+        public synchronized long getCommitted() {
+            return committed;
+        }
+
+        public synchronized long getChecksum() {
+            return checksum;
+        }
+
+        public synchronized long getUpdateTime() {
+            return updateTime;
+        }
+
+        synchronized void setProgress(long committed, long checksum) {
+            this.committed = committed;
+            this.checksum = checksum;
+            this.updateTime = System.currentTimeMillis();
+        }
+
+        private String getKey() {
+            return getKey(sourceUrl, destUrl);
+        }
+
+        private static String getKey(String sourceUrl, String destUrl) {
+            return sourceUrl + SEPARATOR + destUrl;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.valueOf(committed) + SEPARATOR + checksum + SEPARATOR + sourceSize + SEPARATOR + sourceDate +
+                    SEPARATOR + sourceUrl + SEPARATOR + destUrl + SEPARATOR + updateTime;
+        }
+
+        private static Entry parse(String line) {
+            String[] fields = line.split(String.valueOf(SEPARATOR));
+            // Entries written without an update time are considered as old as can be
+            if (fields.length != 6 && fields.length != 7) {
+                return null;
+            }
+            try {
+                return new Entry(fields[4], fields[5], Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                        Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        fields.length == 7 ? Long.parseLong(fields[6]) : 0);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+
+    public static synchronized TransferJournal getInstance() {
+        if (instance == null) {
+            instance = new TransferJournal();
+            try {
+                instance.load(getJournalFile());
+            } catch (IOException e) {
+                LOGGER.debug("Could not load transfer journal", e);
+            }
+        }
+        return instance;
+    }
+
+    private static AbstractFile getJournalFile() throws IOException {
+        return PlatformManager.getPreferencesFolder().getChild(JOURNAL_FILE_NAME);
+    }
+
+    private static String getUrl(AbstractFile file) {
+        // Credentials are not stored
+        return file.getURL().toString(false);
+    }
+
+
+    /**
+     * Returns the journal entry of an interrupted transfer of the given file to the given destination, if the source
+     * hasn't changed since, the destination is at least as large as the committed prefix and the entry is not stale
+     * (see {@link #isStale(Entry, long, long)}). Returns <code>null</code> if the transfer can't be resumed from the
+     * journal.
+     *
+     * @param sourceFile the file being copied
+     * @param destFile the destination file
+     * @return the resumable journal entry, <code>null</code> if there is none
+     */
+    public synchronized Entry getResumableEntry(AbstractFile sourceFile, AbstractFile destFile) {
+        Entry entry = entries.get(Entry.getKey(getUrl(sourceFile), getUrl(destFile)));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.sourceSize != sourceFile.getSize() || entry.sourceDate != sourceFile.getLastModifiedDate()) {
+            // The source has changed since, what was copied is not a prefix of it anymore
+            remove(entry);
+            return null;
+        }
+        long committed = entry.getCommitted();
+        if (committed <= 0 || !destFile.exists() || destFile.getSize() < committed) {
+            return null;
+        }
+        if (isStale(entry, destFile.getLastModifiedDate(), System.currentTimeMillis())) {
+            remove(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry hasn't been updated for more than {@link #MAX_ENTRY_AGE}, or if its
+     * destination has been modified after the transfer was interrupted.
+     *
+     * @param entry the journal entry
+     * @param destDate the date of the destination file
+     * @param now the current time
+     * @return true if the transfer shouldn't be resumed from the entry
+     */
+    static boolean isStale(Entry entry, long destDate, long now) {
+        long updateTime = entry.getUpdateTime();
+        return now - updateTime > MAX_ENTRY_AGE || destDate > updateTime + DESTINATION_DATE_TOLERANCE;
+    }
+
+    /**
+     * Starts journaling the transfer of the given file from the given offset, replacing any previous entry for the same
+     * source and destination.
+     *
+     * @param sourceFile the file being copied
+     * @param destFile the destination file
+     * @param offset offset at which the transfer starts
+     * @param checksum Adler32 checksum of the first <code>offset</code> bytes, <code>1</code> (empty checksum) if
+     * <code>offset</code> is 0
+     * @return the new journal entry
+     */
+    public synchronized Entry start(AbstractFile sourceFile, AbstractFile destFile, long offset, long checksum) {
+        Entry entry = new Entry(getUrl(sourceFile), getUrl(destFile), sourceFile.getSize(), sourceFile.getLastModifiedDate(),
+                offset, checksum, System.currentTimeMillis());
+        entries.put(entry.getKey(), entry);
+        setDirty();
+        return entry;
+    }
+
+    /**
+     * Records the progress of the given entry. The journal is written to disk asynchronously.
+     *
+     * @param entry the journal entry
+     * @param committed number of bytes written to the destination
+     * @param checksum Adler32 checksum of the committed bytes
+     */
+    public void update(Entry entry, long committed, long checksum) {
+        entry.setProgress(committed, checksum);
+        synchronized (this) {
+            setDirty();
+        }
+    }
+
+    /**
+     * Removes the given entry, typically because the transfer completed.
+     *
+     * @param entry the journal entry
+     */
+    public synchronized void remove(Entry entry) {
+        if (entries.remove(entry.getKey()) != null) {
+            setDirty();
+        }
+    }
+
+    /**
+     * Marks the journal as changed and schedules a write if none is pending.
+     */
+    private void setDirty() {
+        if (dirty) {
+            return;
+        }
+        dirty = true;
+        if (flushExecutor == null) {
+            flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "TransferJournal");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        flushExecutor.schedule(this::flush, FLUSH_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes the journal to disk if it has changed since it was last written.
+     */
+    public void flush() {
+        String content;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            StringBuilder sb = new StringBuilder();
+            for (Entry entry : entries.values()) {
+                sb.append(entry).append('\n');
+            }
+            content = sb.toString();
+        }
+        try {
+            save(getJournalFile(), content);
+        } catch (IOException e) {
+            LOGGER.debug("Could not write transfer journal", e);
+        }
+    }
+
+    private void load(AbstractFile file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if (entry != null) {
+                    entries.put(entry.getKey(), entry);
+                }
+            }
+        }
+    }
+
+    private static void save(AbstractFile file, String content) throws IOException {
+        try (Writer writer = new OutputStreamWriter(file.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        }
+    }
+
+
+    /**
+     * Returns the Adler32 checksum of the concatenation of two blocks, given the checksum of each block and the length
+     * of the second one (port of zlib's <code>adler32_combine</code>).
+     *
+     * @param adler1 checksum of the first block
+     * @param adler2 checksum of the second block
+     * @param len2 length of the second block
+     * @return the checksum of both blocks
+     */
+    static long combineAdler32(long adler1, long adler2, long len2) {
+        final long base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+
+    /**
+     * Records in a journal entry the number of bytes copied so far and their checksum. The copy may read ahead of what
+     * it has written (see {@link StreamUtils#copyStreamPipelined(InputStream, java.io.OutputStream, int, long)}), so
+     * data is only considered committed once {@link StreamUtils#MAX_PIPELINED_READ_AHEAD} more bytes have been read
+     * after it.
+     */
+    static class JournalInputStream extends FilterInputStream {
+
+        /** Minimum number of bytes between two recorded checkpoints */
+        private static final int CHECKPOINT_INTERVAL = 64 * 1024;
+
+        private final TransferJournal journal;
+        private final Entry entry;
+
+        /** Offset and checksum of the data read before this stream was opened */
+        private final long baseOffset;
+        private final long baseChecksum;
+
+        private final Adler32 adler32 = new Adler32();
+
+        /** Number of bytes read, and whose checksum is included in {@link #adler32} */
+        private long nbRead;
+
+        /** Number of bytes read and their checksum, at the points that haven't been committed yet, oldest first */
+        private final Deque<long[]> checkpoints = new ArrayDeque<>();
+
+        /** Number of bytes read at the last checkpoint */
+        private long lastCheckpoint;
+
+        JournalInputStream(InputStream in, TransferJournal journal, Entry entry) {
+            super(in);
+            this.journal = journal;
+            this.entry = entry;
+            this.baseOffset = entry.getCommitted();
+            this.baseChecksum = entry.getChecksum();
+        }
+
+        /**
+         * Records as committed the most recent checkpoint that the copy must have written by now.
+         */
+        private void commitPending() {
+            long[] committed = null;
+            while (!checkpoints.isEmpty() && checkpoints.peek()[0] <= nbRead - StreamUtils.MAX_PIPELINED_READ_AHEAD) {
+                committed = checkpoints.poll();
+            }
+            if (committed != null) {
+                journal.update(entry, baseOffset + committed[0], combineAdler32(baseChecksum, committed[1], committed[0]));
+            }
+        }
+
+        private void dataRead() {
+            if (nbRead - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                checkpoints.add(new long[] {nbRead, adler32.getValue()});
+                lastCheckpoint = nbRead;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            commitPending();
+            int b = in.read();
+            if (b != -1) {
+                adler32.update(b);
+                nbRead++;
+                dataRead();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            commitPending();
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                adler32.update(b, off, n);
+                nbRead += n;
+                dataRead();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes are not checksummed, the journal can't vouch for them anymore
+            journal.remove(entry);
+            return in.skip(n);
+        }
+    }
+}
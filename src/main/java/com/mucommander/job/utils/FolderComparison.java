@@ -0,0 +1,391 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job.utils;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares two folder trees and lists the entries that differ.
+ *
+ * <p>Both trees are walked at once: every pair of matching folders is compared by its own task, the two sides being
+ * listed concurrently, so that slow listings (network shares) overlap. The children of a folder pair are matched by
+ * name and classified according to their type, size and date, and optionally their content. Entries that only exist
+ * on one side are listed recursively, a folder appearing before its contents.
+ *
+ * <p>Symbolic links are not compared, they are counted by {@link #getNbSkippedSymlinks()}.
+ *
+ * @author Oleg Trifonov
+ */
+public class FolderComparison {
+
+    /** Maximum number of folders listed at the same time */
+    private final static int PARALLELISM = 8;
+
+    /** Default tolerance when comparing dates, FAT and some network file systems have a 2 seconds precision */
+    public final static long DEFAULT_DATE_TOLERANCE = 2000;
+
+    /** Size of the buffers used to compare the content of files */
+    private final static int BUFFER_SIZE = 65536;
+
+    public enum Status {
+        /** The entry only exists in the left folder */
+        LEFT_ONLY,
+        /** The entry only exists in the right folder */
+        RIGHT_ONLY,
+        /** The left file is more recent */
+        LEFT_NEWER,
+        /** The right file is more recent */
+        RIGHT_NEWER,
+        /** Both files have the same date but a different size or content */
+        DIFFERENT,
+        /** The entry is a file on one side and a folder on the other */
+        TYPE_MISMATCH
+    }
+
+    /**
+     * An entry that differs between the two folders.
+     */
+    public static class Difference {
+        private final String path;
+        private final AbstractFile leftFile;
+        private final AbstractFile rightFile;
+        private final AbstractFile leftFolder;
+        private final AbstractFile rightFolder;
+        private final Status status;
+
+        Difference(String path, AbstractFile leftFile, AbstractFile rightFile, AbstractFile leftFolder,
+                   AbstractFile rightFolder, Status status) {
+            this.path = path;
+            this.leftFile = leftFile;
+            this.rightFile = rightFile;
+            this.leftFolder = leftFolder;
+            this.rightFolder = rightFolder;
+            this.status = status;
+        }
+
+        /**
+         * @return the path of the entry relative to the compared folders, using '/' as separator
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the entry in the left folder, <code>null</code> if it only exists on the right
+         */
+        public AbstractFile getLeftFile() {
+            return leftFile;
+        }
+
+        /**
+         * @return the entry in the right folder, <code>null</code> if it only exists on the left
+         */
+        public AbstractFile getRightFile() {
+            return rightFile;
+        }
+
+        /**
+         * @return the left folder that contains the entry, <code>null</code> if that folder doesn't exist
+         */
+        public AbstractFile getLeftFolder() {
+            return leftFolder;
+        }
+
+        /**
+         * @return the right folder that contains the entry, <code>null</code> if that folder doesn't exist
+         */
+        public AbstractFile getRightFolder() {
+            return rightFolder;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + path;
+        }
+    }
+
+
+    private final AbstractFile leftFolder;
+    private final AbstractFile rightFolder;
+
+    private boolean compareContent;
+    private long dateTolerance = DEFAULT_DATE_TOLERANCE;
+
+    private final Queue<Difference> differences = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nbCompared = new AtomicLong();
+    private final AtomicLong nbSkippedSymlinks = new AtomicLong();
+
+    private volatile boolean cancelled;
+    private volatile IOException error;
+
+
+    public FolderComparison(AbstractFile leftFolder, AbstractFile rightFolder) {
+        this.leftFolder = leftFolder;
+        this.rightFolder = rightFolder;
+    }
+
+    /**
+     * Enables comparing the content of files that have the same size and date, which detects modifications that
+     * preserved the date but is much slower.
+     *
+     * @param compareContent true to compare the content of the files that look the same
+     */
+    public void setCompareContent(boolean compareContent) {
+        this.compareContent = compareContent;
+    }
+
+    /**
+     * Sets the maximum difference (in milliseconds) between the dates of two files considered as having the same date.
+     *
+     * @param dateTolerance date tolerance in milliseconds
+     */
+    public void setDateTolerance(long dateTolerance) {
+        this.dateTolerance = dateTolerance;
+    }
+
+    /**
+     * Returns the number of entries compared so far. This method can be called while {@link #compare()} runs.
+     *
+     * @return the number of entries compared so far
+     */
+    public long getNbCompared() {
+        return nbCompared.get();
+    }
+
+    /**
+     * Returns the number of symbolic links found on either side, which are not compared.
+     *
+     * @return the number of symbolic links skipped so far
+     */
+    public long getNbSkippedSymlinks() {
+        return nbSkippedSymlinks.get();
+    }
+
+    /**
+     * Stops a running comparison, {@link #compare()} then returns <code>null</code>.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+
+    /**
+     * Compares the two folders and returns their differences, sorted by path so that a folder always precedes its
+     * contents.
+     *
+     * @return the differences, <code>null</code> if the comparison was cancelled
+     * @throws IOException if a folder couldn't be listed or a file couldn't be read
+     */
+    public List<Difference> compare() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        try {
+            pool.invoke(new FolderTask("", leftFolder, rightFolder));
+        } finally {
+            pool.shutdownNow();
+        }
+        if (error != null) {
+            throw error;
+        }
+        if (cancelled) {
+            return null;
+        }
+
+        List<Difference> result = new ArrayList<>(differences);
+        result.sort((d1, d2) -> d1.path.compareTo(d2.path));
+        return result;
+    }
+
+
+    private void setError(IOException e) {
+        if (error == null) {
+            error = e;
+        }
+        cancelled = true;
+    }
+
+    private static String getChildPath(String parentPath, String name) {
+        return parentPath.isEmpty() ? name : parentPath + '/' + name;
+    }
+
+
+    /**
+     * Compares the children of two matching folders, and forks a task for each pair of matching sub-folders.
+     * Either folder may be <code>null</code> when listing a folder that only exists on one side.
+     */
+    private class FolderTask extends RecursiveAction {
+        private final String path;
+        private final AbstractFile left;
+        private final AbstractFile right;
+
+        FolderTask(String path, AbstractFile left, AbstractFile right) {
+            this.path = path;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            AbstractFile[] leftChildren;
+            AbstractFile[] rightChildren;
+            try {
+                if (left != null && right != null) {
+                    // List the right side in another thread while this one lists the left side
+                    ForkJoinTask<AbstractFile[]> rightListing = ForkJoinTask.adapt((Callable<AbstractFile[]>)right::ls).fork();
+                    leftChildren = left.ls();
+                    rightChildren = rightListing.join();
+                } else {
+                    leftChildren = left != null ? left.ls() : new AbstractFile[0];
+                    rightChildren = right != null ? right.ls() : new AbstractFile[0];
+                }
+            } catch (IOException e) {
+                setError(e);
+                return;
+            } catch (RuntimeException e) {
+                // ForkJoinTask#join wraps checked exceptions
+                setError(e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e));
+                return;
+            }
+
+            Map<String, AbstractFile> rightByName = new HashMap<>(rightChildren.length * 2);
+            for (AbstractFile file : rightChildren) {
+                if (file.isSymlink()) {
+                    nbSkippedSymlinks.incrementAndGet();
+                } else {
+                    rightByName.put(file.getName(), file);
+                }
+            }
+
+            List<FolderTask> subTasks = new ArrayList<>();
+            for (AbstractFile leftFile : leftChildren) {
+                if (cancelled) {
+                    return;
+                }
+                if (leftFile.isSymlink()) {
+                    nbSkippedSymlinks.incrementAndGet();
+                    continue;
+                }
+                String name = leftFile.getName();
+                String childPath = getChildPath(path, name);
+                AbstractFile rightFile = rightByName.remove(name);
+                nbCompared.incrementAndGet();
+
+                if (rightFile == null) {
+                    differences.add(new Difference(childPath, leftFile, null, left, right, Status.LEFT_ONLY));
+                    if (leftFile.isDirectory()) {
+                        subTasks.add(new FolderTask(childPath, leftFile, null));
+                    }
+                } else if (leftFile.isDirectory() != rightFile.isDirectory()) {
+                    differences.add(new Difference(childPath, leftFile, rightFile, left, right, Status.TYPE_MISMATCH));
+                } else if (leftFile.isDirectory()) {
+                    subTasks.add(new FolderTask(childPath, leftFile, rightFile));
+                } else {
+                    Status status;
+                    try {
+                        status = compareFiles(leftFile, rightFile);
+                    } catch (IOException e) {
+                        setError(e);
+                        return;
+                    }
+                    if (status != null) {
+                        differences.add(new Difference(childPath, leftFile, rightFile, left, right, status));
+                    }
+                }
+            }
+
+            for (AbstractFile rightFile : rightByName.values()) {
+                String childPath = getChildPath(path, rightFile.getName());
+                nbCompared.incrementAndGet();
+                differences.add(new Difference(childPath, null, rightFile, left, right, Status.RIGHT_ONLY));
+                if (rightFile.isDirectory()) {
+                    subTasks.add(new FolderTask(childPath, null, rightFile));
+                }
+            }
+
+            invokeAll(subTasks);
+        }
+    }
+
+
+    /**
+     * Compares two regular files, returns <code>null</code> if they are considered identical.
+     */
+    private Status compareFiles(AbstractFile leftFile, AbstractFile rightFile) throws IOException {
+        long dateDiff = leftFile.getLastModifiedDate() - rightFile.getLastModifiedDate();
+        if (dateDiff > dateTolerance) {
+            return Status.LEFT_NEWER;
+        }
+        if (dateDiff < -dateTolerance) {
+            return Status.RIGHT_NEWER;
+        }
+        if (leftFile.getSize() != rightFile.getSize()) {
+            return Status.DIFFERENT;
+        }
+        if (compareContent && !hasSameContent(leftFile, rightFile)) {
+            return Status.DIFFERENT;
+        }
+        return null;
+    }
+
+    /**
+     * Returns <code>true</code> if both files have exactly the same content. Reading stops at the first difference.
+     */
+    private boolean hasSameContent(AbstractFile leftFile, AbstractFile rightFile) throws IOException {
+        byte leftBuffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        byte rightBuffer[] = BufferPool.getByteArray(BUFFER_SIZE);
+        try (InputStream leftIn = leftFile.getInputStream(); InputStream rightIn = rightFile.getInputStream()) {
+            while (!cancelled) {
+                int leftRead = StreamUtils.readUpTo(leftIn, leftBuffer);
+                int rightRead = StreamUtils.readUpTo(rightIn, rightBuffer);
+                if (leftRead != rightRead || !Arrays.equals(leftBuffer, 0, leftRead, rightBuffer, 0, rightRead)) {
+                    return false;
+                }
+                if (leftRead < leftBuffer.length) {
+                    return true;
+                }
+            }
+            return true;
+        } finally {
+            BufferPool.releaseByteArray(leftBuffer);
+            BufferPool.releaseByteArray(rightBuffer);
+        }
+    }
+}
@@ -212,6 +212,7 @@ public class ActionManager {
 		registerAction(new ToggleSinglePanelAction.Descriptor());
     	registerAction(new SwapFoldersAction.Descriptor());
     	registerAction(new SwitchActiveTableAction.Descriptor());
+    	registerAction(new SynchronizeFoldersAction.Descriptor());
     	registerAction(new ToggleAutoSizeAction.Descriptor());
 //    	registerAction(new ToggleColumnAction.Descriptor());
     	registerAction(new ToggleCommandBarAction.Descriptor());
@@ -246,6 +247,7 @@ public class ActionManager {
 		registerAction(new ToggleTableViewModeFullAction.Descriptor());
 		registerAction(new ToggleTableViewModeCompactAction.Descriptor());
 		registerAction(new ToggleTableViewModeShortAction.Descriptor());
+		registerAction(new ToggleTableViewModeThumbnailsAction.Descriptor());
 		registerAction(new EjectDriveAction.Descriptor());
 		registerAction(new CompareFilesAction.Descriptor());
 		registerAction(new TogglePanelPreviewModeAction.Descriptor());
@@ -22,8 +22,6 @@ import com.mucommander.bookmark.Bookmark;
 import com.mucommander.bookmark.BookmarkManager;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 import com.mucommander.desktop.DesktopManager;
 import com.mucommander.job.TempExecJob;
@@ -157,7 +155,7 @@ public class OpenAction extends TcAction {
 	}
 
 	private static boolean cdFollowsSymlinks() {
-		return TcConfigurations.getPreferences().getVariable(TcPreference.CD_FOLLOWS_SYMLINKS, TcPreferences.DEFAULT_CD_FOLLOWS_SYMLINKS);
+		return TcPreferences.CD_FOLLOWS_SYMLINKS_VALUE.get();
 	}
 
     private AbstractFile resolveSymlink(AbstractFile symlink) {
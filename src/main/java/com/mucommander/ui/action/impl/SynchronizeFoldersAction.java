@@ -0,0 +1,84 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.action.impl;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.action.AbstractActionDescriptor;
+import com.mucommander.ui.action.ActionCategory;
+import com.mucommander.ui.action.ActionDescriptor;
+import com.mucommander.ui.action.InvokesDialog;
+import com.mucommander.ui.action.TcAction;
+import com.mucommander.ui.dialog.file.SynchronizeFoldersDialog;
+import com.mucommander.ui.main.MainFrame;
+
+import javax.swing.KeyStroke;
+import java.util.Map;
+
+/**
+ * This action synchronizes the folder of the inactive panel with the folder of the active panel, see
+ * {@link SynchronizeFoldersDialog}.
+ *
+ * @author Oleg Trifonov
+ */
+@InvokesDialog
+public class SynchronizeFoldersAction extends TcAction {
+
+    private SynchronizeFoldersAction(MainFrame mainFrame, Map<String, Object> properties) {
+        super(mainFrame, properties);
+    }
+
+    @Override
+    public void performAction() {
+        AbstractFile sourceFolder = mainFrame.getActivePanel().getCurrentFolder();
+        AbstractFile destFolder = mainFrame.getInactivePanel().getCurrentFolder();
+        if (sourceFolder.equalsCanonical(destFolder)) {
+            return;
+        }
+        new SynchronizeFoldersDialog(mainFrame, sourceFolder, destFolder);
+    }
+
+    @Override
+    public ActionDescriptor getDescriptor() {
+        return new Descriptor();
+    }
+
+
+    public static final class Descriptor extends AbstractActionDescriptor {
+        public static final String ACTION_ID = "SynchronizeFolders";
+
+        public String getId() {
+            return ACTION_ID;
+        }
+
+        public ActionCategory getCategory() {
+            return ActionCategory.FILES;
+        }
+
+        public KeyStroke getDefaultAltKeyStroke() {
+            return null;
+        }
+
+        public KeyStroke getDefaultKeyStroke() {
+            return null;
+        }
+
+        public TcAction createAction(MainFrame mainFrame, Map<String,Object> properties) {
+            return new SynchronizeFoldersAction(mainFrame, properties);
+        }
+    }
+}
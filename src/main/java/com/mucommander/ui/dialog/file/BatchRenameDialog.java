@@ -44,12 +44,19 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Container;
 import java.awt.GridLayout;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.text.NumberFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Dialog used to set parameters for renaming multiple files.
@@ -69,6 +76,21 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
     private static final int COL_CHANGED_NAME = 1;
     private static final int COL_CHANGE_BLOCK = 2;    
 
+    private static final int NO_CONFLICT = 0;
+    private static final int DUPLICATE_NAMES = 1;
+    private static final int OLD_NAMES_CONFLICT = 2;
+
+    /** Number of files for which new names are generated by one task, smaller selections are handled synchronously */
+    private static final int CHUNK_SIZE = 2000;
+
+    /** Generates new names of large selections in the background */
+    private static final ExecutorService PREVIEW_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "BatchRenamePreview");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private final MainFrame mainFrame;
     private JTextField edtFileNameMask;
     private JTable tblNames;
@@ -102,8 +124,11 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
     /** a list of flags to block file rename */
     private final List<Boolean> blockNames = new ArrayList<>();
     
-    /** a list of parsed tokens */
-    private final List<AbstractToken> tokens = new ArrayList<>();
+    /** the task generating the new names in the background, <code>null</code> if there is none */
+    private PreviewWorker previewWorker;
+
+    /** number of names edited by hand, used to detect edits made while names were generated in the background */
+    private int editCount;
 
 
 
@@ -328,6 +353,8 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
      * Removes selected files from a list of files to rename.
      */
     private void removeSelectedFiles() {
+        // The names being generated would be stored at the wrong rows
+        boolean regenerate = cancelPreview();
         int[] sel = tblNames.getSelectedRows();
         for (int i = sel.length - 1; i >= 0; i--) {
             files.remove(sel[i]);
@@ -337,6 +364,8 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
         }
         if (files.size() == 0) {
             dispose();
+        } else if (regenerate) {
+            generateNewNames();
         }
     }
     
@@ -344,166 +373,371 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
      * Checks if there are duplicates in new file names. 
      */
     private void checkForDuplicates() {
-        boolean duplicates = false;
-        boolean oldNamesConflict = false;
-        Set<String> names = new HashSet<>();
-        for (int i=0; i<newNames.size(); i++) {
-            String newName = newNames.get(i);
-            AbstractFile file = files.get(i);
+        showConflict(findConflict(files.toArray(new AbstractFile[files.size()]),
+                newNames.toArray(new String[newNames.size()]), oldNames));
+    }
+
+    /**
+     * Looks for new names that are used twice, or that are the name of another file to rename.
+     *
+     * @param files the files to rename
+     * @param names the new names of the files
+     * @param oldNames the files to rename by absolute path
+     * @return {@link #NO_CONFLICT}, {@link #DUPLICATE_NAMES} or {@link #OLD_NAMES_CONFLICT}
+     */
+    private static int findConflict(AbstractFile[] files, String[] names, Map<String, AbstractFile> oldNames) {
+        Set<String> paths = new HashSet<>(files.length * 4 / 3 + 1);
+        // The files usually share the same parent, only compute its path once
+        AbstractFile lastParent = null;
+        String lastParentPath = null;
+        for (int i = 0; i < names.length; i++) {
+            String newName = names[i];
+            AbstractFile file = files[i];
             AbstractFile parent = file.getParent();
             if (parent != null) {
-                newName = parent.getAbsolutePath(true) + newName;
+                if (parent != lastParent) {
+                    lastParent = parent;
+                    lastParentPath = parent.getAbsolutePath(true);
+                }
+                newName = lastParentPath + newName;
             }
-            if (names.contains(newName)) {
-                duplicates = true;
-                break;
+            if (!paths.add(newName)) {
+                return DUPLICATE_NAMES;
             }
             AbstractFile oldFile = oldNames.get(newName);
-            if (oldFile!=null && oldFile!=file) {
-            	oldNamesConflict = true;
-            	break;
+            if (oldFile != null && oldFile != file) {
+                return OLD_NAMES_CONFLICT;
             }
-            names.add(newName);
-        }            
-        if (duplicates) {
-        	lblDuplicates.setText(i18n("batch_rename_dialog.duplicate_names"));
         }
-        if (oldNamesConflict) {
+        return NO_CONFLICT;
+    }
+
+    private void showConflict(int conflict) {
+        if (conflict == DUPLICATE_NAMES) {
+        	lblDuplicates.setText(i18n("batch_rename_dialog.duplicate_names"));
+        } else if (conflict == OLD_NAMES_CONFLICT) {
         	lblDuplicates.setText(i18n("batch_rename_dialog.names_conflict"));
         }
-        lblDuplicates.setVisible(duplicates || oldNamesConflict);
-        btnRename.setEnabled(!duplicates && !oldNamesConflict);
+        lblDuplicates.setVisible(conflict != NO_CONFLICT);
+        btnRename.setEnabled(conflict == NO_CONFLICT);
     }
-    
+
     /**
-     * Generate a new name for a file.
-     * 
-     * @param file a file to change name to
-     * @return the new file name
+     * Returns the settings of the dialog used to generate new names.
      */
-    private String generateNewName(AbstractFile file) {
-        // apply pattern
-        String newName = applyPattern(file);
+    private NameGenerator createNameGenerator() {
+        return new NameGenerator(edtFileNameMask.getText(),
+                StringUtils.parseIntDef(edtCounterStart.getText(), 0),
+                StringUtils.parseIntDef(edtCounterStep.getText(), 0),
+                cbCounterDigits.getSelectedIndex() + 1,
+                edtSearchFor.getText(), edtReplaceWith.getText(), cbRegExp.isSelected(),
+                cbCase.getSelectedIndex());
+    }
 
-        // search & replace
-        if (!edtSearchFor.getText().isEmpty()) {
-            if (cbRegExp.isSelected()) {
-                try {
-                    newName = newName.replaceAll(edtSearchFor.getText(), edtReplaceWith.getText());
-                } catch (Exception e) {
-//                    if (!ignoreRegexpErrors) {
-//                        String errorMessage = Translator.get("batch_rename_dialog.regexp_error");
-//                        if (e instanceof PatternSyntaxException) {
-//                            PatternSyntaxException pse = (PatternSyntaxException) e;
-//                            errorMessage += ": " + pse.getPattern();
-//                        }
-//                        QuestionDialog dialog = new QuestionDialog(mainFrame,
-//                                Translator.get("error"),
-//                                errorMessage,
-//                                mainFrame,
-//                                new String[]{Translator.get("ok")},
-//                                new int[]{0},
-//                                0);
-//                        dialog.showDialog();
-//                    }
-                }
-            } else {
-                newName = newName.replace(edtSearchFor.getText(), edtReplaceWith.getText());
-            }
+    /**
+     * Generates new names for all files. Large selections are processed in the background, in parallel chunks:
+     * a new call cancels the names being generated.
+     */
+    private void generateNewNames() {
+        cancelPreview();
+        NameGenerator generator = createNameGenerator();
+        AbstractFile[] fileArray = files.toArray(new AbstractFile[files.size()]);
+        boolean[] blocked = new boolean[fileArray.length];
+        String[] names = new String[fileArray.length];
+        for (int i = 0; i < fileArray.length; i++) {
+            blocked[i] = Boolean.TRUE.equals(blockNames.get(i));
+            names[i] = newNames.get(i);
         }
 
-        // remove trailing dot
-        if (newName.endsWith(".")) {
-            newName = newName.substring(0, newName.length() - 1);
+        if (fileArray.length <= CHUNK_SIZE) {
+            generator.generate(fileArray, blocked, names, 0, fileArray.length, 0);
+            applyNewNames(names, blocked, findConflict(fileArray, names, oldNames));
+        } else {
+            // Don't rename with the previous names while the new ones are being generated
+            btnRename.setEnabled(false);
+            previewWorker = new PreviewWorker(generator, fileArray, blocked, names);
+            previewWorker.execute();
         }
+    }
 
-        // uppercase/lowercase
-        newName = changeCase(newName, cbCase.getSelectedIndex());
+    /**
+     * Cancels the generation of new names in the background, if any.
+     *
+     * @return <code>true</code> if names were being generated
+     */
+    private boolean cancelPreview() {
+        if (previewWorker == null) {
+            return false;
+        }
+        previewWorker.cancel(false);
+        previewWorker = null;
+        return true;
+    }
 
-        return newName;
+    /**
+     * Stores generated names, leaving the names that have been blocked in the meantime, and repaints the visible rows.
+     */
+    private void applyNewNames(String[] names, boolean[] blocked, int conflict) {
+        for (int i = 0; i < names.length; i++) {
+            if (!blocked[i] && Boolean.FALSE.equals(blockNames.get(i))) {
+                newNames.set(i, names[i]);
+            }
+        }
+        showConflict(conflict);
+
+        // The other rows get their new name when they are scrolled into view
+        Rectangle visible = tblNames.getVisibleRect();
+        int firstRow = tblNames.rowAtPoint(visible.getLocation());
+        int lastRow = tblNames.rowAtPoint(new Point(visible.x, visible.y + visible.height - 1));
+        if (firstRow < 0) {
+            firstRow = 0;
+        }
+        if (lastRow < 0) {
+            lastRow = newNames.size() - 1;
+        }
+        tableModel.fireTableChanged(new TableModelEvent(tableModel, firstRow, lastRow, COL_CHANGED_NAME, TableModelEvent.UPDATE));
     }
-    
+
     /**
-     * Generates new names for all files.
+     * Generates new names in parallel chunks and checks them for conflicts, then stores them on the event dispatch
+     * thread.
      */
-    private void generateNewNames() {
-        compilePattern(edtFileNameMask.getText());
-        for (int i = 0; i < files.size(); i++) {
-            if (Boolean.FALSE.equals(blockNames.get(i))) {
-                AbstractFile file = files.get(i);
-                String newName = generateNewName(file);
-                newNames.set(i, newName);
+    private class PreviewWorker extends SwingWorker<Integer, Void> {
+        private final NameGenerator generator;
+        private final AbstractFile[] files;
+        private final boolean[] blocked;
+        private final String[] names;
+        private final int startEditCount = editCount;
+
+        PreviewWorker(NameGenerator generator, AbstractFile[] files, boolean[] blocked, String[] names) {
+            this.generator = generator;
+            this.files = files;
+            this.blocked = blocked;
+            this.names = names;
+        }
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            List<Future<?>> chunks = new ArrayList<>();
+            // The counter only advances for files that are not blocked
+            int counterPosition = 0;
+            for (int start = 0; start < files.length; start += CHUNK_SIZE) {
+                int end = Math.min(start + CHUNK_SIZE, files.length);
+                int position = counterPosition;
+                int chunkStart = start;
+                chunks.add(PREVIEW_EXECUTOR.submit(() -> generator.generate(files, blocked, names, chunkStart, end, position)));
+                for (int i = start; i < end; i++) {
+                    if (!blocked[i]) {
+                        counterPosition++;
+                    }
+                }
+            }
+            try {
+                for (Future<?> chunk : chunks) {
+                    if (isCancelled()) {
+                        return NO_CONFLICT;
+                    }
+                    chunk.get();
+                }
+            } finally {
+                for (Future<?> chunk : chunks) {
+                    chunk.cancel(false);
+                }
+            }
+            return findConflict(files, names, oldNames);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || previewWorker != this) {
+                return;
+            }
+            previewWorker = null;
+            try {
+                int conflict = get();
+                applyNewNames(names, blocked, conflict);
+                if (editCount != startEditCount) {
+                    // Names edited in the meantime were not taken into account
+                    checkForDuplicates();
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Failed to generate new names", e);
             }
         }
-        checkForDuplicates();
-        tableModel.fireTableChanged(new TableModelEvent(tableModel, 0, newNames.size(), 1, TableModelEvent.UPDATE));
     }
-    
+
     /**
-     * Parses a pattern for a filename and it's extension and stores it in a
-     * list. A pattern is a combination of file and extension masks that a user
-     * enters in fields. These masks can contain special placeholders for
-     * previous name, part of it, counter, date, and others. These placeholders
-     * (or 'tokens') are always in brackets [ and ]. A part of pattern which is
-     * not in brackets is copied to a new name. This metod analyzes a pattern
-     * and stores token handlers responsible for substituting these placeholders
-     * for actual parts of a new file name.
-     * 
-     * @see AbstractToken
-     * @param pattern a pattern for changing a file name and it's extension
+     * Settings of the dialog used to generate new names. Instances are created on the event dispatch thread and can
+     * then be used from any thread: each call compiles its own tokens, as some tokens are stateful.
      */
-    private void compilePattern(String pattern) {
-        tokens.clear();
-        for (int i = 0; i < pattern.length(); i++) {
-            char c = pattern.charAt(i);
-            if (c == '[') {
-                int tokenEnd = pattern.indexOf(']', i);
-                if (tokenEnd == -1) {
-                    tokens.add(new CopyChar(pattern.substring(i)));
-                    break;
+    static class NameGenerator {
+        private final String pattern;
+        private final int counterStart;
+        private final int counterStep;
+        private final int counterDigits;
+        private final String searchFor;
+        private final String replaceWith;
+        /** the compiled search expression, <code>null</code> if regular expressions are not used or it is invalid */
+        private final Pattern searchPattern;
+        private final boolean regExp;
+        private final int newCase;
+
+        NameGenerator(String pattern, int counterStart, int counterStep, int counterDigits,
+                      String searchFor, String replaceWith, boolean regExp, int newCase) {
+            this.pattern = pattern;
+            this.counterStart = counterStart;
+            this.counterStep = counterStep;
+            this.counterDigits = counterDigits;
+            this.searchFor = searchFor;
+            this.replaceWith = replaceWith;
+            this.regExp = regExp;
+            this.newCase = newCase;
+            Pattern compiled = null;
+            if (regExp && !searchFor.isEmpty()) {
+                try {
+                    compiled = Pattern.compile(searchFor);
+                } catch (PatternSyntaxException e) {
+                    LOGGER.trace("Invalid search expression", e);
                 }
-                String strToken = pattern.substring(i + 1, tokenEnd);
-                if (!strToken.isEmpty()) {
-                    c = strToken.charAt(0);
-                    AbstractToken t;
-                    switch (c) {
-                    case 'N':
-                        t = new NameToken(strToken);
-                        break;
-                    case 'E':
-                        t = new ExtToken(strToken);
-                        break;
-                    case 'C':
-                        int start = StringUtils.parseIntDef(edtCounterStart.getText(), 0);
-                        int step = StringUtils.parseIntDef(edtCounterStep.getText(), 0);
-                        int digits = cbCounterDigits.getSelectedIndex() + 1;
-                        t = new CounterToken(strToken, start, step, digits);
-                        break;
-                    case 'P':
-                        t = new ParentDirToken(strToken);
-                        break;
-                    case 'Y':
-                    case 'M':
-                    case 'D':
-                    case 'h':
-                    case 'm':
-                    case 's':
-                        t = new DateToken(strToken);
-                        break;
-                    case '[':
-                        t = new CopyChar("[");
-                        break;
-                    default:
-                        t = new CopyChar("[" + strToken + "]");
+            }
+            this.searchPattern = compiled;
+        }
+
+        /**
+         * Generates new names for a range of files.
+         *
+         * @param files the files
+         * @param blocked the files which names must not be changed
+         * @param names receives the new names, the names of blocked files are left unchanged
+         * @param start index of the first file of the range
+         * @param end index after the last file of the range
+         * @param counterPosition number of files which are not blocked before <code>start</code>
+         */
+        void generate(AbstractFile[] files, boolean[] blocked, String[] names, int start, int end, int counterPosition) {
+            List<AbstractToken> tokens = compilePattern(counterPosition);
+            for (int i = start; i < end; i++) {
+                if (!blocked[i]) {
+                    names[i] = generateNewName(tokens, files[i]);
+                }
+            }
+        }
+
+        /**
+         * Generates a new name for a single file.
+         *
+         * @param file a file to change name to
+         * @param counterPosition number of files which are not blocked before this one
+         * @return the new file name
+         */
+        String generate(AbstractFile file, int counterPosition) {
+            return generateNewName(compilePattern(counterPosition), file);
+        }
+
+        /**
+         * Generate a new name for a file.
+         *
+         * @param tokens the compiled pattern
+         * @param file a file to change name to
+         * @return the new file name
+         */
+        private String generateNewName(List<AbstractToken> tokens, AbstractFile file) {
+            // apply pattern
+            String newName = applyPattern(tokens, file);
+
+            // search & replace
+            if (!searchFor.isEmpty()) {
+                if (regExp) {
+                    if (searchPattern != null) {
+                        try {
+                            newName = searchPattern.matcher(newName).replaceAll(replaceWith);
+                        } catch (Exception e) {
+                            // invalid group reference in the replacement, leave the name unchanged
+                        }
+                    }
+                } else {
+                    newName = newName.replace(searchFor, replaceWith);
+                }
+            }
+
+            // remove trailing dot
+            if (newName.endsWith(".")) {
+                newName = newName.substring(0, newName.length() - 1);
+            }
+
+            // uppercase/lowercase
+            newName = changeCase(newName, newCase);
+
+            return newName;
+        }
+
+        /**
+         * Parses a pattern for a filename and it's extension and stores it in a
+         * list. A pattern is a combination of file and extension masks that a user
+         * enters in fields. These masks can contain special placeholders for
+         * previous name, part of it, counter, date, and others. These placeholders
+         * (or 'tokens') are always in brackets [ and ]. A part of pattern which is
+         * not in brackets is copied to a new name. This metod analyzes a pattern
+         * and returns token handlers responsible for substituting these placeholders
+         * for actual parts of a new file name.
+         *
+         * @see AbstractToken
+         * @param counterPosition the number of steps the counters have to be advanced by
+         * @return the token handlers
+         */
+        private List<AbstractToken> compilePattern(int counterPosition) {
+            List<AbstractToken> tokens = new ArrayList<>();
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '[') {
+                    int tokenEnd = pattern.indexOf(']', i);
+                    if (tokenEnd == -1) {
+                        tokens.add(new CopyChar(pattern.substring(i)));
                         break;
                     }
-                    t.parse();
-                    tokens.add(t);
+                    String strToken = pattern.substring(i + 1, tokenEnd);
+                    if (!strToken.isEmpty()) {
+                        c = strToken.charAt(0);
+                        AbstractToken t;
+                        switch (c) {
+                        case 'N':
+                            t = new NameToken(strToken);
+                            break;
+                        case 'E':
+                            t = new ExtToken(strToken);
+                            break;
+                        case 'C':
+                            t = new CounterToken(strToken, counterStart, counterStep, counterDigits);
+                            break;
+                        case 'P':
+                            t = new ParentDirToken(strToken);
+                            break;
+                        case 'Y':
+                        case 'M':
+                        case 'D':
+                        case 'h':
+                        case 'm':
+                        case 's':
+                            t = new DateToken(strToken);
+                            break;
+                        case '[':
+                            t = new CopyChar("[");
+                            break;
+                        default:
+                            t = new CopyChar("[" + strToken + "]");
+                            break;
+                        }
+                        t.parse();
+                        if (t instanceof CounterToken) {
+                            ((CounterToken)t).skip(counterPosition);
+                        }
+                        tokens.add(t);
+                    }
+                    i = tokenEnd;
+                } else {
+                    tokens.add(new CopyChar(Character.toString(c)));
                 }
-                i = tokenEnd;
-            } else {
-                tokens.add(new CopyChar(Character.toString(c)));
             }
+            return tokens;
         }
     }
 
@@ -513,7 +747,7 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
      * @param newCase a type of change
      * @return the name with changed case
      */
-    private String changeCase(String oldName, int newCase) {
+    private static String changeCase(String oldName, int newCase) {
         String newName = "";
         switch (newCase) {
         case CASE_UNCHANGED:
@@ -526,7 +760,7 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
             newName = oldName.toUpperCase();
             break;
         case CASE_FIRST_UPPER:
-            newName = oldName.substring(0, 1).toUpperCase() + oldName.substring(1).toLowerCase();
+            newName = oldName.isEmpty() ? oldName : oldName.substring(0, 1).toUpperCase() + oldName.substring(1).toLowerCase();
             break;
         case CASE_WORD_UPPER:
             boolean afterSpace = true;
@@ -552,10 +786,11 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
 
     /**
      * Applies a compiled pattern to a file name and it's extension.
+     * @param tokens the compiled pattern
      * @param file a file
      * @return the new file name after applying a pattern
      */
-    private String applyPattern(AbstractFile file) {
+    private static String applyPattern(List<AbstractToken> tokens, AbstractFile file) {
         StringBuilder filename = new StringBuilder();
         for (AbstractToken token: tokens) {
             filename.append(token.apply(file));
@@ -660,6 +895,12 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
         }
     }
 
+    @Override
+    public void dispose() {
+        cancelPreview();
+        super.dispose();
+    }
+
     // these methods are invoked when one of edit boxes changes
 
     public void changedUpdate(DocumentEvent e) {
@@ -713,6 +954,7 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
             switch (columnIndex) {
             case COL_CHANGED_NAME:
                 if (!newNames.get(rowIndex).equals(value)) {
+                    editCount++;
                     newNames.set(rowIndex, (String)value);
                     if (Boolean.FALSE.equals(blockNames.get(rowIndex))) {
                         blockNames.set(rowIndex, Boolean.TRUE);
@@ -725,10 +967,17 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
                 }
                 break;
             case COL_CHANGE_BLOCK:
+                editCount++;
                 blockNames.set(rowIndex, (Boolean)value);
                 if (Boolean.FALSE.equals(value)) {
                     AbstractFile file = files.get(rowIndex);
-                    String newName = generateNewName(file);
+                    int counterPosition = 0;
+                    for (int i = 0; i < rowIndex; i++) {
+                        if (Boolean.FALSE.equals(blockNames.get(i))) {
+                            counterPosition++;
+                        }
+                    }
+                    String newName = createNameGenerator().generate(file, counterPosition);
                     newNames.set(rowIndex, newName);
                     fireTableCellUpdated(rowIndex, COL_CHANGED_NAME);
                 }
@@ -1018,6 +1267,15 @@ public class BatchRenameDialog extends FocusDialog implements ActionListener, Do
             current = start;
         }
 
+        /**
+         * Advances the counter as if it had been applied to the given number of files.
+         *
+         * @param count the number of files
+         */
+        void skip(int count) {
+            current += count * step;
+        }
+
         @Override
         public String apply(AbstractFile file) {
             String counter = numberFormat.format(current);
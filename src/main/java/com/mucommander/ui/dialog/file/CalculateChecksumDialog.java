@@ -57,6 +57,7 @@ import java.util.TreeSet;
 public class CalculateChecksumDialog extends JobDialog implements ActionListener, ItemListener {
 
     private final TcComboBox<String> algorithmComboBox = new TcComboBox<>();
+    private final JCheckBox commonAlgorithmsCheckBox;
     private final JRadioButton specificLocationRadioButton;
     private final JTextField specificLocationTextField;
     private final JButton btnOk;
@@ -67,6 +68,9 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
     /** Default checksum algorithm (most commonly used) */
     private final static String DEFAULT_ALGORITHM = "MD5";
 
+    /** Algorithms calculated at once, each file being read a single time, when the corresponding option is selected */
+    private final static String[] COMMON_ALGORITHMS = {"MD5", "SHA-1", "SHA-256", "CRC32"};
+
     /** Last algorithm used, saved after validation of this dialog */
     private static String lastUsedAlgorithm = DEFAULT_ALGORITHM;
 
@@ -118,6 +122,11 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         tempPanel.add(algorithmComboBox);
 
         mainPanel.add(tempPanel);
+        mainPanel.addSpace(5);
+
+        commonAlgorithmsCheckBox = new JCheckBox(i18n("calculate_checksum_dialog.common_algorithms", String.join(", ", COMMON_ALGORITHMS)));
+        commonAlgorithmsCheckBox.addItemListener(this);
+        mainPanel.add(commonAlgorithmsCheckBox);
         mainPanel.addSpace(10);
 
         // create the components that allow to choose where the checksum file should be created
@@ -184,6 +193,27 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
         return messageDigests[algorithmComboBox.getSelectedIndex()];
     }
 
+    /**
+     * Returns the MessageDigest instances of the algorithms to calculate: the selected one, or the common algorithms
+     * if the corresponding option is selected.
+     *
+     * @return the MessageDigest instances of the algorithms to calculate
+     */
+    private MessageDigest[] getMessageDigestsToCalculate() {
+        if (!commonAlgorithmsCheckBox.isSelected()) {
+            return new MessageDigest[] {getSelectedMessageDigest()};
+        }
+        MessageDigest[] result = new MessageDigest[COMMON_ALGORITHMS.length];
+        for (int i = 0; i < COMMON_ALGORITHMS.length; i++) {
+            for (MessageDigest messageDigest : messageDigests) {
+                if (messageDigest.getAlgorithm().equalsIgnoreCase(COMMON_ALGORITHMS[i])) {
+                    result[i] = messageDigest;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns a de-facto standard filename for the specified checksum algorithm, e.g. <code>MD5SUMS</code> for
      * <code>md5</code>.
@@ -227,11 +257,10 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             return;
         }
         try {
-            MessageDigest digest = getSelectedMessageDigest();
-            String algorithm = digest.getAlgorithm();
-            AbstractFile checksumFile;
+            MessageDigest[] digests = getMessageDigestsToCalculate();
+            AbstractFile[] checksumFiles = new AbstractFile[digests.length];
 
-            // Resolve the destination checksum file
+            // Resolve the destination checksum files
 
             if (specificLocationRadioButton.isSelected()) {
                 // User-defined checksum file
@@ -244,21 +273,31 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
                     return;
                 }
 
-                checksumFile = resolvedDest.getDestinationFile();
-                if (resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER) {
-                    checksumFile = checksumFile.getDirectChild(getChecksumFilename(algorithm));
+                AbstractFile checksumFile = resolvedDest.getDestinationFile();
+                boolean existingFolder = resolvedDest.getDestinationType()==PathUtils.ResolvedDestination.EXISTING_FOLDER;
+                for (int i = 0; i < digests.length; i++) {
+                    if (existingFolder) {
+                        checksumFiles[i] = checksumFile.getDirectChild(getChecksumFilename(digests[i].getAlgorithm()));
+                    } else if (digests.length == 1) {
+                        checksumFiles[i] = checksumFile;
+                    } else {
+                        // Several checksum files, created next to the entered one with their standard name
+                        checksumFiles[i] = checksumFile.getParent().getDirectChild(getChecksumFilename(digests[i].getAlgorithm()));
+                    }
                 }
             } else {
-                // Temporary file
-                checksumFile = FileFactory.getTemporaryFile(getChecksumFilename(algorithm), true);
+                // Temporary files
+                for (int i = 0; i < digests.length; i++) {
+                    checksumFiles[i] = FileFactory.getTemporaryFile(getChecksumFilename(digests[i].getAlgorithm()), true);
+                }
             }
 
             // Save the algorithm that was used for the next time this dialog is invoked
-            lastUsedAlgorithm = algorithm;
+            lastUsedAlgorithm = getSelectedMessageDigest().getAlgorithm();
 
             // Start processing files
             ProgressDialog progressDialog = new ProgressDialog(mainFrame, i18n("properties_dialog.calculating"));
-            CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFile, digest);
+            CalculateChecksumJob job = new CalculateChecksumJob(progressDialog, mainFrame, files, checksumFiles, digests);
             progressDialog.start(job);
         } catch (IOException ex) {
             // Note: FileFactory.getTemporaryFile() should never throw an IOException
@@ -278,6 +317,8 @@ public class CalculateChecksumDialog extends JobDialog implements ActionListener
             specificLocationTextField.requestFocus();
         } else if (source == algorithmComboBox) {
             specificLocationTextField.setText(getChecksumFilename(getSelectedMessageDigest().getAlgorithm()));
+        } else if (source == commonAlgorithmsCheckBox) {
+            algorithmComboBox.setEnabled(!commonAlgorithmsCheckBox.isSelected());
         }
     }
 }
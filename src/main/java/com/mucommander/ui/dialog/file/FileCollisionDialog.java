@@ -20,6 +20,7 @@
 package com.mucommander.ui.dialog.file;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
 import com.mucommander.job.FileCollisionChecker;
 import com.mucommander.utils.text.CustomDateFormat;
 import com.mucommander.utils.text.SizeFormat;
@@ -62,6 +63,7 @@ public class FileCollisionDialog extends QuestionDialog {
     public final static int OVERWRITE_IF_OLDER_ACTION = 3;
     public final static int RESUME_ACTION = 4;
     public final static int RENAME_ACTION = 5;
+    public final static int UPDATE_CHANGED_BLOCKS_ACTION = 6;
 
     public final static String CANCEL_TEXT = Translator.get("cancel");
     final static String SKIP_TEXT = Translator.get("skip");
@@ -69,6 +71,7 @@ public class FileCollisionDialog extends QuestionDialog {
     final static String OVERWRITE_IF_OLDER_TEXT = Translator.get("overwrite_if_older");
     final static String RESUME_TEXT = Translator.get("resume");
     final static String RENAME_TEXT = Translator.get("rename");
+    final static String UPDATE_CHANGED_BLOCKS_TEXT = Translator.get("update_changed_blocks");
 
     private JCheckBox applyToAllCheckBox;
 
@@ -142,6 +145,12 @@ public class FileCollisionDialog extends QuestionDialog {
                     choicesActionsV.add(RESUME_ACTION);
                 }
 
+                // Give the option to rewrite only the changed blocks if the destination can be written in place
+                if (destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
+                    choicesTextV.add(UPDATE_CHANGED_BLOCKS_TEXT);
+                    choicesActionsV.add(UPDATE_CHANGED_BLOCKS_ACTION);
+                }
+
                 if (allowRename) {
                     choicesTextV.add(RENAME_TEXT);
                     choicesActionsV.add(RENAME_ACTION);
@@ -0,0 +1,82 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.dialog.file;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.job.SynchronizeFoldersJob;
+import com.mucommander.ui.dialog.QuestionDialog;
+import com.mucommander.ui.main.MainFrame;
+import com.mucommander.utils.text.Translator;
+
+import javax.swing.JCheckBox;
+
+/**
+ * Asks the user how to synchronize the folders of the active and inactive panels, then starts a
+ * {@link SynchronizeFoldersJob}.
+ *
+ * @author Oleg Trifonov
+ */
+public class SynchronizeFoldersDialog extends QuestionDialog {
+
+    private final static int UPDATE_ACTION = 0;
+    private final static int MIRROR_ACTION = 1;
+    private final static int TWO_WAY_ACTION = 2;
+    private final static int CANCEL_ACTION = 3;
+
+
+    /**
+     * Creates a new SynchronizeFoldersDialog, displays it and starts the synchronization if the user confirms it.
+     *
+     * @param mainFrame the parent MainFrame
+     * @param sourceFolder the folder to synchronize from
+     * @param destFolder the folder to synchronize
+     */
+    public SynchronizeFoldersDialog(MainFrame mainFrame, AbstractFile sourceFolder, AbstractFile destFolder) {
+        super(mainFrame,
+              Translator.get("sync_dialog.title"),
+              Translator.get("sync_dialog.desc", sourceFolder.getAbsolutePath(), destFolder.getAbsolutePath()),
+              mainFrame,
+              new String[] {Translator.get("sync_dialog.update"), Translator.get("sync_dialog.mirror"),
+                      Translator.get("sync_dialog.two_way"), Translator.get("cancel")},
+              new int[] {UPDATE_ACTION, MIRROR_ACTION, TWO_WAY_ACTION, CANCEL_ACTION},
+              0);
+
+        JCheckBox compareContentCheckBox = new JCheckBox(Translator.get("sync_dialog.compare_content"), false);
+        addComponent(compareContentCheckBox);
+
+        SynchronizeFoldersJob.Mode mode;
+        switch (getActionValue()) {
+            case UPDATE_ACTION:
+                mode = SynchronizeFoldersJob.Mode.UPDATE;
+                break;
+            case MIRROR_ACTION:
+                mode = SynchronizeFoldersJob.Mode.MIRROR;
+                break;
+            case TWO_WAY_ACTION:
+                mode = SynchronizeFoldersJob.Mode.TWO_WAY;
+                break;
+            default:
+                return;
+        }
+
+        ProgressDialog progressDialog = new ProgressDialog(mainFrame, Translator.get("sync_dialog.synchronizing"));
+        SynchronizeFoldersJob job = new SynchronizeFoldersJob(progressDialog, mainFrame, sourceFolder, destFolder, mode,
+                compareContentCheckBox.isSelected());
+        progressDialog.start(job);
+    }
+}
@@ -109,7 +109,8 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
         FileCollisionDialog.OVERWRITE_ACTION,
         FileCollisionDialog.OVERWRITE_IF_OLDER_ACTION,
         FileCollisionDialog.RESUME_ACTION,
-        FileCollisionDialog.RENAME_ACTION
+        FileCollisionDialog.RENAME_ACTION,
+        FileCollisionDialog.UPDATE_CHANGED_BLOCKS_ACTION
     };
 
     private final static String[] DEFAULT_ACTIONS_TEXT = {
@@ -118,7 +119,8 @@ public abstract class TransferDestinationDialog extends JobDialog implements Act
         FileCollisionDialog.OVERWRITE_TEXT,
         FileCollisionDialog.OVERWRITE_IF_OLDER_TEXT,
         FileCollisionDialog.RESUME_TEXT,
-        FileCollisionDialog.RENAME_TEXT
+        FileCollisionDialog.RENAME_TEXT,
+        FileCollisionDialog.UPDATE_CHANGED_BLOCKS_TEXT
     };
 
 
@@ -572,6 +572,8 @@ class AppearancePanel extends PreferencesPanel implements ActionListener, Runnab
         int comboIndex = useSystemFileIconsComboBox.getSelectedIndex();
         String systemIconsPolicy = comboIndex == 0 ? FileIcons.USE_SYSTEM_ICONS_NEVER : comboIndex == 1 ? FileIcons.USE_SYSTEM_ICONS_APPLICATIONS : FileIcons.USE_SYSTEM_ICONS_ALWAYS;
         FileIcons.setSystemIconsPolicy(systemIconsPolicy);
+        // Icons are cached per extension, regardless of the policy that resolved them
+        FileIconsCache.getInstance().clear();
         pref.setVariable(USE_SYSTEM_FILE_ICONS, systemIconsPolicy);
     }
 
@@ -22,8 +22,6 @@ import com.mucommander.auth.CredentialsMapping;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.LocalLocationHistory;
@@ -515,7 +513,7 @@ public class FolderPanel extends JPanel implements FocusListener, QuickListConta
 
     @Override
     public void focusLost(FocusEvent e) {
-        if (!TcConfigurations.getPreferences().getVariable(TcPreference.SHOW_QUICK_SEARCH_MATCHES_FIRST, TcPreferences.DEFAULT_SHOW_QUICK_SEARCH_MATCHES_FIRST)) {
+        if (!TcPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST_VALUE.get()) {
             fileTable.getQuickSearch().stop();
         }
     }
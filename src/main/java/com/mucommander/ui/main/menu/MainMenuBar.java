@@ -78,7 +78,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
     private final JMenu themesMenu;
     private final JCheckBoxMenuItem[] cbSortByItems = new TCheckBoxMenuItem[Column.values().length];
     private final JMenu tableModeMenu;
-    private final JCheckBoxMenuItem[] cbTableModeItems = new TCheckBoxMenuItem[3];
+    private final JCheckBoxMenuItem[] cbTableModeItems = new TCheckBoxMenuItem[4];
     private final JMenu columnsMenu;
     private final JCheckBoxMenuItem[] cbToggleColumnItems = new TCheckBoxMenuItem[Column.values().length];
     private final JCheckBoxMenuItem cbToggleToggleAutoSizeItem;
@@ -208,6 +208,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
         markMenu.add(new TMenuSeparator());
         MenuToolkit.addMenuItem(markMenu, ActionManager.getActionInstance(CompareFoldersAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
         MenuToolkit.addMenuItem(markMenu, ActionManager.getActionInstance(CompareFolderFilesAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
+        MenuToolkit.addMenuItem(markMenu, ActionManager.getActionInstance(SynchronizeFoldersAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper);
 
         add(markMenu);
 
@@ -224,6 +225,7 @@ public class MainMenuBar extends JMenuBar implements ActionListener, MenuListene
         cbTableModeItems[0] = MenuToolkit.addCheckBoxMenuItem(tableModeMenu, ActionManager.getActionInstance(ToggleTableViewModeFullAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper2);
         cbTableModeItems[1] = MenuToolkit.addCheckBoxMenuItem(tableModeMenu, ActionManager.getActionInstance(ToggleTableViewModeCompactAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper2);
         cbTableModeItems[2] = MenuToolkit.addCheckBoxMenuItem(tableModeMenu, ActionManager.getActionInstance(ToggleTableViewModeShortAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper2);
+        cbTableModeItems[3] = MenuToolkit.addCheckBoxMenuItem(tableModeMenu, ActionManager.getActionInstance(ToggleTableViewModeThumbnailsAction.Descriptor.ACTION_ID, mainFrame), menuItemMnemonicHelper2);
         ButtonGroup groupViewMode = new ButtonGroup();
         for (JCheckBoxMenuItem checkBoxMenuItem : cbTableModeItems) {
             groupViewMode.add(checkBoxMenuItem);
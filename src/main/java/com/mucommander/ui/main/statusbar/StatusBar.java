@@ -23,7 +23,6 @@ import com.mucommander.cache.LRUCache;
 import com.mucommander.commons.conf.ConfigurationEvent;
 import com.mucommander.commons.conf.ConfigurationListener;
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
 import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.impl.ftp.FTPFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
@@ -34,6 +33,7 @@ import com.mucommander.conf.TcConfigurations;
 import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 import com.mucommander.desktop.DesktopManager;
+import com.mucommander.utils.FileMetadataProbe;
 import com.mucommander.utils.text.SizeFormat;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.action.ActionManager;
@@ -49,7 +49,6 @@ import com.mucommander.ui.main.table.views.BaseFileTableModel;
 import com.mucommander.ui.theme.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import ru.trolsoft.utils.ImageSizeDetector;
 import ru.trolsoft.utils.JavaClassVersionDetector;
 
 import javax.swing.*;
@@ -59,9 +58,7 @@ import java.awt.event.ComponentListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 
 
 /**
@@ -127,10 +124,6 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
     /** SizeFormat format used to create the selected file(s) size string */
     private static int selectedFileSizeFormat;
 
-    private final static ExtensionFilenameFilter SUPPORTED_IMAGE_FILTER = new ExtensionFilenameFilter(new String[] {
-            ".png", ".gif", ".jpg", ".jpeg", ".bmp", ".tga", ".tiff", ".tif"});
-
-    private final static ExtensionFilenameFilter JAVA_CLASS_FILTER = new ExtensionFilenameFilter(".class");
 
 
     static {
@@ -328,13 +321,23 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
                 filesInfo.append(target);
             }
         }
-        boolean local = selectedFile.getAncestor() instanceof LocalFile;
+        // Facts that require reading the file are computed in the background, the status bar is updated again once
+        // they are known
+        FileMetadataProbe.Metadata metadata = null;
+        if (FileMetadataProbe.isProbeable(selectedFile)) {
+            FileMetadataProbe probe = FileMetadataProbe.getInstance();
+            metadata = probe.getCached(selectedFile);
+            if (metadata == null) {
+                probe.probe(this, selectedFile, this::metadataProbed);
+            }
+        } else {
+            FileMetadataProbe.getInstance().cancel(this);
+        }
+
         if (selectedFile.isDirectory()) {
-            if (local) {
+            if (metadata != null && metadata.getChildrenCount() >= 0) {
                 filesInfo.append(" (");
-                try {
-                    filesInfo.append(selectedFile.ls().length);
-                } catch (IOException ignored) {}
+                filesInfo.append(metadata.getChildrenCount());
                 filesInfo.append(' ');
                 filesInfo.append(Translator.get("files"));
                 filesInfo.append(')');
@@ -343,32 +346,20 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
             filesInfo.append(" (");
             filesInfo.append(SizeFormat.format(selectedFile.getSize(), SizeFormat.DIGITS_FULL | SizeFormat.UNIT_LONG | SizeFormat.INCLUDE_SPACE));
 
-            if (local && SUPPORTED_IMAGE_FILTER.accept(selectedFile)) {
-                // Show image size
-                try (InputStream is = selectedFile.getInputStream()) {
-                    ImageSizeDetector detector = new ImageSizeDetector(is);
-                    if (detector.getType() != null) {
-                        filesInfo.append(", ");
-                        filesInfo.append(detector.getWidth());
-                        filesInfo.append(" x ");
-                        filesInfo.append(detector.getHeight());
-                    }
-                } catch (FileNotFoundException ignore) {
-                    // etc. if file was moved
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            } else if (JAVA_CLASS_FILTER.accept(selectedFile)) {
-                try (InputStream is = selectedFile.getPushBackInputStream(16)) {
-                    JavaClassVersionDetector detector = new JavaClassVersionDetector(is);
-
-                    if (detector.getVersion() != JavaClassVersionDetector.Version.UNKNOWN) {
-                        filesInfo.append(", Java v").append(detector.getVersion().name);
-                    } else if (detector.getVersion() != JavaClassVersionDetector.Version.WRONG_FORMAT) {
-                        filesInfo.append(", Java major = ").append(detector.getMajor()).append(", minor = ").append(detector.getMinor());
+            if (metadata != null) {
+                if (metadata.getImageWidth() >= 0) {
+                    // Show image size
+                    filesInfo.append(", ");
+                    filesInfo.append(metadata.getImageWidth());
+                    filesInfo.append(" x ");
+                    filesInfo.append(metadata.getImageHeight());
+                } else if (metadata.getJavaClassVersion() != null) {
+                    JavaClassVersionDetector.Version version = metadata.getJavaClassVersion();
+                    if (version != JavaClassVersionDetector.Version.UNKNOWN) {
+                        filesInfo.append(", Java v").append(version.name);
+                    } else if (version != JavaClassVersionDetector.Version.WRONG_FORMAT) {
+                        filesInfo.append(", Java major = ").append(metadata.getJavaClassMajor()).append(", minor = ").append(metadata.getJavaClassMinor());
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
                 }
             }
 
@@ -377,6 +368,17 @@ public class StatusBar extends JPanel implements Runnable, MouseListener, Active
         }
     }
 
+    /**
+     * Called when the metadata of a file has been probed, refreshes the selected file info if the file is still
+     * the selected one.
+     */
+    private void metadataProbed(AbstractFile file, FileMetadataProbe.Metadata metadata) {
+        AbstractFile selectedFile = mainFrame.getActiveTable().getSelectedFile(false, true);
+        if (selectedFile != null && selectedFile.equals(file)) {
+            updateSelectedFilesInfo();
+        }
+    }
+
 
     private static String getFileLink(AbstractFile file) {
         AbstractFile f;
@@ -40,6 +40,7 @@ import com.mucommander.ui.main.table.views.full.FileTableCellRenderer;
 import com.mucommander.ui.main.table.views.full.FileTableColumnModel;
 import com.mucommander.ui.main.table.views.full.FileTableConfiguration;
 import com.mucommander.ui.main.table.views.full.FileTableModel;
+import com.mucommander.ui.main.table.views.thumbnails.ThumbnailCache;
 import com.mucommander.ui.text.FilePathFieldKeyListener;
 import com.mucommander.ui.theme.*;
 import com.mucommander.utils.FileIconsCache;
@@ -249,7 +250,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
     /**
      *
-     * @param mode - FULL, COMPACT or SHORT
+     * @param mode - FULL, COMPACT, SHORT or THUMBNAILS
      */
     public synchronized void setViewMode(TableViewMode mode) {
         if (this.viewMode == mode) {
@@ -274,6 +275,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
 
             case COMPACT:
             case SHORT:
+            case THUMBNAILS:
                 if (!fromConstructor) {
                     CompactFileTableModel newModel = new CompactFileTableModel(mode.getColumnsCount(), pageSize > 0 ? pageSize : 10);
                     newModel.setQuickSearch(quickSearch);
@@ -653,7 +655,13 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // JTable.setRowHeight() revalidates and repaints the JTable.
         // Note that it's important here to use the cell editor's font rather than the cell renderer's: if this method is called
         // as a result to a font changed event, we do not know which class' fontChanged event will be called first.
-        setRowHeight(2*CellLabel.CELL_BORDER_HEIGHT + Math.max(getFontMetrics(filenameEditor.filenameField.getFont()).getHeight(), (int)FileIcons.getIconDimension().getHeight()));
+        int fontHeight = getFontMetrics(filenameEditor.filenameField.getFont()).getHeight();
+        if (viewMode == TableViewMode.THUMBNAILS) {
+            // The thumbnail is rendered above the filename
+            setRowHeight(2*CellLabel.CELL_BORDER_HEIGHT + ThumbnailCache.THUMBNAIL_SIZE + fontHeight + 4);
+            return;
+        }
+        setRowHeight(2*CellLabel.CELL_BORDER_HEIGHT + Math.max(fontHeight, (int)FileIcons.getIconDimension().getHeight()));
         // Filename editor's row resize disabled because of Java bug #4398268 which prevents new rows from being visible after setRowHeight(row, height) has been called :/
         //		setRowHeight(Math.max(getFontMetrics(cellRenderer.getCellFont()).getHeight()+cellRenderer.CELL_BORDER_HEIGHT, editorRowHeight));
     }
@@ -2284,6 +2292,8 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
             try {
                 // Set the new current folder.
                 tableModel.setCurrentFolder(folder, children, FileTable.this);
+                // The quick search keys of the previous files are obsolete
+                quickSearch.itemsChanged();
                 // Update the visibility state of conditional columns
                 FileTableColumnModel columnModel = getFileTableColumnModel();
 
@@ -2389,8 +2399,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     }
 
     private static boolean isQuickSearchMatchesFirst() {
-        return TcConfigurations.getPreferences().getVariable(TcPreference.SHOW_QUICK_SEARCH_MATCHES_FIRST,
-                TcPreferences.DEFAULT_SHOW_QUICK_SEARCH_MATCHES_FIRST);
+        return TcPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST_VALUE.get();
     }
 
 
@@ -18,8 +18,6 @@
 
 package com.mucommander.ui.main.table;
 
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 
 /**
@@ -40,12 +38,12 @@ public class SortInfo implements Cloneable {
     private boolean ascendingOrder = true;
 
     /** Should folders be displayed first, or mixed with regular files */
-    private boolean showFoldersFirst = TcConfigurations.getPreferences().getVariable(TcPreference.SHOW_FOLDERS_FIRST, TcPreferences.DEFAULT_SHOW_FOLDERS_FIRST);
+    private boolean showFoldersFirst = TcPreferences.SHOW_FOLDERS_FIRST_VALUE.get();
 
     /** Should Folders also get sorted or alway alphabetical ... only possible if Folders First enabled */
-    private boolean foldersAlwaysAlphabetical = TcConfigurations.getPreferences().getVariable(TcPreference.FOLDERS_ALWAYS_ALPHABETICAL, TcPreferences.DEFAULT_FOLDERS_ALWAYS_ALPHABETICAL);
+    private boolean foldersAlwaysAlphabetical = TcPreferences.FOLDERS_ALWAYS_ALPHABETICAL_VALUE.get();
 
-    private boolean showQuickSearchMatchesFirst = TcConfigurations.getPreferences().getVariable(TcPreference.SHOW_QUICK_SEARCH_MATCHES_FIRST, TcPreferences.DEFAULT_SHOW_QUICK_SEARCH_MATCHES_FIRST);
+    private boolean showQuickSearchMatchesFirst = TcPreferences.SHOW_QUICK_SEARCH_MATCHES_FIRST_VALUE.get();
 
     SortInfo() {
     }
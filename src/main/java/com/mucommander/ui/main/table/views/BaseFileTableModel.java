@@ -23,8 +23,7 @@ import com.mucommander.commons.file.impl.CachedFile;
 import com.mucommander.commons.file.impl.local.LocalFile;
 import com.mucommander.commons.file.util.FileComparator;
 import com.mucommander.commons.file.util.FileSet;
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
+import com.mucommander.commons.file.util.FileSortKeys;
 import com.mucommander.conf.TcPreferences;
 import com.mucommander.utils.text.SizeFormat;
 import com.mucommander.ui.main.table.CalculateDirectorySizeWorker;
@@ -105,7 +104,8 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     /** Here will be stored sizes of directories calculated by F3 command */
     protected final Map<AbstractFile, Long> directorySizes = new HashMap<>();
 
-    private FileComparator fileComparator;
+    /** Sort keys of the current files, computed when the files are first sorted by a criterion */
+    private FileSortKeys sortKeys;
 
     /*
      * First visible row
@@ -121,8 +121,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
     private static boolean getFileSizeFormat() {
-        return TcConfigurations.getPreferences().getVariable(TcPreference.DISPLAY_COMPACT_FILE_SIZE,
-                                                  TcPreferences.DEFAULT_DISPLAY_COMPACT_FILE_SIZE);
+        return TcPreferences.DISPLAY_COMPACT_FILE_SIZE_VALUE.get();
     }
 
 
@@ -161,6 +160,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         this.currentFolderDateSnapshot = model.currentFolderDateSnapshot;
         this.parent = model.parent;
         this.cachedFiles = model.cachedFiles;
+        this.sortKeys = model.sortKeys;
         this.markedTotalSize = model.markedTotalSize;
         this.nbFilesMarked = model.nbFilesMarked;
         this.fileMarked = model.fileMarked;
@@ -292,9 +292,12 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
      * Sorts rows by the current criterion, ascending/descending order and 'folders first' value.
      */
     public synchronized void sortRows() {
-        this.fileComparator = createFileComparator(sortInfo);
-        sort(0, fileArrayIndex.length - 1);
-        this.fileComparator = null;
+        // The keys are kept until the folder is reloaded, so that sorting by another column only computes the keys
+        // of that column
+        if (sortKeys == null) {
+            sortKeys = new FileSortKeys(cachedFiles);
+        }
+        sortKeys.sort(fileArrayIndex, createFileComparator(sortInfo));
     }
 
 
@@ -309,74 +312,6 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
     }
 
 
-    /**
-     * Quick sort implementation, based on James Gosling's implementation.
-     */
-    protected void sort(int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-
-        if (lo >= hi) {
-            return;
-        } else if (lo == hi - 1) {
-            // sort a two element list by swapping if necessary
-            int loIndex = fileArrayIndex[lo];
-            int hiIndex = fileArrayIndex[hi];
-            if (compare(loIndex, hiIndex) > 0) {
-                fileArrayIndex[lo] = hiIndex;
-                fileArrayIndex[hi] = loIndex;
-            }
-            return;
-        }
-
-        // Pick a pivot and move it out of the way
-        int pivotIndex = fileArrayIndex[(lo + hi) / 2];
-        fileArrayIndex[(lo + hi) / 2] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        while (lo < hi) {
-            // Search forward from files[lo] until an element is found that
-            // is greater than the pivot or lo >= hi
-            //while (compare(cachedFiles[fileArrayIndex[lo]], pivot)<=0 && lo < hi) {
-            while (compare(fileArrayIndex[lo], pivotIndex) <= 0 && lo < hi) {
-                lo++;
-            }
-
-            // Search backward from files[hi] until element is found that
-            // is less than the pivot, or lo >= hi
-            //while (compare(pivot, cachedFiles[fileArrayIndex[hi]])<=0 && lo < hi ) {
-            while (compare(pivotIndex, fileArrayIndex[hi]) <= 0 && lo < hi ) {
-                hi--;
-            }
-
-            // Swap elements files[lo] and files[hi]
-            if (lo < hi) {
-                int temp = fileArrayIndex[lo];
-                fileArrayIndex[lo] = fileArrayIndex[hi];
-                fileArrayIndex[hi] = temp;
-            }
-        }
-
-        // Put the median in the "center" of the list
-        fileArrayIndex[hi0] = fileArrayIndex[hi];
-        fileArrayIndex[hi] = pivotIndex;
-
-        // Recursive calls, elements files[lo0] to files[lo-1] are less than or
-        // equal to pivot, elements files[hi+1] to files[hi0] are greater than pivot.
-        sort(lo0, lo-1);
-        sort(hi+1, hi0);
-    }
-
-
-    private int compare(int index1, int index2) {
-        if (index1 == index2) {
-            return 0;
-        }
-        return fileComparator.compare(cachedFiles[index1], cachedFiles[index2]);
-    }
-
-
-
     /**
      * Returns the current folder, i.e. the last folder set using {@link #setCurrentFolder(com.mucommander.commons.file.AbstractFile, com.mucommander.commons.file.AbstractFile[], FileTable table)}.
      *
@@ -422,6 +357,7 @@ public abstract class BaseFileTableModel extends AbstractTableModel {
         // Initialize file indexes and create CachedFile instances to speed up table display and navigation
         this.cachedFiles = children;
         this.fileArrayIndex = new int[nbFiles];
+        this.sortKeys = null;
 
         // we needn't prefetch local files for performance optimization purposes
         // in the case of local files the lazy initialization will be enough
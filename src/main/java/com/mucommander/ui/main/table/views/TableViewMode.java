@@ -21,6 +21,7 @@ import com.mucommander.ui.main.table.Column;
 import com.mucommander.ui.main.table.FileTable;
 import com.mucommander.ui.main.table.views.compact.CompactFileTableCellRenderer;
 import com.mucommander.ui.main.table.views.full.FileTableCellRenderer;
+import com.mucommander.ui.main.table.views.thumbnails.ThumbnailFileTableCellRenderer;
 
 /**
  * @author Oleg Trifonov
@@ -45,6 +46,12 @@ public enum TableViewMode {
         public BaseCellRenderer createCellRenderer(FileTable table) {
             return new CompactFileTableCellRenderer(table);
         }
+    },
+    THUMBNAILS(4) {
+        @Override
+        public BaseCellRenderer createCellRenderer(FileTable table) {
+            return new ThumbnailFileTableCellRenderer(table);
+        }
     };
 
 
@@ -0,0 +1,302 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table.views.thumbnails;
+
+import com.mucommander.PlatformManager;
+import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.LRUCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import com.mucommander.commons.io.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the thumbnails of image files for the thumbnails view of the file table.
+ *
+ * <p>Thumbnails are kept in an in-memory LRU cache on top of a size-limited disk cache, in the preferences folder.
+ * Both are keyed by path, date and size so that a modified image gets a new thumbnail. Missing thumbnails are
+ * generated by a small pool of background threads; the most recent requests are served first and the oldest ones
+ * are dropped when too many are pending, so that the rows scrolled into view are rendered first.
+ *
+ * @author Oleg Trifonov
+ */
+public class ThumbnailCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /** Maximum width and height of the thumbnails */
+    public static final int THUMBNAIL_SIZE = 96;
+
+    /** Maximum number of thumbnails kept in memory */
+    private static final int MEMORY_CACHE_CAPACITY = 1000;
+
+    /** Maximum size of the disk cache, the least recently used thumbnails are removed above it */
+    private static final long MAX_DISK_CACHE_SIZE = 200*1024*1024;
+
+    /** Name of the disk cache folder, in the preferences folder */
+    private static final String DISK_CACHE_FOLDER_NAME = "thumbnails";
+
+    /** Maximum number of thumbnails waiting to be generated */
+    private static final int MAX_PENDING_REQUESTS = 256;
+
+    private static final int NB_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private final static ExtensionFilenameFilter SUPPORTED_IMAGE_FILTER = new ExtensionFilenameFilter(new String[] {
+            ".png", ".gif", ".jpg", ".jpeg", ".bmp"});
+
+    /** Cached for files that have no thumbnail, so that they are not decoded again */
+    private static final ImageIcon NO_THUMBNAIL = new ImageIcon();
+
+    private static volatile ThumbnailCache instance;
+
+    private final LRUCache<String, ImageIcon> memoryCache = new FastLRUCache<>(MEMORY_CACHE_CAPACITY);
+
+    /** Keys of the thumbnails waiting to be generated or being generated */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    private final ThreadPoolExecutor executor;
+
+    private final File diskCacheFolder;
+
+    /** Total size of the disk cache, -1 until it has been computed */
+    private long diskCacheSize = -1;
+
+
+    public static ThumbnailCache getInstance() {
+        if (instance == null) {
+            synchronized (ThumbnailCache.class) {
+                if (instance == null) {
+                    instance = new ThumbnailCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private ThumbnailCache() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(NB_THREADS, NB_THREADS, 30, TimeUnit.SECONDS, new RequestQueue(), r -> {
+            Thread thread = new Thread(r, "Thumbnails-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        diskCacheFolder = new File(PlatformManager.getPreferencesFolder().getAbsolutePath(), DISK_CACHE_FOLDER_NAME);
+    }
+
+
+    /**
+     * Returns <code>true</code> if thumbnails can be created for the given file.
+     *
+     * @param file the file to test
+     * @return true if the file is a supported image
+     */
+    public static boolean isSupported(AbstractFile file) {
+        return !file.isDirectory() && SUPPORTED_IMAGE_FILTER.accept(file);
+    }
+
+    private static String getKey(AbstractFile file) {
+        return file.getAbsolutePath() + '|' + file.getLastModifiedDate() + '|' + file.getSize();
+    }
+
+    /**
+     * Returns the thumbnail of the given file if it is cached in memory. Otherwise the thumbnail is loaded from the
+     * disk cache or generated in the background, and the callback is invoked on the event dispatch thread once it
+     * is available.
+     *
+     * @param file an image file
+     * @param onLoaded called when the thumbnail becomes available, typically to repaint the component showing it
+     * @return the thumbnail, <code>null</code> if it isn't available yet or if the file can't be decoded
+     */
+    public ImageIcon getThumbnail(AbstractFile file, Runnable onLoaded) {
+        String key = getKey(file);
+        ImageIcon icon = memoryCache.get(key);
+        if (icon != null) {
+            return icon == NO_THUMBNAIL ? null : icon;
+        }
+        if (pendingKeys.add(key)) {
+            executor.execute(new ThumbnailTask(key, file, onLoaded));
+        }
+        return null;
+    }
+
+
+    /**
+     * Loads or generates a thumbnail.
+     */
+    private class ThumbnailTask implements Runnable {
+        private final String key;
+        private final AbstractFile file;
+        private final Runnable onLoaded;
+
+        ThumbnailTask(String key, AbstractFile file, Runnable onLoaded) {
+            this.key = key;
+            this.file = file;
+            this.onLoaded = onLoaded;
+        }
+
+        @Override
+        public void run() {
+            ImageIcon icon = NO_THUMBNAIL;
+            try {
+                File cacheFile = getCacheFile(key);
+                BufferedImage image = loadFromDisk(cacheFile);
+                if (image == null) {
+                    image = ThumbnailGenerator.createThumbnail(file, THUMBNAIL_SIZE);
+                    if (image != null) {
+                        saveToDisk(cacheFile, image);
+                    }
+                }
+                if (image != null) {
+                    icon = new ImageIcon(image);
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not create thumbnail of " + file, e);
+            }
+            memoryCache.add(key, icon);
+            pendingKeys.remove(key);
+            if (icon != NO_THUMBNAIL) {
+                SwingUtilities.invokeLater(onLoaded);
+            }
+        }
+    }
+
+    /**
+     * Executor queue serving the most recent request first and dropping the oldest one when it is full.
+     */
+    private class RequestQueue extends LinkedBlockingDeque<Runnable> {
+        RequestQueue() {
+            super(MAX_PENDING_REQUESTS);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            while (!offerFirst(r)) {
+                Runnable dropped = pollLast();
+                if (dropped instanceof ThumbnailTask) {
+                    pendingKeys.remove(((ThumbnailTask)dropped).key);
+                }
+            }
+            return true;
+        }
+    }
+
+
+    // - Disk cache ------------------------------------------------------------------
+    // -------------------------------------------------------------------------------
+
+    private File getCacheFile(String key) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        String name = ByteUtils.toHexString(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        return new File(diskCacheFolder, name + ".png");
+    }
+
+    private static BufferedImage loadFromDisk(File cacheFile) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(cacheFile);
+            // The modification date tells which thumbnails have been used recently
+            cacheFile.setLastModified(System.currentTimeMillis());
+            return image;
+        } catch (IOException e) {
+            LOGGER.debug("Could not read cached thumbnail " + cacheFile, e);
+            return null;
+        }
+    }
+
+    private void saveToDisk(File cacheFile, BufferedImage image) {
+        try {
+            if (!diskCacheFolder.isDirectory() && !diskCacheFolder.mkdirs()) {
+                return;
+            }
+            // Write to a temporary file so that a partially written thumbnail is never read
+            File tmpFile = new File(cacheFile.getPath() + ".tmp");
+            if (!ImageIO.write(image, "png", tmpFile)) {
+                return;
+            }
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            addToDiskCacheSize(cacheFile.length());
+        } catch (IOException e) {
+            LOGGER.debug("Could not write cached thumbnail " + cacheFile, e);
+        }
+    }
+
+    private synchronized void addToDiskCacheSize(long length) {
+        File[] files = null;
+        if (diskCacheSize < 0) {
+            files = listDiskCache();
+            diskCacheSize = 0;
+            for (File file : files) {
+                diskCacheSize += file.length();
+            }
+        } else {
+            diskCacheSize += length;
+        }
+        if (diskCacheSize <= MAX_DISK_CACHE_SIZE) {
+            return;
+        }
+        // Remove the least recently used thumbnails, down to 3/4 of the maximum size to avoid trimming too often
+        if (files == null) {
+            files = listDiskCache();
+        }
+        long[] dates = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            dates[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> dates[i]));
+        for (Integer i : order) {
+            if (diskCacheSize <= MAX_DISK_CACHE_SIZE * 3 / 4) {
+                break;
+            }
+            long fileLength = files[i].length();
+            if (files[i].delete()) {
+                diskCacheSize -= fileLength;
+            }
+        }
+    }
+
+    private File[] listDiskCache() {
+        File[] files = diskCacheFolder.listFiles((dir, name) -> name.endsWith(".png"));
+        return files != null ? files : new File[0];
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table.views.thumbnails;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.ui.main.table.CellLabel;
+import com.mucommander.ui.main.table.FileTable;
+import com.mucommander.ui.main.table.views.compact.CompactFileTableCellRenderer;
+import com.mucommander.ui.main.table.views.compact.CompactFileTableModel;
+
+import javax.swing.ImageIcon;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import java.awt.Component;
+
+/**
+ * Renders the cells of the thumbnails view: the thumbnail of an image above its name. Files that have no
+ * thumbnail, or whose thumbnail is still being created, are rendered with their icon.
+ *
+ * @author Oleg Trifonov
+ */
+public class ThumbnailFileTableCellRenderer extends CompactFileTableCellRenderer {
+
+    private final Runnable repaintTable;
+
+    public ThumbnailFileTableCellRenderer(FileTable table) {
+        super(table);
+        this.repaintTable = table::repaint;
+        for (CellLabel label : cellLabels) {
+            label.setHorizontalAlignment(SwingConstants.CENTER);
+            label.setHorizontalTextPosition(SwingConstants.CENTER);
+            label.setVerticalTextPosition(SwingConstants.BOTTOM);
+        }
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+        Component component = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+        if (component != cellLabels[column]) {
+            return component;
+        }
+        AbstractFile file = ((CompactFileTableModel)tableModel).getFileAt(row, column);
+        if (file != null && ThumbnailCache.isSupported(file)) {
+            ImageIcon thumbnail = ThumbnailCache.getInstance().getThumbnail(file, repaintTable);
+            if (thumbnail != null) {
+                cellLabels[column].setIcon(thumbnail);
+            }
+        }
+        return component;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table.views.thumbnails;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+/**
+ * Creates thumbnails of image files without decoding them at full resolution: the EXIF thumbnail embedded in
+ * JPEG files is used when it is large enough, other images are decoded with source subsampling.
+ *
+ * @author Oleg Trifonov
+ */
+final class ThumbnailGenerator {
+
+    /** JPEG markers */
+    private static final int SOI = 0xFFD8;
+    private static final int SOS = 0xFFDA;
+    private static final int EOI = 0xFFD9;
+    private static final int APP1 = 0xFFE1;
+
+    /** EXIF tags of IFD1 giving the position and length of the thumbnail */
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    /** The EXIF segment is looked for in the first bytes of the file only */
+    private static final int EXIF_SEARCH_LIMIT = 256*1024;
+
+    private ThumbnailGenerator() {
+    }
+
+
+    /**
+     * Creates the thumbnail of an image file.
+     *
+     * @param file the image file
+     * @param size maximum width and height of the thumbnail
+     * @return the thumbnail, <code>null</code> if the file could not be decoded
+     * @throws IOException if the file could not be read
+     */
+    static BufferedImage createThumbnail(AbstractFile file, int size) throws IOException {
+        if (file.getAncestor() instanceof LocalFile) {
+            File localFile = (File)file.getAncestor().getUnderlyingFileObject();
+            try (ImageInputStream iis = ImageIO.createImageInputStream(localFile)) {
+                return createThumbnail(iis, size);
+            }
+        }
+        try (InputStream in = file.getInputStream();
+             ImageInputStream iis = new MemoryCacheImageInputStream(in)) {
+            return createThumbnail(iis, size);
+        }
+    }
+
+    /**
+     * Creates the thumbnail of the image read from the given stream.
+     *
+     * @param iis the image stream
+     * @param size maximum width and height of the thumbnail
+     * @return the thumbnail, <code>null</code> if the image could not be decoded
+     * @throws IOException if the stream could not be read
+     */
+    static BufferedImage createThumbnail(ImageInputStream iis, int size) throws IOException {
+        if (iis == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            if ("jpeg".equalsIgnoreCase(reader.getFormatName())) {
+                BufferedImage exifThumbnail = readExifThumbnail(iis, size);
+                if (exifThumbnail != null) {
+                    return scale(exifThumbnail, size);
+                }
+                iis.seek(0);
+            }
+            reader.setInput(iis, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            // Decode at about twice the thumbnail size and scale down smoothly from there
+            int subsampling = Math.max(1, Math.max(width, height) / (size * 2));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            return scale(reader.read(0, param), size);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Returns the thumbnail stored in the EXIF segment of a JPEG stream.
+     *
+     * @param iis the JPEG stream
+     * @param minSize the thumbnail is ignored if both its dimensions are smaller than this size
+     * @return the thumbnail, <code>null</code> if there is none or if it is too small
+     * @throws IOException if the stream could not be read
+     */
+    static BufferedImage readExifThumbnail(ImageInputStream iis, int minSize) throws IOException {
+        iis.seek(0);
+        iis.setByteOrder(ByteOrder.BIG_ENDIAN);
+        if (iis.readUnsignedShort() != SOI) {
+            return null;
+        }
+        while (iis.getStreamPosition() < EXIF_SEARCH_LIMIT) {
+            int marker = iis.readUnsignedShort();
+            if ((marker & 0xFF00) != 0xFF00 || marker == SOS || marker == EOI) {
+                return null;
+            }
+            int length = iis.readUnsignedShort();
+            if (length < 2) {
+                return null;
+            }
+            long next = iis.getStreamPosition() + length - 2;
+            if (marker == APP1 && length > 8) {
+                byte[] data = new byte[length - 2];
+                iis.readFully(data);
+                if (data[0] == 'E' && data[1] == 'x' && data[2] == 'i' && data[3] == 'f' && data[4] == 0 && data[5] == 0) {
+                    return parseExifThumbnail(data, 6, minSize);
+                }
+            }
+            iis.seek(next);
+        }
+        return null;
+    }
+
+    private static BufferedImage parseExifThumbnail(byte[] data, int tiffStart, int minSize) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.order(data[tiffStart] == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            int ifd0 = tiffStart + buffer.getInt(tiffStart + 4);
+            int ifd0Entries = buffer.getShort(ifd0) & 0xFFFF;
+            int ifd1Offset = buffer.getInt(ifd0 + 2 + ifd0Entries * 12);
+            if (ifd1Offset <= 0) {
+                return null;
+            }
+            int ifd1 = tiffStart + ifd1Offset;
+            int ifd1Entries = buffer.getShort(ifd1) & 0xFFFF;
+            int offset = -1;
+            int length = -1;
+            for (int i = 0; i < ifd1Entries; i++) {
+                int entry = ifd1 + 2 + i * 12;
+                int tag = buffer.getShort(entry) & 0xFFFF;
+                if (tag == TAG_THUMBNAIL_OFFSET) {
+                    offset = buffer.getInt(entry + 8);
+                } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                    length = buffer.getInt(entry + 8);
+                }
+            }
+            if (offset <= 0 || length <= 0 || tiffStart + offset + length > data.length) {
+                return null;
+            }
+            BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(data, tiffStart + offset, length));
+            if (thumbnail == null || Math.max(thumbnail.getWidth(), thumbnail.getHeight()) < minSize) {
+                return null;
+            }
+            return thumbnail;
+        } catch (IndexOutOfBoundsException e) {
+            // Malformed EXIF data
+            return null;
+        }
+    }
+
+    /**
+     * Scales an image down to fit in a square, keeping its aspect ratio. Smaller images are returned as is.
+     *
+     * @param image the image
+     * @param size the side of the square
+     * @return the scaled image
+     */
+    static BufferedImage scale(BufferedImage image, int size) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width <= size && height <= size) {
+            return image;
+        }
+        double ratio = Math.min((double)size / width, (double)size / height);
+        int scaledWidth = Math.max(1, (int)Math.round(width * ratio));
+        int scaledHeight = Math.max(1, (int)Math.round(height * ratio));
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage result = new BufferedImage(scaledWidth, scaledHeight, type);
+        Graphics2D g = result.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+}
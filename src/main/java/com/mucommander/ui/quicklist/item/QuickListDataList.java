@@ -92,6 +92,7 @@ public class QuickListDataList<T> extends JList<T> {
 	public void setListData(final T[] data) {
 		//super.setListData(data);
         setModel(new QuickListDataModel<>(data));
+        quickSearch.itemsChanged();
 
         int numOfRowsInList = getModel().getSize();
 		if (numOfRowsInList > 0) {
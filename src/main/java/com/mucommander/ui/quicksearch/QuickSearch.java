@@ -24,8 +24,6 @@ import java.awt.event.KeyEvent;
 import javax.swing.JComponent;
 
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.conf.TcConfigurations;
-import com.mucommander.conf.TcPreference;
 import com.mucommander.conf.TcPreferences;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -63,6 +61,9 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
     private int quickSearchTimeout;
 
 
+    /** Keys of the items and matches of the search string, built on the first search after the items change */
+    private final QuickSearchIndex index = new QuickSearchIndex();
+
     private final JComponent component;
     private volatile boolean active;
     
@@ -83,7 +84,9 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
             // Reset search string
             searchString = "";
             // Start the thread that's responsible for canceling the quick search on timeout
-            quickSearchTimeout = TcConfigurations.getPreferences().getVariable(TcPreference.QUICK_SEARCH_TIMEOUT, TcPreferences.DEFAULT_QUICK_SEARCH_TIMEOUT);
+            quickSearchTimeout = TcPreferences.QUICK_SEARCH_TIMEOUT_VALUE.get();
+            index.setFuzzy(TcPreferences.QUICK_SEARCH_FUZZY_VALUE.get());
+            index.update(searchString);
             if (quickSearchTimeout > 0) {
                 timeoutThread = new Thread(this, "QuickSearch timeout thread");
                 timeoutThread.start();
@@ -115,16 +118,34 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
         return active;
     }
 
+    /**
+     * Notifies the quick search that the items have changed (a new folder or list was loaded), so that their keys
+     * are computed again for the next search.
+     */
+    public void itemsChanged() {
+        index.invalidate();
+    }
+
+    private void updateIndex() {
+        int nbItems = getNumOfItems();
+        if (!index.isBuilt(nbItems)) {
+            index.build(nbItems, this::getItemString);
+        } else {
+            index.update(searchString);
+        }
+    }
+
 
     /**
      * Returns <code>true</code> if the current quick search string matches the given string.
-     * Always returns <code>false</code> when the quick search is inactive.
+     * Always returns <code>false</code> when the quick search is inactive. The items of the component are matched
+     * once per search string change, so this method is cheap enough to be called for every rendered cell.
      *
      * @param string the string to test against the quick search string
      * @return true if the current quick search string matches the given string
      */
     public boolean matches(String string) {
-        return isActive() && string.toLowerCase().contains(searchString.toLowerCase());
+        return isActive() && index.matches(string);
     }
 
     public boolean matches(AbstractFile file) {
@@ -174,6 +195,7 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
         // the cancel() method will be called, and repainting twice would result in an
         // unpleasant graphical artifact.
         searchString = searchString.substring(0, searchString.length()-1);
+        updateIndex();
         if (!searchString.isEmpty()) {
             component.repaint();
         }
@@ -184,6 +206,7 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
         // Since the search string has been updated, match information has changed as well
         // and we need to repaint the table.
         searchString += keyChar;
+        updateIndex();
         component.repaint();
 	}
 	
@@ -210,89 +233,41 @@ public abstract class QuickSearch extends KeyAdapter implements Runnable {
     }
 	
 	private int getBestMatch(int startIndex, boolean descending, boolean findBestMatch) {
-    	String searchStringLC = searchString.toLowerCase();
-    	int searchStringLen = searchString.length();
-        int startsWithCaseMatch = -1;
-        int startsWithNoCaseMatch = -1;
-        int containsCaseMatch = -1;
-        int containsNoCaseMatch = -1;
         int nbFiles = getNumOfItems();
+        if (!index.isBuilt(nbFiles)) {
+            index.build(nbFiles, this::getItemString);
+        }
+        int bestMatch = -1;
+        long bestRank = Long.MAX_VALUE;
 
-        // Iterate on rows and look the first strings to match one of the following tests,
-        // in the following order of importance :
+        // Iterate on rows and keep the first string with the best rank, in the following order of importance :
         // - search string matches the beginning of the string with the same case
         // - search string matches the beginning of the string with a different case
         // - string contains search string with the same case
         // - string contains search string with a different case
+        // - string contains the characters of the search string in the same order (fuzzy mode), the most compact first
         for (int i = startIndex; descending ? i < nbFiles : i >= 0; i = descending ? i+1 : i-1) {
-            // if findBestMatch was not specified, stop to the first match
-            if (!findBestMatch && (startsWithCaseMatch != -1 || startsWithNoCaseMatch != -1 || containsCaseMatch != -1 || containsNoCaseMatch != -1)) {
-                break;
-            }
-
             String item = getItemString(i);
-            int itemLen = item.length();
-
-            // No need to compare strings if quick search string is longer than compared string,
-            // they won't match
-            if (itemLen < searchStringLen) {
+            // Rows that don't match are rejected by the index without comparing strings
+            if (!index.matches(item)) {
                 continue;
             }
-
-            // Compare quick search string against
-            if (item.startsWith(searchString)) {
-                // We've got the best match we could ever have, let's get out of this loop!
-                startsWithCaseMatch = i;
+            // if findBestMatch was not specified, stop to the first match
+            if (!findBestMatch) {
+                bestMatch = i;
                 break;
             }
-
-            // If we already have a match on this test case, let's skip to the next string
-            if (startsWithNoCaseMatch >= 0) {
-                continue;
-            }
-
-            String itemLC = item.toLowerCase();
-            if (itemLC.startsWith(searchStringLC)) {
-                // We've got a match, let's see if we can find a better match on the next string
-                startsWithNoCaseMatch = i;
-            }
-
-            // No need to check if the compared string contains search string if both size are equal,
-            // in the case startsWith test yields the same result
-            if (itemLen == searchStringLen) {
-                continue;
-            }
-
-            // If we already have a match on this test case, let's skip to the next string
-            if (containsCaseMatch != -1) {
-                continue;
-            }
-
-            if (item.contains(searchString)) {
-                // We've got a match, let's see if we can find a better match on the next string
-                containsCaseMatch = i;
-                continue;
-            }
-
-            // If we already have a match on this test case, let's skip to the next string
-            if (containsNoCaseMatch != -1) {
-                continue;
-            }
-
-            if (itemLC.contains(searchStringLC)) {
-                // We've got a match, let's see if we can find a better match on the next string
-                containsNoCaseMatch = i;
-                //continue;
+            long rank = index.getRank(item);
+            if (rank < bestRank) {
+                bestRank = rank;
+                bestMatch = i;
+                if (rank == 0) {
+                    // We've got the best match we could ever have, let's get out of this loop!
+                    break;
+                }
             }
         }
-    	
-        // Determines what the best match is, based on all the matches we found
-        int bestMatch = startsWithCaseMatch != -1 ? startsWithCaseMatch
-            : startsWithNoCaseMatch != -1 ? startsWithNoCaseMatch
-            : containsCaseMatch !=-1 ? containsCaseMatch
-            : containsNoCaseMatch;
-        LOGGER.trace("startsWithCaseMatch="+startsWithCaseMatch+" containsCaseMatch="+containsCaseMatch+" startsWithNoCaseMatch="+startsWithNoCaseMatch+" containsNoCaseMatch="+containsNoCaseMatch);
-        LOGGER.trace("bestMatch="+bestMatch);
+        LOGGER.trace("bestMatch="+bestMatch+" rank="+bestRank);
 
         return bestMatch;
     }
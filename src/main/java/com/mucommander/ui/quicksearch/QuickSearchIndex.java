@@ -0,0 +1,302 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.quicksearch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Finds the items that match a quick search string, incrementally.
+ *
+ * <p>The lower-case key of each item is computed once, when the index is built for a set of items, and reused by all
+ * the searches until the items change. Each search string narrows the candidates of the longest previous search string
+ * it extends: typing a character only tests the items that matched before it, and removing a character goes back to
+ * the candidates of the shorter string without testing anything. Whether a given item matches is then a single hash
+ * lookup, which is what cell renderers and comparators call for every row.
+ *
+ * <p>An item matches if it contains the search string, ignoring case. In fuzzy mode an item also matches if the
+ * characters of the search string appear in it in the same order, and such matches are ranked by how compact they are
+ * and whether they start words.
+ *
+ * @author Oleg Trifonov
+ */
+class QuickSearchIndex {
+
+    /** The item starts with the search string, with the same case */
+    static final int STARTS_WITH_CASE = 0;
+    /** The item starts with the search string, with a different case */
+    static final int STARTS_WITH = 1;
+    /** The item contains the search string, with the same case */
+    static final int CONTAINS_CASE = 2;
+    /** The item contains the search string, with a different case */
+    static final int CONTAINS = 3;
+    /** The item contains the characters of the search string in the same order (fuzzy mode only) */
+    static final int SUBSEQUENCE = 4;
+    /** The item doesn't match */
+    static final int NO_MATCH = -1;
+
+
+    /**
+     * Lower-case key of an item.
+     */
+    private static class Key {
+        private final String lowerName;
+        /** Generation of the last matches this item belongs to */
+        private int generation;
+
+        Key(String name) {
+            this.lowerName = name.toLowerCase();
+        }
+    }
+
+    /**
+     * Items that match a search string.
+     */
+    private static class Candidates {
+        private final String lowerSearchString;
+        private final Key[] keys;
+
+        Candidates(String lowerSearchString, Key[] keys) {
+            this.lowerSearchString = lowerSearchString;
+            this.keys = keys;
+        }
+    }
+
+
+    /** Keys of the items by name, <code>null</code> until the index is built */
+    private Map<String, Key> keys;
+    private Key[] allKeys;
+
+    /** Candidates of successively longer search strings, each one extends the previous one */
+    private final Deque<Candidates> candidates = new ArrayDeque<>();
+
+    /** Incremented each time the matches change, the keys of the current matches hold the current generation */
+    private int generation;
+
+    private String searchString = "";
+    private String lowerSearchString = "";
+
+    private boolean fuzzy;
+
+
+    /**
+     * Returns <code>true</code> if the index has been built for the given number of items.
+     *
+     * @param nbItems the number of items
+     * @return <code>true</code> if the index is up to date
+     */
+    boolean isBuilt(int nbItems) {
+        return allKeys != null && allKeys.length == nbItems;
+    }
+
+    /**
+     * Computes the keys of the given items and matches them against the current search string.
+     *
+     * @param nbItems the number of items
+     * @param items returns the item at the given index
+     */
+    void build(int nbItems, IntFunction<String> items) {
+        keys = new HashMap<>(nbItems * 4 / 3 + 1);
+        List<Key> list = new ArrayList<>(nbItems);
+        for (int i = 0; i < nbItems; i++) {
+            String name = items.apply(i);
+            if (name != null && !keys.containsKey(name)) {
+                Key key = new Key(name);
+                keys.put(name, key);
+                list.add(key);
+            }
+        }
+        // Duplicate names share their key, nbItems is kept to detect changes
+        allKeys = list.toArray(new Key[nbItems]);
+        candidates.clear();
+        update(searchString);
+    }
+
+    /**
+     * Forgets the keys, the index will be built again for the next search.
+     */
+    void invalidate() {
+        keys = null;
+        allKeys = null;
+        candidates.clear();
+    }
+
+    /**
+     * Enables or disables fuzzy matching. Changing the mode resets the candidates.
+     *
+     * @param fuzzy <code>true</code> to match items that contain the characters of the search string in order
+     */
+    void setFuzzy(boolean fuzzy) {
+        if (this.fuzzy != fuzzy) {
+            this.fuzzy = fuzzy;
+            candidates.clear();
+        }
+    }
+
+    /**
+     * Updates the matches for a new search string. The candidates of the longest previous search string that the new
+     * one extends are narrowed down, if there are any.
+     *
+     * @param searchString the new search string
+     */
+    void update(String searchString) {
+        this.searchString = searchString;
+        this.lowerSearchString = searchString.toLowerCase();
+        if (allKeys == null) {
+            return;
+        }
+
+        // Drop the candidates of the search strings that are not a prefix of the new one
+        while (!candidates.isEmpty() && !lowerSearchString.startsWith(candidates.peekLast().lowerSearchString)) {
+            candidates.removeLast();
+        }
+        if (lowerSearchString.isEmpty()) {
+            return;
+        }
+
+        Candidates last = candidates.peekLast();
+        if (last == null || !last.lowerSearchString.equals(lowerSearchString)) {
+            Key[] base = last == null ? allKeys : last.keys;
+            List<Key> matched = new ArrayList<>();
+            for (Key key : base) {
+                if (key != null && matchesLowerCase(key.lowerName)) {
+                    matched.add(key);
+                }
+            }
+            last = new Candidates(lowerSearchString, matched.toArray(new Key[matched.size()]));
+            candidates.addLast(last);
+        }
+
+        generation++;
+        for (Key key : last.keys) {
+            key.generation = generation;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given item matches the current search string. Items that were not indexed are
+     * tested directly.
+     *
+     * @param name the item
+     * @return <code>true</code> if the item matches
+     */
+    boolean matches(String name) {
+        if (lowerSearchString.isEmpty()) {
+            return true;
+        }
+        Map<String, Key> keys = this.keys;
+        Key key = keys == null ? null : keys.get(name);
+        if (key == null || candidates.isEmpty()) {
+            return matchesLowerCase(name.toLowerCase());
+        }
+        return key.generation == generation;
+    }
+
+    private boolean matchesLowerCase(String lowerName) {
+        if (lowerName.contains(lowerSearchString)) {
+            return true;
+        }
+        return fuzzy && getSubsequenceScore(lowerName, lowerSearchString) >= 0;
+    }
+
+
+    /**
+     * Returns the kind of match of the given item, one of the constants of this class.
+     *
+     * @param name the item
+     * @return the kind of match, {@link #NO_MATCH} if the item doesn't match
+     */
+    int getMatchType(String name) {
+        if (name.length() < searchString.length() || !matches(name)) {
+            return NO_MATCH;
+        }
+        if (name.startsWith(searchString)) {
+            return STARTS_WITH_CASE;
+        }
+        String lowerName = name.toLowerCase();
+        if (lowerName.startsWith(lowerSearchString)) {
+            return STARTS_WITH;
+        }
+        if (name.contains(searchString)) {
+            return CONTAINS_CASE;
+        }
+        if (lowerName.contains(lowerSearchString)) {
+            return CONTAINS;
+        }
+        return SUBSEQUENCE;
+    }
+
+    /**
+     * Returns the rank of the given item, the lower the better, {@link Long#MAX_VALUE} if it doesn't match. Items are
+     * ranked by {@link #getMatchType(String) kind of match} and, for fuzzy matches, by score.
+     *
+     * @param name the item
+     * @return the rank of the item
+     */
+    long getRank(String name) {
+        int type = getMatchType(name);
+        if (type == NO_MATCH) {
+            return Long.MAX_VALUE;
+        }
+        long rank = (long)type << 32;
+        if (type == SUBSEQUENCE) {
+            rank += Integer.MAX_VALUE - getSubsequenceScore(name.toLowerCase(), lowerSearchString);
+        }
+        return rank;
+    }
+
+
+    /**
+     * Returns the score of the characters of <code>pattern</code> found in the same order in <code>text</code>, the
+     * higher the better, or <code>-1</code> if they are not all found. Consecutive characters and characters that
+     * start a word score more, characters found late in the text score less.
+     *
+     * @param text the text to search in, lower case
+     * @param pattern the characters to search, lower case
+     * @return the score, <code>-1</code> if the text doesn't contain the pattern characters in order
+     */
+    static int getSubsequenceScore(String text, String pattern) {
+        int score = 0;
+        int previous = -2;
+        int from = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            int pos = text.indexOf(pattern.charAt(i), from);
+            if (pos < 0) {
+                return -1;
+            }
+            score += 1;
+            if (pos == previous + 1) {
+                score += 5;
+            }
+            if (pos == 0 || !Character.isLetterOrDigit(text.charAt(pos - 1))) {
+                score += 8;
+            }
+            if (i == 0) {
+                score -= Math.min(pos, 10);
+            }
+            previous = pos;
+            from = pos + 1;
+        }
+        return Math.max(score, 0);
+    }
+}
@@ -38,6 +38,7 @@ import com.mucommander.ui.viewer.hex.HexViewer;
 import com.mucommander.ui.viewer.html.HtmlViewer;
 import com.mucommander.ui.viewer.pdf.PdfViewer;
 import com.mucommander.ui.viewer.text.TextViewer;
+import com.mucommander.ui.viewer.text.large.LargeTextViewer;
 import net.sf.jftp.gui.tasks.ImageViewer;
 
 
@@ -58,6 +59,8 @@ public class ViewerRegistrar {
         registerFileViewer(new com.mucommander.ui.viewer.image.ImageFactory());
         registerFileViewer(new AudioFactory());
         registerFileViewer(new com.mucommander.ui.viewer.html.HtmlFactory());
+        // Must be registered before the TextFactory which refuses large files
+        registerFileViewer(new com.mucommander.ui.viewer.text.large.LargeTextFactory());
         registerFileViewer(new com.mucommander.ui.viewer.text.TextFactory());
         // The HexFactory must be the last FileViewer to be registered (otherwise it would open other factories file types)
         registerFileViewer(new com.mucommander.ui.viewer.hex.HexFactory());
@@ -88,7 +91,7 @@ public class ViewerRegistrar {
         for (FileViewersList.FileRecord fr: FileViewersList.getFiles()) {
             if (fr.fileName.equals(file.getAbsolutePath()) && fr.viewerClass != null) {
                 Class viewerClass = fr.viewerClass;
-                if (viewerClass.equals(TextViewer.class) || viewerClass.equals(HexViewer.class) || viewerClass.equals(HtmlViewer.class) ||
+                if (viewerClass.equals(TextViewer.class) || viewerClass.equals(LargeTextViewer.class) || viewerClass.equals(HexViewer.class) || viewerClass.equals(HtmlViewer.class) ||
                         viewerClass.equals(ImageViewer.class) || viewerClass.equals(PdfViewer.class)) {
                     FileFrame openedFrame = fr.fileFrameRef.get();
                     if (openedFrame != null) {
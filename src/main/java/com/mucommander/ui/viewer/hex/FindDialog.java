@@ -55,7 +55,7 @@ public abstract class FindDialog extends FocusDialog implements ActionListener {
      *
      * @param frame the parent frame
      */
-    FindDialog(JFrame frame, String encoding) {
+    protected FindDialog(JFrame frame, String encoding) {
         super(frame, i18n("hex_viewer.find"), frame);
 
         Container contentPane = getContentPane();
@@ -116,7 +116,7 @@ public abstract class FindDialog extends FocusDialog implements ActionListener {
         TextHistory.getInstance().add(TextHistory.Type.HEX_DATA_SEARCH, hexField.getText(), true);
     }
 
-    void setSearchBytes(byte[] searchBytes) {
+    public void setSearchBytes(byte[] searchBytes) {
         hexField.setBytes(searchBytes);
     }
 
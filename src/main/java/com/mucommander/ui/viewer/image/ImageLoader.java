@@ -0,0 +1,425 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.image;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import net.sf.image4j.codec.ico.ICODecoder;
+import org.apache.batik.transcoder.Transcoder;
+import org.apache.batik.transcoder.TranscoderException;
+import org.apache.batik.transcoder.TranscoderInput;
+import org.apache.batik.transcoder.TranscoderOutput;
+import org.apache.batik.transcoder.image.PNGTranscoder;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.pnm.PnmImageParser;
+import org.apache.commons.imaging.formats.psd.PsdImageParser;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Decodes the images shown by an {@link ImageViewer}, prefetches the neighbours of the current image on a background
+ * thread and keeps the decoded images in a cache bounded by a number of pixels.
+ *
+ * <p>Images larger than {@link #LARGE_IMAGE_PIXELS} are decoded with subsampling into a preview of about
+ * {@link #PREVIEW_PIXELS}; the viewer then decodes the visible part of the image at full resolution with
+ * {@link #decodeRegion(AbstractFile, Rectangle, int)} when it is zoomed in.
+ *
+ * @author Oleg Trifonov
+ */
+class ImageLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ImageLoader.class);
+
+    /** Images with more pixels than this are decoded as a subsampled preview */
+    static final long LARGE_IMAGE_PIXELS = 32L * 1024 * 1024;
+
+    /** Approximate number of pixels of the preview of a large image */
+    private static final long PREVIEW_PIXELS = 8L * 1024 * 1024;
+
+    /** Total number of cached pixels: a quarter of the heap with 4 bytes per pixel, at least 16M pixels */
+    private static final long CACHE_PIXELS = Math.max(16L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
+
+    /** Decoded images by file key, in access order */
+    private final LinkedHashMap<String, DecodedImage> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedPixels;
+
+    /** Prefetch requests that haven't completed yet, by file key */
+    private final Map<String, Future<DecodedImage>> pendingRequests = new HashMap<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ImageLoader");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+
+    /**
+     * An image and what is needed to display it.
+     */
+    static class DecodedImage {
+        /** The decoded pixels, a preview of the image if {@link #subsampling} is greater than 1 */
+        final BufferedImage image;
+        /** Width of the image in the file */
+        final int width;
+        /** Height of the image in the file */
+        final int height;
+        /** Number of pixels of the file represented by a pixel of {@link #image} */
+        final int subsampling;
+        /** Bits per pixel, <code>-1</code> if unknown */
+        final int bpp;
+
+        DecodedImage(BufferedImage image, int width, int height, int subsampling, int bpp) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.subsampling = subsampling;
+            this.bpp = bpp;
+        }
+
+        long getPixels() {
+            return (long)image.getWidth() * image.getHeight();
+        }
+    }
+
+
+    private static String getKey(AbstractFile file) {
+        return file.getAbsolutePath() + '|' + file.getLastModifiedDate() + '|' + file.getSize();
+    }
+
+    /**
+     * Returns the decoded image of the given file: from the cache, by waiting for its prefetch to complete,
+     * or by decoding it in the calling thread.
+     *
+     * @param file the image file
+     * @return the decoded image
+     * @throws IOException if the file couldn't be read or decoded
+     */
+    DecodedImage load(AbstractFile file) throws IOException {
+        String key = getKey(file);
+        Future<DecodedImage> pending;
+        synchronized (this) {
+            DecodedImage image = cache.get(key);
+            if (image != null) {
+                return image;
+            }
+            pending = pendingRequests.get(key);
+        }
+        if (pending != null && !pending.isCancelled()) {
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException)e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (CancellationException e) {
+                // cancelled in the meantime, decoded below
+            }
+        }
+        DecodedImage image = decode(file);
+        addToCache(key, image);
+        return image;
+    }
+
+    /**
+     * Decodes the given files in the background, in the given order, unless they are already cached.
+     * Prefetch requests for other files that haven't started yet are cancelled.
+     *
+     * @param files the files to decode
+     */
+    synchronized void prefetch(Collection<AbstractFile> files) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for (AbstractFile file : files) {
+            keys.add(getKey(file));
+        }
+        for (Iterator<Map.Entry<String, Future<DecodedImage>>> i = pendingRequests.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<String, Future<DecodedImage>> entry = i.next();
+            if (!keys.contains(entry.getKey())) {
+                entry.getValue().cancel(false);
+                i.remove();
+            }
+        }
+        int index = 0;
+        for (AbstractFile file : files) {
+            String key = keys.get(index++);
+            if (cache.containsKey(key) || pendingRequests.containsKey(key)) {
+                continue;
+            }
+            FutureTask<DecodedImage> task = new FutureTask<DecodedImage>(() -> decode(file)) {
+                @Override
+                protected void done() {
+                    synchronized (ImageLoader.this) {
+                        if (pendingRequests.get(key) == this) {
+                            pendingRequests.remove(key);
+                        }
+                    }
+                    if (isCancelled()) {
+                        return;
+                    }
+                    try {
+                        addToCache(key, get());
+                    } catch (Exception e) {
+                        LOGGER.debug("Could not prefetch " + file, e);
+                    }
+                }
+            };
+            pendingRequests.put(key, task);
+            executor.execute(task);
+        }
+    }
+
+    private synchronized void addToCache(String key, DecodedImage image) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        DecodedImage previous = cache.put(key, image);
+        if (previous != null) {
+            cachedPixels -= previous.getPixels();
+        }
+        cachedPixels += image.getPixels();
+        // Always keep the image just added, even if it doesn't fit in the budget by itself
+        Iterator<DecodedImage> i = cache.values().iterator();
+        while (cachedPixels > CACHE_PIXELS && cache.size() > 1) {
+            DecodedImage eldest = i.next();
+            if (eldest == image) {
+                break;
+            }
+            cachedPixels -= eldest.getPixels();
+            i.remove();
+        }
+    }
+
+    /**
+     * Cancels the pending requests and releases the cached images.
+     */
+    synchronized void dispose() {
+        executor.shutdownNow();
+        pendingRequests.clear();
+        cache.clear();
+        cachedPixels = 0;
+    }
+
+
+    private static DecodedImage decode(AbstractFile file) throws IOException {
+        final String ext = file.getExtension() == null ? "" : file.getExtension().toLowerCase();
+        BufferedImage image;
+        int bpp = -1;
+        try {
+            if ("scr".equals(ext) && file.getSize() == ZxSpectrumScrImage.SCR_IMAGE_FILE_SIZE) {
+                try (InputStream is = file.getInputStream()) {
+                    image = ZxSpectrumScrImage.load(is);
+                }
+                bpp = 4;
+            } else if ("psd".equals(ext)) {
+                image = new PsdImageParser().getBufferedImage(loadFile(file), null);
+            } else if ("tif".equals(ext) || "tiff".equals(ext)) {
+                image = new TiffImageParser().getBufferedImage(loadFile(file), null);
+            } else if ("ico".equals(ext)) {
+                try (InputStream is = file.getInputStream()) {
+                    image = ICODecoder.read(is).get(0);
+                }
+            } else if ("pnm".equals(ext) || "pbm".equals(ext) || "pgm".equals(ext) || "ppm".equals(ext)) {
+                // TODO pBm raw format reading error
+                image = new PnmImageParser().getAllBufferedImages(loadFile(file)).get(0);
+            } else if ("svg".equals(ext)) {
+                image = transcodeSVGDocument(file, 0, 0);
+            } else {
+                return decodeWithImageIO(file);
+            }
+        } catch (ImageReadException e) {
+            throw new IOException("Image parsing error", e);
+        }
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        return new DecodedImage(image, image.getWidth(), image.getHeight(), 1, bpp);
+    }
+
+    /**
+     * Opens a stream on the given file that ImageIO readers can seek into without loading the whole file
+     * when it is local.
+     */
+    private static ImageInputStream openImageInputStream(AbstractFile file) throws IOException {
+        if (file.getAncestor() instanceof LocalFile) {
+            ImageInputStream iis = ImageIO.createImageInputStream(new File(file.getAbsolutePath()));
+            if (iis != null) {
+                return iis;
+            }
+        }
+        InputStream in = file.getInputStream();
+        return new MemoryCacheImageInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                // MemoryCacheImageInputStream doesn't close the underlying stream
+                try {
+                    super.close();
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+
+    private static ImageReader getReader(ImageInputStream iis, AbstractFile file) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+
+    private static DecodedImage decodeWithImageIO(AbstractFile file) throws IOException {
+        try (ImageInputStream iis = openImageInputStream(file)) {
+            ImageReader reader = getReader(iis, file);
+            try {
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int subsampling = getPreviewSubsampling(width, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                return new DecodedImage(image, width, height, subsampling, image.getColorModel().getPixelSize());
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the subsampling used to decode the preview of an image of the given size, 1 if the image is small
+     * enough to be decoded entirely.
+     */
+    static int getPreviewSubsampling(int width, int height) {
+        long pixels = (long)width * height;
+        if (pixels <= LARGE_IMAGE_PIXELS) {
+            return 1;
+        }
+        return (int)Math.ceil(Math.sqrt((double)pixels / PREVIEW_PIXELS));
+    }
+
+    /**
+     * Decodes a region of an image file decoded by ImageIO.
+     *
+     * @param file the image file
+     * @param region the region to decode, in pixels of the file
+     * @param subsampling the number of pixels of the file represented by a pixel of the result
+     * @return the pixels of the region
+     * @throws IOException if the file couldn't be read or decoded
+     */
+    static BufferedImage decodeRegion(AbstractFile file, Rectangle region, int subsampling) throws IOException {
+        try (ImageInputStream iis = openImageInputStream(file)) {
+            ImageReader reader = getReader(iis, file);
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceRegion(region);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+
+    private static byte[] loadFile(AbstractFile file) throws IOException {
+        byte[] data = new byte[(int) file.getSize()];
+        try (InputStream is = file.getInputStream()) {
+            int readTotal = 0;
+            while (readTotal < data.length) {
+                int bytesRead = is.read(data, readTotal, data.length - readTotal);
+                if (bytesRead < 0) {
+                    break;
+                }
+                readTotal += bytesRead;
+            }
+        }
+        return data;
+    }
+
+
+    static BufferedImage transcodeSVGDocument(AbstractFile file, float width, float height) throws IOException {
+        // create a PNG transcoder.
+        Transcoder t = new PNGTranscoder();
+        // Set the transcoding hints.
+        if (width > 0) {
+            t.addTranscodingHint(PNGTranscoder.KEY_WIDTH, width);
+        }
+        if (height > 0) {
+            t.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, height);
+        }
+        t.addTranscodingHint(PNGTranscoder.KEY_XML_PARSER_VALIDATING, false);
+
+        try (InputStream istream = file.getInputStream(); ByteArrayOutputStream ostream = new ByteArrayOutputStream()) {
+            TranscoderInput input = new TranscoderInput(istream);
+            TranscoderOutput output = new TranscoderOutput(ostream);
+            // Save the image.
+            t.transcode(input, output);
+
+            // Flush and close the stream.
+            ostream.flush();
+
+            byte[] imgData = ostream.toByteArray();
+
+            // Return the newly rendered image.
+            return ImageIO.read(new ByteArrayInputStream(imgData));
+        } catch (TranscoderException e) {
+            LOGGER.debug("Could not transcode " + file, e);
+            return null;
+        }
+    }
+}
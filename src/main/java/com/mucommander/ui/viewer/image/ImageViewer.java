@@ -22,16 +22,15 @@ package com.mucommander.ui.viewer.image;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import javax.imageio.ImageIO;
 import javax.imageio.spi.IIORegistry;
 import javax.swing.*;
 
@@ -48,16 +47,6 @@ import com.mucommander.ui.theme.ThemeListener;
 import com.mucommander.ui.theme.ThemeManager;
 import com.mucommander.ui.viewer.FileFrame;
 import com.mucommander.ui.viewer.FileViewer;
-import net.sf.image4j.codec.ico.ICODecoder;
-import org.apache.batik.transcoder.Transcoder;
-import org.apache.batik.transcoder.TranscoderException;
-import org.apache.batik.transcoder.TranscoderInput;
-import org.apache.batik.transcoder.TranscoderOutput;
-import org.apache.batik.transcoder.image.PNGTranscoder;
-import org.apache.commons.imaging.ImageReadException;
-import org.apache.commons.imaging.formats.pnm.PnmImageParser;
-import org.apache.commons.imaging.formats.psd.PsdImageParser;
-import org.apache.commons.imaging.formats.tiff.TiffImageParser;
 import ru.trolsoft.ui.TMenuSeparator;
 
 //import org.apache.commons.imaging.Imaging;
@@ -75,10 +64,39 @@ class ImageViewer extends FileViewer implements ActionListener {
     private static final Cursor CURSOR_DEFAULT = Cursor.getDefaultCursor();
     private static final Cursor CURSOR_CROSS = new Cursor(Cursor.CROSSHAIR_CURSOR);
 
+    /** Maximum number of renderings of a vector image kept for the zoom factors used recently */
+    private static final int MAX_SVG_RENDERINGS = 4;
+
+    private final ImageLoader imageLoader = new ImageLoader();
+
+    /** The displayed pixels: a preview of the image if {@link #subsampling} is greater than 1 */
     private BufferedImage image;
     //private BufferedImage scaledImage;
+    /** Size of the image in the file */
+    private int sourceWidth, sourceHeight;
+    /** Number of pixels of the file represented by a pixel of {@link #image} */
+    private int subsampling = 1;
     private double zoomFactor;
     private boolean vectorImage;
+    /** Rendering of the vector image at its own size */
+    private BufferedImage vectorBaseImage;
+    private final Map<Dimension, BufferedImage> svgRenderings = new LinkedHashMap<Dimension, BufferedImage>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Dimension, BufferedImage> eldest) {
+            return size() > MAX_SVG_RENDERINGS;
+        }
+    };
+
+    /** Part of a large image decoded at a finer resolution than its preview */
+    private BufferedImage regionImage;
+    /** Area of {@link #regionImage}, in pixels of the file */
+    private Rectangle regionRect;
+    private int regionSubsampling;
+    /** Last requested region decoding */
+    private RegionWorker regionWorker;
+
+    /** Direction of the last move through the folder, its next image is prefetched first */
+    private int stepDirection = 1;
 	
     /** Menu bar */
     // Menus //
@@ -151,6 +169,10 @@ class ImageViewer extends FileViewer implements ActionListener {
 
     @Override
     protected void saveStateOnClose() {
+        imageLoader.dispose();
+        regionWorker = null;
+        regionImage = null;
+        svgRenderings.clear();
         // Run GC for big images
         if (image != null && image.getWidth()*image.getHeight() > 1024*200) {
             System.gc();
@@ -162,55 +184,38 @@ class ImageViewer extends FileViewer implements ActionListener {
 
     }
 
-    private synchronized void loadImage(AbstractFile file) throws IOException, ImageReadException {
+    private synchronized void loadImage(AbstractFile file) throws IOException {
         setFrameCursor(CURSOR_WAIT);
 
         if (statusBar != null) {
             statusBar.setFileSize(file.getSize());
             statusBar.setDateTime(file.getLastModifiedDate());
         }
-        int imageWidth, imageHeight;
 
-        final String ext = file.getExtension().toLowerCase();
-        if ("scr".equals(ext) && file.getSize() == ZxSpectrumScrImage.SCR_IMAGE_FILE_SIZE) {
-            this.image = ZxSpectrumScrImage.load(file.getInputStream());
-            if (statusBar != null) {
-                statusBar.setImageBpp(4);
-            }
-        } else if ("psd".equals(ext)) {
-            this.image = new PsdImageParser().getBufferedImage(loadFile(file), null);
-        } else if ("tif".equals(ext) || "tiff".equals(ext)) {
-            this.image = new TiffImageParser().getBufferedImage(loadFile(file), null);
-        } else if ("ico".equals(ext)) {
-            this.image = ICODecoder.read(file.getInputStream()).get(0);
-            //this.image = (BufferedImage) (new IcoImageParser().getAllBufferedImages(loadFile(file)).get(0));
-        } else if ("pnm".equals(ext) || "pbm".equals(ext) || "pgm".equals(ext) || "ppm".equals(ext)) {
-            // TODO pBm raw format reading error
-            this.image = new PnmImageParser().getAllBufferedImages(loadFile(file)).get(0);
-        } else if ("svg".equals(ext)) {
-            this.image = transcodeSVGDocument(file, 0, 0);
-        } else {
-            try (InputStream is = file.getInputStream()) {
-                this.image = ImageIO.read(is);
-            }
-            if (statusBar != null) {
-                statusBar.setImageBpp(image.getColorModel().getPixelSize());
-            }
-        }
-        vectorImage = "svg".equalsIgnoreCase(ext);
-        imageWidth = image.getWidth();
-        imageHeight = image.getHeight();
+        ImageLoader.DecodedImage decodedImage = imageLoader.load(file);
+        this.image = decodedImage.image;
+        this.sourceWidth = decodedImage.width;
+        this.sourceHeight = decodedImage.height;
+        this.subsampling = decodedImage.subsampling;
+        vectorImage = "svg".equalsIgnoreCase(file.getExtension());
+        vectorBaseImage = vectorImage ? image : null;
+        svgRenderings.clear();
+        regionWorker = null;
+        regionImage = null;
         this.hasTransparentPixels = image.getColorModel().hasAlpha();
 
         if (statusBar != null) {
-            statusBar.setImageSize(imageWidth, imageHeight);
+            if (decodedImage.bpp > 0) {
+                statusBar.setImageBpp(decodedImage.bpp);
+            }
+            statusBar.setImageSize(sourceWidth, sourceHeight);
         }
 
         this.zoomFactor = 1.0;
         Dimension screen = TcSnapshot.getScreenSize();
 
-        double zoomFactorX = 1.0 * screen.width / imageWidth;
-        double zoomFactorY = 1.0 * screen.height / imageHeight;
+        double zoomFactorX = 1.0 * screen.width / sourceWidth;
+        double zoomFactorY = 1.0 * screen.height / sourceHeight;
         zoomFactor = Math.min(zoomFactorX, zoomFactorY);
         if (zoomFactor > 1.0) {
             zoomFactor = 1.0;
@@ -220,6 +225,7 @@ class ImageViewer extends FileViewer implements ActionListener {
         fixMouseMovementEventsIssue();
 
         checkNextPrev();
+        prefetchNeighbours();
         setFrameCursor(CURSOR_DEFAULT);
 
         try {
@@ -229,22 +235,20 @@ class ImageViewer extends FileViewer implements ActionListener {
         }
     }
 
-
-    private static byte[] loadFile(AbstractFile file) {
-        byte[] data = new byte[(int) file.getSize()];
-        try (InputStream is = file.getInputStream()) {
-            int readTotal = 0;
-            while (readTotal < data.length) {
-                int bytesRead = is.read(data, readTotal, data.length - readTotal);
-                if (bytesRead < 0) {
-                    break;
-                }
-                readTotal += bytesRead;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Starts decoding the images around the current one, the one in the direction of the last move first.
+     */
+    private void prefetchNeighbours() {
+        List<AbstractFile> files = new ArrayList<>();
+        int forward = stepDirection > 0 ? getNextFileIndex() : getPrevFileIndex();
+        int backward = stepDirection > 0 ? getPrevFileIndex() : getNextFileIndex();
+        if (forward >= 0) {
+            files.add(filesInDirectory.get(forward));
+        }
+        if (backward >= 0) {
+            files.add(filesInDirectory.get(backward));
         }
-        return data;
+        imageLoader.prefetch(files);
     }
 
 
@@ -267,29 +271,28 @@ class ImageViewer extends FileViewer implements ActionListener {
     private synchronized void zoom(double factor) {
         setFrameCursor(CURSOR_WAIT);
 
-        final int srcWidth = image.getWidth(null);
-        final int srcHeight = image.getHeight(null);
-        final int scaledWidth = (int)(srcWidth*factor);
-        final int scaledHeight = (int)(srcHeight*factor);
-
-        if (factor != 1.0) {
-            AbstractFile file = filesInDirectory.get(indexInDirectory);
-            if ("svg".equalsIgnoreCase(file.getExtension())) {
-                try {
-                    this.image = transcodeSVGDocument(file, scaledWidth, scaledHeight);
-                } catch (IOException e) {
-                    e.printStackTrace();
+        if (vectorImage) {
+            final int scaledWidth = (int)(sourceWidth*factor);
+            final int scaledHeight = (int)(sourceHeight*factor);
+            if (factor == 1.0) {
+                this.image = vectorBaseImage;
+            } else {
+                Dimension size = new Dimension(scaledWidth, scaledHeight);
+                BufferedImage rendering = svgRenderings.get(size);
+                if (rendering == null) {
+                    try {
+                        rendering = ImageLoader.transcodeSVGDocument(filesInDirectory.get(indexInDirectory), scaledWidth, scaledHeight);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    if (rendering != null) {
+                        svgRenderings.put(size, rendering);
+                    }
+                }
+                if (rendering != null) {
+                    this.image = rendering;
                 }
-//            } else {
-//                this.scaledImage = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
-//                AffineTransform at = new AffineTransform();
-//                at.scale(factor, factor);
-//                AffineTransformOp scaleOp = new AffineTransformOp(at, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-//                this.scaledImage = scaleOp.filter(this.image, this.scaledImage);
-//                this.scaledImage = image;
             }
-//        } else {
-//            this.scaledImage = image;
         }
 
         if (statusBar != null) {
@@ -367,12 +370,7 @@ class ImageViewer extends FileViewer implements ActionListener {
                 statusBar.setFileNumber(indexInDirectory + 1, filesInDirectory.size());
             }
         }
-        try {
-            loadImage(file);
-        } catch (ImageReadException e) {
-            e.printStackTrace();
-            throw new IOException("Image parsing error", e);
-        }
+        loadImage(file);
     }
 
     @Override
@@ -410,6 +408,7 @@ class ImageViewer extends FileViewer implements ActionListener {
         int index = getNextFileIndex();
         if (index >= 0) {
             indexInDirectory = index;
+            stepDirection = 1;
             gotoFile();
         }
     }
@@ -422,6 +421,7 @@ class ImageViewer extends FileViewer implements ActionListener {
         int index = getPrevFileIndex();
         if (index >= 0) {
             indexInDirectory = index;
+            stepDirection = -1;
             gotoFile();
         }
     }
@@ -471,34 +471,38 @@ class ImageViewer extends FileViewer implements ActionListener {
     }
 
 
-    private static BufferedImage transcodeSVGDocument(AbstractFile file, float width, float height) throws IOException {
-        // create a PNG transcoder.
-        Transcoder t = new PNGTranscoder();
-        // Set the transcoding hints.
-        if (width > 0) {
-            t.addTranscodingHint(PNGTranscoder.KEY_WIDTH, width);
-        }
-        if (height > 0) {
-            t.addTranscodingHint(PNGTranscoder.KEY_HEIGHT, height);
-        }
-        t.addTranscodingHint(PNGTranscoder.KEY_XML_PARSER_VALIDATING, false);
-
-        try (InputStream istream = file.getInputStream(); ByteArrayOutputStream ostream = new ByteArrayOutputStream()) {
-            TranscoderInput input = new TranscoderInput(istream);
-            TranscoderOutput output = new TranscoderOutput(ostream);
-            // Save the image.
-            t.transcode(input, output);
+    /**
+     * Decodes a part of a large image in the background, at a finer resolution than its preview.
+     */
+    private class RegionWorker extends SwingWorker<BufferedImage, Void> {
+        private final AbstractFile file;
+        private final Rectangle region;
+        private final int subsampling;
 
-            // Flush and close the stream.
-            ostream.flush();
+        RegionWorker(AbstractFile file, Rectangle region, int subsampling) {
+            this.file = file;
+            this.region = region;
+            this.subsampling = subsampling;
+        }
 
-            byte[] imgData = ostream.toByteArray();
+        @Override
+        protected BufferedImage doInBackground() throws Exception {
+            return ImageLoader.decodeRegion(file, region, subsampling);
+        }
 
-            // Return the newly rendered image.
-            return ImageIO.read(new ByteArrayInputStream(imgData));
-        } catch (TranscoderException e) {
-            e.printStackTrace();
-            return null;
+        @Override
+        protected void done() {
+            if (regionWorker != this) {
+                return;
+            }
+            try {
+                regionImage = get();
+                regionRect = region;
+                regionSubsampling = subsampling;
+                imageViewerImpl.repaint();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -507,14 +511,14 @@ class ImageViewer extends FileViewer implements ActionListener {
         if (image == null) {
             return 0;
         }
-        return vectorImage ? image.getWidth() : (int)(zoomFactor*image.getWidth());
+        return vectorImage ? image.getWidth() : (int)(zoomFactor*sourceWidth);
     }
 
     private int getScaledHeight() {
         if (image == null) {
             return 0;
         }
-        return vectorImage ? image.getHeight() : (int)(zoomFactor*image.getHeight());
+        return vectorImage ? image.getHeight() : (int)(zoomFactor*sourceHeight);
     }
 
 
@@ -583,9 +587,48 @@ class ImageViewer extends FileViewer implements ActionListener {
                     g.drawImage(image, x0, y0, null);
                 } else {
                     g.drawImage(image, x0, y0, x0 + imageWidth, y0 + imageHeight, 0, 0, image.getWidth(), image.getHeight(), null, null);
+                    if (subsampling > 1) {
+                        paintRegion(g, x0, y0);
+                    }
                 }
             }
         }
+
+        /**
+         * Paints the part of a large image decoded at a finer resolution than its preview, and requests the visible
+         * part if it isn't decoded yet at the resolution required by the zoom factor.
+         */
+        private void paintRegion(Graphics g, int x0, int y0) {
+            if (regionImage != null) {
+                int dx = x0 + (int)(regionRect.x*zoomFactor);
+                int dy = y0 + (int)(regionRect.y*zoomFactor);
+                g.drawImage(regionImage, dx, dy, dx + (int)(regionRect.width*zoomFactor), dy + (int)(regionRect.height*zoomFactor),
+                        0, 0, regionImage.getWidth(), regionImage.getHeight(), null);
+            }
+            int requiredSubsampling = Math.max(1, (int)(1/zoomFactor));
+            if (requiredSubsampling >= subsampling) {
+                // the preview is detailed enough
+                return;
+            }
+            Rectangle bounds = new Rectangle(0, 0, sourceWidth, sourceHeight);
+            Rectangle visible = getVisibleRect();
+            Rectangle needed = new Rectangle((int)((visible.x - x0)/zoomFactor), (int)((visible.y - y0)/zoomFactor),
+                    (int)Math.ceil(visible.width/zoomFactor), (int)Math.ceil(visible.height/zoomFactor)).intersection(bounds);
+            if (needed.isEmpty()) {
+                return;
+            }
+            if (regionImage != null && regionSubsampling == requiredSubsampling && regionRect.contains(needed)) {
+                return;
+            }
+            if (regionWorker != null && regionWorker.subsampling == requiredSubsampling && regionWorker.region.contains(needed)) {
+                return;
+            }
+            // Decode a margin around the visible part so that scrolling a little doesn't require another decoding
+            Rectangle region = new Rectangle(needed);
+            region.grow(needed.width/2, needed.height/2);
+            regionWorker = new RegionWorker(filesInDirectory.get(indexInDirectory), region.intersection(bounds), requiredSubsampling);
+            regionWorker.execute();
+        }
         
         @Override
         public synchronized Dimension getPreferredSize() {
@@ -646,9 +689,17 @@ class ImageViewer extends FileViewer implements ActionListener {
             if (pixelY < 0 || pixelY >= h) {
                 return;
             }
-            pixelX = (int)(pixelX/zoomFactor);
-            pixelY = (int)(pixelY/zoomFactor);
-            int color = image.getRGB(pixelX, pixelY);
+            int color;
+            if (vectorImage) {
+                // the image is rendered at the displayed size
+                color = image.getRGB(Math.min(pixelX, image.getWidth() - 1), Math.min(pixelY, image.getHeight() - 1));
+                pixelX = (int)(pixelX/zoomFactor);
+                pixelY = (int)(pixelY/zoomFactor);
+            } else {
+                pixelX = (int)(pixelX/zoomFactor);
+                pixelY = (int)(pixelY/zoomFactor);
+                color = getSourceRGB(pixelX, pixelY);
+            }
 //            int r = (color >> 16) & 0xff;
 //            int g = (color >> 8) & 0xff;
 //            int b = (color) & 0xff;
@@ -657,6 +708,17 @@ class ImageViewer extends FileViewer implements ActionListener {
             }
         }
 
+        /**
+         * Returns the color of a pixel of the file, as precise as the decoded pixels allow.
+         */
+        private int getSourceRGB(int x, int y) {
+            if (regionImage != null && regionRect.contains(x, y)) {
+                return regionImage.getRGB(Math.min((x - regionRect.x)/regionSubsampling, regionImage.getWidth() - 1),
+                        Math.min((y - regionRect.y)/regionSubsampling, regionImage.getHeight() - 1));
+            }
+            return image.getRGB(Math.min(x/subsampling, image.getWidth() - 1), Math.min(y/subsampling, image.getHeight() - 1));
+        }
+
         @Override
         public void mouseExited(MouseEvent e) {
             setFrameCursor(CURSOR_DEFAULT);
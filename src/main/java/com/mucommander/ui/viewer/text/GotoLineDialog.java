@@ -48,7 +48,7 @@ public class GotoLineDialog extends FocusDialog implements ActionListener {
      *
      * @param editorFrame the parent editor frame
      */
-    GotoLineDialog(JFrame editorFrame, int maxLines, IntConsumer action) {
+    public GotoLineDialog(JFrame editorFrame, int maxLines, IntConsumer action) {
         super(editorFrame, i18n("text_viewer.goto_line"), editorFrame);
         this.action = action;
 
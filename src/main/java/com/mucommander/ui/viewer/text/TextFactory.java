@@ -19,14 +19,10 @@
 package com.mucommander.ui.viewer.text;
 
 import com.mucommander.commons.file.AbstractFile;
-import com.mucommander.commons.io.BinaryDetector;
-import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.utils.ContentTypeDetector;
 import com.mucommander.utils.text.Translator;
 import com.mucommander.ui.viewer.*;
 
-import java.io.IOException;
-import java.io.PushbackInputStream;
-
 /**
  * <code>ViewerFactory</code> and <code>EditorFactory</code> implementation for creating text viewers and editors.
  *
@@ -34,7 +30,7 @@ import java.io.PushbackInputStream;
  */
 public class TextFactory implements ViewerFactory, EditorFactory {
 
-    private static final long FILE_SIZE_WARNING_THRESHOLD = 10*1024*1024;
+    public static final long FILE_SIZE_WARNING_THRESHOLD = 10*1024*1024;
 
     public boolean canViewFile(AbstractFile file) throws WarnUserException {
         return doGenericChecks(file);
@@ -63,7 +59,7 @@ public class TextFactory implements ViewerFactory, EditorFactory {
             return false;
         }
         // Warn the user if the file looks like a binary file
-        if (checkBinaryFile(file)) {
+        if (isBinaryFile(file)) {
             return false;
         }
 
@@ -75,20 +71,15 @@ public class TextFactory implements ViewerFactory, EditorFactory {
         return true;
     }
 
-    private boolean checkBinaryFile(AbstractFile file) {
-        try {
-            PushbackInputStream is = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE);
-            if (BinaryDetector.guessBinary(is)) {
-                return true;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            try {
-                file.closePushbackInputStream();
-            } catch (IOException e1) {
-                e1.printStackTrace();
-            }
-        }
-        return false;
+    /**
+     * Guesses whether the given file is a binary file from its first bytes.
+     *
+     * @param file the file to test
+     * @return true if the file looks like a binary file
+     */
+    public static boolean isBinaryFile(AbstractFile file) {
+        // The head is pushed back for the viewer that opens the file next
+        ContentTypeDetector.ContentType contentType = ContentTypeDetector.getInstance().detect(file, true);
+        return contentType != null && contentType.isBinary();
     }
 }
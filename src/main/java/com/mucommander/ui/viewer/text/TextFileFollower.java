@@ -0,0 +1,251 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.SwingUtilities;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a growing file and passes the text appended to it to a listener, for the follow mode of the text viewer.
+ * <p>
+ * Only the bytes appended since the last read are read and decoded: the decoder keeps the bytes of an incomplete
+ * character until the next read. Local files are watched with a {@link WatchService}, other files are polled.
+ * The text is handed to the event dispatch thread in batches: if the file grows faster than the text can be
+ * displayed, the oldest pending text is dropped.
+ *
+ * @author Oleg Trifonov
+ */
+class TextFileFollower {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TextFileFollower.class);
+
+    /** Delay between two checks of the file size, also the longest wait for a watch service event */
+    private static final int POLL_INTERVAL = 500;
+
+    /** Maximum number of bytes read at once */
+    private static final int CHUNK_SIZE = 256*1024;
+
+    /** Maximum number of characters waiting to be displayed */
+    private static final int MAX_PENDING_CHARS = 4*1024*1024;
+
+    /**
+     * Receives the changes of the file, on the event dispatch thread.
+     */
+    interface Listener {
+        /**
+         * Called when text has been appended to the file.
+         *
+         * @param text the decoded text
+         */
+        void textAppended(String text);
+
+        /**
+         * Called when the file has become shorter than what has been read (the file has been truncated or replaced),
+         * the file is then read again from its start.
+         */
+        void fileTruncated();
+    }
+
+
+    private final AbstractFile file;
+    private final Listener listener;
+    private final CharsetDecoder decoder;
+    private long position;
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean pendingTruncation;
+    private boolean flushScheduled;
+
+    private volatile boolean stopped;
+    private Thread thread;
+
+
+    /**
+     * @param file the file to follow
+     * @param position number of bytes of the file that have already been read
+     * @param charset encoding of the file
+     * @param listener receives the appended text
+     */
+    TextFileFollower(AbstractFile file, long position, Charset charset, Listener listener) {
+        this.file = file;
+        this.position = position;
+        this.listener = listener;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @param file a file
+     * @return true if the given file can be followed
+     */
+    static boolean canFollow(AbstractFile file) {
+        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
+    void start() {
+        thread = new Thread(this::run, "TextFileFollower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        stopped = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        try (RandomAccessInputStream in = file.getRandomAccessInputStream();
+             WatchService watchService = createWatchService()) {
+            byte[] bytes = new byte[CHUNK_SIZE];
+            ByteBuffer byteBuffer = ByteBuffer.allocate(CHUNK_SIZE + 16);
+            CharBuffer charBuffer = CharBuffer.allocate((int)(byteBuffer.capacity() * decoder.maxCharsPerByte()) + 1);
+            while (!stopped) {
+                long length = in.getLength();
+                if (length < position) {
+                    position = 0;
+                    decoder.reset();
+                    byteBuffer.clear();
+                    publishTruncation();
+                }
+                while (position < length && !stopped) {
+                    in.seek(position);
+                    int n = in.read(bytes, 0, (int)Math.min(bytes.length, length - position));
+                    if (n <= 0) {
+                        break;
+                    }
+                    position += n;
+                    // The buffer holds the bytes of an incomplete character left by the previous read
+                    byteBuffer.put(bytes, 0, n);
+                    byteBuffer.flip();
+                    decoder.decode(byteBuffer, charBuffer, false);
+                    byteBuffer.compact();
+                    charBuffer.flip();
+                    publish(charBuffer.toString());
+                    charBuffer.clear();
+                }
+                waitForChange(watchService);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (IOException e) {
+            if (!stopped) {
+                LOGGER.error("Could not follow " + file, e);
+            }
+        }
+    }
+
+    private WatchService createWatchService() {
+        if (!(file.getAncestor() instanceof LocalFile)) {
+            return null;
+        }
+        try {
+            Path path = ((File)file.getAncestor().getUnderlyingFileObject()).toPath().toAbsolutePath();
+            WatchService watchService = path.getFileSystem().newWatchService();
+            path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            return watchService;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.debug("Could not watch " + file + ", polling it", e);
+            return null;
+        }
+    }
+
+    private static void waitForChange(WatchService watchService) throws InterruptedException {
+        if (watchService == null) {
+            Thread.sleep(POLL_INTERVAL);
+            return;
+        }
+        // The events are only a hint, the size of the file is checked anyway
+        WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+
+    private void publish(String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            pending.append(text);
+            if (pending.length() > MAX_PENDING_CHARS) {
+                // Drop the oldest text, on a line boundary if possible
+                int cut = pending.indexOf("\n", pending.length() - MAX_PENDING_CHARS);
+                pending.delete(0, cut >= 0 ? cut + 1 : pending.length() - MAX_PENDING_CHARS);
+            }
+            scheduleFlush();
+        }
+    }
+
+    private void publishTruncation() {
+        synchronized (pending) {
+            pending.setLength(0);
+            pendingTruncation = true;
+            scheduleFlush();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    private void flush() {
+        String text;
+        boolean truncated;
+        synchronized (pending) {
+            text = pending.toString();
+            truncated = pendingTruncation;
+            pending.setLength(0);
+            pendingTruncation = false;
+            flushScheduled = false;
+        }
+        if (stopped) {
+            return;
+        }
+        if (truncated) {
+            listener.fileTruncated();
+        }
+        if (!text.isEmpty()) {
+            listener.textAppended(text);
+        }
+    }
+}
@@ -247,7 +247,7 @@ public class TextFilesHistory {
     }
 
 
-    TextFilesHistory updateRecord(FileRecord record) {
+    public TextFilesHistory updateRecord(FileRecord record) {
         int index = findRecord(record.fileName);
         if (index >= 0) {
             records.remove(index);
@@ -78,6 +78,7 @@ public class TextMenuHelper {
     private JMenuItem miToggleLineWrap;
     private JMenuItem miToggleLineNumbers;
     private JMenuItem miToggleInvisibleChars;
+    private JMenuItem miToggleFollow;
 
     private JMenuItem miCalculator;
     private JMenuItem miBuild;
@@ -140,6 +141,9 @@ public class TextMenuHelper {
         miToggleLineNumbers.setSelected(lineNumbers);
         miToggleInvisibleChars = MenuToolkit.addCheckBoxMenuItem(menuView, i18n("text_editor.invisible_chars"), menuItemMnemonicHelper, null, actionListener);
         miToggleInvisibleChars.setSelected(showInvisibleChars);
+        if (!editMode) {
+            miToggleFollow = MenuToolkit.addCheckBoxMenuItem(menuView, i18n("text_viewer.follow"), menuItemMnemonicHelper, getKeyStroke(KeyEvent.VK_F, KeyEvent.SHIFT_DOWN_MASK|getCtrlOrMetaMask()), actionListener);
+        }
 
         menuView.addSeparator();
         menuViewSyntax = new JMenu(Translator.get("text_editor.syntax"));
@@ -169,6 +173,9 @@ public class TextMenuHelper {
 
         updateFileBookmarksMenuItems(currentFile);
         updateGotoHeaderSourceVisibility();
+        if (miToggleFollow != null) {
+            miToggleFollow.setEnabled(actionListener instanceof TextViewer && ((TextViewer)actionListener).canFollow());
+        }
     }
 
     private void updateFileBookmarksMenuItems(AbstractFile currentFile) {
@@ -267,6 +274,8 @@ public class TextMenuHelper {
             textViewerDelegate.wrapLines(miToggleLineWrap.isSelected());
         } else if (source == miToggleLineNumbers) {
             textViewerDelegate.showLineNumbers(miToggleLineNumbers.isSelected());
+        } else if (source == miToggleFollow) {
+            textViewerDelegate.setFollow(miToggleFollow.isSelected());
         } else if (source == miToggleInvisibleChars) {
             showInvisibleChars = miToggleInvisibleChars.isSelected();
             updateInvisibleChars();
@@ -19,7 +19,9 @@
 package com.mucommander.ui.viewer.text;
 
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.io.bom.BOM;
 import com.mucommander.commons.io.bom.BOMInputStream;
 import com.mucommander.conf.TcConfigurations;
 import com.mucommander.conf.TcSnapshot;
@@ -29,10 +31,12 @@ import com.mucommander.ui.encoding.EncodingListener;
 import com.mucommander.ui.encoding.EncodingMenu;
 import com.mucommander.ui.viewer.FileFrame;
 import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.utils.ContentTypeDetector;
 import org.fife.ui.rtextarea.GutterEx;
 
 import javax.swing.*;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.InputEvent;
@@ -52,6 +56,9 @@ public class TextViewer extends FileViewer implements EncodingListener {
 
 	private final static String CUSTOM_FULL_SCREEN_EVENT = "CUSTOM_FULL_SCREEN_EVENT";
 
+    /** Maximum number of lines kept in follow mode, the oldest lines are removed */
+    private final static int FOLLOW_MAX_LINES = 100000;
+
     private TextEditorImpl textEditorImpl;
 
 	private static boolean lineWrap = TcConfigurations.getSnapshot().getVariable(TcSnapshot.TEXT_FILE_PRESENTER_LINE_WRAP, TcSnapshot.DEFAULT_LINE_WRAP);
@@ -66,6 +73,12 @@ public class TextViewer extends FileViewer implements EncodingListener {
     private GutterEx gutter;
     private StatusBar statusBar;
 
+    /** Number of bytes of the file read into the document */
+    private long loadedLength;
+    /** Encoding of the bytes following the loaded ones, the BOM's one if the file starts with a BOM */
+    private String followEncoding;
+    private TextFileFollower follower;
+
 
     TextViewer() {
     	this(new TextEditorImpl(false, null));
@@ -130,7 +143,12 @@ public class TextViewer extends FileViewer implements EncodingListener {
         //initHistoryRecord(file);
         // Auto-detect encoding
         try (PushbackInputStream in = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE)) {
-            String encoding = historyRecord.getEncoding() != null ? historyRecord.getEncoding() : EncodingDetector.detectEncoding(in);
+            String encoding = historyRecord.getEncoding();
+            if (encoding == null) {
+                ContentTypeDetector.ContentType contentType = ContentTypeDetector.getInstance().detect(file, true);
+                encoding = contentType != null && contentType.getEncoding() != null ? contentType.getEncoding() :
+                        EncodingDetector.detectEncoding(in);
+            }
             if (textEditorImpl.getStatusBar() != null) {
                 textEditorImpl.getStatusBar().setEncoding(encoding);
             }
@@ -145,8 +163,12 @@ public class TextViewer extends FileViewer implements EncodingListener {
     void loadDocument(InputStream in, final String encoding, DocumentListener documentListener) throws IOException {
         // If the encoding is UTF-something, wrap the stream in a BOMInputStream to IMAGE_FILTER out the byte-order mark
         // (see ticket #245)
+        CounterInputStream counterIn = new CounterInputStream(in);
+        in = counterIn;
+        BOMInputStream bomIn = null;
         if (encoding != null && encoding.toLowerCase().startsWith("utf")) {
-            in = new BOMInputStream(in);
+            bomIn = new BOMInputStream(in);
+            in = bomIn;
         }
 
         // If the given encoding is invalid (null or not supported), default to "UTF-8"
@@ -155,6 +177,9 @@ public class TextViewer extends FileViewer implements EncodingListener {
             getStatusBar().setEncoding(encoding);
         }
         textEditorImpl.read(new BufferedReader(new InputStreamReader(in, this.encoding)));
+        loadedLength = counterIn.getCounter().getByteCount();
+        BOM bom = bomIn != null ? bomIn.getBOM() : null;
+        followEncoding = bom != null ? bom.getEncoding() : this.encoding;
 
         // Listen to document changes
         if (documentListener != null) {
@@ -202,6 +227,7 @@ public class TextViewer extends FileViewer implements EncodingListener {
 
     @Override
     protected void saveStateOnClose() {
+        setFollow(false);
         saveState(getVerticalScrollBar());
         try {
             AbstractFile currentFile = getCurrentFile();
@@ -224,6 +250,63 @@ public class TextViewer extends FileViewer implements EncodingListener {
     String getEncoding() {
     	return encoding;
     }
+
+    /**
+     * @return true if the current file can be followed
+     */
+    boolean canFollow() {
+        AbstractFile file = getCurrentFile();
+        return file != null && TextFileFollower.canFollow(file);
+    }
+
+    /**
+     * Starts or stops following the current file: the text appended to the file is appended to the document, keeping
+     * at most {@link #FOLLOW_MAX_LINES} lines.
+     *
+     * @param follow true to follow the file
+     */
+    void setFollow(boolean follow) {
+        if (follower != null) {
+            follower.stop();
+            follower = null;
+        }
+        if (follow && canFollow()) {
+            follower = new TextFileFollower(getCurrentFile(), loadedLength, Charset.forName(followEncoding), new TextFileFollower.Listener() {
+                @Override
+                public void textAppended(String text) {
+                    appendFollowedText(text);
+                }
+
+                @Override
+                public void fileTruncated() {
+                    textEditorImpl.getTextArea().setText("");
+                }
+            });
+            follower.start();
+            TextArea textArea = textEditorImpl.getTextArea();
+            textArea.setCaretPosition(textArea.getDocument().getLength());
+        }
+    }
+
+    boolean isFollow() {
+        return follower != null;
+    }
+
+    private void appendFollowedText(String text) {
+        TextArea textArea = textEditorImpl.getTextArea();
+        textArea.append(text);
+        int extraLines = textArea.getLineCount() - FOLLOW_MAX_LINES;
+        if (extraLines > 0) {
+            try {
+                textArea.replaceRange(null, 0, textArea.getLineStartOffset(extraLines));
+            } catch (BadLocationException e) {
+                e.printStackTrace();
+            }
+        }
+        // The document is not edited by the user, don't keep the appends for undo
+        textArea.discardAllEdits();
+        textArea.setCaretPosition(textArea.getDocument().getLength());
+    }
     
     protected void showLineNumbers(boolean show) {
     	//setRowHeaderView(show ? new TextLineNumbersPanel(textEditorImpl.getTextArea()) : null);
@@ -289,6 +372,8 @@ public class TextViewer extends FileViewer implements EncodingListener {
         int horizontalPos = getHorizontalScrollBar().getValue();
         int verticalPos = getVerticalScrollBar().getValue();
 
+        boolean follow = isFollow();
+        setFollow(false);
         try {
     		// Reload the file using the new encoding
     		// Note: loadDocument closes the InputStream
@@ -296,6 +381,7 @@ public class TextViewer extends FileViewer implements EncodingListener {
             // Restore caret and scrollbar
             textArea.gotoLine(line, column);
             getViewport().setViewPosition(new java.awt.Point(horizontalPos, verticalPos));
+            setFollow(follow);
     	} catch (IOException ex) {
     		InformationDialog.showErrorDialog(getFrame(), i18n("read_error"), i18n("file_editor.cannot_read_file", getCurrentFile().getName()));
     	}   
@@ -0,0 +1,180 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.io.RandomAccessInputStream;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random read access to the bytes of a file, safe for concurrent use by the indexing thread and the event
+ * dispatch thread.
+ *
+ * @author Oleg Trifonov
+ */
+interface ByteSource extends Closeable {
+
+    /**
+     * @return the number of bytes of the source
+     */
+    long getLength();
+
+    /**
+     * Reads up to <code>length</code> bytes starting at the given position.
+     *
+     * @param position position of the first byte to read
+     * @param buffer the buffer into which bytes are read
+     * @param offset offset in the buffer
+     * @param length maximum number of bytes to read
+     * @return the number of bytes read, <code>-1</code> if the position is at or past the end of the source
+     * @throws IOException if the bytes could not be read
+     */
+    int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+
+    /**
+     * Opens a source over the given file: local files are memory-mapped, other files must support random read access.
+     *
+     * @param file the file to open
+     * @return a new source
+     * @throws IOException if the file could not be opened
+     */
+    static ByteSource open(AbstractFile file) throws IOException {
+        if (file.getAncestor() instanceof LocalFile) {
+            return new MappedFileSource((File)file.getAncestor().getUnderlyingFileObject());
+        }
+        return new RandomAccessSource(file.getRandomAccessInputStream(), file.getSize());
+    }
+
+    /**
+     * @param file the file to test
+     * @return true if {@link #open(AbstractFile)} can open the given file
+     */
+    static boolean canOpen(AbstractFile file) {
+        return file.getAncestor() instanceof LocalFile || file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
+
+    /**
+     * Maps a local file into memory by regions, the regions are mapped on first access.
+     */
+    class MappedFileSource implements ByteSource {
+        /** Size of a mapped region */
+        static final int REGION_SIZE = 64*1024*1024;
+
+        private final FileChannel channel;
+        private final long length;
+        private final MappedByteBuffer[] regions;
+
+        MappedFileSource(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            length = channel.size();
+            regions = new MappedByteBuffer[(int)((length + REGION_SIZE - 1) / REGION_SIZE)];
+        }
+
+        private synchronized MappedByteBuffer getRegion(int index) throws IOException {
+            MappedByteBuffer region = regions[index];
+            if (region == null) {
+                long start = (long)index * REGION_SIZE;
+                region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+                regions[index] = region;
+            }
+            return region;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (position >= this.length) {
+                return -1;
+            }
+            int total = 0;
+            while (total < length && position < this.length) {
+                int index = (int)(position / REGION_SIZE);
+                // Each reader works on its own view of the shared region
+                ByteBuffer region = getRegion(index).duplicate();
+                region.position((int)(position - (long)index * REGION_SIZE));
+                int n = Math.min(length - total, region.remaining());
+                region.get(buffer, offset + total, n);
+                total += n;
+                position += n;
+            }
+            return total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The mapped regions are released when they are garbage collected
+            channel.close();
+        }
+    }
+
+
+    /**
+     * Reads a file through its {@link RandomAccessInputStream}.
+     */
+    class RandomAccessSource implements ByteSource {
+        private final RandomAccessInputStream in;
+        private final long length;
+
+        RandomAccessSource(RandomAccessInputStream in, long length) {
+            this.in = in;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+            if (position >= this.length) {
+                return -1;
+            }
+            in.seek(position);
+            int total = 0;
+            while (total < length) {
+                int n = in.read(buffer, offset + total, length - total);
+                if (n < 0) {
+                    break;
+                }
+                total += n;
+            }
+            return total > 0 ? total : -1;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            in.close();
+        }
+    }
+}
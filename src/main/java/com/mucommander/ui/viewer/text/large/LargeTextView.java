@@ -0,0 +1,442 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import com.mucommander.ui.theme.ThemeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.Scrollable;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.mucommander.ui.theme.ThemeManager.getCurrentColor;
+import static com.mucommander.ui.theme.ThemeManager.getCurrentFont;
+
+/**
+ * Displays the lines of a {@link LineIndex}, decoding only the lines that are visible.
+ * <p>
+ * The view has its own scroll bars that work in lines and columns rather than in pixels, so that files with
+ * hundreds of millions of lines can be scrolled.
+ *
+ * @author Oleg Trifonov
+ */
+class LargeTextView extends JPanel implements Scrollable, ThemeId {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextView.class);
+
+    private static final int TAB_SIZE = 4;
+    private static final int WHEEL_LINES = 3;
+
+    private final TextCanvas canvas = new TextCanvas();
+    private final JScrollBar verticalScrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontalScrollBar = new JScrollBar(JScrollBar.HORIZONTAL);
+
+    private LineIndex index;
+    private long lineCount = 1;
+    /** Lines per scroll bar unit, greater than 1 if the number of lines doesn't fit the scroll bar range */
+    private long scale = 1;
+    private boolean adjustingScrollBars;
+
+    private long topLine;
+    private int leftColumn;
+    private int maxColumns;
+
+    private long cachedFirstLine = -1;
+    private List<String> cachedLines = Collections.emptyList();
+    private boolean cachedLinesComplete;
+
+    private long matchLine = -1;
+    private int matchColumn;
+    private int matchLength;
+
+    private Runnable positionListener;
+
+
+    LargeTextView() {
+        super(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+        add(verticalScrollBar, BorderLayout.EAST);
+        add(horizontalScrollBar, BorderLayout.SOUTH);
+
+        canvas.setFont(getCurrentFont(EDITOR_FONT));
+        canvas.setForeground(getCurrentColor(EDITOR_FOREGROUND_COLOR));
+        canvas.setBackground(getCurrentColor(EDITOR_BACKGROUND_COLOR));
+        canvas.setFocusable(true);
+
+        verticalScrollBar.addAdjustmentListener(e -> {
+            if (!adjustingScrollBars) {
+                setTopLine(e.getValue() * scale);
+            }
+        });
+        horizontalScrollBar.addAdjustmentListener(e -> {
+            if (!adjustingScrollBars) {
+                leftColumn = e.getValue();
+                canvas.repaint();
+            }
+        });
+        canvas.addMouseWheelListener(e -> setTopLine(topLine + e.getWheelRotation() * WHEEL_LINES));
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                canvas.requestFocus();
+            }
+        });
+        canvas.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                processKey(e);
+            }
+        });
+    }
+
+    private void processKey(KeyEvent e) {
+        int page = Math.max(1, getVisibleLinesCount() - 1);
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_UP:
+                setTopLine(topLine - 1);
+                break;
+            case KeyEvent.VK_DOWN:
+                setTopLine(topLine + 1);
+                break;
+            case KeyEvent.VK_PAGE_UP:
+                setTopLine(topLine - page);
+                break;
+            case KeyEvent.VK_PAGE_DOWN:
+                setTopLine(topLine + page);
+                break;
+            case KeyEvent.VK_HOME:
+                if (e.isControlDown() || e.isMetaDown()) {
+                    setTopLine(0);
+                } else {
+                    setLeftColumn(0);
+                }
+                break;
+            case KeyEvent.VK_END:
+                if (e.isControlDown() || e.isMetaDown()) {
+                    setTopLine(Long.MAX_VALUE);
+                }
+                break;
+            case KeyEvent.VK_LEFT:
+                setLeftColumn(leftColumn - 1);
+                break;
+            case KeyEvent.VK_RIGHT:
+                setLeftColumn(leftColumn + 1);
+                break;
+            default:
+                return;
+        }
+        e.consume();
+    }
+
+    @Override
+    public void requestFocus() {
+        canvas.requestFocus();
+    }
+
+    @Override
+    public boolean requestFocusInWindow() {
+        return canvas.requestFocusInWindow();
+    }
+
+    /**
+     * @return the component that receives the keyboard input
+     */
+    JComponent getCanvas() {
+        return canvas;
+    }
+
+
+    /**
+     * Sets the index of the displayed file, the position is kept.
+     *
+     * @param index the index
+     */
+    void setIndex(LineIndex index) {
+        this.index = index;
+        invalidateCache();
+        refresh();
+    }
+
+    /**
+     * Takes the lines indexed since the last call into account.
+     */
+    void refresh() {
+        long count = index.getLineCount();
+        if (count != lineCount) {
+            lineCount = count;
+            if (!cachedLinesComplete) {
+                invalidateCache();
+            }
+        }
+        updateScrollBars();
+        canvas.repaint();
+    }
+
+    private void invalidateCache() {
+        cachedFirstLine = -1;
+        cachedLines = Collections.emptyList();
+    }
+
+    void setPositionListener(Runnable positionListener) {
+        this.positionListener = positionListener;
+    }
+
+    /**
+     * @return the zero-based number of the first visible line
+     */
+    long getTopLine() {
+        return topLine;
+    }
+
+    /**
+     * Scrolls so that the given line is the first visible one, as far as the known lines allow.
+     *
+     * @param line zero-based line number
+     */
+    void setTopLine(long line) {
+        long max = Math.max(0, lineCount - getVisibleLinesCount());
+        line = Math.max(0, Math.min(line, max));
+        if (line != topLine) {
+            topLine = line;
+            updateScrollBars();
+            canvas.repaint();
+        }
+        if (positionListener != null) {
+            positionListener.run();
+        }
+    }
+
+    private void setLeftColumn(int column) {
+        column = Math.max(0, Math.min(column, maxColumns));
+        if (column != leftColumn) {
+            leftColumn = column;
+            updateScrollBars();
+            canvas.repaint();
+        }
+    }
+
+    /**
+     * Scrolls to the given line, keeping a few lines above it visible.
+     *
+     * @param line zero-based line number
+     */
+    void showLine(long line) {
+        int visible = getVisibleLinesCount();
+        if (line < topLine || line >= topLine + visible) {
+            setTopLine(line - visible / 3);
+        }
+    }
+
+    /**
+     * Highlights a search match and scrolls to it.
+     *
+     * @param line zero-based line of the match
+     * @param column column of the match in the line
+     * @param length length of the match in characters
+     */
+    void showMatch(long line, int column, int length) {
+        matchLine = line;
+        matchColumn = expandedColumn(line, column);
+        matchLength = length;
+        showLine(line);
+        int columns = getVisibleColumnsCount();
+        if (matchColumn < leftColumn || matchColumn + length > leftColumn + columns) {
+            maxColumns = Math.max(maxColumns, matchColumn + length);
+            setLeftColumn(Math.max(0, matchColumn - columns / 3));
+        }
+        canvas.repaint();
+    }
+
+    /**
+     * Converts a column in a raw line into a column in the line with expanded tabs.
+     */
+    private int expandedColumn(long line, int column) {
+        try {
+            List<String> lines = index.readLines(line, 1);
+            if (!lines.isEmpty()) {
+                String s = lines.get(0);
+                return expandTabs(s.substring(0, Math.min(column, s.length()))).length();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read line " + line, e);
+        }
+        return column;
+    }
+
+    int getVisibleLinesCount() {
+        int lineHeight = canvas.getFontMetrics(canvas.getFont()).getHeight();
+        return Math.max(1, canvas.getHeight() / lineHeight);
+    }
+
+    private int getVisibleColumnsCount() {
+        FontMetrics fm = canvas.getFontMetrics(canvas.getFont());
+        return Math.max(1, (canvas.getWidth() - canvas.getGutterWidth(fm)) / fm.charWidth('W'));
+    }
+
+    private void updateScrollBars() {
+        adjustingScrollBars = true;
+        try {
+            scale = lineCount / (Integer.MAX_VALUE / 2) + 1;
+            int visible = getVisibleLinesCount();
+            int extent = (int)Math.max(1, visible / scale);
+            verticalScrollBar.setValues((int)(topLine / scale), extent, 0, (int)(lineCount / scale) + extent - 1);
+            verticalScrollBar.setBlockIncrement(Math.max(1, extent - 1));
+            int columns = getVisibleColumnsCount();
+            horizontalScrollBar.setValues(leftColumn, columns, 0, Math.max(maxColumns, leftColumn + columns));
+            horizontalScrollBar.setBlockIncrement(Math.max(1, columns - 1));
+        } finally {
+            adjustingScrollBars = false;
+        }
+    }
+
+    private List<String> getVisibleLines(int count) {
+        if (cachedFirstLine != topLine || cachedLines.size() < count && !cachedLinesComplete) {
+            try {
+                List<String> lines = index.readLines(topLine, count);
+                cachedLinesComplete = lines.size() >= count || index.isComplete();
+                List<String> expanded = new ArrayList<>(lines.size());
+                for (String line : lines) {
+                    expanded.add(expandTabs(line));
+                }
+                cachedLines = expanded;
+                cachedFirstLine = topLine;
+            } catch (IOException e) {
+                LOGGER.error("Could not read lines", e);
+                return Collections.emptyList();
+            }
+        }
+        return cachedLines;
+    }
+
+    private static String expandTabs(String line) {
+        if (line.indexOf('\t') < 0) {
+            return line;
+        }
+        StringBuilder sb = new StringBuilder(line.length() + TAB_SIZE * 4);
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                do {
+                    sb.append(' ');
+                } while (sb.length() % TAB_SIZE != 0);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /////////////////////////////////
+    // Scrollable implementation   //
+    /////////////////////////////////
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return true;
+    }
+
+
+    /**
+     * Paints the visible lines with their numbers.
+     */
+    private class TextCanvas extends JComponent {
+
+        private int getGutterWidth(FontMetrics fm) {
+            return (Long.toString(lineCount).length() + 1) * fm.charWidth('0');
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            if (index == null) {
+                return;
+            }
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int lineHeight = fm.getHeight();
+            int charWidth = fm.charWidth('W');
+            int gutterWidth = getGutterWidth(fm);
+            int visibleColumns = (getWidth() - gutterWidth) / Math.max(1, charWidth) + 1;
+
+            List<String> lines = getVisibleLines(getHeight() / lineHeight + 1);
+            Color lineNumbersColor = getCurrentColor(EDITOR_CURRENT_BACKGROUND_COLOR).darker();
+            boolean columnsChanged = false;
+            for (int i = 0; i < lines.size(); i++) {
+                long line = topLine + i;
+                String text = lines.get(i);
+                int y = i * lineHeight;
+                if (text.length() > maxColumns) {
+                    maxColumns = text.length();
+                    columnsChanged = true;
+                }
+                if (line == matchLine) {
+                    g.setColor(getCurrentColor(EDITOR_SELECTED_BACKGROUND_COLOR));
+                    g.fillRect(gutterWidth + (matchColumn - leftColumn) * charWidth, y, matchLength * charWidth, lineHeight);
+                }
+                g.setColor(lineNumbersColor);
+                String number = Long.toString(line + 1);
+                g.drawString(number, gutterWidth - charWidth / 2 - fm.stringWidth(number), y + fm.getAscent());
+                if (text.length() > leftColumn) {
+                    g.setColor(getForeground());
+                    String visible = text.substring(leftColumn, Math.min(text.length(), leftColumn + visibleColumns));
+                    g.drawString(visible, gutterWidth, y + fm.getAscent());
+                }
+            }
+            if (columnsChanged) {
+                updateScrollBars();
+            }
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.ui.dialog.DialogOwner;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.encoding.EncodingListener;
+import com.mucommander.ui.encoding.EncodingMenu;
+import com.mucommander.ui.helper.MenuToolkit;
+import com.mucommander.ui.helper.MnemonicHelper;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.hex.FindDialog;
+import com.mucommander.ui.viewer.text.GotoLineDialog;
+import com.mucommander.ui.viewer.text.TextFilesHistory;
+import com.mucommander.utils.ContentTypeDetector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Read-only viewer for text files too large to be loaded in a text area.
+ * <p>
+ * The file is indexed by a {@link LineIndex} in the background and only the visible lines are decoded. The view,
+ * goto line and search can be used while the index is being built: the known lines can be scrolled, and a search
+ * waits for the index only to find the line of a match.
+ *
+ * @author Oleg Trifonov
+ */
+public class LargeTextViewer extends FileViewer implements EncodingListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextViewer.class);
+
+    /** Delay between two updates of the view while the file is being indexed */
+    private static final int REFRESH_DELAY = 250;
+
+    private ByteSource source;
+    private LineIndex index;
+    private LargeTextView view;
+    private StatusBar statusBar;
+    private String encoding;
+    private TextFilesHistory.FileRecord historyRecord;
+    private Timer refreshTimer;
+    /** Zero-based line to scroll to once it has been indexed, -1 if none */
+    private long pendingLine = -1;
+
+    private SwingWorker<Long, Void> searchWorker;
+    private byte[] lastSearchBytes;
+    private long lastMatchOffset = -1;
+
+    private JMenu menuView;
+    private JMenuItem gotoItem;
+    private JMenuItem findItem;
+    private JMenuItem findNextItem;
+    private JMenuItem findPrevItem;
+
+    private FindDialog dlgFind;
+
+
+    LargeTextViewer() {
+        super();
+
+        MnemonicHelper menuMnemonicHelper = new MnemonicHelper();
+        menuView = MenuToolkit.addMenu(i18n("hex_viewer.view"), menuMnemonicHelper, null);
+
+        gotoItem = MenuToolkit.addMenuItem(menuView, i18n("text_viewer.goto_line"), menuMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_G, getCtrlOrMetaMask()), this);
+        findItem = MenuToolkit.addMenuItem(menuView, i18n("hex_viewer.search"), menuMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F, getCtrlOrMetaMask()), this);
+        findNextItem = MenuToolkit.addMenuItem(menuView, i18n("hex_viewer.searchNext"), menuMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), this);
+        findPrevItem = MenuToolkit.addMenuItem(menuView, i18n("hex_viewer.searchPrev"), menuMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), this);
+
+        setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER);
+        setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+    }
+
+    private int getCtrlOrMetaMask() {
+        return OsFamily.MAC_OS_X.isCurrent() ? KeyEvent.META_MASK : KeyEvent.CTRL_MASK;
+    }
+
+
+    @Override
+    protected void show(AbstractFile file) throws IOException {
+        historyRecord = TextFilesHistory.getInstance().get(file);
+        encoding = historyRecord.getEncoding();
+        if (encoding == null || !Charset.isSupported(encoding)) {
+            ContentTypeDetector.ContentType contentType = ContentTypeDetector.getInstance().detect(file);
+            encoding = contentType != null ? contentType.getEncoding() : null;
+            if (encoding == null || !Charset.isSupported(encoding)) {
+                encoding = "UTF-8";
+            }
+        }
+        source = ByteSource.open(file);
+        view = new LargeTextView();
+        view.setPositionListener(this::updateStatusBar);
+        index = createIndex(encoding);
+        view.setIndex(index);
+        setComponentToPresent(view);
+
+        refreshTimer = new Timer(REFRESH_DELAY, e -> refresh());
+        refreshTimer.start();
+        getStatusBar().setEncoding(encoding);
+    }
+
+    private LineIndex createIndex(String encoding) throws IOException {
+        LineIndex index = new LineIndex(source, Charset.forName(encoding));
+        index.start();
+        return index;
+    }
+
+    /**
+     * Called periodically while the file is being indexed.
+     */
+    private void refresh() {
+        view.refresh();
+        if (pendingLine >= 0 && (pendingLine < index.getLineCount() || index.isComplete())) {
+            view.setTopLine(pendingLine);
+            pendingLine = -1;
+        }
+        updateStatusBar();
+        if (index.isComplete()) {
+            refreshTimer.stop();
+        }
+    }
+
+    private void updateStatusBar() {
+        if (statusBar == null || index == null) {
+            return;
+        }
+        boolean complete = index.isComplete();
+        statusBar.setPosition(view.getTopLine() + 1, index.getLineCount(), complete);
+        long length = index.getLength();
+        statusBar.setIndexingProgress(complete || length == 0 ? 100 : (int)(index.getIndexedLength() * 100 / length));
+    }
+
+    @Override
+    protected StatusBar getStatusBar() {
+        if (statusBar == null) {
+            statusBar = new StatusBar();
+        }
+        return statusBar;
+    }
+
+    @Override
+    public JMenuBar getMenuBar() {
+        JMenuBar menuBar = super.getMenuBar();
+        menuBar.add(menuView);
+
+        EncodingMenu encodingMenu = new EncodingMenu(new DialogOwner(getFrame()), encoding);
+        encodingMenu.addEncodingListener(this);
+        menuBar.add(encodingMenu);
+
+        setMainKeyListener(view.getCanvas(), menuBar);
+        return menuBar;
+    }
+
+    @Override
+    protected void saveStateOnClose() {
+        if (refreshTimer != null) {
+            refreshTimer.stop();
+        }
+        cancelSearch();
+        if (index != null) {
+            index.cancel();
+            historyRecord.setLine((int)Math.min(Integer.MAX_VALUE, view.getTopLine() + 1));
+            historyRecord.setEncoding(encoding);
+            TextFilesHistory.getInstance().updateRecord(historyRecord).save();
+        }
+        if (source != null) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close file", e);
+            }
+        }
+    }
+
+    @Override
+    protected void restoreStateOnStartup() {
+        if (historyRecord != null && historyRecord.getLine() > 1) {
+            pendingLine = historyRecord.getLine() - 1;
+            refresh();
+        }
+    }
+
+
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+
+        if (source == gotoItem && gotoItem.isEnabled()) {
+            gotoLine();
+        } else if (source == findItem && findItem.isEnabled()) {
+            findFirst();
+        } else if (source == findNextItem && findNextItem.isEnabled()) {
+            findNext(true);
+        } else if (source == findPrevItem && findPrevItem.isEnabled()) {
+            findNext(false);
+        } else {
+            super.actionPerformed(e);
+        }
+    }
+
+    private void gotoLine() {
+        int maxLines = (int)Math.min(Integer.MAX_VALUE, index.getLineCount());
+        new GotoLineDialog(getFrame(), maxLines, line -> {
+            pendingLine = -1;
+            view.showLine(line - 1);
+            updateStatusBar();
+        }).showDialog();
+    }
+
+
+    private void findFirst() {
+        if (dlgFind != null && dlgFind.isVisible()) {
+            return;
+        }
+        dlgFind = new FindDialog(getFrame(), encoding) {
+            @Override
+            protected void doSearch(byte[] bytes) {
+                lastSearchBytes = bytes;
+                search(bytes, getLineOffset(view.getTopLine()), true);
+            }
+        };
+        dlgFind.setSearchBytes(lastSearchBytes);
+        dlgFind.showDialog();
+    }
+
+    private void findNext(boolean forward) {
+        if (lastSearchBytes == null || lastSearchBytes.length == 0) {
+            return;
+        }
+        long from;
+        if (lastMatchOffset >= 0) {
+            from = forward ? lastMatchOffset + 1 : lastMatchOffset - 1;
+        } else {
+            from = getLineOffset(view.getTopLine());
+        }
+        if (from >= 0) {
+            search(lastSearchBytes, from, forward);
+        }
+    }
+
+    private long getLineOffset(long line) {
+        try {
+            return Math.max(0, index.getLineOffset(line));
+        } catch (IOException e) {
+            LOGGER.debug("Could not read line " + line, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Searches in the background, the match is shown once its line is known.
+     */
+    private void search(byte[] bytes, long from, boolean forward) {
+        cancelSearch();
+        setStatusMessage(i18n("large_text_viewer.searching"));
+        final LineIndex index = this.index;
+        searchWorker = new SwingWorker<Long, Void>() {
+            private long line;
+            private int column;
+            private int length;
+
+            @Override
+            protected Long doInBackground() throws Exception {
+                long offset = index.find(bytes, from, forward);
+                if (offset >= 0) {
+                    line = index.getLineAt(offset);
+                    long lineOffset = index.getLineOffset(line);
+                    column = index.decode(lineOffset, offset).length();
+                    length = new String(bytes, index.getCharset()).length();
+                }
+                return offset;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || index != LargeTextViewer.this.index) {
+                    return;
+                }
+                try {
+                    long offset = get();
+                    if (offset >= 0) {
+                        lastMatchOffset = offset;
+                        pendingLine = -1;
+                        view.showMatch(line, column, length);
+                        setStatusMessage("");
+                    } else {
+                        setStatusMessage(i18n("hex_viewer.search_not_found"));
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    if (!(e.getCause() instanceof InterruptedIOException)) {
+                        LOGGER.error("Search failed", e);
+                        setStatusMessage("");
+                    }
+                }
+                updateStatusBar();
+            }
+        };
+        searchWorker.execute();
+    }
+
+    private void cancelSearch() {
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+            searchWorker = null;
+        }
+    }
+
+
+    @Override
+    public void setSearchedText(String searchedText) {
+        if (searchedText != null) {
+            lastSearchBytes = searchedText.getBytes(Charset.forName(encoding));
+        }
+    }
+
+    @Override
+    public void setSearchedBytes(byte[] searchedBytes) {
+        if (searchedBytes != null) {
+            lastSearchBytes = searchedBytes;
+        }
+    }
+
+    private void setStatusMessage(String msg) {
+        if (statusBar != null) {
+            statusBar.setStatusMessage(msg);
+        }
+    }
+
+
+    /////////////////////////////////////
+    // EncodingListener implementation //
+    /////////////////////////////////////
+
+    public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
+        if (!Charset.isSupported(newEncoding)) {
+            return;
+        }
+        try {
+            cancelSearch();
+            encoding = newEncoding;
+            // The line offsets are kept unless the new encoding separates lines differently
+            if (!index.setCharset(Charset.forName(newEncoding))) {
+                index.cancel();
+                index = createIndex(newEncoding);
+                refreshTimer.restart();
+            }
+            lastMatchOffset = -1;
+            view.setIndex(index);
+            getStatusBar().setEncoding(encoding);
+            updateStatusBar();
+        } catch (IOException e) {
+            InformationDialog.showErrorDialog(getFrame(), i18n("read_error"), i18n("file_editor.cannot_read_file", getCurrentFile().getName()));
+        }
+    }
+}
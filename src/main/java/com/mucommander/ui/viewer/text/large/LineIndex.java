@@ -0,0 +1,554 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import com.mucommander.commons.io.bom.BOM;
+import com.mucommander.commons.io.bom.BOMConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse index of the line offsets of a text file.
+ * <p>
+ * The index is built by a background thread which records the offset of every {@link #LINES_PER_CHECKPOINT}th
+ * line, the offset of any other line is found by scanning forward from the closest checkpoint. The known part of
+ * the index can be used while it is being built: lines that haven't been reached yet are reported as unknown by
+ * {@link #getLineOffset(long)}, and {@link #getLineAt(long)} waits for the indexing thread to reach the offset.
+ * <p>
+ * Lines are separated by the encoded form of <code>'\n'</code>, which is only looked for at offsets aligned on its
+ * length so that multi-byte encodings (UTF-16, UTF-32) are handled. A trailing <code>'\r'</code> is removed from
+ * decoded lines.
+ *
+ * @author Oleg Trifonov
+ */
+class LineIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LineIndex.class);
+
+    /** A checkpoint is recorded every <code>LINES_PER_CHECKPOINT</code> lines */
+    static final int LINES_PER_CHECKPOINT = 256;
+
+    /** Size of the chunks read when building the index and scanning lines, a multiple of any newline length */
+    private static final int SCAN_BUFFER_SIZE = 256*1024;
+
+    /** Longest part of a line that is decoded, the rest of the line is skipped */
+    static final int MAX_LINE_BYTES = 64*1024;
+
+    private final ByteSource source;
+    private volatile Charset charset;
+    private final byte[] newline;
+    /** Offset of the first line, after the BOM if there is one */
+    private final long startOffset;
+
+    /** checkpoints[i] is the offset of line i*LINES_PER_CHECKPOINT */
+    private long[] checkpoints = new long[1024];
+    private int checkpointsCount;
+    /** Number of line separators found so far */
+    private long separatorsCount;
+    /** Number of bytes scanned so far */
+    private long indexedLength;
+    private boolean complete;
+
+    private volatile boolean cancelled;
+    private Thread thread;
+
+
+    /**
+     * Creates an index of the given source, {@link #start()} or {@link #build()} must then be called to index it.
+     *
+     * @param source the bytes of the file
+     * @param charset the encoding of the file
+     * @throws IOException if the start of the file could not be read
+     */
+    LineIndex(ByteSource source, Charset charset) throws IOException {
+        this.source = source;
+        byte[] head = new byte[4];
+        int n = source.read(0, head, 0, head.length);
+        BOM bom = n > 0 ? findBom(head, n, charset) : null;
+        if (bom != null) {
+            // Decode with the endianness given by the BOM, the decoder won't see it as it starts at any line
+            this.charset = Charset.forName(bom.getEncoding());
+            this.startOffset = bom.getSignature().length;
+        } else {
+            this.charset = charset;
+            this.startOffset = 0;
+        }
+        this.newline = getNewline(this.charset);
+        checkpoints[0] = startOffset;
+        checkpointsCount = 1;
+        indexedLength = startOffset;
+    }
+
+    private static BOM findBom(byte[] head, int length, Charset charset) {
+        String name = charset.name().toUpperCase();
+        if (!name.startsWith("UTF")) {
+            return null;
+        }
+        BOM result = null;
+        for (BOM bom : BOMConstants.SUPPORTED_BOMS) {
+            byte[] signature = bom.getSignature();
+            String family = bom.getEncoding().replaceFirst("[BL]E$", "");
+            if (name.startsWith(family) && signature.length <= length
+                    && Arrays.equals(signature, Arrays.copyOf(head, signature.length))
+                    && (result == null || signature.length > result.getSignature().length)) {
+                result = bom;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bytes of a line separator in the given encoding.
+     *
+     * @param charset the encoding
+     * @return the encoded form of <code>'\n'</code>, without any BOM the encoder may prepend
+     */
+    static byte[] getNewline(Charset charset) {
+        byte[] one = "\n".getBytes(charset);
+        byte[] two = "\n\n".getBytes(charset);
+        return Arrays.copyOfRange(two, one.length, two.length);
+    }
+
+
+    /**
+     * Starts indexing the source in a background thread.
+     */
+    void start() {
+        thread = new Thread(() -> {
+            try {
+                build();
+            } catch (IOException e) {
+                LOGGER.error("Could not index file", e);
+                synchronized (this) {
+                    complete = true;
+                    notifyAll();
+                }
+            }
+        }, "LineIndex");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the indexing thread, the known part of the index remains usable.
+     */
+    void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Indexes the whole source in the calling thread.
+     *
+     * @throws IOException if the source could not be read
+     */
+    void build() throws IOException {
+        final byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        final int width = newline.length;
+        final byte first = newline[0];
+        final long length = source.getLength();
+        long position = startOffset;
+        long separators = 0;
+        while (position < length && !cancelled) {
+            int n = source.read(position, buffer, 0, (int)Math.min(buffer.length, length - position));
+            if (n <= 0) {
+                break;
+            }
+            n = getAlignedLength(n);
+            int end = n - width;
+            for (int i = 0; i <= end; i += width) {
+                if (buffer[i] == first && (width == 1 || matches(buffer, i, newline))) {
+                    separators++;
+                    if (separators % LINES_PER_CHECKPOINT == 0) {
+                        addCheckpoint(position + i + width);
+                    }
+                }
+            }
+            position += n;
+            synchronized (this) {
+                separatorsCount = separators;
+                indexedLength = position;
+                notifyAll();
+            }
+        }
+        synchronized (this) {
+            complete = !cancelled;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of a read that can be scanned: a read that ends in the middle of a character of a
+     * multi-byte encoding is cut before that character, which is read again with the next chunk so that separators
+     * keep being looked for at aligned offsets. Only the end of the source may leave a partial character.
+     *
+     * @param n the number of bytes read, greater than 0
+     * @return the number of bytes to scan and to move forward by
+     */
+    private int getAlignedLength(int n) {
+        int width = newline.length;
+        return n < width ? n : n - n % width;
+    }
+
+    private synchronized void addCheckpoint(long offset) {
+        if (checkpointsCount == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+        }
+        checkpoints[checkpointsCount++] = offset;
+    }
+
+    private static boolean matches(byte[] buffer, int offset, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (buffer[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Changes the encoding used to decode the lines, provided the line offsets don't depend on it: same line
+     * separator and no BOM.
+     *
+     * @param charset the new encoding
+     * @return true if the encoding was changed, false if the file must be indexed again with the new encoding
+     * @throws IOException if the start of the file could not be read
+     */
+    boolean setCharset(Charset charset) throws IOException {
+        if (startOffset != 0 || !Arrays.equals(getNewline(charset), newline)) {
+            return false;
+        }
+        byte[] head = new byte[4];
+        int n = source.read(0, head, 0, head.length);
+        if (n > 0 && findBom(head, n, charset) != null) {
+            return false;
+        }
+        this.charset = charset;
+        return true;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    byte[] getNewline() {
+        return newline;
+    }
+
+    long getLength() {
+        return source.getLength();
+    }
+
+    /**
+     * @return true if the whole source has been indexed
+     */
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the number of bytes indexed so far
+     */
+    synchronized long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Returns the number of lines known so far, which is the total number of lines once the index is complete.
+     * A file always has at least one line, the one after its last separator (possibly empty).
+     *
+     * @return the number of known lines
+     */
+    synchronized long getLineCount() {
+        return separatorsCount + 1;
+    }
+
+    /**
+     * Returns the offset of the first byte of a line.
+     *
+     * @param line zero-based line number
+     * @return the offset of the line, <code>-1</code> if the line hasn't been indexed yet or doesn't exist
+     * @throws IOException if the source could not be read
+     */
+    long getLineOffset(long line) throws IOException {
+        long checkpoint;
+        long remaining;
+        synchronized (this) {
+            if (line < 0 || line > separatorsCount) {
+                return -1;
+            }
+            int index = (int)(line / LINES_PER_CHECKPOINT);
+            checkpoint = checkpoints[index];
+            remaining = line - (long)index * LINES_PER_CHECKPOINT;
+        }
+        return remaining == 0 ? checkpoint : skipLines(checkpoint, remaining);
+    }
+
+    /**
+     * Returns the offset following the <code>count</code>th separator from the given offset.
+     */
+    private long skipLines(long position, long count) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int width = newline.length;
+        int n;
+        while ((n = source.read(position, buffer, 0, buffer.length)) > 0) {
+            n = getAlignedLength(n);
+            for (int i = 0; i <= n - width; i += width) {
+                if (matches(buffer, i, newline) && --count == 0) {
+                    return position + i + width;
+                }
+            }
+            position += n;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the line containing the given offset, waiting for the indexing thread to reach it if needed.
+     *
+     * @param offset an offset in the source
+     * @return the zero-based number of the line
+     * @throws IOException if the source could not be read
+     * @throws InterruptedIOException if the calling thread was interrupted while waiting
+     */
+    long getLineAt(long offset) throws IOException {
+        long checkpoint;
+        long line;
+        synchronized (this) {
+            while (indexedLength <= offset && !complete && !cancelled) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            int index = Arrays.binarySearch(checkpoints, 0, checkpointsCount, offset);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            index = Math.max(index, 0);
+            checkpoint = checkpoints[index];
+            line = (long)index * LINES_PER_CHECKPOINT;
+        }
+        return line + countSeparators(checkpoint, offset);
+    }
+
+    private long countSeparators(long from, long to) throws IOException {
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        int width = newline.length;
+        long count = 0;
+        while (from < to) {
+            int n = source.read(from, buffer, 0, (int)Math.min(buffer.length, to - from));
+            if (n <= 0) {
+                break;
+            }
+            n = getAlignedLength(n);
+            for (int i = 0; i <= n - width; i += width) {
+                if (matches(buffer, i, newline)) {
+                    count++;
+                }
+            }
+            from += n;
+        }
+        return count;
+    }
+
+
+    /**
+     * Decodes consecutive lines. Lines longer than {@link #MAX_LINE_BYTES} are truncated.
+     *
+     * @param firstLine zero-based number of the first line to read
+     * @param count maximum number of lines to read
+     * @return the decoded lines, fewer than <code>count</code> at the end of the file or of the known lines
+     * @throws IOException if the source could not be read
+     */
+    List<String> readLines(long firstLine, int count) throws IOException {
+        List<String> lines = new ArrayList<>(count);
+        long position = getLineOffset(firstLine);
+        if (position < 0) {
+            return lines;
+        }
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        byte[] line = new byte[1024];
+        int lineLength = 0;
+        int width = newline.length;
+        while (lines.size() < count) {
+            int n = source.read(position, buffer, 0, buffer.length);
+            if (n <= 0) {
+                // The last line has no separator
+                lines.add(decode(line, lineLength));
+                break;
+            }
+            n = getAlignedLength(n);
+            int start = 0;
+            for (int i = 0; i <= n - width && lines.size() < count; i += width) {
+                if (matches(buffer, i, newline)) {
+                    int len = Math.min(i - start, MAX_LINE_BYTES - lineLength);
+                    if (len > 0) {
+                        line = ensureCapacity(line, lineLength + len);
+                        System.arraycopy(buffer, start, line, lineLength, len);
+                        lineLength += len;
+                    }
+                    lines.add(decode(line, lineLength));
+                    lineLength = 0;
+                    start = i + width;
+                }
+            }
+            if (lines.size() < count) {
+                int len = Math.min(n - start, MAX_LINE_BYTES - lineLength);
+                if (len > 0) {
+                    line = ensureCapacity(line, lineLength + len);
+                    System.arraycopy(buffer, start, line, lineLength, len);
+                    lineLength += len;
+                }
+            }
+            position += n;
+        }
+        return lines;
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int capacity) {
+        return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+
+    private String decode(byte[] bytes, int length) {
+        String s = new String(bytes, 0, length, charset);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    /**
+     * Decodes the bytes between two offsets.
+     *
+     * @param from offset of the first byte
+     * @param to offset following the last byte
+     * @return the decoded string
+     * @throws IOException if the source could not be read
+     */
+    String decode(long from, long to) throws IOException {
+        byte[] bytes = new byte[(int)Math.min(to - from, MAX_LINE_BYTES)];
+        int n = source.read(from, bytes, 0, bytes.length);
+        return n <= 0 ? "" : new String(bytes, 0, n, charset);
+    }
+
+
+    /**
+     * Searches for a byte sequence, at offsets aligned with the characters of the encoding. The search can be
+     * stopped by interrupting the calling thread.
+     *
+     * @param pattern the bytes to look for
+     * @param from offset where to start from (inclusive)
+     * @param forward true to search towards the end of the file, false towards its start
+     * @return the offset of the sequence, <code>-1</code> if it wasn't found
+     * @throws IOException if the source could not be read
+     * @throws InterruptedIOException if the calling thread was interrupted
+     */
+    long find(byte[] pattern, long from, boolean forward) throws IOException {
+        if (pattern.length == 0) {
+            return -1;
+        }
+        final int width = newline.length;
+        final long length = source.getLength();
+        // Align the start on a character boundary
+        long aligned = from - (from - startOffset) % width;
+        if (forward && aligned < from) {
+            aligned += width;
+        }
+        from = Math.max(aligned, startOffset);
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE + pattern.length];
+        // Consecutive chunks overlap so that a sequence across two chunks is found
+        int overlap = pattern.length - 1;
+        if (forward) {
+            long position = from;
+            while (position <= length - pattern.length) {
+                checkInterrupted();
+                int n = source.read(position, buffer, 0, (int)Math.min(buffer.length, length - position));
+                if (n < pattern.length) {
+                    break;
+                }
+                int i = indexOf(buffer, n, pattern, 0, width);
+                if (i >= 0) {
+                    return position + i;
+                }
+                int step = ((n - overlap) / width) * width;
+                if (position + n >= length || step <= 0) {
+                    break;
+                }
+                position += step;
+            }
+        } else {
+            long end = Math.min(from + pattern.length, length);
+            while (end - pattern.length >= startOffset) {
+                checkInterrupted();
+                long position = Math.max(startOffset, end - buffer.length);
+                // Keep the chunk start aligned
+                position += (width - (position - startOffset) % width) % width;
+                int n = source.read(position, buffer, 0, (int)(end - position));
+                if (n < pattern.length) {
+                    break;
+                }
+                int i = lastIndexOf(buffer, n, pattern, width);
+                if (i >= 0) {
+                    return position + i;
+                }
+                if (position == startOffset) {
+                    break;
+                }
+                end = position + overlap;
+            }
+        }
+        return -1;
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    private static int indexOf(byte[] buffer, int length, byte[] pattern, int from, int step) {
+        byte first = pattern[0];
+        for (int i = from; i <= length - pattern.length; i += step) {
+            if (buffer[i] == first && matches(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] buffer, int length, byte[] pattern, int step) {
+        byte first = pattern[0];
+        int last = length - pattern.length;
+        for (int i = last - last % step; i >= 0; i -= step) {
+            if (buffer[i] == first && matches(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import com.mucommander.ui.main.statusbar.FileWindowsListButton;
+import com.mucommander.utils.text.Translator;
+import org.fife.ui.StatusBarPanel;
+
+import javax.swing.JLabel;
+import java.awt.BorderLayout;
+import java.awt.GridBagConstraints;
+
+/**
+ * Status bar of the {@link LargeTextViewer}: current line, indexing progress and encoding.
+ *
+ * @author Oleg Trifonov
+ */
+public class StatusBar extends org.fife.ui.StatusBar {
+    private FileWindowsListButton lbFiles;
+
+    private JLabel lblPosition;
+    private JLabel lblIndexing;
+    private JLabel lblEncoding;
+
+
+    public StatusBar() {
+        super("");
+
+        lbFiles = new FileWindowsListButton(true);
+        StatusBarPanel panelWindows = new StatusBarPanel(new BorderLayout());
+        panelWindows.add(lbFiles);
+
+        lblPosition = new JLabel();
+        StatusBarPanel panelPosition = new StatusBarPanel(new BorderLayout(), lblPosition);
+
+        lblIndexing = new JLabel();
+        StatusBarPanel panelIndexing = new StatusBarPanel(new BorderLayout(), lblIndexing);
+
+        lblEncoding = new JLabel();
+        StatusBarPanel panelEncoding = new StatusBarPanel(new BorderLayout(), lblEncoding);
+
+        // Make the layout such that different items can be different sizes.
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.BOTH;
+
+        c.weightx = 0.0;
+        addStatusBarComponent(panelWindows, c);
+        addStatusBarComponent(panelPosition, c);
+        addStatusBarComponent(panelIndexing, c);
+        addStatusBarComponent(panelEncoding, c);
+    }
+
+    /**
+     * @param line one-based number of the first visible line
+     * @param lineCount number of lines known so far
+     * @param complete true if all the lines are known
+     */
+    public void setPosition(long line, long lineCount, boolean complete) {
+        lblPosition.setText(line + " / " + lineCount + (complete ? "" : "+"));
+    }
+
+    /**
+     * @param percent indexing progress, <code>100</code> once the file is indexed
+     */
+    public void setIndexingProgress(int percent) {
+        lblIndexing.setText(percent >= 100 ? "" : Translator.get("large_text_viewer.indexing", Integer.toString(percent)));
+    }
+
+    public void setEncoding(String encoding) {
+        lblEncoding.setText(encoding);
+    }
+}
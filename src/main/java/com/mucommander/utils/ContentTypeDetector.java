@@ -0,0 +1,469 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.utils;
+
+import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.LRUCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.io.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.trolsoft.utils.ImageSizeDetector;
+import ru.trolsoft.utils.JavaClassVersionDetector;
+
+import javax.swing.SwingUtilities;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Finds out what a file contains from its first bytes: binary or text data and the encoding of text, the type and
+ * dimensions of an image, the version of a Java class file, the kind of archive. The head of the file is read once
+ * and all the detectors run over the same buffer.
+ *
+ * <p>Results are cached by path, date and size, so that a modified file is detected again. Whole folders can be
+ * detected in the background, for columns and icons; as with {@link FileMetadataProbe}, each caller identifies itself
+ * with an owner object and a new request cancels the pending part of the previous one.
+ *
+ * @author Oleg Trifonov
+ */
+public class ContentTypeDetector {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentTypeDetector.class);
+
+    /** Number of bytes read from the head of files, enough for the binary and encoding detectors */
+    public static final int HEAD_SIZE = EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE;
+
+    /** Maximum number of cached results */
+    private static final int CACHE_CAPACITY = 4000;
+
+    /** Number of files detected by a task of a batch request, and passed to the callback at once */
+    private static final int BATCH_SIZE = 32;
+
+    private static volatile ContentTypeDetector instance;
+
+    private final LRUCache<String, ContentType> cache = new FastLRUCache<>(CACHE_CAPACITY);
+
+    /** Pending tasks of each owner */
+    private final Map<Object, List<Future<?>>> pendingRequests = new HashMap<>();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors())), r -> {
+        Thread thread = new Thread(r, "ContentTypeDetector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * Kinds of archives recognized by their signature.
+     */
+    public enum ArchiveType {
+        ZIP(0, 0x50, 0x4B, 0x03, 0x04),
+        SEVEN_ZIP(0, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C),
+        RAR(0, 0x52, 0x61, 0x72, 0x21, 0x1A, 0x07),
+        GZIP(0, 0x1F, 0x8B),
+        BZIP2(0, 0x42, 0x5A, 0x68) {
+            // "BZh" alone is too common in text: the block size digit and the magic number of the first block follow
+            @Override
+            boolean matches(byte[] head, int len) {
+                return super.matches(head, len) && len > 3 && head[3] >= '1' && head[3] <= '9'
+                        && matchesAt(head, len, 4, 0x31, 0x41, 0x59, 0x26, 0x53, 0x59);
+            }
+        },
+        XZ(0, 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00),
+        TAR(257, 0x75, 0x73, 0x74, 0x61, 0x72) {
+            // The POSIX magic is "ustar" and a NUL, the old GNU one is "ustar" and two spaces and a NUL
+            @Override
+            boolean matches(byte[] head, int len) {
+                return super.matches(head, len)
+                        && (matchesAt(head, len, 262, 0x00) || matchesAt(head, len, 262, 0x20, 0x20, 0x00));
+            }
+        };
+
+        private final int offset;
+        private final int[] signature;
+
+        ArchiveType(int offset, int... signature) {
+            this.offset = offset;
+            this.signature = signature;
+        }
+
+        boolean matches(byte[] head, int len) {
+            return matchesAt(head, len, offset, signature);
+        }
+
+        private static boolean matchesAt(byte[] head, int len, int offset, int... signature) {
+            if (offset + signature.length > len) {
+                return false;
+            }
+            for (int i = 0; i < signature.length; i++) {
+                if ((head[offset + i] & 0xff) != signature[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+
+    /**
+     * What a file contains, the fields that don't apply to the file are left to their default value.
+     */
+    public static class ContentType {
+        private boolean binary;
+        private String encoding;
+        private ImageSizeDetector.ImageType imageType;
+        private int imageWidth = -1;
+        private int imageHeight = -1;
+        private JavaClassVersionDetector.Version javaClassVersion;
+        private int javaClassMajor;
+        private int javaClassMinor;
+        private ArchiveType archiveType;
+
+        /**
+         * @return <code>true</code> if the file looks like binary data
+         */
+        public boolean isBinary() {
+            return binary;
+        }
+
+        /**
+         * @return the guessed encoding of a text file, <code>null</code> for binary files or if it couldn't be guessed
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * @return the type of an image, <code>null</code> if the file is not an image
+         */
+        public ImageSizeDetector.ImageType getImageType() {
+            return imageType;
+        }
+
+        /**
+         * @return the width of an image in pixels, <code>-1</code> if unknown
+         */
+        public int getImageWidth() {
+            return imageWidth;
+        }
+
+        /**
+         * @return the height of an image in pixels, <code>-1</code> if unknown
+         */
+        public int getImageHeight() {
+            return imageHeight;
+        }
+
+        /**
+         * @return the Java version of a class file, <code>null</code> if the file is not a class file
+         */
+        public JavaClassVersionDetector.Version getJavaClassVersion() {
+            return javaClassVersion;
+        }
+
+        public int getJavaClassMajor() {
+            return javaClassMajor;
+        }
+
+        public int getJavaClassMinor() {
+            return javaClassMinor;
+        }
+
+        /**
+         * @return the kind of archive, <code>null</code> if the file is not a recognized archive
+         */
+        public ArchiveType getArchiveType() {
+            return archiveType;
+        }
+    }
+
+
+    /**
+     * Receives the results of a batch request, on the event dispatch thread, a few files at a time.
+     */
+    public interface Callback {
+        void contentTypesDetected(Map<AbstractFile, ContentType> contentTypes);
+    }
+
+
+    public static ContentTypeDetector getInstance() {
+        if (instance == null) {
+            synchronized (ContentTypeDetector.class) {
+                if (instance == null) {
+                    instance = new ContentTypeDetector();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static String getKey(AbstractFile file) {
+        return file.getAbsolutePath() + '|' + file.getLastModifiedDate() + '|' + file.getSize();
+    }
+
+
+    /**
+     * Returns the cached content type of the given file, <code>null</code> if the file hasn't been detected yet or
+     * has changed since.
+     *
+     * @param file the file
+     * @return the cached content type, <code>null</code> if there is none
+     */
+    public ContentType getCached(AbstractFile file) {
+        return cache.get(getKey(file));
+    }
+
+    /**
+     * Shorthand for {@link #detect(AbstractFile, boolean) detect(file, false)}.
+     *
+     * @param file the file to detect
+     * @return the content type of the file, <code>null</code> if it is a directory or couldn't be read
+     */
+    public ContentType detect(AbstractFile file) {
+        return detect(file, false);
+    }
+
+    /**
+     * Detects the content type of the given files in the background and passes the results to the callback, on the
+     * event dispatch thread. Files already in the cache, directories and files that can't be read are not passed
+     * to the callback. The pending part of the previous request of the same owner is cancelled.
+     *
+     * @param owner the object on behalf of which the files are detected
+     * @param files the files to detect
+     * @param callback receives the results
+     */
+    public void detect(Object owner, List<AbstractFile> files, Callback callback) {
+        List<Future<?>> tasks = new ArrayList<>();
+        List<AbstractFile> batch = new ArrayList<>();
+        for (AbstractFile file : files) {
+            if (!file.isDirectory() && getCached(file) == null) {
+                batch.add(file);
+                if (batch.size() == BATCH_SIZE) {
+                    tasks.add(new BatchTask(owner, batch, callback));
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            tasks.add(new BatchTask(owner, batch, callback));
+        }
+        synchronized (pendingRequests) {
+            cancelTasks(pendingRequests.put(owner, tasks));
+        }
+        for (Future<?> task : tasks) {
+            executor.execute((Runnable)task);
+        }
+    }
+
+    /**
+     * Cancels the pending request of the given owner, if any.
+     *
+     * @param owner the object on behalf of which files are detected
+     */
+    public void cancel(Object owner) {
+        synchronized (pendingRequests) {
+            cancelTasks(pendingRequests.remove(owner));
+        }
+    }
+
+    private static void cancelTasks(List<Future<?>> tasks) {
+        if (tasks != null) {
+            for (Future<?> task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Detects the content type of the given file in the calling thread, using the cache.
+     *
+     * @param file the file to detect
+     * @param pushBack if <code>true</code>, the head of the file is read through
+     * {@link AbstractFile#getPushBackInputStream(int)} and pushed back, so that a viewer reading the file next doesn't
+     * open it again; the caller is then responsible for closing that stream. Otherwise the file is opened and closed.
+     * @return the content type of the file, <code>null</code> if it is a directory or couldn't be read
+     */
+    public ContentType detect(AbstractFile file, boolean pushBack) {
+        if (file.isDirectory()) {
+            return null;
+        }
+        String key = getKey(file);
+        ContentType contentType = cache.get(key);
+        if (contentType == null) {
+            try {
+                contentType = detectFile(file, pushBack);
+            } catch (IOException e) {
+                LOGGER.debug("Could not detect " + file, e);
+                if (pushBack) {
+                    closePushbackInputStream(file);
+                }
+                return null;
+            }
+            cache.add(key, contentType);
+        }
+        return contentType;
+    }
+
+
+    /**
+     * Detects a few files of a batch request and, unless it has been cancelled in the meantime, passes the results
+     * to the callback.
+     */
+    private class BatchTask extends FutureTask<Map<AbstractFile, ContentType>> {
+        private final Object owner;
+        private final Callback callback;
+
+        BatchTask(Object owner, List<AbstractFile> files, Callback callback) {
+            super(() -> {
+                Map<AbstractFile, ContentType> result = new LinkedHashMap<>();
+                for (AbstractFile file : files) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    ContentType contentType = detect(file, false);
+                    if (contentType != null) {
+                        result.put(file, contentType);
+                    }
+                }
+                return result;
+            });
+            this.owner = owner;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (pendingRequests) {
+                List<Future<?>> tasks = pendingRequests.get(owner);
+                if (tasks != null && tasks.remove(this) && tasks.isEmpty()) {
+                    pendingRequests.remove(owner);
+                }
+            }
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                Map<AbstractFile, ContentType> result = get();
+                if (!result.isEmpty()) {
+                    SwingUtilities.invokeLater(() -> callback.contentTypesDetected(result));
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Detection failed", e);
+            }
+        }
+    }
+
+
+    private static ContentType detectFile(AbstractFile file, boolean pushBack) throws IOException {
+        byte[] head = new byte[HEAD_SIZE];
+        int len;
+        if (pushBack) {
+            PushbackInputStream in = file.getPushBackInputStream(HEAD_SIZE);
+            len = StreamUtils.readUpTo(in, head);
+            in.unread(head, 0, len);
+        } else {
+            try (InputStream in = file.getInputStream()) {
+                len = StreamUtils.readUpTo(in, head);
+            }
+        }
+        ContentType contentType = detect(head, len);
+        // The frame that holds the dimensions of a JPEG may come after a large thumbnail
+        if (contentType.imageType == null && len == HEAD_SIZE && isJpeg(head)) {
+            try (InputStream in = file.getInputStream()) {
+                detectImage(contentType, in);
+            }
+        }
+        return contentType;
+    }
+
+    /**
+     * Runs all the detectors over the head of a file.
+     *
+     * @param head the first bytes of the file
+     * @param len the number of bytes in <code>head</code>
+     * @return the content type of the file
+     */
+    static ContentType detect(byte[] head, int len) {
+        ContentType contentType = new ContentType();
+        // Archive signatures are reliable enough to be checked first: a small compressed file may not look binary
+        for (ArchiveType archiveType : ArchiveType.values()) {
+            if (archiveType.matches(head, len)) {
+                contentType.archiveType = archiveType;
+                contentType.binary = true;
+                return contentType;
+            }
+        }
+        contentType.binary = BinaryDetector.guessBinary(head, 0, len);
+        if (!contentType.binary) {
+            contentType.encoding = EncodingDetector.detectEncoding(head, 0, len);
+            return contentType;
+        }
+        if (len >= 8 && (head[0] & 0xff) == 0xCA && (head[1] & 0xff) == 0xFE && (head[2] & 0xff) == 0xBA
+                && (head[3] & 0xff) == 0xBE) {
+            try {
+                JavaClassVersionDetector detector = new JavaClassVersionDetector(new ByteArrayInputStream(head, 0, len));
+                contentType.javaClassVersion = detector.getVersion();
+                contentType.javaClassMajor = detector.getMajor();
+                contentType.javaClassMinor = detector.getMinor();
+            } catch (IOException e) {
+                // Can't happen with a ByteArrayInputStream
+            }
+            return contentType;
+        }
+        try {
+            detectImage(contentType, new ByteArrayInputStream(head, 0, len));
+        } catch (IOException e) {
+            // Can't happen with a ByteArrayInputStream
+        }
+        return contentType;
+    }
+
+    private static void detectImage(ContentType contentType, InputStream in) throws IOException {
+        ImageSizeDetector detector = new ImageSizeDetector(in);
+        if (detector.getType() != null && detector.getWidth() >= 0 && detector.getHeight() >= 0) {
+            contentType.imageType = detector.getType();
+            contentType.imageWidth = detector.getWidth();
+            contentType.imageHeight = detector.getHeight();
+        }
+    }
+
+    private static boolean isJpeg(byte[] head) {
+        return (head[0] & 0xff) == 0xFF && (head[1] & 0xff) == 0xD8 && (head[2] & 0xff) == 0xFF;
+    }
+
+    private static void closePushbackInputStream(AbstractFile file) {
+        try {
+            file.closePushbackInputStream();
+        } catch (IOException e) {
+            LOGGER.debug("Could not close " + file, e);
+        }
+    }
+}
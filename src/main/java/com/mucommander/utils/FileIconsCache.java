@@ -20,8 +20,12 @@ package com.mucommander.utils;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.ui.icon.CustomFileIconProvider;
 import com.mucommander.ui.icon.FileIcons;
+import com.mucommander.ui.icon.IconManager;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.macosx.RetinaImageIcon;
 
 import javax.swing.*;
@@ -29,27 +33,88 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.net.MalformedURLException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Created on 07.01.15.
  * @author Oleg Trifonov
  *
- * Cache of system file icons
+ * Cache of system file icons.
+ *
+ * Icons are cached per extension (and per file protocol), except for folders, symlinks and executables whose icon
+ * may be specific to the file and are cached per path. The cache is bounded, lock-free for readers, and counts
+ * its hits and misses.
+ *
+ * {@link #getIcon(AbstractFile, Component)} doesn't block the caller: on a miss it returns a placeholder and resolves
+ * the icon in the background, then repaints the waiting components together.
  */
 public class FileIconsCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileIconsCache.class);
 
     /**
      * Default cache size
      */
     private static final int CACHE_SIZE = 1000;
 
-    private final Map<String, Icon> icons = new HashMap<>();
-    private final LinkedList<String> files = new LinkedList<>();
+    /**
+     * Maximum number of icons waiting to be resolved. The most recent requests are resolved first and the oldest
+     * are dropped: they usually are for rows that have been scrolled away, and are requested again if still visible.
+     */
+    private static final int MAX_PENDING = 256;
+
+    /**
+     * Extensions of files that may have an icon of their own
+     */
+    private static final Set<String> PER_FILE_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "exe", "lnk", "ico", "url", "scr", "cpl", "app"));
+
+    private final Map<String, Entry> icons = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final Object evictionLock = new Object();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** Keys of the icons being resolved */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    /** Components to repaint when the icons being resolved are available */
+    private final Set<Component> waitingComponents = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean repaintScheduled = new AtomicBoolean();
+    /** Incremented by {@link #clear()}, so that icons resolved before are not cached */
+    private volatile int generation;
 
+    private final LinkedBlockingDeque<Runnable> queue = new LinkedBlockingDeque<Runnable>() {
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    };
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, r -> {
+        Thread thread = new Thread(r, "FileIconsCache");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private static FileIconsCache instance;
 
 
+    private static class Entry {
+        private final Icon icon;
+        private volatile long lastAccess;
+
+        Entry(Icon icon, long lastAccess) {
+            this.icon = icon;
+            this.lastAccess = lastAccess;
+        }
+    }
+
 
     public static FileIconsCache getInstance() {
         if (instance == null) {
@@ -68,32 +133,51 @@ public class FileIconsCache {
      * @return
      */
     public Icon getIcon(AbstractFile file) {
-        String path = file.getAbsolutePath();
-        Icon result = icons.get(path);
-        if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
-            return result;
+        String key = getKey(file);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            return entry.icon;
         }
-        return addIcon(file, path);
+        Icon icon = loadIcon(file);
+        put(key, icon, generation);
+        return icon;
     }
 
-    public Icon getIcon(String path) {
-        Icon result = icons.get(path);
-        if (result != null) {
-            // move record to top
-            files.remove(path);
-            files.addFirst(path);
-            return result;
+    /**
+     * Returns the icon of the given file if it is cached, a placeholder otherwise. In the latter case the icon is
+     * resolved in the background and the component is repainted once it is available.
+     *
+     * @param file the file
+     * @param component the component to repaint when the icon is resolved
+     * @return the icon of the file, or a placeholder
+     */
+    public Icon getIcon(AbstractFile file, Component component) {
+        String key = getKey(file);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            return entry.icon;
+        }
+        waitingComponents.add(component);
+        if (pending.add(key)) {
+            executor.execute(new ResolveTask(key, file));
+            while (queue.size() > MAX_PENDING) {
+                Runnable dropped = queue.pollLast();
+                if (dropped instanceof ResolveTask) {
+                    pending.remove(((ResolveTask)dropped).key);
+                }
+            }
         }
+        return getPlaceholder(file);
+    }
+
+    public Icon getIcon(String path) {
         AbstractFile file = null;
         try {
             file = FileFactory.getFile(FileURL.getFileURL(path));
         } catch (MalformedURLException e) {
             e.printStackTrace();
         }
-        return addIcon(file, path);
+        return file == null ? null : getIcon(file);
     }
 
 
@@ -123,6 +207,66 @@ public class FileIconsCache {
     }
 
 
+    /**
+     * Returns the cache key of a file: its path if its icon may be specific to it, its extension otherwise.
+     * Only uses attributes that the file table renderers query anyway.
+     */
+    private static String getKey(AbstractFile file) {
+        String extension = file.getExtension();
+        extension = extension == null ? "" : extension.toLowerCase();
+        if (file.isDirectory() || file.isSymlink() || file.isExecutable() || PER_FILE_EXTENSIONS.contains(extension)) {
+            return file.getAbsolutePath();
+        }
+        // The protocol is part of the key as remote files get protocol icons
+        return "*." + extension + '|' + file.getURL().getScheme() + '|' + file.getClass().getName();
+    }
+
+    private static Icon getPlaceholder(AbstractFile file) {
+        return IconManager.getIcon(IconManager.IconSet.FILE,
+                file.isDirectory() ? CustomFileIconProvider.FOLDER_ICON_NAME : CustomFileIconProvider.FILE_ICON_NAME,
+                FileIcons.getScaleFactor());
+    }
+
+    private Entry lookup(String key) {
+        Entry entry = icons.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = clock.incrementAndGet();
+        return entry;
+    }
+
+    private void put(String key, Icon icon, int generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        icons.put(key, new Entry(icon, clock.incrementAndGet()));
+        if (icons.size() > CACHE_SIZE) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used tenth of the cache, so that the cost of sorting is amortized.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            int excess = icons.size() - CACHE_SIZE * 9 / 10;
+            if (excess <= CACHE_SIZE / 10) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> entries = new ArrayList<>(icons.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                Map.Entry<String, Entry> e = entries.get(i);
+                icons.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+
     /**
      * Request file icon from OS
      * @param file
@@ -132,28 +276,87 @@ public class FileIconsCache {
         return FileIcons.getFileIcon(file);
     }
 
+    /**
+     * Repaints the components waiting for icons, once for all the icons resolved in the meantime.
+     */
+    private void scheduleRepaint() {
+        if (repaintScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                repaintScheduled.set(false);
+                for (Iterator<Component> iterator = waitingComponents.iterator(); iterator.hasNext(); ) {
+                    Component component = iterator.next();
+                    iterator.remove();
+                    component.repaint();
+                }
+            });
+        }
+    }
+
 
     /**
-     * Loads icon and adds it to cache
-     * @param path absolute path of file
-     * @return loaded icon
+     * Resolves an icon in the background.
      */
-    private Icon addIcon(AbstractFile file, String path) {
-        Icon icon = loadIcon(file);
-        icons.put(path, icon);
-        files.addFirst(path);
+    private class ResolveTask implements Runnable {
+        private final String key;
+        private final AbstractFile file;
+        private final int generation;
 
-        // remove oldest record if the cache is full
-        if (files.size() > CACHE_SIZE) {
-            icons.remove(files.removeLast());
+        ResolveTask(String key, AbstractFile file) {
+            this.key = key;
+            this.file = file;
+            this.generation = FileIconsCache.this.generation;
+        }
+
+        @Override
+        public void run() {
+            Icon icon = null;
+            try {
+                icon = loadIcon(file);
+            } catch (Exception e) {
+                LOGGER.debug("Could not resolve icon of " + file, e);
+            }
+            try {
+                if (icon != null) {
+                    put(key, icon, generation);
+                } else {
+                    // The placeholder is cached so that the icon is not resolved again every time the row is painted,
+                    // there is nothing new to repaint
+                    put(key, getPlaceholder(file), generation);
+                }
+            } finally {
+                pending.remove(key);
+            }
+            if (icon != null) {
+                scheduleRepaint();
+            }
         }
-        return icon;
     }
 
 
     public void clear() {
+        generation++;
         icons.clear();
-        files.clear();
+    }
+
+    /**
+     * @return the number of icons found in the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of icons that had to be resolved
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return "FileIconsCache: " + icons.size() + " icons, " + hitCount + "/" + total + " hits";
     }
 
 }
@@ -0,0 +1,285 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.utils;
+
+import com.mucommander.cache.FastLRUCache;
+import com.mucommander.cache.LRUCache;
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.trolsoft.utils.JavaClassVersionDetector;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Computes facts about files that require reading them (number of children of a folder, dimensions of an image,
+ * version of a Java class file) on background threads, and caches them.
+ *
+ * <p>Results are cached by path, date and size, so that a modified file is probed again. Each caller identifies
+ * itself with an owner object: a new request from the same owner cancels its previous pending request, so that
+ * moving the selection quickly through a folder only probes the file that ends up selected.
+ *
+ * @author Oleg Trifonov
+ */
+public class FileMetadataProbe {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileMetadataProbe.class);
+
+    /** Maximum number of cached results */
+    private static final int CACHE_CAPACITY = 1000;
+
+    /** Number of threads probing files, more than one so that a slow folder doesn't hold back the next requests */
+    private static final int NB_THREADS = 2;
+
+    private final static ExtensionFilenameFilter SUPPORTED_IMAGE_FILTER = new ExtensionFilenameFilter(new String[] {
+            ".png", ".gif", ".jpg", ".jpeg", ".bmp", ".tga", ".tiff", ".tif"});
+
+    private final static ExtensionFilenameFilter JAVA_CLASS_FILTER = new ExtensionFilenameFilter(".class");
+
+    private static volatile FileMetadataProbe instance;
+
+    private final LRUCache<String, Metadata> cache = new FastLRUCache<>(CACHE_CAPACITY);
+
+    /** Pending request of each owner */
+    private final Map<Object, Future<?>> pendingRequests = new HashMap<>();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS, r -> {
+        Thread thread = new Thread(r, "FileMetadataProbe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /**
+     * Facts found about a file, the fields that don't apply to the file are left to their default value.
+     */
+    public static class Metadata {
+        private int childrenCount = -1;
+        private int imageWidth = -1;
+        private int imageHeight = -1;
+        private JavaClassVersionDetector.Version javaClassVersion;
+        private int javaClassMajor;
+        private int javaClassMinor;
+
+        /**
+         * @return the number of children of a folder, <code>-1</code> if unknown
+         */
+        public int getChildrenCount() {
+            return childrenCount;
+        }
+
+        /**
+         * @return the width of an image in pixels, <code>-1</code> if unknown
+         */
+        public int getImageWidth() {
+            return imageWidth;
+        }
+
+        /**
+         * @return the height of an image in pixels, <code>-1</code> if unknown
+         */
+        public int getImageHeight() {
+            return imageHeight;
+        }
+
+        /**
+         * @return the Java version of a class file, <code>null</code> if the file is not a class file
+         */
+        public JavaClassVersionDetector.Version getJavaClassVersion() {
+            return javaClassVersion;
+        }
+
+        public int getJavaClassMajor() {
+            return javaClassMajor;
+        }
+
+        public int getJavaClassMinor() {
+            return javaClassMinor;
+        }
+    }
+
+
+    /**
+     * Receives the result of a probe, on the event dispatch thread.
+     */
+    public interface Callback {
+        void metadataProbed(AbstractFile file, Metadata metadata);
+    }
+
+
+    public static FileMetadataProbe getInstance() {
+        if (instance == null) {
+            synchronized (FileMetadataProbe.class) {
+                if (instance == null) {
+                    instance = new FileMetadataProbe();
+                }
+            }
+        }
+        return instance;
+    }
+
+
+    /**
+     * Returns <code>true</code> if there is anything to find out about the given file: local folders, local images
+     * and Java class files.
+     *
+     * @param file the file to test
+     * @return true if the file can be probed
+     */
+    public static boolean isProbeable(AbstractFile file) {
+        boolean local = file.getAncestor() instanceof LocalFile;
+        if (file.isDirectory()) {
+            return local;
+        }
+        return (local && SUPPORTED_IMAGE_FILTER.accept(file)) || JAVA_CLASS_FILTER.accept(file);
+    }
+
+    private static String getKey(AbstractFile file) {
+        return file.getAbsolutePath() + '|' + file.getLastModifiedDate() + '|' + file.getSize();
+    }
+
+
+    /**
+     * Returns the cached metadata of the given file, <code>null</code> if the file hasn't been probed yet or has
+     * changed since.
+     *
+     * @param file the file
+     * @return the cached metadata, <code>null</code> if there is none
+     */
+    public Metadata getCached(AbstractFile file) {
+        return cache.get(getKey(file));
+    }
+
+    /**
+     * Probes the given file in the background and passes the result to the callback, on the event dispatch thread.
+     * The previous request of the same owner is cancelled if it hasn't completed yet. Callers should check
+     * {@link #getCached(AbstractFile)} first to avoid a round trip through the executor.
+     *
+     * @param owner the object on behalf of which the file is probed
+     * @param file the file to probe
+     * @param callback receives the result
+     */
+    public void probe(Object owner, AbstractFile file, Callback callback) {
+        ProbeTask task = new ProbeTask(owner, file, callback);
+        synchronized (pendingRequests) {
+            Future<?> previous = pendingRequests.put(owner, task);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Cancels the pending request of the given owner, if any.
+     *
+     * @param owner the object on behalf of which files are probed
+     */
+    public void cancel(Object owner) {
+        synchronized (pendingRequests) {
+            Future<?> previous = pendingRequests.remove(owner);
+            if (previous != null) {
+                previous.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Probes the given file in the calling thread, using the cache.
+     *
+     * @param file the file to probe
+     * @return the metadata of the file
+     */
+    public Metadata probeNow(AbstractFile file) {
+        String key = getKey(file);
+        Metadata metadata = cache.get(key);
+        if (metadata == null) {
+            metadata = probeFile(file);
+            cache.add(key, metadata);
+        }
+        return metadata;
+    }
+
+
+    /**
+     * Probes a file and, unless it has been cancelled in the meantime, passes the result to the callback.
+     */
+    private class ProbeTask extends FutureTask<Metadata> {
+        private final Object owner;
+        private final AbstractFile file;
+        private final Callback callback;
+
+        ProbeTask(Object owner, AbstractFile file, Callback callback) {
+            super(() -> probeNow(file));
+            this.owner = owner;
+            this.file = file;
+            this.callback = callback;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (pendingRequests) {
+                if (pendingRequests.get(owner) == this) {
+                    pendingRequests.remove(owner);
+                }
+            }
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                Metadata metadata = get();
+                SwingUtilities.invokeLater(() -> callback.metadataProbed(file, metadata));
+            } catch (Exception e) {
+                LOGGER.debug("Probe failed", e);
+            }
+        }
+    }
+
+
+    private static Metadata probeFile(AbstractFile file) {
+        Metadata metadata = new Metadata();
+        try {
+            if (file.isDirectory()) {
+                metadata.childrenCount = file.ls().length;
+            } else {
+                // The content type detector reads the head of the file once for all the detectors, and may already
+                // have detected the file for a column or an icon
+                ContentTypeDetector.ContentType contentType = ContentTypeDetector.getInstance().detect(file);
+                if (contentType != null) {
+                    metadata.javaClassVersion = contentType.getJavaClassVersion();
+                    metadata.javaClassMajor = contentType.getJavaClassMajor();
+                    metadata.javaClassMinor = contentType.getJavaClassMinor();
+                    metadata.imageWidth = contentType.getImageWidth();
+                    metadata.imageHeight = contentType.getImageHeight();
+                }
+            }
+        } catch (IOException e) {
+            // The file may have been moved or deleted, don't probe it again until it changes
+            LOGGER.debug("Could not probe " + file, e);
+        }
+        return metadata;
+    }
+}
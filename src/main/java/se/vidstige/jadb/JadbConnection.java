@@ -17,7 +17,7 @@ public class JadbConnection implements ITransportFactory {
         this("localhost", DEFAULTPORT);
     }
 
-    private JadbConnection(String host, int port) {
+    public JadbConnection(String host, int port) {
         this.host = host;
         this.port = port;
     }
@@ -147,14 +147,18 @@ public class JadbDevice {
 
     public List<RemoteFile> list(String remotePath) throws IOException, JadbException {
         Transport transport = getTransport();
-        SyncTransport sync = transport.startSync();
-        sync.send("LIST", remotePath);
+        try {
+            SyncTransport sync = transport.startSync();
+            sync.send("LIST", remotePath);
 
-        List<RemoteFile> result = new ArrayList<>();
-        for (RemoteFileRecord dent = sync.readDirectoryEntry(); dent != RemoteFileRecord.DONE; dent = sync.readDirectoryEntry()) {
-            result.add(dent);
+            List<RemoteFile> result = new ArrayList<>();
+            for (RemoteFileRecord dent = sync.readDirectoryEntry(); dent != RemoteFileRecord.DONE; dent = sync.readDirectoryEntry()) {
+                result.add(dent);
+            }
+            return result;
+        } finally {
+            transport.close();
         }
-        return result;
     }
 
     private int getMode(File file) {
@@ -164,13 +168,17 @@ public class JadbDevice {
 
     public void push(InputStream source, long lastModified, int mode, RemoteFile remote) throws IOException, JadbException {
         Transport transport = getTransport();
-        SyncTransport sync = transport.startSync();
-        sync.send("SEND", remote.getPath() + "," + Integer.toString(mode));
+        try {
+            SyncTransport sync = transport.startSync();
+            sync.send("SEND", remote.getPath() + "," + Integer.toString(mode));
 
-        sync.sendStream(source);
+            sync.sendStream(source);
 
-        sync.sendStatus("DONE", (int) lastModified);
-        sync.verifyStatus();
+            sync.sendStatus("DONE", (int) lastModified);
+            sync.verifyStatus();
+        } finally {
+            transport.close();
+        }
     }
 
     public void push(File local, RemoteFile remote) throws IOException, JadbException {
@@ -180,11 +188,39 @@ public class JadbDevice {
     }
 
     public void pull(RemoteFile remote, OutputStream destination) throws IOException, JadbException {
-        Transport transport = getTransport();
-        SyncTransport sync = transport.startSync();
-        sync.send("RECV", remote.getPath());
+        try (InputStream in = pull(remote)) {
+            Stream.copy(in, destination);
+        } catch (IOException e) {
+            if (e.getCause() instanceof JadbException) {
+                throw (JadbException)e.getCause();
+            }
+            throw e;
+        }
+    }
 
-        sync.readChunksTo(destination);
+    /**
+     * Opens a stream on a remote file, the content is read from the device as the stream is read. Closing the
+     * stream closes the connection, aborting the transfer if the end of the file hasn't been reached.
+     *
+     * @param remote the file to read
+     * @return the stream, failures of the device are reported as an <code>IOException</code> caused by a
+     * {@link JadbException}
+     */
+    public InputStream pull(RemoteFile remote) throws IOException, JadbException {
+        Transport transport = getTransport();
+        try {
+            SyncTransport sync = transport.startSync();
+            sync.send("RECV", remote.getPath());
+            return new FilterInputStream(sync.readChunks()) {
+                @Override
+                public void close() throws IOException {
+                    transport.close();
+                }
+            };
+        } catch (IOException | JadbException e) {
+            transport.close();
+            throw e;
+        }
     }
 
     public void pull(RemoteFile remote, File local) throws IOException, JadbException {
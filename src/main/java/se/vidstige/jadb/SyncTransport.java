@@ -3,12 +3,19 @@ package se.vidstige.jadb;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by vidstige on 2014-03-19.
  */
 public class SyncTransport {
 
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Number of chunks read ahead from the source while the previous ones are sent */
+    private static final int NB_PIPELINED_CHUNKS = 3;
+
     private final DataOutput output;
     private final DataInput input;
 
@@ -92,12 +99,134 @@ public class SyncTransport {
         return n;
     }
 
+    /**
+     * Sends the content of the given stream as DATA chunks. The source is read by another thread, so that reading
+     * the next chunks overlaps with sending the previous ones. The stream is closed when this method returns.
+     */
     public void sendStream(InputStream in) throws IOException {
-        byte[] buffer = new byte[1024 * 64];
-        int n = in.read(buffer);
-        while (n != -1) {
-            sendChunk(buffer, 0, n);
-            n = in.read(buffer);
+        BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(NB_PIPELINED_CHUNKS);
+        // one more slot for the end of stream or error marker
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(NB_PIPELINED_CHUNKS + 1);
+        for (int i = 0; i < NB_PIPELINED_CHUNKS; i++) {
+            freeBuffers.add(new byte[CHUNK_SIZE]);
+        }
+
+        Thread reader = new Thread(() -> {
+            Chunk end = new Chunk(null, -1, null);
+            try {
+                while (true) {
+                    byte[] buffer = freeBuffers.take();
+                    int n = in.read(buffer);
+                    if (n == -1) {
+                        break;
+                    }
+                    chunks.put(new Chunk(buffer, n, null));
+                }
+            } catch (IOException e) {
+                end = new Chunk(null, -1, e);
+            } catch (InterruptedException e) {
+                // the transfer has been aborted
+            } catch (Throwable e) {
+                end = new Chunk(null, -1, new IOException(e));
+            } finally {
+                // There is always room for the end marker, so that the sending thread never waits forever
+                chunks.offer(end);
+            }
+        }, "adb-send-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            while (true) {
+                Chunk chunk = chunks.take();
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (chunk.length == -1) {
+                    break;
+                }
+                sendChunk(chunk.buffer, 0, chunk.length);
+                freeBuffers.put(chunk.buffer);
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            reader.interrupt();
+            // Releases the reader if it is blocked in a read
+            try {
+                in.close();
+            } catch (IOException e) {
+                // the outcome of the transfer is already known
+            }
+        }
+    }
+
+    private static class Chunk {
+        final byte[] buffer;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] buffer, int length, IOException error) {
+            this.buffer = buffer;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Returns a stream reading the DATA chunks sent by the device as they arrive, until DONE is received.
+     * A FAIL response is reported as an <code>IOException</code> caused by a {@link JadbException}.
+     */
+    public InputStream readChunks() {
+        return new ChunkInputStream();
+    }
+
+    private class ChunkInputStream extends InputStream {
+        /** Number of bytes left to read in the current chunk */
+        private int remaining;
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (remaining == 0) {
+                if (done) {
+                    return -1;
+                }
+                nextChunk();
+            }
+            int n = Math.min(len, remaining);
+            input.readFully(b, off, n);
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return remaining;
+        }
+
+        private void nextChunk() throws IOException {
+            String id = readString(4);
+            int n = readInt();
+            if ("FAIL".equals(id)) {
+                done = true;
+                throw new IOException(new JadbException(readString(n)));
+            }
+            if ("DATA".equals(id)) {
+                remaining = n;
+            } else {
+                done = true;
+            }
         }
     }
 
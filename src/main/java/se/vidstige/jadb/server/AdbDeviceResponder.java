@@ -7,6 +7,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Created by vidstige on 20/03/14.
@@ -17,6 +18,7 @@ public interface AdbDeviceResponder {
 
     void filePushed(RemoteFile path, int mode, ByteArrayOutputStream buffer) throws JadbException;
     void filePulled(RemoteFile path, ByteArrayOutputStream buffer) throws JadbException, IOException;
+    List<RemoteFile> list(String path) throws JadbException;
 
     void shell(String command, DataOutputStream stdout, DataInput stdin) throws IOException;
 }
@@ -160,6 +160,21 @@ class AdbProtocolHandler implements Runnable {
             selected.filePulled(new RemoteFile(remotePath), buffer);
             transport.sendStream(new ByteArrayInputStream(buffer.toByteArray()));
             transport.sendStatus("DONE", 0); // ignored
+        } else if ("LIST".equals(id)) {
+            String remotePath = readString(input, length);
+            for (RemoteFile file : selected.list(remotePath)) {
+                byte[] name = file.getPath().getBytes(StandardCharsets.UTF_8);
+                output.writeBytes("DENT");
+                output.writeInt(Integer.reverseBytes(file.isDirectory() ? 040755 : 0100644));
+                output.writeInt(Integer.reverseBytes(file.getSize()));
+                output.writeInt(Integer.reverseBytes((int) file.getLastModified()));
+                output.writeInt(Integer.reverseBytes(name.length));
+                output.write(name);
+            }
+            output.writeBytes("DONE");
+            for (int i = 0; i < 4; i++) {
+                output.writeInt(0);
+            }
         } else throw new JadbException("Unknown sync id " + id);
     }
 
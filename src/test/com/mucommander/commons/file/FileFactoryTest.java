@@ -3,6 +3,8 @@ package com.mucommander.commons.file;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 
 /**
  * A test case for {@link FileFactory}.
@@ -61,4 +63,20 @@ public class FileFactoryTest {
         assert temporaryFile1 != null;
         assert !temporaryFile1.exists();
     }
+
+    /**
+     * Asserts that the extensions of the lazily registered archive formats match the ones of their providers.
+     */
+    @Test
+    public void testLazyArchiveFormatExtensions() {
+        FileFactory.registerProtocolArchives();
+        for (Iterator<ArchiveFormatProvider> it = FileFactory.archiveFormats(); it.hasNext(); ) {
+            ArchiveFormatProvider provider = it.next();
+            if (provider instanceof LazyArchiveFormatProvider) {
+                ArchiveFormatProvider actualProvider = ((LazyArchiveFormatProvider)provider).getProvider();
+                assert Arrays.equals(provider.getFileExtensions(), actualProvider.getFileExtensions()) : actualProvider.getClass().getName();
+            }
+        }
+        assert FileFactory.isArchiveFilename("test.zip");
+    }
 }
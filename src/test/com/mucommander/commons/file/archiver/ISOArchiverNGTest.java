@@ -6,19 +6,20 @@
 
 package com.mucommander.commons.file.archiver;
 
-import com.github.stephenc.javaisotools.iso9660.ISO9660Directory;
-import com.github.stephenc.javaisotools.iso9660.ISO9660RootDirectory;
 import com.google.common.io.Files;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.SimpleFileAttributes;
 import com.mucommander.commons.file.impl.iso.IsoArchiveFile;
 import com.mucommander.commons.file.impl.iso.MuCreateISOTest;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
 import java.util.HashMap;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeClass;
@@ -68,11 +69,13 @@ public class ISOArchiverNGTest {
         
         instance.createEntry(tempDir1.getName(), FileFactory.getFile(tempDir1.getPath()));
         for(String filePath : files.keySet()){
-            instance.createEntry(filePath, FileFactory.getFile(files.get(filePath).getPath()));
+            //Contents are read by postProcess, no stream is returned
+            assertNull(instance.createEntry(filePath, FileFactory.getFile(files.get(filePath).getPath())));
         }
         
         //Archive the files
         instance.postProcess();
+        instance.close();
     }
 
     @AfterClass
@@ -94,36 +97,24 @@ public class ISOArchiverNGTest {
     }
 
     /**
-     * Test of createEntry method, of class ISOArchiver.
+     * Test of createEntry method, of class ISOArchiver: entries can only be created from files, as their contents
+     * are read when the image is written.
      */
-    @Test
+    @Test(expectedExceptions = IOException.class)
     public void testCreateEntry() throws Exception {
-        
-        //Get access to method in order to test if it correctly listed the files
-        Method method = instance.getClass().getDeclaredMethod("getParentDirectory", String.class);
-        method.setAccessible(true);
-        
-        for(String filePath : files.keySet()){
-            String[] split = filePath.split("\\\\");
-            StringBuilder path = new StringBuilder();
-            path.append(split[0]);
-            for(int i = 0; i < split.length; i++){
-                if(i == 0){
-                    Object invoke = method.invoke(instance, path.toString());
-                    //assert it is root dir
-                    assert invoke instanceof ISO9660RootDirectory;
-                } else {
-                    path.append(File.separator).append(split[i]);
-                    Object invoke = method.invoke(instance, path.toString());
-                    //assert it is not root dir
-                    assert !(invoke instanceof ISO9660RootDirectory);
-                    assert invoke instanceof ISO9660Directory;
-                    ISO9660Directory dir = (ISO9660Directory) invoke;
-                    //assert the name is correct of the parent directory
-                    assertEquals(dir.getName(),split[i-1]);
-                }
-            }
-        }
+        ISOArchiver archiver = new ISOArchiver(new ByteArrayOutputStream());
+        archiver.createEntry("file", new SimpleFileAttributes());
+    }
+
+    /**
+     * Test of createEntry method, of class ISOArchiver: a file can't be added twice.
+     */
+    @Test(expectedExceptions = IOException.class)
+    public void testCreateDuplicateEntry() throws Exception {
+        ISOArchiver archiver = new ISOArchiver(new ByteArrayOutputStream());
+        AbstractFile file = FileFactory.getFile(tempFile1.getPath());
+        archiver.createEntry("dir\\file", file);
+        archiver.createEntry("dir/file", file);
     }
 
     /**
@@ -0,0 +1,206 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.impl.adb;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import se.vidstige.jadb.JadbConnection;
+import se.vidstige.jadb.JadbDevice;
+import se.vidstige.jadb.JadbException;
+import se.vidstige.jadb.RemoteFile;
+import se.vidstige.jadb.server.AdbDeviceResponder;
+import se.vidstige.jadb.server.AdbResponder;
+import se.vidstige.jadb.server.AdbServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tests the streaming sync transfers of the ADB client against the stand-in ADB server.
+ *
+ * @author Oleg Trifonov
+ */
+public class AdbSyncTest {
+
+    private static final String SERIAL = "test-device";
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    private AdbServer server;
+    private JadbDevice device;
+
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new AdbServer(new Responder(), port);
+        server.start();
+        device = new JadbConnection("localhost", port).getDevices().get(0);
+    }
+
+    @AfterClass
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testPullStream() throws IOException, JadbException {
+        // several DATA chunks
+        byte[] data = randomBytes(200 * 1024 + 17);
+        files.put("/sdcard/video.mp4", data);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = device.pull(new RemoteFile("/sdcard/video.mp4"))) {
+            byte[] buffer = new byte[5000];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        Assert.assertEquals(out.toByteArray(), data);
+    }
+
+    @Test(expectedExceptions = JadbException.class)
+    public void testPullMissingFile() throws IOException, JadbException {
+        device.pull(new RemoteFile("/sdcard/missing"), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void testPush() throws IOException, JadbException {
+        byte[] data = randomBytes(150 * 1024 + 3);
+        device.push(new ByteArrayInputStream(data), 0, 0644, new RemoteFile("/sdcard/pushed.bin"));
+        Assert.assertEquals(files.get("/sdcard/pushed.bin"), data);
+
+        device.push(new ByteArrayInputStream(new byte[0]), 0, 0644, new RemoteFile("/sdcard/empty"));
+        Assert.assertEquals(files.get("/sdcard/empty").length, 0);
+    }
+
+    @Test
+    public void testList() throws IOException, JadbException {
+        List<RemoteFile> list = device.list("/sdcard");
+        Assert.assertEquals(list.size(), 2);
+        Assert.assertEquals(list.get(0).getPath(), "DCIM");
+        Assert.assertTrue(list.get(0).isDirectory());
+        Assert.assertEquals(list.get(1).getPath(), "notes.txt");
+        Assert.assertFalse(list.get(1).isDirectory());
+        Assert.assertEquals(list.get(1).getSize(), 42);
+    }
+
+
+    private class Responder implements AdbResponder {
+        @Override
+        public void onCommand(String command) {
+        }
+
+        @Override
+        public int getVersion() {
+            return 31;
+        }
+
+        @Override
+        public List<AdbDeviceResponder> getDevices() {
+            return Collections.singletonList(new DeviceResponder());
+        }
+    }
+
+    private class DeviceResponder implements AdbDeviceResponder {
+        @Override
+        public String getSerial() {
+            return SERIAL;
+        }
+
+        @Override
+        public String getType() {
+            return "device";
+        }
+
+        @Override
+        public void filePushed(RemoteFile path, int mode, ByteArrayOutputStream buffer) {
+            files.put(path.getPath(), buffer.toByteArray());
+        }
+
+        @Override
+        public void filePulled(RemoteFile path, ByteArrayOutputStream buffer) throws JadbException, IOException {
+            byte[] data = files.get(path.getPath());
+            if (data == null) {
+                throw new JadbException("No such file or directory");
+            }
+            buffer.write(data);
+        }
+
+        @Override
+        public List<RemoteFile> list(String path) {
+            List<RemoteFile> result = new ArrayList<>();
+            result.add(new TestRemoteFile("DCIM", true, 4096));
+            result.add(new TestRemoteFile("notes.txt", false, 42));
+            return result;
+        }
+
+        @Override
+        public void shell(String command, DataOutputStream stdout, DataInput stdin) {
+        }
+    }
+
+    private static class TestRemoteFile extends RemoteFile {
+        private final boolean directory;
+        private final int size;
+
+        TestRemoteFile(String path, boolean directory, int size) {
+            super(path);
+            this.directory = directory;
+            this.size = size;
+        }
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public long getLastModified() {
+            return 0;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+}
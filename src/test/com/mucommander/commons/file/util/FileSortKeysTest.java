@@ -0,0 +1,155 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.TestFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests that {@link FileSortKeys} sorts files in the same order as {@link FileComparator}.
+ *
+ * @author Oleg Trifonov
+ */
+public class FileSortKeysTest {
+
+    private static final int[] CRITERIA = {
+            FileComparator.NAME_CRITERION, FileComparator.SIZE_CRITERION,
+            FileComparator.DATE_CRITERION, FileComparator.EXTENSION_CRITERION
+    };
+
+    private static final String[] EXTENSIONS = {"", ".txt", ".jpg", ".tar.gz", ".e10", ".e9"};
+
+
+    private static AbstractFile createFile(String name, boolean directory, long size, long date) throws MalformedURLException {
+        return new TestFile(FileFactory.getTemporaryFolder() + name, directory, size, date, null);
+    }
+
+    /**
+     * Creates files with lower case names made of letters and numbers (so that the comparator is consistent),
+     * and few distinct sizes and dates, so that there are ties to break.
+     */
+    private static AbstractFile[] createFiles(int count, long seed) throws MalformedURLException {
+        Random random = new Random(seed);
+        AbstractFile[] files = new AbstractFile[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int nbTokens = 1 + random.nextInt(3);
+            for (int j = 0; j < nbTokens; j++) {
+                if (random.nextBoolean()) {
+                    name.append("ab_é".charAt(random.nextInt(4)));
+                } else {
+                    name.append(1 + random.nextInt(200));
+                }
+            }
+            name.append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+            boolean directory = random.nextInt(5) == 0;
+            long size = random.nextInt(10) == 0 ? -1 : random.nextInt(20);
+            files[i] = createFile(name.toString(), directory, size, random.nextInt(20) * 1000L);
+        }
+        return files;
+    }
+
+    private static int[] createIndexes(int count) {
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    private static void assertSameOrder(AbstractFile[] files, FileSortKeys keys, FileComparator comparator) {
+        AbstractFile[] expected = files.clone();
+        Arrays.sort(expected, comparator);
+
+        int[] indexes = createIndexes(files.length);
+        keys.sort(indexes, comparator);
+        for (int i = 0; i < files.length; i++) {
+            Assert.assertSame(files[indexes[i]], expected[i], "at " + i);
+        }
+    }
+
+    @Test
+    public void testSameOrderAsComparator() throws MalformedURLException {
+        AbstractFile[] files = createFiles(2000, 1);
+        // The same keys are reused for all the criteria
+        FileSortKeys keys = new FileSortKeys(files);
+        for (int criterion : CRITERIA) {
+            for (int flags = 0; flags < 8; flags++) {
+                assertSameOrder(files, keys, new FileComparator(criterion, (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSort() throws MalformedURLException {
+        AbstractFile[] files = createFiles(120000, 2);
+        FileSortKeys keys = new FileSortKeys(files);
+        assertSameOrder(files, keys, new FileComparator(FileComparator.NAME_CRITERION, true, true, false));
+        assertSameOrder(files, keys, new FileComparator(FileComparator.SIZE_CRITERION, false, true, true));
+    }
+
+    @Test
+    public void testNaturalOrder() throws MalformedURLException {
+        String[] names = {"a10", "b", "a2", "a1b", "a1", "10", "9", "a", "A"};
+        AbstractFile[] files = new AbstractFile[names.length];
+        for (int i = 0; i < names.length; i++) {
+            files[i] = createFile(names[i], false, 0, 0);
+        }
+        int[] indexes = createIndexes(files.length);
+        new FileSortKeys(files).sort(indexes, new FileComparator(FileComparator.NAME_CRITERION, true, true, false));
+
+        String[] sorted = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            sorted[i] = names[indexes[i]];
+        }
+        Assert.assertEquals(sorted, new String[] {"9", "10", "A", "a", "a1", "a1b", "a2", "a10", "b"});
+    }
+
+    @Test
+    public void testStability() throws MalformedURLException {
+        // Files of the same size with equal names (ignoring the case) keep their order when sorted by size
+        AbstractFile[] files = {
+                createFile("x", false, 1, 0), createFile("X", false, 1, 0), createFile("y", false, 0, 0),
+                createFile("x", false, 1, 0)
+        };
+        int[] indexes = createIndexes(files.length);
+        new FileSortKeys(files).sort(indexes, new FileComparator(FileComparator.SIZE_CRITERION, true, true, false));
+        Assert.assertEquals(indexes, new int[] {2, 0, 1, 3});
+    }
+
+    @Test
+    public void testInconsistentNames() throws MalformedURLException {
+        // A2 < a2 < a10 < A2: the order is not transitive, the sort must still return all the files
+        String[] names = {"a10", "A2", "a2", "A10", "a1", "A1"};
+        AbstractFile[] files = new AbstractFile[names.length * 20];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = createFile(names[i % names.length], false, 0, 0);
+        }
+        int[] indexes = createIndexes(files.length);
+        new FileSortKeys(files).sort(indexes, new FileComparator(FileComparator.NAME_CRITERION, true, true, false));
+        Arrays.sort(indexes);
+        Assert.assertEquals(indexes, createIndexes(files.length));
+    }
+}
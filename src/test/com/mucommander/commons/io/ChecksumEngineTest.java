@@ -0,0 +1,101 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import com.mucommander.commons.io.security.MuProvider;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Tests {@link ChecksumEngine} against the digests calculated directly.
+ */
+public class ChecksumEngineTest {
+
+    private static final String[] ALGORITHMS = {"MD5", "SHA-1", "SHA-256", "CRC32"};
+
+    static {
+        MuProvider.registerProvider();
+    }
+
+    private static MessageDigest[] createDigests() throws NoSuchAlgorithmException {
+        MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            digests[i] = MessageDigest.getInstance(ALGORITHMS[i]);
+        }
+        return digests;
+    }
+
+    private static void assertChecksums(int length) throws IOException, NoSuchAlgorithmException {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+
+        String[] checksums = ChecksumEngine.calculateChecksums(new ByteArrayInputStream(data), createDigests());
+        Assert.assertEquals(checksums.length, ALGORITHMS.length);
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            String expected = ByteUtils.toHexString(MessageDigest.getInstance(ALGORITHMS[i]).digest(data));
+            Assert.assertEquals(checksums[i], expected, ALGORITHMS[i] + " of " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void testChecksums() throws IOException, NoSuchAlgorithmException {
+        assertChecksums(0);
+        assertChecksums(1);
+        assertChecksums(ChecksumEngine.BLOCK_SIZE);
+        // more blocks than buffers
+        assertChecksums(9 * ChecksumEngine.BLOCK_SIZE + 17);
+    }
+
+    @Test
+    public void testShortReads() throws IOException, NoSuchAlgorithmException {
+        byte[] data = new byte[3 * ChecksumEngine.BLOCK_SIZE + 5];
+        new Random(1).nextBytes(data);
+        // returns at most 1000 bytes at a time
+        InputStream in = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+        String[] checksums = ChecksumEngine.calculateChecksums(in, MessageDigest.getInstance("SHA-256"));
+        Assert.assertEquals(checksums[0], ByteUtils.toHexString(MessageDigest.getInstance("SHA-256").digest(data)));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testReadError() throws IOException, NoSuchAlgorithmException {
+        InputStream in = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (++count > 2 * ChecksumEngine.BLOCK_SIZE) {
+                    throw new IOException("read error");
+                }
+                return 0;
+            }
+        };
+        ChecksumEngine.calculateChecksums(in, createDigests());
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.commons.io;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Tests {@link StreamUtils#copyStreamPipelined(InputStream, OutputStream, int, long)}.
+ */
+public class StreamUtilsPipelinedCopyTest {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Returns a stream that returns at most the given number of bytes per read.
+     */
+    private static InputStream createShortReadsStream(byte[] data, int maxRead) {
+        return new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, maxRead));
+            }
+        };
+    }
+
+    @Test
+    public void testCopy() throws IOException {
+        for (int length : new int[] {0, 1, BUFFER_SIZE, 300 * BUFFER_SIZE + 7}) {
+            byte[] data = randomBytes(length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long copied = StreamUtils.copyStreamPipelined(createShortReadsStream(data, 1000), out, BUFFER_SIZE, Long.MAX_VALUE);
+            Assert.assertEquals(copied, length);
+            Assert.assertEquals(out.toByteArray(), data);
+        }
+    }
+
+    @Test
+    public void testLength() throws IOException {
+        byte[] data = randomBytes(10 * BUFFER_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new ByteArrayInputStream(data);
+        long copied = StreamUtils.copyStreamPipelined(in, out, BUFFER_SIZE, 3 * BUFFER_SIZE + 5);
+        Assert.assertEquals(copied, 3 * BUFFER_SIZE + 5);
+        // Nothing has been read beyond the requested length
+        Assert.assertEquals(in.available(), data.length - copied);
+    }
+
+    @Test
+    public void testReadAheadIsBounded() throws IOException {
+        byte[] data = randomBytes(4 * StreamUtils.MAX_PIPELINED_READ_AHEAD);
+        CounterInputStream in = new CounterInputStream(new ByteArrayInputStream(data));
+        long[] maxReadAhead = new long[1];
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                super.write(b, off, len);
+                maxReadAhead[0] = Math.max(maxReadAhead[0], in.getCounter().getByteCount() - size());
+            }
+        };
+        StreamUtils.copyStreamPipelined(in, out, BUFFER_SIZE, Long.MAX_VALUE);
+        Assert.assertTrue(maxReadAhead[0] <= StreamUtils.MAX_PIPELINED_READ_AHEAD, "read ahead " + maxReadAhead[0]);
+    }
+
+    @Test
+    public void testReadError() {
+        InputStream in = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (++count > 5 * BUFFER_SIZE) {
+                    throw new IOException("read error");
+                }
+                return 0;
+            }
+        };
+        try {
+            StreamUtils.copyStreamPipelined(in, new ByteArrayOutputStream(), BUFFER_SIZE, Long.MAX_VALUE);
+            Assert.fail();
+        } catch (FileTransferException e) {
+            Assert.assertEquals(e.getReason(), FileTransferException.READING_SOURCE);
+        }
+    }
+
+    @Test
+    public void testReadRuntimeException() {
+        InputStream in = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() {
+                if (++count > 5 * BUFFER_SIZE) {
+                    throw new IllegalStateException("read failure");
+                }
+                return 0;
+            }
+        };
+        try {
+            StreamUtils.copyStreamPipelined(in, new ByteArrayOutputStream(), BUFFER_SIZE, Long.MAX_VALUE);
+            Assert.fail();
+        } catch (FileTransferException e) {
+            Assert.assertEquals(e.getReason(), FileTransferException.READING_SOURCE);
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testWriteError() {
+        byte[] data = randomBytes(400 * BUFFER_SIZE);
+        OutputStream out = new OutputStream() {
+            private long count;
+
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (count >= 2 * BUFFER_SIZE) {
+                    throw new IOException("write error");
+                }
+                count += len;
+            }
+        };
+        try {
+            StreamUtils.copyStreamPipelined(new ByteArrayInputStream(data), out, BUFFER_SIZE, Long.MAX_VALUE);
+            Assert.fail();
+        } catch (FileTransferException e) {
+            Assert.assertEquals(e.getReason(), FileTransferException.WRITING_DESTINATION);
+            Assert.assertEquals(e.getBytesWritten(), 2 * BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.conf;
+
+import com.mucommander.commons.conf.ConfigurationListener;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the typed preference handles follow the changes of the configuration.
+ *
+ * @author Oleg Trifonov
+ */
+public class TcPreferenceHandleTest {
+
+    @AfterMethod
+    public void tearDown() {
+        TcConfigurations.getPreferences().removeVariable(TcPreferences.SHOW_FOLDERS_FIRST);
+        TcConfigurations.getPreferences().removeVariable(TcPreferences.QUICK_SEARCH_TIMEOUT);
+    }
+
+    @Test
+    public void testDefaultValues() {
+        TcConfigurations.getPreferences().removeVariable(TcPreferences.SHOW_FOLDERS_FIRST);
+        Assert.assertEquals(TcPreferences.SHOW_FOLDERS_FIRST_VALUE.get(), TcPreferences.DEFAULT_SHOW_FOLDERS_FIRST);
+        Assert.assertEquals(TcPreferences.QUICK_SEARCH_TIMEOUT_VALUE.get(), TcPreferences.DEFAULT_QUICK_SEARCH_TIMEOUT);
+    }
+
+    @Test
+    public void testSetVariable() {
+        TcConfigurations.getPreferences().setVariable(TcPreference.SHOW_FOLDERS_FIRST, !TcPreferences.DEFAULT_SHOW_FOLDERS_FIRST);
+        Assert.assertEquals(TcPreferences.SHOW_FOLDERS_FIRST_VALUE.get(), !TcPreferences.DEFAULT_SHOW_FOLDERS_FIRST);
+
+        TcConfigurations.getPreferences().setVariable(TcPreference.QUICK_SEARCH_TIMEOUT, 1234);
+        Assert.assertEquals(TcPreferences.QUICK_SEARCH_TIMEOUT_VALUE.get(), 1234);
+
+        // Removed variables fall back to the default value
+        TcConfigurations.getPreferences().removeVariable(TcPreferences.QUICK_SEARCH_TIMEOUT);
+        Assert.assertEquals(TcPreferences.QUICK_SEARCH_TIMEOUT_VALUE.get(), TcPreferences.DEFAULT_QUICK_SEARCH_TIMEOUT);
+
+        // So do invalid ones
+        TcConfigurations.getPreferences().setVariable(TcPreference.QUICK_SEARCH_TIMEOUT, "soon");
+        Assert.assertEquals(TcPreferences.QUICK_SEARCH_TIMEOUT_VALUE.get(), TcPreferences.DEFAULT_QUICK_SEARCH_TIMEOUT);
+    }
+
+    @Test
+    public void testListenersSeeNewValue() {
+        boolean newValue = !TcPreferences.SHOW_FOLDERS_FIRST_VALUE.get();
+        boolean[] seen = new boolean[2];
+        ConfigurationListener listener = event -> {
+            if (event.getVariable().equals(TcPreferences.SHOW_FOLDERS_FIRST)) {
+                seen[0] = true;
+                seen[1] = TcPreferences.SHOW_FOLDERS_FIRST_VALUE.get();
+            }
+        };
+        TcConfigurations.addPreferencesListener(listener);
+        try {
+            TcConfigurations.getPreferences().setVariable(TcPreference.SHOW_FOLDERS_FIRST, newValue);
+        } finally {
+            TcConfigurations.removePreferencesListener(listener);
+        }
+        Assert.assertTrue(seen[0]);
+        Assert.assertEquals(seen[1], newValue);
+    }
+}
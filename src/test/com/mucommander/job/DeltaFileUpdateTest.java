@@ -0,0 +1,152 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests {@link DeltaFileUpdate}.
+ */
+public class DeltaFileUpdateTest {
+
+    /**
+     * In-memory destination that keeps track of the number of bytes written.
+     */
+    private static class MemoryRandomAccessOutputStream extends RandomAccessOutputStream {
+        private byte[] data;
+        private int length;
+        private int offset;
+
+        MemoryRandomAccessOutputStream(byte[] content) {
+            data = content.clone();
+            length = content.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (offset + len > data.length) {
+                data = Arrays.copyOf(data, offset + len);
+            }
+            System.arraycopy(b, off, data, offset, len);
+            offset += len;
+            length = Math.max(length, offset);
+        }
+
+        @Override
+        public void setLength(long newLength) {
+            data = Arrays.copyOf(data, (int)newLength);
+            length = (int)newLength;
+            offset = Math.min(offset, length);
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void seek(long offset) {
+            this.offset = (int)offset;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static long update(byte[] source, byte[] dest, MemoryRandomAccessOutputStream out) throws Exception {
+        return DeltaFileUpdate.update(new ByteArrayInputStream(source), new ByteArrayInputStream(dest), out);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Only the block that contains the modified byte must be rewritten.
+     */
+    @Test
+    public void testModifiedBlock() throws Exception {
+        int blockSize = DeltaFileUpdate.BLOCK_SIZE;
+        byte[] dest = randomBytes(blockSize * 10 + 123, 1);
+        byte[] source = dest.clone();
+        source[blockSize * 4 + 17] ^= 1;
+
+        MemoryRandomAccessOutputStream out = new MemoryRandomAccessOutputStream(dest);
+        Assert.assertEquals(update(source, dest, out), blockSize);
+        Assert.assertEquals(out.toByteArray(), source);
+    }
+
+    /**
+     * A shorter source truncates the destination without rewriting anything, a longer one writes only the new tail.
+     */
+    @Test
+    public void testDifferentLengths() throws Exception {
+        byte[] dest = randomBytes(DeltaFileUpdate.BLOCK_SIZE * 3, 2);
+
+        byte[] shorter = Arrays.copyOf(dest, DeltaFileUpdate.BLOCK_SIZE * 2);
+        MemoryRandomAccessOutputStream out = new MemoryRandomAccessOutputStream(dest);
+        Assert.assertEquals(update(shorter, dest, out), 0);
+        Assert.assertEquals(out.toByteArray(), shorter);
+
+        byte[] longer = Arrays.copyOf(dest, dest.length + 1000);
+        out = new MemoryRandomAccessOutputStream(dest);
+        Assert.assertEquals(update(longer, dest, out), 1000);
+        Assert.assertEquals(out.toByteArray(), longer);
+    }
+
+    /**
+     * Updating an unrelated destination must produce an exact copy of the source.
+     */
+    @Test
+    public void testUnrelatedContent() throws Exception {
+        byte[] dest = randomBytes(100000, 3);
+        byte[] source = randomBytes(250000, 4);
+
+        MemoryRandomAccessOutputStream out = new MemoryRandomAccessOutputStream(dest);
+        Assert.assertEquals(update(source, dest, out), source.length);
+        Assert.assertEquals(out.toByteArray(), source);
+    }
+}
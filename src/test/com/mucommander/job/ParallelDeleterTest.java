@@ -0,0 +1,118 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests {@link ParallelDeleter} on local temporary folders.
+ */
+public class ParallelDeleterTest {
+
+    private AbstractFile folder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        if (folder.exists()) {
+            folder.deleteRecursively();
+        }
+    }
+
+    private static void createFile(AbstractFile folder, String path) throws IOException {
+        try (OutputStream out = folder.getChild(path).getOutputStream()) {
+            out.write(1);
+        }
+    }
+
+    @Test
+    public void testDeleteTree() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            folder.getChild("dir" + i).mkdir();
+            folder.getChild("dir" + i + "/sub").mkdir();
+            for (int j = 0; j < 20; j++) {
+                createFile(folder, "dir" + i + "/sub/file" + j);
+            }
+        }
+        createFile(folder, "top");
+
+        AtomicInteger started = new AtomicInteger();
+        ParallelDeleter deleter = new ParallelDeleter(new ParallelDeleter.Listener() {
+            @Override
+            public boolean fileStarted(String name) {
+                started.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            public boolean errorOccurred(String messageKey, String name) {
+                Assert.fail(messageKey + " " + name);
+                return false;
+            }
+        });
+        try {
+            Assert.assertTrue(deleter.delete(folder));
+        } finally {
+            deleter.shutdown();
+        }
+
+        Assert.assertFalse(folder.exists());
+        // the folder itself, 10 folders with a subfolder each, 200 files and the top file
+        Assert.assertEquals(started.get(), 1 + 20 + 200 + 1);
+    }
+
+    @Test
+    public void testInterrupted() throws IOException {
+        folder.getChild("dir").mkdir();
+        createFile(folder, "dir/file");
+
+        ParallelDeleter deleter = new ParallelDeleter(new ParallelDeleter.Listener() {
+            @Override
+            public boolean fileStarted(String name) {
+                return !"file".equals(name);
+            }
+
+            @Override
+            public boolean errorOccurred(String messageKey, String name) {
+                return false;
+            }
+        });
+        try {
+            Assert.assertFalse(deleter.delete(folder));
+        } finally {
+            deleter.shutdown();
+        }
+
+        // the skipped file and its parents are left in place
+        Assert.assertTrue(folder.getChild("dir/file").exists());
+    }
+}
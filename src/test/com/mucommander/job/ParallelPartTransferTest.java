@@ -0,0 +1,125 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.ByteCounter;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Tests {@link ParallelPartTransfer} on local temporary files.
+ */
+public class ParallelPartTransferTest {
+
+    private AbstractFile folder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = FileFactory.getTemporaryFile(getClass().getName(), true);
+        folder.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        folder.deleteRecursively();
+    }
+
+    private static long crc(byte data[], int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Combining the CRCs of two blocks must yield the CRC of their concatenation, whatever the split point.
+     */
+    @Test
+    public void testCombineCRC32() {
+        byte data[] = new byte[200000];
+        new Random(42).nextBytes(data);
+        long whole = crc(data, 0, data.length);
+
+        for (int split : new int[] {0, 1, 7, 8, 65536, 100000, data.length - 1, data.length}) {
+            long first = crc(data, 0, split);
+            long second = crc(data, split, data.length - split);
+            Assert.assertEquals(ParallelPartTransfer.combineCRC32(first, second, data.length - split), whole,
+                    "split at " + split);
+        }
+    }
+
+    /**
+     * Splitting a file into parts and combining them must restore the file, and both passes must yield its CRC.
+     */
+    @Test
+    public void testSplitAndCombine() throws Exception {
+        byte data[] = new byte[3 * 1024 * 1024 + 12345];
+        new Random(7).nextBytes(data);
+        AbstractFile source = folder.getChild("source.bin");
+        try (OutputStream out = source.getOutputStream()) {
+            out.write(data);
+        }
+        long partSize = 700 * 1024;
+        int nbParts = (int)((data.length + partSize - 1) / partSize);
+
+        ByteCounter counter = new ByteCounter();
+        ParallelPartTransfer split = ParallelPartTransfer.forSplit(source, counter);
+        AbstractFile parts[] = new AbstractFile[nbParts];
+        try {
+            for (int i = 0; i < nbParts; i++) {
+                parts[i] = folder.getChild("source.bin." + i);
+                split.split(parts[i], i * partSize, Math.min(partSize, data.length - i * partSize));
+            }
+            Assert.assertEquals(split.await(), crc(data, 0, data.length));
+        } finally {
+            split.close();
+        }
+        Assert.assertEquals(counter.getByteCount(), data.length);
+        Assert.assertEquals(parts[nbParts - 1].getSize(), data.length - (nbParts - 1) * partSize);
+
+        AbstractFile dest = folder.getChild("combined.bin");
+        ParallelPartTransfer combine = ParallelPartTransfer.forCombine(dest, data.length, new ByteCounter());
+        try {
+            long offset = 0;
+            for (AbstractFile part : parts) {
+                combine.combine(part, offset, part.getSize());
+                offset += part.getSize();
+            }
+            Assert.assertEquals(combine.await(), crc(data, 0, data.length));
+        } finally {
+            combine.close();
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = dest.getInputStream()) {
+            StreamUtils.copyStream(in, result);
+        }
+        Assert.assertEquals(result.toByteArray(), data);
+    }
+}
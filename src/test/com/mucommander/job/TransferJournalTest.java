@@ -0,0 +1,67 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+import java.util.zip.Adler32;
+
+/**
+ * Tests the checksum arithmetic and the expiry of the entries of {@link TransferJournal}.
+ */
+public class TransferJournalTest {
+
+    /**
+     * Combining the checksums of two blocks must yield the checksum of their concatenation, whatever the split point.
+     */
+    @Test
+    public void testCombineAdler32() {
+        byte data[] = new byte[200000];
+        new Random(42).nextBytes(data);
+
+        Adler32 whole = new Adler32();
+        whole.update(data, 0, data.length);
+
+        for (int split : new int[] {0, 1, 65520, 65521, 65522, 100000, data.length}) {
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+
+            Assert.assertEquals(TransferJournal.combineAdler32(first.getValue(), second.getValue(), data.length - split),
+                    whole.getValue(), "split at " + split);
+        }
+    }
+
+    @Test
+    public void testStaleEntries() {
+        long now = 1500000000000L;
+        long updateTime = now - 60 * 60 * 1000;
+        TransferJournal.Entry entry = new TransferJournal.Entry("file:///a", "file:///b", 100, 1, 50, 1, updateTime);
+
+        // Destination last written around the interruption
+        Assert.assertFalse(TransferJournal.isStale(entry, updateTime + 1000, now));
+        Assert.assertFalse(TransferJournal.isStale(entry, updateTime - 1000, now));
+        // Destination modified after the interruption
+        Assert.assertTrue(TransferJournal.isStale(entry, updateTime + TransferJournal.DESTINATION_DATE_TOLERANCE + 1, now));
+        // Interrupted too long ago
+        Assert.assertTrue(TransferJournal.isStale(entry, updateTime, updateTime + TransferJournal.MAX_ENTRY_AGE + 1));
+    }
+}
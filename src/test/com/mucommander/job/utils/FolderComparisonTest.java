@@ -0,0 +1,152 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.job.utils;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests {@link FolderComparison} on local temporary folders.
+ */
+public class FolderComparisonTest {
+
+    private AbstractFile left;
+    private AbstractFile right;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        left = FileFactory.getTemporaryFile(getClass().getName() + "-left", true);
+        right = FileFactory.getTemporaryFile(getClass().getName() + "-right", true);
+        left.mkdir();
+        right.mkdir();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        left.deleteRecursively();
+        right.deleteRecursively();
+    }
+
+    private static AbstractFile createFile(AbstractFile folder, String path, String content, long date) throws IOException {
+        AbstractFile file = folder.getChild(path);
+        try (OutputStream out = file.getOutputStream()) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        file.setLastModifiedDate(date);
+        return file;
+    }
+
+    private Map<String, FolderComparison.Status> compare(boolean compareContent) throws IOException {
+        FolderComparison comparison = new FolderComparison(left, right);
+        comparison.setCompareContent(compareContent);
+        List<FolderComparison.Difference> differences = comparison.compare();
+        Map<String, FolderComparison.Status> result = new HashMap<>();
+        for (FolderComparison.Difference difference : differences) {
+            result.put(difference.getPath(), difference.getStatus());
+        }
+        return result;
+    }
+
+    @Test
+    public void testClassification() throws IOException {
+        long date = 1400000000000L;
+        createFile(left, "same.txt", "same", date);
+        createFile(right, "same.txt", "same", date);
+        createFile(left, "newer.txt", "new", date + 60000);
+        createFile(right, "newer.txt", "old", date);
+        createFile(left, "older.txt", "old", date);
+        createFile(right, "older.txt", "new", date + 60000);
+        createFile(left, "size.txt", "longer", date);
+        createFile(right, "size.txt", "short", date);
+        createFile(left, "content.txt", "abcd", date);
+        createFile(right, "content.txt", "abce", date);
+        createFile(left, "left.txt", "left", date);
+        left.getChild("leftdir").mkdir();
+        createFile(left, "leftdir/child.txt", "child", date);
+        createFile(right, "right.txt", "right", date);
+        right.getChild("common").mkdir();
+        left.getChild("common").mkdir();
+        createFile(right, "common/sub.txt", "sub", date);
+
+        Map<String, FolderComparison.Status> differences = compare(false);
+        Assert.assertEquals(differences.get("newer.txt"), FolderComparison.Status.LEFT_NEWER);
+        Assert.assertEquals(differences.get("older.txt"), FolderComparison.Status.RIGHT_NEWER);
+        Assert.assertEquals(differences.get("size.txt"), FolderComparison.Status.DIFFERENT);
+        Assert.assertEquals(differences.get("left.txt"), FolderComparison.Status.LEFT_ONLY);
+        Assert.assertEquals(differences.get("leftdir"), FolderComparison.Status.LEFT_ONLY);
+        Assert.assertEquals(differences.get("leftdir/child.txt"), FolderComparison.Status.LEFT_ONLY);
+        Assert.assertEquals(differences.get("right.txt"), FolderComparison.Status.RIGHT_ONLY);
+        Assert.assertEquals(differences.get("common/sub.txt"), FolderComparison.Status.RIGHT_ONLY);
+        Assert.assertFalse(differences.containsKey("same.txt"));
+        Assert.assertFalse(differences.containsKey("content.txt"));
+        Assert.assertFalse(differences.containsKey("common"));
+
+        differences = compare(true);
+        Assert.assertEquals(differences.get("content.txt"), FolderComparison.Status.DIFFERENT);
+        Assert.assertFalse(differences.containsKey("same.txt"));
+    }
+
+    @Test
+    public void testSymlinksAreCounted() throws IOException {
+        long date = 1400000000000L;
+        createFile(left, "target.txt", "target", date);
+        createFile(right, "target.txt", "target", date);
+        try {
+            Files.createSymbolicLink(Paths.get(left.getAbsolutePath(), "link"), Paths.get("target.txt"));
+            Files.createSymbolicLink(Paths.get(right.getAbsolutePath(), "other-link"), Paths.get("target.txt"));
+        } catch (UnsupportedOperationException | IOException e) {
+            throw new SkipException("Symbolic links are not supported", e);
+        }
+
+        FolderComparison comparison = new FolderComparison(left, right);
+        Assert.assertTrue(comparison.compare().isEmpty());
+        Assert.assertEquals(comparison.getNbSkippedSymlinks(), 2);
+    }
+
+    @Test
+    public void testFolderBeforeContents() throws IOException {
+        left.getChild("a").mkdir();
+        left.getChild("a/b").mkdir();
+        createFile(left, "a/b/c.txt", "c", 1400000000000L);
+        createFile(left, "a-b", "x", 1400000000000L);
+
+        List<FolderComparison.Difference> differences = new FolderComparison(left, right).compare();
+        int indexA = -1, indexB = -1, indexC = -1;
+        for (int i = 0; i < differences.size(); i++) {
+            switch (differences.get(i).getPath()) {
+                case "a": indexA = i; break;
+                case "a/b": indexB = i; break;
+                case "a/b/c.txt": indexC = i; break;
+            }
+        }
+        Assert.assertTrue(indexA >= 0 && indexA < indexB && indexB < indexC);
+    }
+}
@@ -195,6 +195,36 @@ public class BatchRenameTest {
 
     }
 
+    @Test
+    public void testGeneratorChunks() {
+        NameGenerator generator = new NameGenerator("[N]_[C]", 1, 1, 2, "ABC", "x", false, 1);
+        AbstractFile[] files = {abcdef, abcdef_ghi, abcdef_ghi_jkl, _abcdef, abcdef};
+        boolean[] blocked = {false, true, false, false, false};
+
+        String[] whole = new String[files.length];
+        generator.generate(files, blocked, whole, 0, files.length, 0);
+        assert "abcdef_01".equals(whole[0]);
+        assert whole[1] == null;
+        assert "abcdef.ghi_02".equals(whole[2]);
+
+        // the counter of a chunk starts after the files which are not blocked in the previous chunks
+        String[] chunks = new String[files.length];
+        generator.generate(files, blocked, chunks, 0, 3, 0);
+        generator.generate(files, blocked, chunks, 3, 5, 2);
+        assert java.util.Arrays.equals(whole, chunks);
+        assert "abcdef_04".equals(generator.generate(abcdef, 3));
+    }
+
+    @Test
+    public void testGeneratorRegExp() {
+        NameGenerator generator = new NameGenerator("[N]", 1, 1, 1, "b(c)d", "-$1-", true, 0);
+        assert "a-c-ef".equals(generator.generate(abcdef, 0));
+
+        // invalid expressions leave the name unchanged
+        generator = new NameGenerator("[N]", 1, 1, 1, "b(", "x", true, 0);
+        assert "abcdef".equals(generator.generate(abcdef, 0));
+    }
+
     @Test
     public void testDate() {
         DateToken full = new DateToken("YMDhms");
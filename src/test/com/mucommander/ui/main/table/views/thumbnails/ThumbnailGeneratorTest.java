@@ -0,0 +1,135 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.main.table.views.thumbnails;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Tests {@link ThumbnailGenerator} on images created in memory.
+ */
+public class ThumbnailGeneratorTest {
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a JPEG image with an EXIF segment holding the given thumbnail.
+     */
+    private static byte[] createJpegWithExifThumbnail(BufferedImage image, BufferedImage thumbnail) throws IOException {
+        byte[] jpeg = encode(image, "jpg");
+        byte[] thumbnailJpeg = encode(thumbnail, "jpg");
+
+        ByteArrayOutputStream tiffBytes = new ByteArrayOutputStream();
+        DataOutputStream tiff = new DataOutputStream(tiffBytes);
+        tiff.writeBytes("MM");
+        tiff.writeShort(42);
+        tiff.writeInt(8);       // IFD0
+        tiff.writeShort(0);     // no IFD0 entry
+        tiff.writeInt(14);      // IFD1
+        tiff.writeShort(2);
+        tiff.writeShort(0x0201);
+        tiff.writeShort(4);
+        tiff.writeInt(1);
+        tiff.writeInt(44);      // thumbnail offset, right after IFD1
+        tiff.writeShort(0x0202);
+        tiff.writeShort(4);
+        tiff.writeInt(1);
+        tiff.writeInt(thumbnailJpeg.length);
+        tiff.writeInt(0);       // no next IFD
+        tiff.write(thumbnailJpeg);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeShort(0xFFD8);
+        out.writeShort(0xFFE1);
+        out.writeShort(2 + 6 + tiffBytes.size());
+        out.writeBytes("Exif");
+        out.writeShort(0);
+        out.write(tiffBytes.toByteArray());
+        // The rest of the image, after its SOI marker
+        out.write(jpeg, 2, jpeg.length - 2);
+        return result.toByteArray();
+    }
+
+    private static ImageInputStream createStream(byte[] data) throws IOException {
+        return ImageIO.createImageInputStream(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void testExifThumbnail() throws IOException {
+        byte[] jpeg = createJpegWithExifThumbnail(new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(160, 120, BufferedImage.TYPE_INT_RGB));
+
+        try (ImageInputStream iis = createStream(jpeg)) {
+            BufferedImage exifThumbnail = ThumbnailGenerator.readExifThumbnail(iis, 96);
+            Assert.assertNotNull(exifThumbnail);
+            Assert.assertEquals(exifThumbnail.getWidth(), 160);
+            Assert.assertEquals(exifThumbnail.getHeight(), 120);
+        }
+        try (ImageInputStream iis = createStream(jpeg)) {
+            Assert.assertNull(ThumbnailGenerator.readExifThumbnail(iis, 200));
+        }
+        try (ImageInputStream iis = createStream(jpeg)) {
+            BufferedImage thumbnail = ThumbnailGenerator.createThumbnail(iis, 96);
+            Assert.assertEquals(thumbnail.getWidth(), 96);
+            Assert.assertEquals(thumbnail.getHeight(), 72);
+        }
+        // The EXIF thumbnail is too small, the image itself is decoded
+        try (ImageInputStream iis = createStream(jpeg)) {
+            BufferedImage thumbnail = ThumbnailGenerator.createThumbnail(iis, 256);
+            Assert.assertEquals(thumbnail.getWidth(), 256);
+            Assert.assertEquals(thumbnail.getHeight(), 192);
+        }
+    }
+
+    @Test
+    public void testSubsampledThumbnail() throws IOException {
+        byte[] png = encode(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_ARGB), "png");
+        try (ImageInputStream iis = createStream(png)) {
+            Assert.assertNull(ThumbnailGenerator.readExifThumbnail(iis, 96));
+        }
+        try (ImageInputStream iis = createStream(png)) {
+            BufferedImage thumbnail = ThumbnailGenerator.createThumbnail(iis, 96);
+            Assert.assertEquals(thumbnail.getWidth(), 96);
+            Assert.assertEquals(thumbnail.getHeight(), 48);
+            Assert.assertTrue(thumbnail.getColorModel().hasAlpha());
+        }
+    }
+
+    @Test
+    public void testSmallImage() throws IOException {
+        byte[] png = encode(new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB), "png");
+        try (ImageInputStream iis = createStream(png)) {
+            BufferedImage thumbnail = ThumbnailGenerator.createThumbnail(iis, 96);
+            Assert.assertEquals(thumbnail.getWidth(), 40);
+            Assert.assertEquals(thumbnail.getHeight(), 30);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.quicksearch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests {@link QuickSearchIndex}.
+ *
+ * @author Oleg Trifonov
+ */
+public class QuickSearchIndexTest {
+
+    private static final String[] ITEMS = {"..", "Readme.txt", "build.xml", "readme.md", "src", "BuildConfig.java", "docs"};
+
+    private static QuickSearchIndex createIndex(boolean fuzzy) {
+        QuickSearchIndex index = new QuickSearchIndex();
+        index.setFuzzy(fuzzy);
+        index.build(ITEMS.length, i -> ITEMS[i]);
+        return index;
+    }
+
+    @Test
+    public void testIncrementalMatches() {
+        QuickSearchIndex index = createIndex(false);
+        Assert.assertTrue(index.matches("src"));
+
+        index.update("r");
+        Assert.assertTrue(index.matches("Readme.txt"));
+        Assert.assertTrue(index.matches("src"));
+        Assert.assertFalse(index.matches("docs"));
+
+        index.update("re");
+        Assert.assertTrue(index.matches("readme.md"));
+        Assert.assertFalse(index.matches("src"));
+
+        index.update("rea");
+        Assert.assertTrue(index.matches("Readme.txt"));
+        Assert.assertFalse(index.matches("build.xml"));
+
+        // Back to a shorter search string
+        index.update("r");
+        Assert.assertTrue(index.matches("src"));
+        Assert.assertFalse(index.matches("docs"));
+
+        // A search string that doesn't extend the previous one
+        index.update("bu");
+        Assert.assertTrue(index.matches("BuildConfig.java"));
+        Assert.assertFalse(index.matches("Readme.txt"));
+
+        // Items that were not indexed are tested directly
+        Assert.assertTrue(index.matches("rebuild"));
+        Assert.assertFalse(index.matches("other"));
+    }
+
+    @Test
+    public void testRank() {
+        QuickSearchIndex index = createIndex(false);
+        index.update("Read");
+        Assert.assertEquals(index.getMatchType("Readme.txt"), QuickSearchIndex.STARTS_WITH_CASE);
+        Assert.assertEquals(index.getMatchType("readme.md"), QuickSearchIndex.STARTS_WITH);
+        Assert.assertEquals(index.getMatchType("src"), QuickSearchIndex.NO_MATCH);
+        Assert.assertEquals(index.getRank("Readme.txt"), 0);
+        Assert.assertTrue(index.getRank("readme.md") < index.getRank("src"));
+
+        index.update("uild");
+        Assert.assertEquals(index.getMatchType("build.xml"), QuickSearchIndex.CONTAINS_CASE);
+        index.update("UILD");
+        Assert.assertEquals(index.getMatchType("build.xml"), QuickSearchIndex.CONTAINS);
+    }
+
+    @Test
+    public void testFuzzy() {
+        QuickSearchIndex index = createIndex(false);
+        index.update("bcj");
+        Assert.assertFalse(index.matches("BuildConfig.java"));
+
+        index = createIndex(true);
+        index.update("bcj");
+        Assert.assertTrue(index.matches("BuildConfig.java"));
+        Assert.assertFalse(index.matches("build.xml"));
+        Assert.assertEquals(index.getMatchType("BuildConfig.java"), QuickSearchIndex.SUBSEQUENCE);
+
+        // Substring matches come first, then compact and word-start subsequences
+        index.update("bui");
+        Assert.assertTrue(index.getRank("build.xml") < index.getRank("BuildConfig.java"));
+        Assert.assertTrue(QuickSearchIndex.getSubsequenceScore("read.me", "rm") > QuickSearchIndex.getSubsequenceScore("xxxrxxxxxm", "rm"));
+        Assert.assertEquals(QuickSearchIndex.getSubsequenceScore("abc", "abd"), -1);
+    }
+
+    @Test
+    public void testInvalidate() {
+        QuickSearchIndex index = createIndex(false);
+        index.update("src");
+        Assert.assertFalse(index.matches("docs"));
+        index.invalidate();
+        Assert.assertFalse(index.isBuilt(ITEMS.length));
+        Assert.assertTrue(index.matches("src2"));
+        index.build(2, i -> i == 0 ? "src" : "docs");
+        Assert.assertTrue(index.isBuilt(2));
+        Assert.assertTrue(index.matches("src"));
+        Assert.assertFalse(index.matches("docs"));
+    }
+}
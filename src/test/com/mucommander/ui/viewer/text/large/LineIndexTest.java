@@ -0,0 +1,155 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.text.large;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Tests {@link LineIndex} on temporary files.
+ */
+public class LineIndexTest {
+
+    private static final int LINES = 3 * LineIndex.LINES_PER_CHECKPOINT + 10;
+
+    private File file;
+    private ByteSource source;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        file = File.createTempFile(getClass().getName(), ".txt");
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        if (source != null) {
+            source.close();
+            source = null;
+        }
+        file.delete();
+    }
+
+    private LineIndex createIndex(String text, String encoding, byte[] bom) throws IOException {
+        return createIndex(text, encoding, bom, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates an index of a source returning at most <code>maxRead</code> bytes per read.
+     */
+    private LineIndex createIndex(String text, String encoding, byte[] bom, int maxRead) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            if (bom != null) {
+                out.write(bom);
+            }
+            out.write(text.getBytes(encoding));
+        }
+        source = new ByteSource.MappedFileSource(file);
+        ByteSource mappedSource = source;
+        ByteSource shortReadsSource = new ByteSource() {
+            @Override
+            public long getLength() {
+                return mappedSource.getLength();
+            }
+
+            @Override
+            public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+                return mappedSource.read(position, buffer, offset, Math.min(length, maxRead));
+            }
+
+            @Override
+            public void close() throws IOException {
+                mappedSource.close();
+            }
+        };
+        LineIndex index = new LineIndex(shortReadsSource, Charset.forName(encoding));
+        index.build();
+        return index;
+    }
+
+    private static String createText() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            sb.append("line ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        return sb.append("last").toString();
+    }
+
+    private void checkLines(LineIndex index) throws IOException {
+        Assert.assertTrue(index.isComplete());
+        Assert.assertEquals(index.getLineCount(), LINES + 1);
+        List<String> lines = index.readLines(LineIndex.LINES_PER_CHECKPOINT - 2, 5);
+        Assert.assertEquals(lines.size(), 5);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(lines.get(i), "line " + (LineIndex.LINES_PER_CHECKPOINT - 2 + i));
+        }
+        lines = index.readLines(LINES - 1, 10);
+        Assert.assertEquals(lines.size(), 2);
+        Assert.assertEquals(lines.get(1), "last");
+        Assert.assertEquals(index.getLineOffset(LINES + 1), -1);
+    }
+
+    @Test
+    public void testUtf8() throws IOException {
+        LineIndex index = createIndex(createText(), "UTF-8", null);
+        checkLines(index);
+        Assert.assertEquals(index.getLineOffset(1), "line 0\n".length());
+
+        long offset = index.find("line 700".getBytes("UTF-8"), 0, true);
+        Assert.assertEquals(index.getLineAt(offset), 700);
+        Assert.assertEquals(index.find("line 700".getBytes("UTF-8"), offset + 1, true), -1);
+        Assert.assertEquals(index.find("line 7".getBytes("UTF-8"), index.getLength(), false), index.getLineOffset(LINES - 1));
+        Assert.assertEquals(index.find("line 5".getBytes("UTF-8"), index.getLineOffset(6), false), index.getLineOffset(5));
+    }
+
+    @Test
+    public void testUtf16WithBom() throws IOException {
+        LineIndex index = createIndex(createText(), "UTF-16LE", new byte[] {(byte)0xFF, (byte)0xFE});
+        Assert.assertEquals(index.getNewline(), new byte[] {'\n', 0});
+        checkLines(index);
+        Assert.assertEquals(index.getLineOffset(0), 2);
+
+        // "\n0" encoded with a shifted alignment must not match
+        long offset = index.find("line 300".getBytes("UTF-16LE"), 0, true);
+        Assert.assertEquals(index.getLineAt(offset), 300);
+        Assert.assertEquals(index.find(new byte[] {0, 'l'}, 0, true), -1);
+    }
+
+    @Test
+    public void testUtf16OddReads() throws IOException {
+        // Reads ending in the middle of a character must not shift the offsets of the following lines
+        LineIndex index = createIndex(createText(), "UTF-16LE", new byte[] {(byte)0xFF, (byte)0xFE}, 999);
+        checkLines(index);
+        Assert.assertEquals(index.getLineOffset(1), 2 + "line 0\n".length() * 2);
+        Assert.assertEquals(index.getLineAt(index.getLineOffset(700) + 3), 700);
+    }
+
+    @Test
+    public void testNewline() {
+        Assert.assertEquals(LineIndex.getNewline(Charset.forName("UTF-16")).length, 2);
+        Assert.assertEquals(LineIndex.getNewline(Charset.forName("windows-1251")), new byte[] {'\n'});
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/en/soft/trolcommander
+ * Copyright (C) 2013-2016 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.utils;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import ru.trolsoft.utils.ImageSizeDetector;
+import ru.trolsoft.utils.JavaClassVersionDetector;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests the detectors run by {@link ContentTypeDetector} over the head of a file.
+ *
+ * @author Oleg Trifonov
+ */
+public class ContentTypeDetectorTest {
+
+    private static ContentTypeDetector.ContentType detect(byte[] head) {
+        return ContentTypeDetector.detect(head, head.length);
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte)values[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void testText() {
+        ContentTypeDetector.ContentType contentType = detect("Hello,\nworld!\n".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertFalse(contentType.isBinary());
+        Assert.assertNotNull(contentType.getEncoding());
+        Assert.assertNull(contentType.getArchiveType());
+        Assert.assertNull(contentType.getImageType());
+    }
+
+    @Test
+    public void testArchive() {
+        byte[] zip = bytes(0x50, 0x4B, 0x03, 0x04, 0x14, 0x00, 0x00, 0x00);
+        Assert.assertEquals(detect(zip).getArchiveType(), ContentTypeDetector.ArchiveType.ZIP);
+        Assert.assertTrue(detect(zip).isBinary());
+        Assert.assertNull(detect(zip).getEncoding());
+
+        byte[] tar = new byte[512];
+        System.arraycopy("ustar".getBytes(StandardCharsets.US_ASCII), 0, tar, 257, 5);
+        Assert.assertEquals(detect(tar).getArchiveType(), ContentTypeDetector.ArchiveType.TAR);
+
+        // The signature is looked for past the end of the head
+        Assert.assertNull(ContentTypeDetector.detect(tar, 200).getArchiveType());
+
+        byte[] bzip2 = bytes('B', 'Z', 'h', '9', 0x31, 0x41, 0x59, 0x26, 0x53, 0x59, 0x12, 0x34);
+        Assert.assertEquals(detect(bzip2).getArchiveType(), ContentTypeDetector.ArchiveType.BZIP2);
+    }
+
+    @Test
+    public void testTextWithArchiveSignature() {
+        ContentTypeDetector.ContentType contentType = detect("BZh, said the bee.\n".getBytes(StandardCharsets.US_ASCII));
+        Assert.assertNull(contentType.getArchiveType());
+        Assert.assertFalse(contentType.isBinary());
+
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 257) {
+            sb.append("text ");
+        }
+        sb.setLength(257);
+        sb.append("ustar is not followed by a NUL here\n");
+        contentType = detect(sb.toString().getBytes(StandardCharsets.US_ASCII));
+        Assert.assertNull(contentType.getArchiveType());
+        Assert.assertFalse(contentType.isBinary());
+    }
+
+    @Test
+    public void testImage() {
+        byte[] png = bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H', 'D', 'R',
+                0, 0, 0x01, 0x40, 0, 0, 0, 0xF0, 8, 6, 0, 0, 0);
+        ContentTypeDetector.ContentType contentType = detect(png);
+        Assert.assertEquals(contentType.getImageType(), ImageSizeDetector.ImageType.PNG);
+        Assert.assertEquals(contentType.getImageWidth(), 320);
+        Assert.assertEquals(contentType.getImageHeight(), 240);
+    }
+
+    @Test
+    public void testJavaClass() {
+        byte[] javaClass = bytes(0xCA, 0xFE, 0xBA, 0xBE, 0, 0, 0, 52, 0, 0x1D);
+        ContentTypeDetector.ContentType contentType = detect(javaClass);
+        Assert.assertEquals(contentType.getJavaClassVersion(), JavaClassVersionDetector.Version.VER_1_8);
+        Assert.assertEquals(contentType.getJavaClassMajor(), 52);
+        Assert.assertNull(contentType.getImageType());
+    }
+}